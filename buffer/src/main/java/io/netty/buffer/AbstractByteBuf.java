@@ -1287,6 +1287,12 @@ public abstract class AbstractByteBuf extends ByteBuf {
     }
 
     private int forEachByteAsc0(int start, int end, ByteProcessor processor) throws Exception {
+        if (ByteBufUtil.SWAR_SUPPORTED) {
+            int bytesToFind = ByteBufUtil.bytesToFind(processor);
+            if (bytesToFind != -1) {
+                return ByteBufUtil.firstIndexOf(this, start, end, (byte) bytesToFind, (byte) (bytesToFind >>> 8));
+            }
+        }
         for (; start < end; ++start) {
             if (!processor.process(_getByte(start))) {
                 return start;
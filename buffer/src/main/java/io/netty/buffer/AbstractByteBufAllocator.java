@@ -99,6 +99,13 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
         emptyBuf = new EmptyByteBuf(this);
     }
 
+    /**
+     * Returns {@code true} if {@link #buffer()} and {@link #buffer(int)} allocate direct buffers.
+     */
+    final boolean directByDefault() {
+        return directByDefault;
+    }
+
     @Override
     public ByteBuf buffer() {
         if (directByDefault) {
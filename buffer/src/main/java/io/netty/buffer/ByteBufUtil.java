@@ -71,6 +71,11 @@ public final class ByteBufUtil {
             (int) CharsetUtil.encoder(CharsetUtil.UTF_8).maxBytesPerChar();
 
     static final int WRITE_CHUNK_SIZE = 8192;
+    /**
+     * {@code true} if {@code long}s can be read at any index with a single load, so searching for bytes 8 at a time
+     * is faster than comparing them one by one.
+     */
+    static final boolean SWAR_SUPPORTED = PlatformDependent.isUnaligned();
     static final ByteBufAllocator DEFAULT_ALLOCATOR;
 
     static {
@@ -458,9 +463,93 @@ public final class ByteBufUtil {
             return -1;
         }
 
+        if (SWAR_SUPPORTED && buffer instanceof AbstractByteBuf) {
+            AbstractByteBuf buf = (AbstractByteBuf) buffer;
+            buf.checkIndex(fromIndex, toIndex - fromIndex);
+            return firstIndexOf(buf, fromIndex, toIndex, value, value);
+        }
         return buffer.forEachByte(fromIndex, toIndex - fromIndex, new ByteProcessor.IndexOfProcessor(value));
     }
 
+    /**
+     * Returns the one or two bytes on which the given {@link ByteProcessor} aborts packed into the lower 16 bits, or
+     * {@code -1} if it is not one of the well-known find processors of {@link ByteProcessor}.
+     */
+    static int bytesToFind(ByteProcessor processor) {
+        if (processor == ByteProcessor.FIND_LF) {
+            return bytesToFind((byte) '\n', (byte) '\n');
+        }
+        if (processor == ByteProcessor.FIND_CRLF) {
+            return bytesToFind((byte) '\r', (byte) '\n');
+        }
+        if (processor == ByteProcessor.FIND_CR) {
+            return bytesToFind((byte) '\r', (byte) '\r');
+        }
+        if (processor == ByteProcessor.FIND_NUL) {
+            return bytesToFind((byte) 0, (byte) 0);
+        }
+        if (processor == ByteProcessor.FIND_LINEAR_WHITESPACE) {
+            return bytesToFind((byte) ' ', (byte) '\t');
+        }
+        if (processor == ByteProcessor.FIND_ASCII_SPACE) {
+            return bytesToFind((byte) ' ', (byte) ' ');
+        }
+        if (processor == ByteProcessor.FIND_SEMI_COLON) {
+            return bytesToFind((byte) ';', (byte) ';');
+        }
+        if (processor == ByteProcessor.FIND_COMMA) {
+            return bytesToFind((byte) ',', (byte) ',');
+        }
+        return -1;
+    }
+
+    private static int bytesToFind(byte first, byte second) {
+        return first & 0xFF | (second & 0xFF) << 8;
+    }
+
+    /**
+     * Returns the index of the first byte in {@code [fromIndex, toIndex)} which is either {@code first} or
+     * {@code second}, or {@code -1} if there is none. The bytes are compared 8 at a time (SWAR), so this must only be
+     * used if {@link #SWAR_SUPPORTED} is {@code true}. The indices are not checked.
+     */
+    static int firstIndexOf(AbstractByteBuf buffer, int fromIndex, int toIndex, byte first, byte second) {
+        int index = fromIndex;
+        // Compare the first bytes one by one, so the rest of the range can be read in longs.
+        final int longsStart = fromIndex + ((toIndex - fromIndex) & 7);
+        for (; index < longsStart; index++) {
+            byte value = buffer._getByte(index);
+            if (value == first || value == second) {
+                return index;
+            }
+        }
+
+        final long firstPattern = compilePattern(first);
+        final long secondPattern = compilePattern(second);
+        // Read in little endian byte order, so the byte at index ends up in the lowest bits.
+        for (; index < toIndex; index += 8) {
+            long word = buffer._getLongLE(index);
+            long matches = zeroBytes(word ^ firstPattern) | zeroBytes(word ^ secondPattern);
+            if (matches != 0) {
+                return index + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+        return -1;
+    }
+
+    private static long compilePattern(byte value) {
+        return (value & 0xFFL) * 0x0101010101010101L;
+    }
+
+    /**
+     * Returns a {@code long} in which the highest bit of a byte is set if the same byte of {@code word} is {@code 0},
+     * and all other bits are clear. Unlike the well-known {@code (x - 0x01..) & ~x & 0x80..} this never reports
+     * false positives after the first zero byte, so the result can be searched from both ends.
+     */
+    private static long zeroBytes(long word) {
+        long tmp = (word & 0x7F7F7F7F7F7F7F7FL) + 0x7F7F7F7F7F7F7F7FL;
+        return ~(tmp | word | 0x7F7F7F7F7F7F7F7FL);
+    }
+
     private static int lastIndexOf(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
         fromIndex = Math.min(fromIndex, buffer.capacity());
         if (fromIndex < 0 || buffer.capacity() == 0) {
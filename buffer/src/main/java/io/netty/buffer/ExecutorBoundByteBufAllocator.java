@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.StringUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBufAllocator} which allocates out of arenas that are owned exclusively by an {@link EventExecutor}.
+ *
+ * @see PooledByteBufAllocator#boundAllocator(EventExecutor)
+ */
+final class ExecutorBoundByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
+
+    private final PooledByteBufAllocator parent;
+    private final EventExecutor executor;
+    // Not looked up via a FastThreadLocal as only the executor ever allocates out of it.
+    private final PoolThreadCache cache;
+    private final ByteBufAllocatorMetric metric = new ByteBufAllocatorMetric() {
+        @Override
+        public long usedHeapMemory() {
+            return usedMemory(cache.heapArena);
+        }
+
+        @Override
+        public long usedDirectMemory() {
+            return usedMemory(cache.directArena);
+        }
+    };
+
+    ExecutorBoundByteBufAllocator(PooledByteBufAllocator parent, EventExecutor executor, PoolThreadCache cache) {
+        super(parent.directByDefault());
+        this.parent = parent;
+        this.executor = executor;
+        this.cache = cache;
+        if (cache.heapArena != null) {
+            cache.heapArena.ownerCache = cache;
+        }
+        if (cache.directArena != null) {
+            cache.directArena.ownerCache = cache;
+        }
+    }
+
+    @Override
+    protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+        PoolArena<byte[]> heapArena = cache.heapArena;
+        if (heapArena == null || !executor.inEventLoop()) {
+            return parent.newHeapBuffer(initialCapacity, maxCapacity);
+        }
+        return toLeakAwareBuffer(heapArena.allocate(cache, initialCapacity, maxCapacity));
+    }
+
+    @Override
+    protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+        PoolArena<ByteBuffer> directArena = cache.directArena;
+        if (directArena == null || !executor.inEventLoop()) {
+            return parent.newDirectBuffer(initialCapacity, maxCapacity);
+        }
+        return toLeakAwareBuffer(directArena.allocate(cache, initialCapacity, maxCapacity));
+    }
+
+    @Override
+    public boolean isDirectBufferPooled() {
+        return parent.isDirectBufferPooled();
+    }
+
+    @Override
+    public ByteBufAllocatorMetric metric() {
+        return metric;
+    }
+
+    /**
+     * Trims the cache and releases chunks which were unused for at least {@code idleTimeoutNanos}. Must be called by
+     * the {@link EventExecutor}.
+     */
+    void trim(long idleTimeoutNanos) {
+        assert executor.inEventLoop();
+        cache.trim();
+        if (cache.heapArena != null) {
+            cache.heapArena.releaseIdleChunks(idleTimeoutNanos);
+        }
+        if (cache.directArena != null) {
+            cache.directArena.releaseIdleChunks(idleTimeoutNanos);
+        }
+    }
+
+    /**
+     * Frees the cached memory and all memory which was handed over by other threads. Must only be called once the
+     * {@link EventExecutor} terminated or if it never used this allocator.
+     */
+    void free() {
+        cache.free();
+        if (cache.heapArena != null) {
+            cache.heapArena.freePendingFrees();
+        }
+        if (cache.directArena != null) {
+            cache.directArena.freePendingFrees();
+        }
+    }
+
+    private static long usedMemory(PoolArena<?> arena) {
+        return arena == null ? 0 : arena.numActiveBytes();
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(executor: " + executor + ", parent: " + parent + ')';
+    }
+}
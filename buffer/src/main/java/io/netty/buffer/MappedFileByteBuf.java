@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * Read-only {@link ByteBuf} which wraps a region of a file that is mapped into memory.
+ * <p>
+ * In contrast to a {@code FileRegion} the contents can be read like any other {@link ByteBuf}, so
+ * they can pass through handlers which need to inspect or transform the bytes. {@link #slice()},
+ * {@link #retainedSlice()} and {@link #duplicate()} share the mapping and the reference count of this buffer and
+ * never copy the contents. The region is unmapped once the reference count reaches {@code 0}, so no
+ * {@link java.nio.ByteBuffer} obtained via {@link #nioBuffer()} may be used after the last release.
+ * <p>
+ * The file must not be truncated while it is mapped as accessing a region beyond the end of the file may crash
+ * the JVM.
+ */
+public final class MappedFileByteBuf extends ReadOnlyByteBufferBuf {
+
+    private final MappedByteBuffer mappedBuffer;
+    private final long memoryAddress;
+
+    /**
+     * Maps {@code length} bytes of {@code channel} starting at {@code position} into memory.
+     *
+     * @param alloc the {@link ByteBufAllocator} which is used to allocate copies of this buffer
+     */
+    public MappedFileByteBuf(ByteBufAllocator alloc, FileChannel channel, long position, int length)
+            throws IOException {
+        this(alloc, checkNotNull(channel, "channel").map(MapMode.READ_ONLY, position, length));
+    }
+
+    /**
+     * Creates a new buffer which takes over the ownership of the given read-only {@link MappedByteBuffer}. The
+     * {@link MappedByteBuffer} must not be used anymore once this buffer was released.
+     *
+     * @param alloc the {@link ByteBufAllocator} which is used to allocate copies of this buffer
+     */
+    public MappedFileByteBuf(ByteBufAllocator alloc, MappedByteBuffer mappedBuffer) {
+        super(checkNotNull(alloc, "alloc"), checkNotNull(mappedBuffer, "mappedBuffer"));
+        this.mappedBuffer = mappedBuffer;
+        // Use buffer as the super class will slice the passed in MappedByteBuffer which means the memoryAddress
+        // may be different if the position != 0.
+        memoryAddress = PlatformDependent.hasUnsafe() ? PlatformDependent.directBufferAddress(buffer) : 0;
+    }
+
+    /**
+     * Loads the contents of this buffer into physical memory, so reading it later on does not block on disk I/O.
+     *
+     * @see MappedByteBuffer#load()
+     */
+    public MappedFileByteBuf load() {
+        ensureAccessible();
+        mappedBuffer.load();
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        // Unmaps the region via the Cleaner of the MappedByteBuffer.
+        PlatformDependent.freeDirectBuffer(mappedBuffer);
+    }
+
+    @Override
+    public boolean hasMemoryAddress() {
+        return memoryAddress != 0;
+    }
+
+    @Override
+    public long memoryAddress() {
+        ensureAccessible();
+        if (memoryAddress == 0) {
+            throw new UnsupportedOperationException();
+        }
+        return memoryAddress;
+    }
+}
@@ -16,14 +16,26 @@
 
 package io.netty.buffer;
 
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.LongCounter;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.max;
@@ -43,13 +55,29 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     static final int numTinySubpagePools = 512 >>> 4;
 
+    /**
+     * The number of size classes per power of two for all sizes of at least 512 bytes, which are spaced the same way
+     * as the jemalloc size classes: {@code 512, 640, 768, 896, 1024, 1280, ...}.
+     */
+    static final int LOG2_SIZE_CLASS_GROUP = 2;
+    private static final int SMALL_MIN_SHIFTS = 9;
+
     final PooledByteBufAllocator parent;
 
-    private final int maxOrder;
+    // The EventExecutor which owns this arena exclusively, or null if the arena is shared by all threads.
+    final EventExecutor owner;
+    // The cache of the owner, set once by ExecutorBoundByteBufAllocator.
+    PoolThreadCache ownerCache;
+    // Memory which was freed by other threads than the owner and is handed over to it.
+    private final Queue<PendingFree<T>> pendingFrees;
+    private final AtomicBoolean drainScheduled;
+    private final Runnable drainTask;
+
     final int pageSize;
     final int pageShifts;
     final int chunkSize;
     final int subpageOverflowMask;
+    final int smallMaxSize;
     final int numSmallSubpagePools;
     final int directMemoryCacheAlignment;
     final int directMemoryCacheAlignmentMask;
@@ -80,31 +108,56 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     // We need to use the LongCounter here as this is not guarded via synchronized block.
     private final LongCounter deallocationsHuge = PlatformDependent.newLongCounter();
 
+    // Metrics for the memory which was given back by trimming.
+    private long releasedChunks;
+    private long releasedBytes;
+    // We need to use the LongCounter here as this is updated by the thread caches without holding the lock.
+    private final LongCounter trimmedCacheEntries = PlatformDependent.newLongCounter();
+
     // Number of thread caches backed by this arena.
     final AtomicInteger numThreadCaches = new AtomicInteger();
 
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
-    protected PoolArena(PooledByteBufAllocator parent, int pageSize,
+    protected PoolArena(PooledByteBufAllocator parent, EventExecutor owner, int pageSize,
           int maxOrder, int pageShifts, int chunkSize, int cacheAlignment) {
         this.parent = parent;
+        this.owner = owner;
+        if (owner != null) {
+            pendingFrees = PlatformDependent.newMpscQueue();
+            drainScheduled = new AtomicBoolean();
+            drainTask = new Runnable() {
+                @Override
+                public void run() {
+                    drainScheduled.set(false);
+                    drainPendingFrees(ownerCache);
+                }
+            };
+        } else {
+            pendingFrees = null;
+            drainScheduled = null;
+            drainTask = null;
+        }
         this.pageSize = pageSize;
-        this.maxOrder = maxOrder;
         this.pageShifts = pageShifts;
         this.chunkSize = chunkSize;
         directMemoryCacheAlignment = cacheAlignment;
         directMemoryCacheAlignmentMask = cacheAlignment - 1;
-        subpageOverflowMask = ~(pageSize - 1);
+        // Everything smaller than 4 pages is served out of subpages, which allows the size classes between pageSize
+        // and 4 * pageSize to not be a multiple of pageSize. The subpage runs must still fit into a chunk.
+        int smallMaxShifts = Math.min(pageShifts + LOG2_SIZE_CLASS_GROUP, log2(chunkSize));
+        smallMaxSize = 1 << smallMaxShifts;
+        subpageOverflowMask = ~(smallMaxSize - 1);
         tinySubpagePools = newSubpagePoolArray(numTinySubpagePools);
         for (int i = 0; i < tinySubpagePools.length; i ++) {
-            tinySubpagePools[i] = newSubpagePoolHead(pageSize);
+            tinySubpagePools[i] = newSubpagePoolHead(pageShifts);
         }
 
-        numSmallSubpagePools = pageShifts - 9;
+        numSmallSubpagePools = max(0, smallMaxShifts - SMALL_MIN_SHIFTS) << LOG2_SIZE_CLASS_GROUP;
         smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools);
         for (int i = 0; i < smallSubpagePools.length; i ++) {
-            smallSubpagePools[i] = newSubpagePoolHead(pageSize);
+            smallSubpagePools[i] = newSubpagePoolHead(pageShifts);
         }
 
         q100 = new PoolChunkList<T>(this, null, 100, Integer.MAX_VALUE, chunkSize);
@@ -131,8 +184,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         chunkListMetrics = Collections.unmodifiableList(metrics);
     }
 
-    private PoolSubpage<T> newSubpagePoolHead(int pageSize) {
-        PoolSubpage<T> head = new PoolSubpage<T>(pageSize);
+    private PoolSubpage<T> newSubpagePoolHead(int pageShifts) {
+        PoolSubpage<T> head = new PoolSubpage<T>(pageShifts);
         head.prev = head;
         head.next = head;
         return head;
@@ -145,6 +198,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     abstract boolean isDirect();
 
+    /**
+     * Returns the {@link PoolThreadCache} of the calling thread, which must be the {@link #owner} if there is one.
+     */
+    PoolThreadCache threadCache() {
+        return owner == null ? parent.threadCache() : ownerCache;
+    }
+
     PooledByteBuf<T> allocate(PoolThreadCache cache, int reqCapacity, int maxCapacity) {
         PooledByteBuf<T> buf = newByteBuf(maxCapacity);
         allocate(cache, buf, reqCapacity);
@@ -156,16 +216,57 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     static int smallIdx(int normCapacity) {
-        int tableIdx = 0;
-        int i = normCapacity >>> 10;
-        while (i != 0) {
-            i >>>= 1;
-            tableIdx ++;
+        return sizeClassIdx(normCapacity);
+    }
+
+    /**
+     * Returns the index of the given normalized capacity, which must be at least 512, in the sequence of all size
+     * classes starting with 512. The index of a normal capacity minus {@link #numSmallSubpagePools} is its index
+     * among all normal size classes.
+     */
+    static int sizeClassIdx(int normCapacity) {
+        int x = normCapacity - 1;
+        int log2Group = log2(x);
+        int log2Delta = log2Group - LOG2_SIZE_CLASS_GROUP;
+        return (log2Group - (SMALL_MIN_SHIFTS - 1) << LOG2_SIZE_CLASS_GROUP) + (x >> log2Delta & 3) - 3;
+    }
+
+    /**
+     * Rounds the given capacity, which must be bigger than 256, up to the next size class. There are four size
+     * classes per power of two, so this never wastes more than 20% of the returned size.
+     */
+    static int normalizeSizeClass(int capacity) {
+        int x = capacity - 1;
+        int log2Delta = log2(x) - LOG2_SIZE_CLASS_GROUP;
+        int deltaMask = (1 << log2Delta) - 1;
+        return (x | deltaMask) + 1;
+    }
+
+    /**
+     * Returns the size of the run which backs a {@link PoolSubpage} with elements of the given normalized capacity.
+     * Small subpages use the smallest run which holds a whole number of elements, so no space is wasted at the end of
+     * the run.
+     */
+    int subpageRunSize(int normCapacity) {
+        if (isTiny(normCapacity)) {
+            return pageSize;
+        }
+        int runSize = pageSize;
+        while (runSize % normCapacity != 0) {
+            runSize += pageSize;
+        }
+        if (runSize > chunkSize) {
+            // The run would not fit into a chunk, so just use a single element.
+            return (normCapacity + pageSize - 1) & ~(pageSize - 1);
         }
-        return tableIdx;
+        return runSize;
     }
 
-    // capacity < pageSize
+    private static int log2(int val) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+
+    // capacity < smallMaxSize
     boolean isTinyOrSmall(int normCapacity) {
         return (normCapacity & subpageOverflowMask) == 0;
     }
@@ -251,7 +352,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         // Add a new chunk.
-        PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
+        PoolChunk<T> c = newChunk(pageShifts, chunkSize);
         long handle = c.allocate(normCapacity);
         assert handle > 0;
         c.initBuf(buf, handle, reqCapacity);
@@ -274,6 +375,28 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     void free(PoolChunk<T> chunk, long handle, int normCapacity, PoolThreadCache cache) {
+        if (owner != null && !chunk.unpooled && !owner.inEventLoop()) {
+            if (!owner.isTerminated()) {
+                // Hand the memory over to the owner, so only the owner ever touches the arena.
+                pendingFrees.offer(PendingFree.newInstance(chunk, handle, normCapacity));
+                if (owner.isTerminated()) {
+                    // The owner terminated meanwhile, so the queue may have been drained already by the
+                    // ExecutorBoundByteBufAllocator and a drain task would be rejected.
+                    freePendingFrees();
+                    return;
+                }
+                if (drainScheduled.compareAndSet(false, true)) {
+                    try {
+                        owner.execute(drainTask);
+                    } catch (RejectedExecutionException ignore) {
+                        // The owner is shutting down and will drain the queue once it terminated.
+                    }
+                }
+                return;
+            }
+            // The owner is gone, so free directly but do not add to its cache as nobody would ever drain it.
+            cache = null;
+        }
         if (chunk.unpooled) {
             int size = chunk.chunkSize();
             destroyChunk(chunk);
@@ -290,6 +413,35 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
+    /**
+     * Frees all memory which was handed over by other threads. Must only be called by the {@link #owner}, or via
+     * {@link #freePendingFrees()}.
+     */
+    private void drainPendingFrees(PoolThreadCache cache) {
+        for (;;) {
+            PendingFree<T> pending = pendingFrees.poll();
+            if (pending == null) {
+                return;
+            }
+            PoolChunk<T> chunk = pending.chunk;
+            long handle = pending.handle;
+            int normCapacity = pending.normCapacity;
+            pending.recycle();
+            free(chunk, handle, normCapacity, cache);
+        }
+    }
+
+    /**
+     * Frees all memory which was handed over by other threads from a thread other than the {@link #owner}. Must only
+     * be called once the owner terminated or if it never used this arena. Threads which handed over memory while the
+     * owner terminated call it as well, so they take turns as only one thread may poll the queue at a time.
+     */
+    void freePendingFrees() {
+        synchronized (pendingFrees) {
+            drainPendingFrees(null);
+        }
+    }
+
     private SizeClass sizeClass(int normCapacity) {
         if (!isTinyOrSmall(normCapacity)) {
             return SizeClass.Normal;
@@ -321,19 +473,78 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
+    /**
+     * Destroys all {@link PoolChunk}s of this arena which were completely unused for at least
+     * {@code idleTimeoutNanos}, and so gives their memory back. Returns the number of released bytes.
+     */
+    long releaseIdleChunks(long idleTimeoutNanos) {
+        List<PoolChunk<T>> destroy = new ArrayList<PoolChunk<T>>();
+        long bytes = 0;
+        synchronized (this) {
+            // The last subpage of each size class is retained even if it is unused, which would keep its chunk
+            // alive forever. Give these back first, so the chunks become idle.
+            releaseUnusedSubpages(tinySubpagePools, destroy);
+            releaseUnusedSubpages(smallSubpagePools, destroy);
+
+            // Completely unused chunks are only ever kept in qInit, as all other lists destroy them right away.
+            List<PoolChunk<T>> idle = qInit.removeIdleChunks(System.nanoTime(), idleTimeoutNanos);
+            if (idle != null) {
+                destroy.addAll(idle);
+            }
+            for (int i = 0; i < destroy.size(); i++) {
+                bytes += destroy.get(i).chunkSize();
+            }
+            releasedChunks += destroy.size();
+            releasedBytes += bytes;
+        }
+        // destroyChunk not need to be called while holding the synchronized lock.
+        for (int i = 0; i < destroy.size(); i++) {
+            destroyChunk(destroy.get(i));
+        }
+        return bytes;
+    }
+
+    private void releaseUnusedSubpages(PoolSubpage<T>[] table, List<PoolChunk<T>> destroy) {
+        assert Thread.holdsLock(this);
+        for (PoolSubpage<T> head : table) {
+            final PoolSubpage<T> subpage;
+            synchronized (head) {
+                subpage = head.next;
+                if (subpage == head || subpage.next != head || !subpage.destroyIfUnused()) {
+                    continue;
+                }
+            }
+            PoolChunk<T> chunk = subpage.chunk;
+            if (!chunk.parent.free(chunk, chunk.removeSubpage(subpage))) {
+                destroy.add(chunk);
+            }
+        }
+    }
+
+    void incrementTrimmedCacheEntries(int numTrimmed) {
+        trimmedCacheEntries.add(numTrimmed);
+    }
+
+    synchronized long numReleasedChunks() {
+        return releasedChunks;
+    }
+
+    synchronized long numReleasedBytes() {
+        return releasedBytes;
+    }
+
+    long numTrimmedCacheEntries() {
+        return trimmedCacheEntries.value();
+    }
+
     PoolSubpage<T> findSubpagePoolHead(int elemSize) {
         int tableIdx;
         PoolSubpage<T>[] table;
         if (isTiny(elemSize)) { // < 512
-            tableIdx = elemSize >>> 4;
+            tableIdx = tinyIdx(elemSize);
             table = tinySubpagePools;
         } else {
-            tableIdx = 0;
-            elemSize >>>= 10;
-            while (elemSize != 0) {
-                elemSize >>>= 1;
-                tableIdx ++;
-            }
+            tableIdx = smallIdx(elemSize);
             table = smallSubpagePools;
         }
 
@@ -355,22 +566,12 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         if (!isTiny(reqCapacity)) { // >= 512
-            // Doubled
-
-            int normalizedCapacity = reqCapacity;
-            normalizedCapacity --;
-            normalizedCapacity |= normalizedCapacity >>>  1;
-            normalizedCapacity |= normalizedCapacity >>>  2;
-            normalizedCapacity |= normalizedCapacity >>>  4;
-            normalizedCapacity |= normalizedCapacity >>>  8;
-            normalizedCapacity |= normalizedCapacity >>> 16;
-            normalizedCapacity ++;
-
-            if (normalizedCapacity < 0) {
-                normalizedCapacity >>>= 1;
+            // Four size classes per power of two
+            int normalizedCapacity = normalizeSizeClass(reqCapacity);
+            while (directMemoryCacheAlignment != 0 && (normalizedCapacity & directMemoryCacheAlignmentMask) != 0) {
+                // Only the classes which are a power of two are guaranteed to be aligned.
+                normalizedCapacity = normalizeSizeClass(normalizedCapacity + 1);
             }
-            assert directMemoryCacheAlignment == 0 || (normalizedCapacity & directMemoryCacheAlignmentMask) == 0;
-
             return normalizedCapacity;
         }
 
@@ -409,7 +610,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         int readerIndex = buf.readerIndex();
         int writerIndex = buf.writerIndex();
 
-        allocate(parent.threadCache(), buf, newCapacity);
+        if (owner == null || owner.inEventLoop()) {
+            allocate(threadCache(), buf, newCapacity);
+        } else {
+            // Only the owner may allocate out of this arena, so move the buffer to the arena of the calling thread.
+            PoolThreadCache cache = parent.threadCache();
+            sharedArena(cache).allocate(cache, buf, newCapacity);
+        }
         if (newCapacity > oldCapacity) {
             memoryCopy(
                     oldMemory, oldOffset,
@@ -434,6 +641,11 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private PoolArena<T> sharedArena(PoolThreadCache cache) {
+        return (PoolArena<T>) (isDirect() ? cache.directArena : cache.heapArena);
+    }
+
     @Override
     public int numThreadCaches() {
         return numThreadCaches.get();
@@ -592,7 +804,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return max(0, val);
     }
 
-    protected abstract PoolChunk<T> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize);
+    protected abstract PoolChunk<T> newChunk(int pageShifts, int chunkSize);
     protected abstract PoolChunk<T> newUnpooledChunk(int capacity);
     protected abstract PooledByteBuf<T> newByteBuf(int maxCapacity);
     protected abstract void memoryCopy(T src, int srcOffset, T dst, int dstOffset, int length);
@@ -679,11 +891,44 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
+    static final class PendingFree<T> {
+        private final Handle<PendingFree<?>> recyclerHandle;
+        PoolChunk<T> chunk;
+        long handle = -1;
+        int normCapacity;
+
+        PendingFree(Handle<PendingFree<?>> recyclerHandle) {
+            this.recyclerHandle = recyclerHandle;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> PendingFree<T> newInstance(PoolChunk<T> chunk, long handle, int normCapacity) {
+            PendingFree<T> pending = (PendingFree<T>) RECYCLER.get();
+            pending.chunk = chunk;
+            pending.handle = handle;
+            pending.normCapacity = normCapacity;
+            return pending;
+        }
+
+        void recycle() {
+            chunk = null;
+            handle = -1;
+            recyclerHandle.recycle(this);
+        }
+
+        private static final Recycler<PendingFree<?>> RECYCLER = new Recycler<PendingFree<?>>() {
+            @Override
+            protected PendingFree<?> newObject(Handle<PendingFree<?>> handle) {
+                return new PendingFree<Object>(handle);
+            }
+        };
+    }
+
     static final class HeapArena extends PoolArena<byte[]> {
 
-        HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+        HeapArena(PooledByteBufAllocator parent, EventExecutor owner, int pageSize, int maxOrder,
                 int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
-            super(parent, pageSize, maxOrder, pageShifts, chunkSize,
+            super(parent, owner, pageSize, maxOrder, pageShifts, chunkSize,
                     directMemoryCacheAlignment);
         }
 
@@ -697,8 +942,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         @Override
-        protected PoolChunk<byte[]> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize) {
-            return new PoolChunk<byte[]>(this, newByteArray(chunkSize), pageSize, maxOrder, pageShifts, chunkSize, 0);
+        protected PoolChunk<byte[]> newChunk(int pageShifts, int chunkSize) {
+            return new PoolChunk<byte[]>(this, newByteArray(chunkSize), pageShifts, chunkSize, 0);
         }
 
         @Override
@@ -729,10 +974,29 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     static final class DirectArena extends PoolArena<ByteBuffer> {
 
-        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+        private static final InternalLogger logger = InternalLoggerFactory.getInstance(DirectArena.class);
+
+        // The size of the huge pages the chunks are aligned to, or 0 if chunks are not backed by huge pages.
+        private final int hugePageSize;
+        // The hugetlbfs mount the chunks are mapped from, or null to rely on transparent huge pages.
+        private final File hugePageDirectory;
+        // Set once mapping huge pages failed, as it is likely to fail again but only after FileChannel.map(...)
+        // triggered a GC and slept while holding the lock of the arena.
+        private volatile boolean hugePagesExhausted;
+
+        DirectArena(PooledByteBufAllocator parent, EventExecutor owner, int pageSize, int maxOrder,
                 int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
-            super(parent, pageSize, maxOrder, pageShifts, chunkSize,
+            this(parent, owner, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, 0, null);
+        }
+
+        DirectArena(PooledByteBufAllocator parent, EventExecutor owner, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment,
+                int hugePageSize, File hugePageDirectory) {
+            super(parent, owner, pageSize, maxOrder, pageShifts, chunkSize,
                     directMemoryCacheAlignment);
+            assert hugePageSize == 0 || chunkSize % hugePageSize == 0;
+            this.hugePageSize = hugePageSize;
+            this.hugePageDirectory = hugePageDirectory;
         }
 
         @Override
@@ -748,20 +1012,67 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         @Override
-        protected PoolChunk<ByteBuffer> newChunk(int pageSize, int maxOrder,
-                int pageShifts, int chunkSize) {
+        protected PoolChunk<ByteBuffer> newChunk(int pageShifts, int chunkSize) {
+            if (hugePageSize != 0) {
+                return newHugePageChunk(pageShifts, chunkSize);
+            }
             if (directMemoryCacheAlignment == 0) {
                 return new PoolChunk<ByteBuffer>(this,
-                        allocateDirect(chunkSize), pageSize, maxOrder,
-                        pageShifts, chunkSize, 0);
+                        allocateDirect(chunkSize), pageShifts, chunkSize, 0);
             }
             final ByteBuffer memory = allocateDirect(chunkSize
                     + directMemoryCacheAlignment);
-            return new PoolChunk<ByteBuffer>(this, memory, pageSize,
-                    maxOrder, pageShifts, chunkSize,
+            return new PoolChunk<ByteBuffer>(this, memory, pageShifts, chunkSize,
                     offsetCacheLine(memory));
         }
 
+        private PoolChunk<ByteBuffer> newHugePageChunk(int pageShifts, int chunkSize) {
+            if (hugePageDirectory != null) {
+                ByteBuffer memory = hugePagesExhausted ? null : mapHugePages(chunkSize);
+                if (memory != null) {
+                    // Mappings of hugetlbfs files always start at a huge page boundary.
+                    return new PoolChunk<ByteBuffer>(this, memory, pageShifts, chunkSize, 0);
+                }
+                // Use memory which can be freed the same way as the mapped memory.
+                memory = ByteBuffer.allocateDirect(chunkSize + hugePageSize);
+                return new PoolChunk<ByteBuffer>(this, memory, pageShifts, chunkSize, hugePageOffset(memory));
+            }
+            // Transparent huge pages can only back the parts of the memory which are aligned to a huge page.
+            ByteBuffer memory = allocateDirect(chunkSize + hugePageSize);
+            return new PoolChunk<ByteBuffer>(this, memory, pageShifts, chunkSize, hugePageOffset(memory));
+        }
+
+        private ByteBuffer mapHugePages(int capacity) {
+            File file = null;
+            RandomAccessFile raf = null;
+            try {
+                file = File.createTempFile("netty-chunk-", null, hugePageDirectory);
+                raf = new RandomAccessFile(file, "rw");
+                // The mapping stays valid after the file was closed and deleted.
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            } catch (IOException e) {
+                hugePagesExhausted = true;
+                logger.debug("Failed to map huge pages from {}, falling back to direct memory", hugePageDirectory, e);
+                return null;
+            } finally {
+                if (raf != null) {
+                    try {
+                        raf.close();
+                    } catch (IOException ignore) {
+                        // ignore
+                    }
+                }
+                if (file != null && !file.delete()) {
+                    logger.debug("Failed to delete {}", file);
+                }
+            }
+        }
+
+        private int hugePageOffset(ByteBuffer memory) {
+            // The address is only known if Unsafe is present, otherwise the memory is not aligned.
+            return HAS_UNSAFE ? (int) (-PlatformDependent.directBufferAddress(memory) & (hugePageSize - 1)) : 0;
+        }
+
         @Override
         protected PoolChunk<ByteBuffer> newUnpooledChunk(int capacity) {
             if (directMemoryCacheAlignment == 0) {
@@ -781,7 +1092,8 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
         @Override
         protected void destroyChunk(PoolChunk<ByteBuffer> chunk) {
-            if (PlatformDependent.useDirectBufferNoCleaner()) {
+            // Mapped memory, and the memory used if mapping failed, is always released by its Cleaner.
+            if (PlatformDependent.useDirectBufferNoCleaner() && (hugePageDirectory == null || chunk.unpooled)) {
                 PlatformDependent.freeDirectNoCleaner(chunk.memory);
             } else {
                 PlatformDependent.freeDirectBuffer(chunk.memory);
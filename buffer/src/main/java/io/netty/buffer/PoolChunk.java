@@ -21,7 +21,8 @@ package io.netty.buffer;
  *
  * Notation: The following terms are important to understand the code
  * > page  - a page is the smallest unit of memory chunk that can be allocated
- * > chunk - a chunk is a collection of pages
+ * > run   - a run is a collection of consecutive pages
+ * > chunk - a chunk is a collection of runs
  * > in this code chunkSize = 2^{maxOrder} * pageSize
  *
  * To begin we allocate a byte array of size = chunkSize
@@ -30,105 +31,90 @@ package io.netty.buffer;
  * return a (long) handle that encodes this offset information, (this memory segment is then
  * marked as reserved so it is always used by exactly one ByteBuf and no more)
  *
- * For simplicity all sizes are normalized according to PoolArena#normalizeCapacity method
- * This ensures that when we request for memory segments of size >= pageSize the normalizedCapacity
- * equals the next nearest power of 2
+ * For simplicity all sizes are normalized according to PoolArena#normalizeCapacity method.
+ * Sizes of at least {@code 4 * pageSize} are normalized to jemalloc style size classes, which have four classes
+ * per power of two (for example 32k, 40k, 48k, 56k, 64k, 80k, ...), so a normalized capacity is always a multiple
+ * of pageSize and never wastes more than 20% of its run. Smaller sizes are served out of {@link PoolSubpage}s.
  *
- * To search for the first offset in chunk that has at least requested size available we construct a
- * complete balanced binary tree and store it in an array (just like heaps) - memoryMap
+ * handle:
+ * -------
+ * a handle is a long number, the bit layout of a run looks like:
  *
- * The tree looks like this (the size of each node being mentioned in the parenthesis)
+ * oooooooo ooooooos ssssssss ssssssue bbbbbbbb bbbbbbbb bbbbbbbb bbbbbbbb
  *
- * depth=0        1 node (chunkSize)
- * depth=1        2 nodes (chunkSize/2)
- * ..
- * ..
- * depth=d        2^d nodes (chunkSize/2^d)
- * ..
- * depth=maxOrder 2^maxOrder nodes (chunkSize/2^{maxOrder} = pageSize)
+ * o: runOffset (page offset in the chunk), 15bit
+ * s: size (number of pages) of this run, 15bit
+ * u: isUsed?, 1bit
+ * e: isSubpage?, 1bit
+ * b: bitmapIdx of subpage, zero if it's not subpage, 32bit
  *
- * depth=maxOrder is the last level and the leafs consist of pages
+ * runsAvailMap:
+ * ------
+ * an array indexed by page offset which holds the handle of every free run, stored at the first and at the last
+ * page of the run. This allows to find the free neighbours of a run in constant time when it is freed, so adjacent
+ * free runs are always coalesced.
  *
- * With this tree available searching in chunkArray translates like this:
- * To allocate a memory segment of size chunkSize/2^k we search for the first node (from left) at height k
- * which is unused
- *
- * Algorithm:
+ * runsAvail:
  * ----------
- * Encode the tree in memoryMap with the notation
- *   memoryMap[id] = x => in the subtree rooted at id, the first node that is free to be allocated
- *   is at depth x (counted from depth=0) i.e., at depths [depth_of_id, x), there is no node that is free
- *
- *  As we allocate & free nodes, we update values stored in memoryMap so that the property is maintained
- *
- * Initialization -
- *   In the beginning we construct the memoryMap array by storing the depth of a node at each node
- *     i.e., memoryMap[id] = depth_of_id
- *
- * Observations:
- * -------------
- * 1) memoryMap[id] = depth_of_id  => it is free / unallocated
- * 2) memoryMap[id] > depth_of_id  => at least one of its child nodes is allocated, so we cannot allocate it, but
- *                                    some of its children can still be allocated based on their availability
- * 3) memoryMap[id] = maxOrder + 1 => the node is fully allocated & thus none of its children can be allocated, it
- *                                    is thus marked as unusable
- *
- * Algorithm: [allocateNode(d) => we want to find the first node (from left) at height h that can be allocated]
- * ----------
- * 1) start at root (i.e., depth = 0 or id = 1)
- * 2) if memoryMap[1] > d => cannot be allocated from this chunk
- * 3) if left node value <= h; we can allocate from left subtree so move to left and repeat until found
- * 4) else try in right subtree
+ * an array of {@link LongPriorityQueue}.
+ * Each queue manages the free runs whose number of pages falls into the same page size class. Within a queue runs
+ * are ordered by their offset, so we always allocate from the lowest possible address which keeps fragmentation low.
+ * A bitmask of the non-empty queues allows to find the best fitting queue in constant time.
  *
  * Algorithm: [allocateRun(size)]
  * ----------
- * 1) Compute d = log_2(chunkSize/size)
- * 2) Return allocateNode(d)
+ * 1) find the first queue in runsAvail whose page size class is big enough
+ * 2) take the run with the lowest offset out of it
+ * 3) if the run has more pages than requested, split it and put the trailing run back into runsAvail
  *
  * Algorithm: [allocateSubpage(size)]
  * ----------
- * 1) use allocateNode(maxOrder) to find an empty (i.e., unused) leaf (i.e., page)
- * 2) use this handle to construct the PoolSubpage object or if it already exists just call init(normCapacity)
- *    note that this PoolSubpage object is added to subpagesPool in the PoolArena when we init() it
- *
- * Note:
- * -----
- * In the implementation for improving cache coherence,
- * we store 2 pieces of information depth_of_id and x as two byte values in memoryMap and depthMap respectively
+ * 1) allocate a run which holds a whole number of elements of the requested size, see
+ *    {@link PoolArena#subpageRunSize(int)}
+ * 2) create a new PoolSubpage object for the run. Note that this PoolSubpage object is added to subpagesPool in the
+ *    PoolArena when we init() it
+ * 3) call subpage.allocate()
  *
- * memoryMap[id]= depth_of_id  is defined above
- * depthMap[id]= x  indicates that the first node which is free to be allocated is at depth x (from root)
- */
-
-/**
- * TODO 主要用来组织和管理多个Page的内存分配和释放;
- * 这里的Page被构成一棵二叉树;
- * @param <T>
+ * Algorithm: [free(handle)]
+ * ----------
+ * 1) if it is a subpage, return the slab back into this subpage
+ * 2) if the subpage is not used or it is a run, then start free this run
+ * 3) merge continuous avail runs
+ * 4) save the merged run
  */
 final class PoolChunk<T> implements PoolChunkMetric {
 
-    private static final int INTEGER_SIZE_MINUS_ONE = Integer.SIZE - 1;
+    private static final int SIZE_BIT_LENGTH = 15;
+    private static final int INUSED_BIT_LENGTH = 1;
+    private static final int SUBPAGE_BIT_LENGTH = 1;
+    private static final int BITMAP_IDX_BIT_LENGTH = 32;
+
+    static final int IS_SUBPAGE_SHIFT = BITMAP_IDX_BIT_LENGTH;
+    static final int IS_USED_SHIFT = SUBPAGE_BIT_LENGTH + IS_SUBPAGE_SHIFT;
+    static final int SIZE_SHIFT = INUSED_BIT_LENGTH + IS_USED_SHIFT;
+    static final int RUN_OFFSET_SHIFT = SIZE_BIT_LENGTH + SIZE_SHIFT;
 
     final PoolArena<T> arena;
     final T memory;
     final boolean unpooled;
     final int offset;
 
-    private final byte[] memoryMap;
-    private final byte[] depthMap;
+    /** Handles of all free runs, stored at the first and last page of each run. */
+    private final long[] runsAvailMap;
+    /** Free runs, grouped by their page size class. */
+    private final LongPriorityQueue[] runsAvail;
+    /** Bit {@code i} is set if {@code runsAvail[i]} is not empty, so a chunk that is too full is rejected quickly. */
+    private long runsAvailMask;
+    /** Subpages, stored at the page offset of the run which backs them. */
     private final PoolSubpage<T>[] subpages;
-    /** Used to determine if the requested capacity is equal to or greater than pageSize. */
+    /** Used to determine if the requested capacity is served out of a {@link PoolSubpage}. */
     private final int subpageOverflowMask;
-    private final int pageSize;
     private final int pageShifts;
-    private final int maxOrder;
     private final int chunkSize;
-    private final int log2ChunkSize;
-    private final int maxSubpageAllocs;
-    /** Used to mark memory as unusable */
-    private final byte unusable;
 
     private int freeBytes;
+    /** The {@link System#nanoTime()} at which this chunk became completely unused the last time. */
+    long idleSinceNanos;
 
     PoolChunkList<T> parent;
     PoolChunk<T> prev;
@@ -137,38 +123,26 @@ final class PoolChunk<T> implements PoolChunkMetric {
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
-    PoolChunk(PoolArena<T> arena, T memory, int pageSize, int maxOrder, int pageShifts, int chunkSize, int offset) {
+    PoolChunk(PoolArena<T> arena, T memory, int pageShifts, int chunkSize, int offset) {
         unpooled = false;
         this.arena = arena;
         this.memory = memory;
-        this.pageSize = pageSize;
         this.pageShifts = pageShifts;
-        this.maxOrder = maxOrder;
         this.chunkSize = chunkSize;
         this.offset = offset;
-        unusable = (byte) (maxOrder + 1);
-        log2ChunkSize = log2(chunkSize);
-        subpageOverflowMask = ~(pageSize - 1);
+        subpageOverflowMask = arena.subpageOverflowMask;
         freeBytes = chunkSize;
+        idleSinceNanos = System.nanoTime();
 
-        assert maxOrder < 30 : "maxOrder should be < 30, but is: " + maxOrder;
-        maxSubpageAllocs = 1 << maxOrder;
-
-        // Generate the memory map.
-        memoryMap = new byte[maxSubpageAllocs << 1];
-        depthMap = new byte[memoryMap.length];
-        int memoryMapIndex = 1;
-        for (int d = 0; d <= maxOrder; ++ d) { // move down the tree one level at a time
-            int depth = 1 << d;
-            for (int p = 0; p < depth; ++ p) {
-                // in each level traverse left to right and set value to the depth of subtree
-                memoryMap[memoryMapIndex] = (byte) d;
-                depthMap[memoryMapIndex] = (byte) d;
-                memoryMapIndex ++;
-            }
-        }
+        int pages = chunkSize >> pageShifts;
+        assert pages < 1 << SIZE_BIT_LENGTH : "pages should be < " + (1 << SIZE_BIT_LENGTH) + ", but is: " + pages;
+        runsAvailMap = new long[pages];
+        runsAvail = newRunsAvailQueueArray(pageIdxFloor(pages) + 1);
+        assert runsAvail.length <= Long.SIZE;
+        subpages = newSubpageArray(pages);
 
-        subpages = newSubpageArray(maxSubpageAllocs);
+        // Insert the initial run, which spans the whole chunk.
+        insertAvailRun(0, pages, toRunHandle(0, pages, 0));
     }
 
     /** Creates a special chunk that is not pooled. */
@@ -177,17 +151,20 @@ final class PoolChunk<T> implements PoolChunkMetric {
         this.arena = arena;
         this.memory = memory;
         this.offset = offset;
-        memoryMap = null;
-        depthMap = null;
+        runsAvailMap = null;
+        runsAvail = null;
         subpages = null;
         subpageOverflowMask = 0;
-        pageSize = 0;
         pageShifts = 0;
-        maxOrder = 0;
-        unusable = (byte) (maxOrder + 1);
         chunkSize = size;
-        log2ChunkSize = log2(chunkSize);
-        maxSubpageAllocs = 0;
+    }
+
+    private static LongPriorityQueue[] newRunsAvailQueueArray(int size) {
+        LongPriorityQueue[] queueArray = new LongPriorityQueue[size];
+        for (int i = 0; i < queueArray.length; i++) {
+            queueArray[i] = new LongPriorityQueue();
+        }
+        return queueArray;
     }
 
     @SuppressWarnings("unchecked")
@@ -195,6 +172,46 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return new PoolSubpage[size];
     }
 
+    /**
+     * Returns the index of the page size class which is the biggest one that is not bigger than {@code pages}. Page
+     * size classes are {@code 1, 2, 3, 4, 5, 6, 7, 8, 10, 12, 14, 16, 20, ...}, so every normalized capacity maps to
+     * exactly one class.
+     */
+    static int pageIdxFloor(int pages) {
+        if (pages <= 4) {
+            return pages - 1;
+        }
+        int log2Group = log2(pages) - 2;
+        return (log2Group << 2) + (pages >> log2Group & 3) + 3;
+    }
+
+    private void insertAvailRun(int runOffset, int pages, long handle) {
+        int pageIdx = pageIdxFloor(pages);
+        runsAvail[pageIdx].offer(handle);
+        runsAvailMask |= 1L << pageIdx;
+
+        // Insert the first and last page of the run so it can be found by its neighbours.
+        runsAvailMap[runOffset] = handle;
+        runsAvailMap[runOffset + pages - 1] = handle;
+    }
+
+    private void removeAvailRun(long handle) {
+        int pages = runPages(handle);
+        int pageIdx = pageIdxFloor(pages);
+        LongPriorityQueue queue = runsAvail[pageIdx];
+        queue.remove(handle);
+        if (queue.isEmpty()) {
+            runsAvailMask &= ~(1L << pageIdx);
+        }
+        removeAvailRunFromMap(handle, pages);
+    }
+
+    private void removeAvailRunFromMap(long handle, int pages) {
+        int runOffset = runOffset(handle);
+        runsAvailMap[runOffset] = 0;
+        runsAvailMap[runOffset + pages - 1] = 0;
+    }
+
     @Override
     public int usage() {
         final int freeBytes;
@@ -217,7 +234,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     long allocate(int normCapacity) {
-        if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
+        if ((normCapacity & subpageOverflowMask) != 0) { // >= subpage size limit
             return allocateRun(normCapacity);
         } else {
             return allocateSubpage(normCapacity);
@@ -225,127 +242,75 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     /**
-     * Update method used by allocate
-     * This is triggered only when a successor is allocated and all its predecessors
-     * need to update their state
-     * The minimal depth at which subtree rooted at id has some free space
+     * Allocate a run of pages (>=1)
      *
-     * @param id id
+     * @param runSize the size of the run, which must be a multiple of pageSize
+     * @return handle of the run or {@code -1} if there is not enough space left
      */
-    private void updateParentsAlloc(int id) {
-        while (id > 1) {
-            int parentId = id >>> 1;
-            byte val1 = value(id);
-            byte val2 = value(id ^ 1);
-            byte val = val1 < val2 ? val1 : val2;
-            setValue(parentId, val);
-            id = parentId;
+    private long allocateRun(int runSize) {
+        int pages = runSize >> pageShifts;
+        int queueIdx = runFirstBestFit(pageIdxFloor(pages));
+        if (queueIdx < 0) {
+            return -1;
         }
-    }
-
-    /**
-     * Update method used by free
-     * This needs to handle the special case when both children are completely free
-     * in which case parent be directly allocated on request of size = child-size * 2
-     *
-     * @param id id
-     */
-    private void updateParentsFree(int id) {
-        int logChild = depth(id) + 1;
-        while (id > 1) {
-            int parentId = id >>> 1;
-            byte val1 = value(id);
-            byte val2 = value(id ^ 1);
-            logChild -= 1; // in first iteration equals log, subsequently reduce 1 from logChild as we traverse up
-
-            if (val1 == logChild && val2 == logChild) {
-                setValue(parentId, (byte) (logChild - 1));
-            } else {
-                byte val = val1 < val2 ? val1 : val2;
-                setValue(parentId, val);
-            }
 
-            id = parentId;
+        // Get the run with the smallest offset.
+        LongPriorityQueue queue = runsAvail[queueIdx];
+        long handle = queue.poll();
+        assert handle != LongPriorityQueue.NO_VALUE && !isUsed(handle) : "invalid handle: " + handle;
+        if (queue.isEmpty()) {
+            runsAvailMask &= ~(1L << queueIdx);
         }
+
+        removeAvailRunFromMap(handle, runPages(handle));
+        handle = splitLargeRun(handle, pages);
+
+        freeBytes -= runSize(handle);
+        return handle;
     }
 
-    /**
-     * Algorithm to allocate an index in memoryMap when we query for a free node
-     * at depth d
-     *
-     * @param d depth
-     * @return index in memoryMap
-     */
-    private int allocateNode(int d) {
-        int id = 1;
-        int initial = - (1 << d); // has last d bits = 0 and rest all = 1
-        byte val = value(id);
-        if (val > d) { // unusable
-            return -1;
-        }
-        while (val < d || (id & initial) == 0) { // id & initial == 1 << d for all ids at depth d, for < d it is 0
-            id <<= 1;
-            val = value(id);
-            if (val > d) {
-                id ^= 1;
-                val = value(id);
-            }
-        }
-        byte value = value(id);
-        assert value == d && (id & initial) == 1 << d : String.format("val = %d, id & initial = %d, d = %d",
-                value, id & initial, d);
-        setValue(id, unusable); // mark as unusable
-        updateParentsAlloc(id);
-        return id;
+    private int runFirstBestFit(int pageIdx) {
+        long mask = runsAvailMask & -1L << pageIdx;
+        return mask == 0 ? -1 : Long.numberOfTrailingZeros(mask);
     }
 
-    /**
-     * Allocate a run of pages (>=1)
-     *
-     * @param normCapacity normalized capacity
-     * @return index in memoryMap
-     */
-    private long allocateRun(int normCapacity) {
-        int d = maxOrder - (log2(normCapacity) - pageShifts);
-        int id = allocateNode(d);
-        if (id < 0) {
-            return id;
+    private long splitLargeRun(long handle, int needPages) {
+        assert needPages > 0;
+
+        int totalPages = runPages(handle);
+        assert needPages <= totalPages;
+
+        int remPages = totalPages - needPages;
+        int runOffset = runOffset(handle);
+        if (remPages > 0) {
+            // Keep the trailing pages available.
+            int availOffset = runOffset + needPages;
+            insertAvailRun(availOffset, remPages, toRunHandle(availOffset, remPages, 0));
         }
-        freeBytes -= runLength(id);
-        return id;
+        return toRunHandle(runOffset, needPages, 1);
     }
 
     /**
-     * Create/ initialize a new PoolSubpage of normCapacity
-     * Any PoolSubpage created/ initialized here is added to subpage pool in the PoolArena that owns this PoolChunk
+     * Create / initialize a new PoolSubpage of normCapacity
+     * Any PoolSubpage created / initialized here is added to subpage pool in the PoolArena that owns this PoolChunk
      *
      * @param normCapacity normalized capacity
-     * @return index in memoryMap
+     * @return handle of the subpage allocation or {@code -1} if there is not enough space left
      */
     private long allocateSubpage(int normCapacity) {
         // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
         // This is need as we may add it back and so alter the linked-list structure.
         PoolSubpage<T> head = arena.findSubpagePoolHead(normCapacity);
         synchronized (head) {
-            int d = maxOrder; // subpages are only be allocated from pages i.e., leaves
-            int id = allocateNode(d);
-            if (id < 0) {
-                return id;
+            int runSize = arena.subpageRunSize(normCapacity);
+            long runHandle = allocateRun(runSize);
+            if (runHandle < 0) {
+                return -1;
             }
 
-            final PoolSubpage<T>[] subpages = this.subpages;
-            final int pageSize = this.pageSize;
-
-            freeBytes -= pageSize;
-
-            int subpageIdx = subpageIdx(id);
-            PoolSubpage<T> subpage = subpages[subpageIdx];
-            if (subpage == null) {
-                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), pageSize, normCapacity);
-                subpages[subpageIdx] = subpage;
-            } else {
-                subpage.init(head, normCapacity);
-            }
+            int runOffset = runOffset(runHandle);
+            PoolSubpage<T> subpage = new PoolSubpage<T>(head, this, pageShifts, runOffset, runSize, normCapacity);
+            subpages[runOffset] = subpage;
             return subpage.allocate();
         }
     }
@@ -354,104 +319,170 @@ final class PoolChunk<T> implements PoolChunkMetric {
      * Free a subpage or a run of pages
      * When a subpage is freed from PoolSubpage, it might be added back to subpage pool of the owning PoolArena
      * If the subpage pool in PoolArena has at least one other PoolSubpage of given elemSize, we can
-     * completely free the owning Page so it is available for subsequent allocations
+     * completely free the owning run so it is available for subsequent allocations
      *
      * @param handle handle to free
      */
     void free(long handle) {
-        int memoryMapIdx = memoryMapIdx(handle);
-        int bitmapIdx = bitmapIdx(handle);
-
-        if (bitmapIdx != 0) { // free a subpage
-            PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
+        if (isSubpage(handle)) {
+            int runOffset = runOffset(handle);
+            PoolSubpage<T> subpage = subpages[runOffset];
             assert subpage != null && subpage.doNotDestroy;
 
             // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
             // This is need as we may add it back and so alter the linked-list structure.
             PoolSubpage<T> head = arena.findSubpagePoolHead(subpage.elemSize);
             synchronized (head) {
-                if (subpage.free(head, bitmapIdx & 0x3FFFFFFF)) {
+                if (subpage.free(head, bitmapIdx(handle))) {
+                    // the subpage is still used, do not free it
                     return;
                 }
+                assert !subpage.doNotDestroy;
+                // The subpage is not used anymore, so free the run which backs it.
+                subpages[runOffset] = null;
+            }
+        }
+
+        int pages = runPages(handle);
+        freeBytes += pages << pageShifts;
+        if (freeBytes == chunkSize) {
+            idleSinceNanos = System.nanoTime();
+        }
+
+        // Coalesce with the free runs before and after this one.
+        long finalRun = collapseRuns(handle);
+
+        // Set the run as not used.
+        finalRun &= ~(1L << IS_USED_SHIFT);
+        // If it is a subpage, set it to run.
+        finalRun &= ~(1L << IS_SUBPAGE_SHIFT);
+
+        insertAvailRun(runOffset(finalRun), runPages(finalRun), finalRun);
+    }
+
+    private long collapseRuns(long handle) {
+        return collapseNext(collapsePast(handle));
+    }
+
+    private long collapsePast(long handle) {
+        for (;;) {
+            int runOffset = runOffset(handle);
+            int runPages = runPages(handle);
+
+            long pastRun = runOffset > 0 ? runsAvailMap[runOffset - 1] : 0;
+            if (pastRun == 0) {
+                return handle;
+            }
+
+            int pastOffset = runOffset(pastRun);
+            int pastPages = runPages(pastRun);
+
+            // Is it continuous?
+            if (pastRun != handle && pastOffset + pastPages == runOffset) {
+                // Remove the past run.
+                removeAvailRun(pastRun);
+                handle = toRunHandle(pastOffset, pastPages + runPages, 0);
+            } else {
+                return handle;
+            }
+        }
+    }
+
+    private long collapseNext(long handle) {
+        for (;;) {
+            int runOffset = runOffset(handle);
+            int runPages = runPages(handle);
+
+            int nextOffset = runOffset + runPages;
+            long nextRun = nextOffset < runsAvailMap.length ? runsAvailMap[nextOffset] : 0;
+            if (nextRun == 0) {
+                return handle;
+            }
+
+            int nextPages = runPages(nextRun);
+
+            // Is it continuous?
+            if (nextRun != handle && runOffset(nextRun) == nextOffset) {
+                // Remove the next run.
+                removeAvailRun(nextRun);
+                handle = toRunHandle(runOffset, runPages + nextPages, 0);
+            } else {
+                return handle;
             }
         }
-        freeBytes += runLength(memoryMapIdx);
-        setValue(memoryMapIdx, depth(memoryMapIdx));
-        updateParentsFree(memoryMapIdx);
+    }
+
+    /**
+     * Forgets the given {@link PoolSubpage}, which must have been destroyed before, and returns the handle of the run
+     * which backs it so the run can be freed.
+     */
+    long removeSubpage(PoolSubpage<T> subpage) {
+        assert !subpage.doNotDestroy && subpages[subpage.runOffset] == subpage;
+        subpages[subpage.runOffset] = null;
+        return toRunHandle(subpage.runOffset, subpage.runSize >> pageShifts, 1);
+    }
+
+    private static long toRunHandle(int runOffset, int runPages, int inUsed) {
+        return (long) runOffset << RUN_OFFSET_SHIFT
+               | (long) runPages << SIZE_SHIFT
+               | (long) inUsed << IS_USED_SHIFT;
     }
 
     void initBuf(PooledByteBuf<T> buf, long handle, int reqCapacity) {
-        int memoryMapIdx = memoryMapIdx(handle);
-        int bitmapIdx = bitmapIdx(handle);
-        if (bitmapIdx == 0) {
-            byte val = value(memoryMapIdx);
-            assert val == unusable : String.valueOf(val);
-            buf.init(this, handle, runOffset(memoryMapIdx) + offset, reqCapacity, runLength(memoryMapIdx),
-                     arena.parent.threadCache());
+        if (!isSubpage(handle)) {
+            assert isUsed(handle);
+            buf.init(this, handle, (runOffset(handle) << pageShifts) + offset, reqCapacity, runSize(handle),
+                     arena.threadCache());
         } else {
-            initBufWithSubpage(buf, handle, bitmapIdx, reqCapacity);
+            initBufWithSubpage(buf, handle, reqCapacity);
         }
     }
 
     void initBufWithSubpage(PooledByteBuf<T> buf, long handle, int reqCapacity) {
-        initBufWithSubpage(buf, handle, bitmapIdx(handle), reqCapacity);
-    }
-
-    private void initBufWithSubpage(PooledByteBuf<T> buf, long handle, int bitmapIdx, int reqCapacity) {
-        assert bitmapIdx != 0;
+        assert isSubpage(handle);
 
-        int memoryMapIdx = memoryMapIdx(handle);
+        int runOffset = runOffset(handle);
+        int bitmapIdx = bitmapIdx(handle);
 
-        PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
+        PoolSubpage<T> subpage = subpages[runOffset];
         assert subpage.doNotDestroy;
         assert reqCapacity <= subpage.elemSize;
 
         buf.init(
             this, handle,
-            runOffset(memoryMapIdx) + (bitmapIdx & 0x3FFFFFFF) * subpage.elemSize + offset,
-                reqCapacity, subpage.elemSize, arena.parent.threadCache());
-    }
-
-    private byte value(int id) {
-        return memoryMap[id];
+            (runOffset << pageShifts) + bitmapIdx * subpage.elemSize + offset,
+                reqCapacity, subpage.elemSize, arena.threadCache());
     }
 
-    private void setValue(int id, byte val) {
-        memoryMap[id] = val;
+    private static int log2(int val) {
+        // compute the (0-based, with lsb = 0) position of highest set bit i.e, log2
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
     }
 
-    private byte depth(int id) {
-        return depthMap[id];
+    private int runSize(long handle) {
+        return runPages(handle) << pageShifts;
     }
 
-    private static int log2(int val) {
-        // compute the (0-based, with lsb = 0) position of highest set bit i.e, log2
-        return INTEGER_SIZE_MINUS_ONE - Integer.numberOfLeadingZeros(val);
+    static int runOffset(long handle) {
+        return (int) (handle >> RUN_OFFSET_SHIFT);
     }
 
-    private int runLength(int id) {
-        // represents the size in #bytes supported by node 'id' in the tree
-        return 1 << log2ChunkSize - depth(id);
+    static int runPages(long handle) {
+        return (int) (handle >> SIZE_SHIFT & (1 << SIZE_BIT_LENGTH) - 1);
     }
 
-    private int runOffset(int id) {
-        // represents the 0-based offset in #bytes from start of the byte-array chunk
-        int shift = id ^ 1 << depth(id);
-        return shift * runLength(id);
+    static boolean isUsed(long handle) {
+        return (handle >> IS_USED_SHIFT & 1) == 1L;
     }
 
-    private int subpageIdx(int memoryMapIdx) {
-        return memoryMapIdx ^ maxSubpageAllocs; // remove highest set bit, to get offset
+    static boolean isSubpage(long handle) {
+        return (handle >> IS_SUBPAGE_SHIFT & 1) == 1L;
     }
 
-    private static int memoryMapIdx(long handle) {
+    static int bitmapIdx(long handle) {
         return (int) handle;
     }
 
-    private static int bitmapIdx(long handle) {
-        return (int) (handle >>> Integer.SIZE);
-    }
-
     @Override
     public int chunkSize() {
         return chunkSize;
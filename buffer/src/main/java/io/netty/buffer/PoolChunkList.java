@@ -161,6 +161,26 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         }
     }
 
+    /**
+     * Removes all {@link PoolChunk}s which are completely unused since at least {@code idleTimeoutNanos} and returns
+     * them, or {@code null} if there are none.
+     */
+    List<PoolChunk<T>> removeIdleChunks(long nowNanos, long idleTimeoutNanos) {
+        List<PoolChunk<T>> idle = null;
+        for (PoolChunk<T> cur = head; cur != null;) {
+            PoolChunk<T> next = cur.next;
+            if (cur.freeBytes() == cur.chunkSize() && nowNanos - cur.idleSinceNanos >= idleTimeoutNanos) {
+                remove(cur);
+                if (idle == null) {
+                    idle = new ArrayList<PoolChunk<T>>();
+                }
+                idle.add(cur);
+            }
+            cur = next;
+        }
+        return idle;
+    }
+
     private void remove(PoolChunk<T> cur) {
         if (cur == head) {
             head = cur.next;
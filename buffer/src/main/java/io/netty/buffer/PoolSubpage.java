@@ -25,9 +25,9 @@ package io.netty.buffer;
 final class PoolSubpage<T> implements PoolSubpageMetric {
 
     final PoolChunk<T> chunk;
-    private final int memoryMapIdx;
-    private final int runOffset;
-    private final int pageSize;
+    private final int pageShifts;
+    final int runOffset;
+    final int runSize;
     private final long[] bitmap;
 
     PoolSubpage<T> prev;
@@ -44,29 +44,29 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
     /** Special constructor that creates a linked list head */
-    PoolSubpage(int pageSize) {
+    PoolSubpage(int pageShifts) {
         chunk = null;
-        memoryMapIdx = -1;
+        this.pageShifts = pageShifts;
         runOffset = -1;
         elemSize = -1;
-        this.pageSize = pageSize;
+        runSize = -1;
         bitmap = null;
     }
 
-    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int memoryMapIdx, int runOffset, int pageSize, int elemSize) {
+    PoolSubpage(PoolSubpage<T> head, PoolChunk<T> chunk, int pageShifts, int runOffset, int runSize, int elemSize) {
         this.chunk = chunk;
-        this.memoryMapIdx = memoryMapIdx;
+        this.pageShifts = pageShifts;
         this.runOffset = runOffset;
-        this.pageSize = pageSize;
-        bitmap = new long[pageSize >>> 10]; // pageSize / 16 / 64
+        this.runSize = runSize;
+        bitmap = new long[runSize >>> 10]; // runSize / 16 / 64
         init(head, elemSize);
     }
 
-    void init(PoolSubpage<T> head, int elemSize) {
+    private void init(PoolSubpage<T> head, int elemSize) {
         doNotDestroy = true;
         this.elemSize = elemSize;
         if (elemSize != 0) {
-            maxNumElems = numAvail = pageSize / elemSize;
+            maxNumElems = numAvail = runSize / elemSize;
             nextAvail = 0;
             bitmapLength = maxNumElems >>> 6;
             if ((maxNumElems & 63) != 0) {
@@ -141,6 +141,21 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         }
     }
 
+    /**
+     * Removes this subpage from the pool if none of its elements is used, even if it is the last subpage left in the
+     * pool.
+     *
+     * @return {@code true} if this subpage was removed and so its run can be freed.
+     */
+    boolean destroyIfUnused() {
+        if (!doNotDestroy || elemSize == 0 || numAvail != maxNumElems) {
+            return false;
+        }
+        doNotDestroy = false;
+        removeFromPool();
+        return true;
+    }
+
     private void addToPool(PoolSubpage<T> head) {
         assert prev == null && next == null;
         prev = head;
@@ -201,7 +216,12 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
     }
 
     private long toHandle(int bitmapIdx) {
-        return 0x4000000000000000L | (long) bitmapIdx << 32 | memoryMapIdx;
+        long pages = runSize >> pageShifts;
+        return (long) runOffset << PoolChunk.RUN_OFFSET_SHIFT
+               | pages << PoolChunk.SIZE_SHIFT
+               | 1L << PoolChunk.IS_USED_SHIFT
+               | 1L << PoolChunk.IS_SUBPAGE_SHIFT
+               | bitmapIdx;
     }
 
     @Override
@@ -224,11 +244,11 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         }
 
         if (!doNotDestroy) {
-            return "(" + memoryMapIdx + ": not in use)";
+            return "(" + runOffset + ": not in use)";
         }
 
-        return "(" + memoryMapIdx + ": " + (maxNumElems - numAvail) + '/' + maxNumElems +
-                ", offset: " + runOffset + ", length: " + pageSize + ", elemSize: " + elemSize + ')';
+        return "(" + runOffset + ": " + (maxNumElems - numAvail) + '/' + maxNumElems +
+                ", offset: " + (runOffset << pageShifts) + ", length: " + runSize + ", elemSize: " + elemSize + ')';
     }
 
     @Override
@@ -254,7 +274,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
 
     @Override
     public int pageSize() {
-        return pageSize;
+        return 1 << pageShifts;
     }
 
     void destroy() {
@@ -20,6 +20,7 @@ package io.netty.buffer;
 import io.netty.buffer.PoolArena.SizeClass;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.concurrent.ScheduledFuture;
 import io.netty.util.internal.MathUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.logging.InternalLogger;
@@ -51,14 +52,15 @@ final class PoolThreadCache {
     private final MemoryRegionCache<byte[]>[] normalHeapCaches;
     private final MemoryRegionCache<ByteBuffer>[] normalDirectCaches;
 
-    // Used for bitshifting when calculate the index of normal caches later
-    private final int numShiftsNormalDirect;
-    private final int numShiftsNormalHeap;
     private final int freeSweepAllocationThreshold;
     private final AtomicBoolean freed = new AtomicBoolean();
 
     private int allocations;
 
+    // The task which trims this cache periodically, which must be cancelled once the cache is removed from its thread
+    // as it would keep the allocator reachable otherwise.
+    ScheduledFuture<?> trimFuture;
+
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
@@ -78,7 +80,6 @@ final class PoolThreadCache {
             smallSubPageDirectCaches = createSubPageCaches(
                     smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small);
 
-            numShiftsNormalDirect = log2(directArena.pageSize);
             normalDirectCaches = createNormalCaches(
                     normalCacheSize, maxCachedBufferCapacity, directArena);
 
@@ -88,7 +89,6 @@ final class PoolThreadCache {
             tinySubPageDirectCaches = null;
             smallSubPageDirectCaches = null;
             normalDirectCaches = null;
-            numShiftsNormalDirect = -1;
         }
         if (heapArena != null) {
             // Create the caches for the heap allocations
@@ -97,7 +97,6 @@ final class PoolThreadCache {
             smallSubPageHeapCaches = createSubPageCaches(
                     smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small);
 
-            numShiftsNormalHeap = log2(heapArena.pageSize);
             normalHeapCaches = createNormalCaches(
                     normalCacheSize, maxCachedBufferCapacity, heapArena);
 
@@ -107,7 +106,6 @@ final class PoolThreadCache {
             tinySubPageHeapCaches = null;
             smallSubPageHeapCaches = null;
             normalHeapCaches = null;
-            numShiftsNormalHeap = -1;
         }
 
         // Only check if there are caches in use.
@@ -138,7 +136,12 @@ final class PoolThreadCache {
             int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area) {
         if (cacheSize > 0 && maxCachedBufferCapacity > 0) {
             int max = Math.min(area.chunkSize, maxCachedBufferCapacity);
-            int arraySize = Math.max(1, log2(max / area.pageSize) + 1);
+            // One cache per normal size class up to max, but always at least one.
+            int arraySize = 1;
+            for (int size = PoolArena.normalizeSizeClass(area.smallMaxSize + 1); size <= max;
+                 size = PoolArena.normalizeSizeClass(size + 1)) {
+                arraySize++;
+            }
 
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[arraySize];
@@ -151,15 +154,6 @@ final class PoolThreadCache {
         }
     }
 
-    private static int log2(int val) {
-        int res = 0;
-        while (val > 1) {
-            val >>= 1;
-            res++;
-        }
-        return res;
-    }
-
     /**
      * Try to allocate a tiny buffer out of the cache. Returns {@code true} if successful {@code false} otherwise
      */
@@ -279,29 +273,41 @@ final class PoolThreadCache {
         return cache.free();
     }
 
+    /**
+     * Free up cached buffers which were not allocated frequently enough since the last trim.
+     */
     void trim() {
-        trim(tinySubPageDirectCaches);
-        trim(smallSubPageDirectCaches);
-        trim(normalDirectCaches);
-        trim(tinySubPageHeapCaches);
-        trim(smallSubPageHeapCaches);
-        trim(normalHeapCaches);
+        int numTrimmedDirect = trim(tinySubPageDirectCaches) +
+                trim(smallSubPageDirectCaches) +
+                trim(normalDirectCaches);
+        int numTrimmedHeap = trim(tinySubPageHeapCaches) +
+                trim(smallSubPageHeapCaches) +
+                trim(normalHeapCaches);
+
+        if (numTrimmedDirect > 0) {
+            directArena.incrementTrimmedCacheEntries(numTrimmedDirect);
+        }
+        if (numTrimmedHeap > 0) {
+            heapArena.incrementTrimmedCacheEntries(numTrimmedHeap);
+        }
     }
 
-    private static void trim(MemoryRegionCache<?>[] caches) {
+    private static int trim(MemoryRegionCache<?>[] caches) {
         if (caches == null) {
-            return;
+            return 0;
         }
+        int numTrimmed = 0;
         for (MemoryRegionCache<?> c: caches) {
-            trim(c);
+            numTrimmed += trim(c);
         }
+        return numTrimmed;
     }
 
-    private static void trim(MemoryRegionCache<?> cache) {
+    private static int trim(MemoryRegionCache<?> cache) {
         if (cache == null) {
-            return;
+            return 0;
         }
-        cache.trim();
+        return cache.trim();
     }
 
     private MemoryRegionCache<?> cacheForTiny(PoolArena<?> area, int normCapacity) {
@@ -321,11 +327,10 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForNormal(PoolArena<?> area, int normCapacity) {
+        int idx = PoolArena.sizeClassIdx(normCapacity) - area.numSmallSubpagePools;
         if (area.isDirect()) {
-            int idx = log2(normCapacity >> numShiftsNormalDirect);
             return cache(normalDirectCaches, idx);
         }
-        int idx = log2(normCapacity >> numShiftsNormalHeap);
         return cache(normalHeapCaches, idx);
     }
 
@@ -439,14 +444,15 @@ final class PoolThreadCache {
         /**
          * Free up cached {@link PoolChunk}s if not allocated frequently enough.
          */
-        public final void trim() {
+        public final int trim() {
             int free = size - allocations;
             allocations = 0;
 
             // We not even allocated all the number that are
             if (free > 0) {
-                free(free);
+                return free(free);
             }
+            return 0;
         }
 
         @SuppressWarnings({ "unchecked", "rawtypes" })
@@ -17,18 +17,27 @@
 package io.netty.buffer;
 
 import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class PooledByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
 
@@ -43,8 +52,13 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private static final int DEFAULT_NORMAL_CACHE_SIZE;
     private static final int DEFAULT_MAX_CACHED_BUFFER_CAPACITY;
     private static final int DEFAULT_CACHE_TRIM_INTERVAL;
+    private static final long DEFAULT_CACHE_TRIM_INTERVAL_MILLIS;
+    private static final long DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS;
     private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     private static final int DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT;
+    private static final boolean DEFAULT_USE_HUGE_PAGES;
+    private static final int DEFAULT_HUGE_PAGE_SIZE;
+    private static final String DEFAULT_HUGE_PAGE_DIRECTORY;
 
     private static final int MIN_PAGE_SIZE = 4096;
     private static final int MAX_CHUNK_SIZE = (int) (((long) Integer.MAX_VALUE + 1) / 2);
@@ -110,12 +124,33 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         DEFAULT_CACHE_TRIM_INTERVAL = SystemPropertyUtil.getInt(
                 "io.netty.allocator.cacheTrimInterval", 8192);
 
+        // the interval in which event loop threads trim their cache and release idle chunks, 0 disables it
+        DEFAULT_CACHE_TRIM_INTERVAL_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.cacheTrimIntervalMillis", 0));
+
+        // the time a chunk must be completely unused before it is released by the periodic trimming
+        DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.chunkIdleTimeoutMillis", 60000));
+
         DEFAULT_USE_CACHE_FOR_ALL_THREADS = SystemPropertyUtil.getBoolean(
                 "io.netty.allocator.useCacheForAllThreads", true);
 
         DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT = SystemPropertyUtil.getInt(
                 "io.netty.allocator.directMemoryCacheAlignment", 0);
 
+        // Back the chunks of direct arenas by huge pages, either by mapping files of a hugetlbfs mount or by aligning
+        // the chunks so transparent huge pages can be used.
+        DEFAULT_HUGE_PAGE_DIRECTORY = SystemPropertyUtil.get("io.netty.allocator.hugePageDirectory");
+        DEFAULT_USE_HUGE_PAGES = DEFAULT_HUGE_PAGE_DIRECTORY != null ||
+                SystemPropertyUtil.getBoolean("io.netty.allocator.hugePages", false);
+        int defaultHugePageSize = SystemPropertyUtil.getInt("io.netty.allocator.hugePageSize", 2 * 1024 * 1024);
+        if (defaultHugePageSize < MIN_PAGE_SIZE || (defaultHugePageSize & defaultHugePageSize - 1) != 0) {
+            logger.debug("-Dio.netty.allocator.hugePageSize: {} (expected: power of 2 and >= {}), using 2 MiB",
+                    defaultHugePageSize, MIN_PAGE_SIZE);
+            defaultHugePageSize = 2 * 1024 * 1024;
+        }
+        DEFAULT_HUGE_PAGE_SIZE = defaultHugePageSize;
+
         if (logger.isDebugEnabled()) {
             logger.debug("-Dio.netty.allocator.numHeapArenas: {}", DEFAULT_NUM_HEAP_ARENA);
             logger.debug("-Dio.netty.allocator.numDirectArenas: {}", DEFAULT_NUM_DIRECT_ARENA);
@@ -135,7 +170,12 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             logger.debug("-Dio.netty.allocator.normalCacheSize: {}", DEFAULT_NORMAL_CACHE_SIZE);
             logger.debug("-Dio.netty.allocator.maxCachedBufferCapacity: {}", DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
             logger.debug("-Dio.netty.allocator.cacheTrimInterval: {}", DEFAULT_CACHE_TRIM_INTERVAL);
+            logger.debug("-Dio.netty.allocator.cacheTrimIntervalMillis: {}", DEFAULT_CACHE_TRIM_INTERVAL_MILLIS);
+            logger.debug("-Dio.netty.allocator.chunkIdleTimeoutMillis: {}", DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS);
             logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
+            logger.debug("-Dio.netty.allocator.hugePages: {}", DEFAULT_USE_HUGE_PAGES);
+            logger.debug("-Dio.netty.allocator.hugePageSize: {}", DEFAULT_HUGE_PAGE_SIZE);
+            logger.debug("-Dio.netty.allocator.hugePageDirectory: {}", DEFAULT_HUGE_PAGE_DIRECTORY);
         }
     }
 
@@ -150,8 +190,35 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private final List<PoolArenaMetric> heapArenaMetrics;
     private final List<PoolArenaMetric> directArenaMetrics;
     private final PoolThreadLocalCache threadCache;
+    private final int pageSize;
+    private final int maxOrder;
+    private final int pageShifts;
     private final int chunkSize;
+    private final int directMemoryCacheAlignment;
+    private final int hugePageSize;
+    private final File hugePageDirectory;
     private final PooledByteBufAllocatorMetric metric;
+    private final ConcurrentMap<EventExecutor, ExecutorBoundByteBufAllocator> boundAllocators =
+            PlatformDependent.newConcurrentHashMap();
+
+    private final Runnable trimTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!threadCache.isSet()) {
+                // The cache was removed in the meantime, there is nothing to trim.
+                return;
+            }
+            PoolThreadCache cache = threadCache.get();
+            cache.trim();
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS);
+            if (cache.heapArena != null) {
+                cache.heapArena.releaseIdleChunks(idleTimeoutNanos);
+            }
+            if (cache.directArena != null) {
+                cache.directArena.releaseIdleChunks(idleTimeoutNanos);
+            }
+        }
+    };
 
     public PooledByteBufAllocator() {
         this(false);
@@ -205,6 +272,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         this.tinyCacheSize = tinyCacheSize;
         this.smallCacheSize = smallCacheSize;
         this.normalCacheSize = normalCacheSize;
+        this.pageSize = pageSize;
+        this.maxOrder = maxOrder;
         chunkSize = validateAndCalculateChunkSize(pageSize, maxOrder);
 
         if (nHeapArena < 0) {
@@ -227,13 +296,29 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     + directMemoryCacheAlignment + " (expected: power of two)");
         }
 
-        int pageShifts = validateAndCalculatePageShifts(pageSize);
+        pageShifts = validateAndCalculatePageShifts(pageSize);
+        this.directMemoryCacheAlignment = directMemoryCacheAlignment;
+
+        if (!DEFAULT_USE_HUGE_PAGES) {
+            hugePageSize = 0;
+        } else if (chunkSize % DEFAULT_HUGE_PAGE_SIZE != 0) {
+            logger.debug("chunkSize: {} is not a multiple of the huge page size {}, not using huge pages",
+                    chunkSize, DEFAULT_HUGE_PAGE_SIZE);
+            hugePageSize = 0;
+        } else if (DEFAULT_HUGE_PAGE_DIRECTORY == null && !PlatformDependent.hasUnsafe()) {
+            logger.debug("Chunks can not be aligned to huge pages without sun.misc.Unsafe, not using huge pages");
+            hugePageSize = 0;
+        } else {
+            hugePageSize = DEFAULT_HUGE_PAGE_SIZE;
+        }
+        hugePageDirectory = hugePageSize != 0 && DEFAULT_HUGE_PAGE_DIRECTORY != null ?
+                new File(DEFAULT_HUGE_PAGE_DIRECTORY) : null;
 
         if (nHeapArena > 0) {
             heapArenas = newArenaArray(nHeapArena);
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(heapArenas.length);
             for (int i = 0; i < heapArenas.length; i ++) {
-                PoolArena.HeapArena arena = new PoolArena.HeapArena(this,
+                PoolArena.HeapArena arena = new PoolArena.HeapArena(this, null,
                         pageSize, maxOrder, pageShifts, chunkSize,
                         directMemoryCacheAlignment);
                 heapArenas[i] = arena;
@@ -249,8 +334,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             directArenas = newArenaArray(nDirectArena);
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(directArenas.length);
             for (int i = 0; i < directArenas.length; i ++) {
-                PoolArena.DirectArena arena = new PoolArena.DirectArena(
-                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment);
+                PoolArena.DirectArena arena = new PoolArena.DirectArena(this, null, pageSize, maxOrder, pageShifts,
+                        chunkSize, directMemoryCacheAlignment, hugePageSize, hugePageDirectory);
                 directArenas[i] = arena;
                 metrics.add(arena);
             }
@@ -359,6 +444,22 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return DEFAULT_MAX_ORDER;
     }
 
+    /**
+     * Default interval in which event loop threads trim their cache and release idle chunks - System Property:
+     * io.netty.allocator.cacheTrimIntervalMillis - default 0 (disabled)
+     */
+    public static long defaultCacheTrimIntervalMillis() {
+        return DEFAULT_CACHE_TRIM_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Default time a chunk must be unused before it is released by the periodic trimming - System Property:
+     * io.netty.allocator.chunkIdleTimeoutMillis - default 60000
+     */
+    public static long defaultChunkIdleTimeoutMillis() {
+        return DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS;
+    }
+
     /**
      * Default thread caching behavior - System Property: io.netty.allocator.useCacheForAllThreads - default true
      */
@@ -423,6 +524,103 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         threadCache.remove();
     }
 
+    /**
+     * Trim thread local cache for the current {@link Thread}, which will give back any cached memory that was not
+     * allocated frequently since the last trim operation.
+     *
+     * Returns {@code true} if a cache for the current {@link Thread} exists and so was trimmed, false otherwise.
+     */
+    public boolean trimCurrentThreadCache() {
+        if (!threadCache.isSet()) {
+            return false;
+        }
+        threadCache.get().trim();
+        return true;
+    }
+
+    /**
+     * Release all chunks which were completely unused for at least the given time, so their memory is given back to
+     * the system. Returns the number of released bytes.
+     */
+    public long releaseIdleChunks(long idleTimeout, TimeUnit unit) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("idleTimeout: " + idleTimeout + " (expected: >= 0)");
+        }
+        long idleTimeoutNanos = unit.toNanos(idleTimeout);
+        return releaseIdleChunks(heapArenas, idleTimeoutNanos) + releaseIdleChunks(directArenas, idleTimeoutNanos);
+    }
+
+    private static long releaseIdleChunks(PoolArena<?>[] arenas, long idleTimeoutNanos) {
+        if (arenas == null) {
+            return 0;
+        }
+        long released = 0;
+        for (PoolArena<?> arena : arenas) {
+            released += arena.releaseIdleChunks(idleTimeoutNanos);
+        }
+        return released;
+    }
+
+    /**
+     * Returns a {@link ByteBufAllocator} which allocates out of its own arenas that are owned exclusively by the given
+     * {@link EventExecutor}. Allocations from the {@link EventExecutor} neither need to look up a thread local cache
+     * nor ever contend with other threads, and buffers which are released by other threads are handed back to the
+     * {@link EventExecutor} instead of touching the arenas. Allocations from other threads are served by the
+     * shared arenas of this allocator.
+     * <p>
+     * This is meant to be set via {@code ChannelConfig.setAllocator(...)} for each {@code Channel}, using the
+     * {@code EventLoop} of the {@code Channel}. The same instance is returned for the same {@link EventExecutor}
+     * until it terminated, which also frees the cached memory of the returned allocator.
+     */
+    public ByteBufAllocator boundAllocator(final EventExecutor executor) {
+        ExecutorBoundByteBufAllocator allocator = boundAllocators.get(executor);
+        if (allocator != null) {
+            return allocator;
+        }
+        if (executor.isShuttingDown()) {
+            // Nothing would ever free the arenas, so just use the shared ones.
+            return this;
+        }
+        PoolArena<byte[]> heapArena = heapArenas == null ? null : new PoolArena.HeapArena(
+                this, executor, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment);
+        PoolArena<ByteBuffer> directArena = directArenas == null ? null : new PoolArena.DirectArena(this, executor,
+                pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, hugePageSize, hugePageDirectory);
+        allocator = new ExecutorBoundByteBufAllocator(this, executor, new PoolThreadCache(
+                heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
+                DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL));
+        ExecutorBoundByteBufAllocator old = boundAllocators.putIfAbsent(executor, allocator);
+        if (old != null) {
+            allocator.free();
+            return old;
+        }
+        final ExecutorBoundByteBufAllocator newAllocator = allocator;
+        ScheduledFuture<?> trimFuture = null;
+        if (DEFAULT_CACHE_TRIM_INTERVAL_MILLIS > 0) {
+            try {
+                trimFuture = executor.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        newAllocator.trim(TimeUnit.MILLISECONDS.toNanos(DEFAULT_CHUNK_IDLE_TIMEOUT_MILLIS));
+                    }
+                }, DEFAULT_CACHE_TRIM_INTERVAL_MILLIS, DEFAULT_CACHE_TRIM_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ignore) {
+                // The executor started to shut down after the check above, so the allocator will be freed soon anyway.
+            }
+        }
+        final ScheduledFuture<?> newTrimFuture = trimFuture;
+        executor.terminationFuture().addListener(new FutureListener<Object>() {
+            @Override
+            public void operationComplete(Future<Object> future) {
+                if (newTrimFuture != null) {
+                    newTrimFuture.cancel(false);
+                }
+                boundAllocators.remove(executor, newAllocator);
+                newAllocator.free();
+            }
+        });
+        return allocator;
+    }
+
     final class PoolThreadLocalCache extends FastThreadLocal<PoolThreadCache> {
         private final boolean useCacheForAllThreads;
 
@@ -437,9 +635,25 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
             Thread current = Thread.currentThread();
             if (useCacheForAllThreads || current instanceof FastThreadLocalThread) {
-                return new PoolThreadCache(
+                final PoolThreadCache cache = new PoolThreadCache(
                         heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
                         DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+
+                if (DEFAULT_CACHE_TRIM_INTERVAL_MILLIS > 0) {
+                    // The cache can only be trimmed by the Thread which owns it, which is only possible if the Thread
+                    // belongs to an EventExecutor that can run the task periodically.
+                    final EventExecutor executor = ThreadExecutorMap.currentExecutor();
+                    if (executor != null) {
+                        try {
+                            cache.trimFuture = executor.scheduleAtFixedRate(trimTask,
+                                    DEFAULT_CACHE_TRIM_INTERVAL_MILLIS, DEFAULT_CACHE_TRIM_INTERVAL_MILLIS,
+                                    TimeUnit.MILLISECONDS);
+                        } catch (RejectedExecutionException ignore) {
+                            // The executor is shutting down, so the cache will be freed soon anyway.
+                        }
+                    }
+                }
+                return cache;
             }
             // No caching so just use 0 as sizes.
             return new PoolThreadCache(heapArena, directArena, 0, 0, 0, 0, 0);
@@ -447,6 +661,10 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
         @Override
         protected void onRemoval(PoolThreadCache threadCache) {
+            ScheduledFuture<?> trimFuture = threadCache.trimFuture;
+            if (trimFuture != null) {
+                trimFuture.cancel(false);
+            }
             threadCache.free();
         }
 
@@ -594,6 +812,51 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return used;
     }
 
+    final long numReleasedChunks() {
+        return numReleasedChunks(heapArenas) + numReleasedChunks(directArenas);
+    }
+
+    private static long numReleasedChunks(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return 0;
+        }
+        long released = 0;
+        for (PoolArena<?> arena : arenas) {
+            released += arena.numReleasedChunks();
+        }
+        return released;
+    }
+
+    final long numReleasedBytes() {
+        return numReleasedBytes(heapArenas) + numReleasedBytes(directArenas);
+    }
+
+    private static long numReleasedBytes(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return 0;
+        }
+        long released = 0;
+        for (PoolArena<?> arena : arenas) {
+            released += arena.numReleasedBytes();
+        }
+        return released;
+    }
+
+    final long numTrimmedCacheEntries() {
+        return numTrimmedCacheEntries(heapArenas) + numTrimmedCacheEntries(directArenas);
+    }
+
+    private static long numTrimmedCacheEntries(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return 0;
+        }
+        long trimmed = 0;
+        for (PoolArena<?> arena : arenas) {
+            trimmed += arena.numTrimmedCacheEntries();
+        }
+        return trimmed;
+    }
+
     final PoolThreadCache threadCache() {
         PoolThreadCache cache =  threadCache.get();
         assert cache != null;
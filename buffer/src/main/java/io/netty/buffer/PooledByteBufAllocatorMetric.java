@@ -94,6 +94,27 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.chunkSize();
     }
 
+    /**
+     * Return the number of chunks which were released because they were not used for a while.
+     */
+    public long numReleasedChunks() {
+        return allocator.numReleasedChunks();
+    }
+
+    /**
+     * Return the number of bytes which were given back by releasing chunks that were not used for a while.
+     */
+    public long releasedBytes() {
+        return allocator.numReleasedBytes();
+    }
+
+    /**
+     * Return the number of cached buffers which were freed by trimming the thread local caches.
+     */
+    public long numTrimmedCacheEntries() {
+        return allocator.numTrimmedCacheEntries();
+    }
+
     @Override
     public long usedHeapMemory() {
         return allocator.usedHeapMemory();
@@ -116,7 +137,10 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
                 .append("; smallCacheSize: ").append(smallCacheSize())
                 .append("; normalCacheSize: ").append(normalCacheSize())
                 .append("; numThreadLocalCaches: ").append(numThreadLocalCaches())
-                .append("; chunkSize: ").append(chunkSize()).append(')');
+                .append("; chunkSize: ").append(chunkSize())
+                .append("; numReleasedChunks: ").append(numReleasedChunks())
+                .append("; releasedBytes: ").append(releasedBytes())
+                .append("; numTrimmedCacheEntries: ").append(numTrimmedCacheEntries()).append(')');
         return sb.toString();
     }
 }
@@ -1017,6 +1017,75 @@ public abstract class AbstractCompositeByteBufTest extends AbstractByteBufTest {
         cbuf.release();
     }
 
+    @Test
+    public void testAddComponentsInMiddle() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, buffer().writeByte(1), buffer().writeByte(5));
+        cbuf.addComponents(1, buffer().writeByte(2), EMPTY_BUFFER, buffer().writeByte(3).writeByte(4));
+        cbuf.writerIndex(cbuf.capacity());
+
+        assertEquals(5, cbuf.numComponents());
+        assertEquals(0, cbuf.toByteIndex(0));
+        assertEquals(1, cbuf.toByteIndex(1));
+        assertEquals(2, cbuf.toByteIndex(2));
+        assertEquals(2, cbuf.toByteIndex(3));
+        assertEquals(4, cbuf.toByteIndex(4));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, cbuf.getByte(i));
+        }
+        cbuf.release();
+    }
+
+    @Test
+    public void testAddManyComponents() {
+        int numComponents = 500;
+        ByteBuf[] buffers = new ByteBuf[numComponents];
+        for (int i = 0; i < numComponents; i++) {
+            buffers[i] = buffer().writeByte(i);
+        }
+        CompositeByteBuf cbuf = compositeBuffer(numComponents);
+        cbuf.addComponents(true, buffers);
+
+        assertEquals(numComponents, cbuf.numComponents());
+        assertEquals(numComponents, cbuf.readableBytes());
+        // Access the components in order and out of order.
+        for (int i = 0; i < numComponents; i++) {
+            assertEquals((byte) i, cbuf.getByte(i));
+            assertEquals(i, cbuf.toComponentIndex(i));
+        }
+        for (int i = numComponents - 1; i >= 0; i -= 7) {
+            assertEquals((byte) i, cbuf.getByte(i));
+        }
+
+        cbuf.skipBytes(numComponents - 10);
+        cbuf.discardReadComponents();
+        assertEquals(10, cbuf.numComponents());
+        assertEquals(0, cbuf.readerIndex());
+        assertEquals(0, buffers[0].refCnt());
+        assertEquals(1, buffers[numComponents - 10].refCnt());
+        for (int i = 0; i < 10; i++) {
+            assertEquals((byte) (numComponents - 10 + i), cbuf.readByte());
+        }
+        cbuf.release();
+    }
+
+    @Test
+    public void testCapacityDecreaseAfterAccess() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, buffer().writeByte(1), buffer().writeByte(2).writeByte(3));
+        assertEquals(3, cbuf.getByte(2));
+
+        cbuf.capacity(2);
+        assertEquals(2, cbuf.getByte(1));
+        try {
+            cbuf.getByte(2);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+            // expected
+        }
+        cbuf.release();
+    }
+
     @Test
     public void testIterator() {
         CompositeByteBuf cbuf = compositeBuffer();
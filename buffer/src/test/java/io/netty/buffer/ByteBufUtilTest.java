@@ -16,6 +16,7 @@
 package io.netty.buffer;
 
 import io.netty.util.AsciiString;
+import io.netty.util.ByteProcessor;
 import io.netty.util.CharsetUtil;
 import org.junit.Test;
 
@@ -710,4 +711,84 @@ public class ByteBufUtilTest {
             buffer.release();
         }
     }
+
+    @Test
+    public void testIndexOfMatchesByteByByteSearch() {
+        byte[] bytes = randomBytesWithFewDistinctValues(300);
+        for (ByteBuf buffer : newBuffers(bytes)) {
+            try {
+                for (byte value : new byte[] { 0, '\n', (byte) 0x80, (byte) 0xFF }) {
+                    for (int from = 0; from < 20; from++) {
+                        for (int to = from; to <= bytes.length; to++) {
+                            assertEquals(indexOf(bytes, from, to, value), ByteBufUtil.indexOf(buffer, from, to, value));
+                        }
+                    }
+                }
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    public void testForEachByteWithFindProcessors() {
+        byte[] bytes = randomBytesWithFewDistinctValues(300);
+        ByteProcessor[] processors = {
+                ByteProcessor.FIND_LF, ByteProcessor.FIND_CR, ByteProcessor.FIND_CRLF, ByteProcessor.FIND_NUL,
+                ByteProcessor.FIND_LINEAR_WHITESPACE, ByteProcessor.FIND_ASCII_SPACE, ByteProcessor.FIND_COMMA,
+                ByteProcessor.FIND_SEMI_COLON
+        };
+        for (ByteBuf buffer : newBuffers(bytes)) {
+            try {
+                for (final ByteProcessor processor : processors) {
+                    // Wrap the processor so it is not recognized and is called for every byte.
+                    ByteProcessor byteByByte = new ByteProcessor() {
+                        @Override
+                        public boolean process(byte value) throws Exception {
+                            return processor.process(value);
+                        }
+                    };
+                    for (int index = 0; index < 20; index++) {
+                        for (int length = 0; index + length <= bytes.length; length++) {
+                            assertEquals(buffer.forEachByte(index, length, byteByByte),
+                                    buffer.forEachByte(index, length, processor));
+                        }
+                    }
+                }
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    private static byte[] randomBytesWithFewDistinctValues(int length) {
+        byte[] values = { 0, 'a', '\n', '\r', ' ', '\t', ',', ';', (byte) 0x80, (byte) 0xFF };
+        Random random = new Random();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < bytes.length; i++) {
+            // Mostly use a byte nobody searches for, so the matches are sparse.
+            bytes[i] = random.nextInt(8) == 0 ? values[random.nextInt(values.length)] : (byte) 'a';
+        }
+        return bytes;
+    }
+
+    private static List<ByteBuf> newBuffers(byte[] bytes) {
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        buffers.add(Unpooled.wrappedBuffer(bytes));
+        buffers.add(Unpooled.directBuffer(bytes.length).writeBytes(bytes));
+        buffers.add(PooledByteBufAllocator.DEFAULT.directBuffer(bytes.length).writeBytes(bytes));
+        buffers.add(Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(bytes, 0, 100),
+                Unpooled.wrappedBuffer(bytes, 100, bytes.length - 100)));
+        buffers.add(Unpooled.wrappedBuffer(new byte[3], bytes).slice(3, bytes.length));
+        return buffers;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
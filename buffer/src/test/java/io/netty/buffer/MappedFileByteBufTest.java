@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.internal.PlatformDependent;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedFileByteBufTest {
+
+    private static final byte[] BYTES = new byte[64 * 1024];
+
+    static {
+        for (int i = 0; i < BYTES.length; i++) {
+            BYTES[i] = (byte) i;
+        }
+    }
+
+    private File file;
+    private FileChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("netty-mapped-", ".tmp");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(BYTES);
+        } finally {
+            out.close();
+        }
+        channel = new RandomAccessFile(file, "r").getChannel();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.close();
+        file.delete();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        ByteBuf buf = new MappedFileByteBuf(UnpooledByteBufAllocator.DEFAULT, channel, 1024, 4096);
+        try {
+            assertEquals(4096, buf.readableBytes());
+            assertTrue(buf.isDirect());
+            assertTrue(buf.isReadOnly());
+            for (int i = 0; i < buf.capacity(); i++) {
+                assertEquals(BYTES[1024 + i], buf.getByte(i));
+            }
+            byte[] dst = new byte[4096];
+            buf.readBytes(dst);
+            assertEquals(Unpooled.wrappedBuffer(BYTES, 1024, 4096), Unpooled.wrappedBuffer(dst));
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testMemoryAddress() throws Exception {
+        Assume.assumeTrue(PlatformDependent.hasUnsafe());
+        ByteBuf buf = new MappedFileByteBuf(UnpooledByteBufAllocator.DEFAULT, channel, 8, 64);
+        try {
+            assertTrue(buf.hasMemoryAddress());
+            for (int i = 0; i < buf.capacity(); i++) {
+                assertEquals(BYTES[8 + i], PlatformDependent.getByte(buf.memoryAddress() + i));
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testSlicesShareMapping() throws Exception {
+        ByteBuf buf = new MappedFileByteBuf(UnpooledByteBufAllocator.DEFAULT, channel, 0, BYTES.length);
+        ByteBuf slice = buf.retainedSlice(100, 200);
+        ByteBuf slice2 = slice.retainedSlice(10, 20);
+        assertEquals(3, buf.refCnt());
+        assertEquals(BYTES[110], slice2.getByte(0));
+
+        assertFalse(buf.release());
+        assertFalse(slice.release());
+        assertEquals(1, slice2.refCnt());
+        assertEquals(BYTES[129], slice2.getByte(19));
+
+        assertTrue(slice2.release());
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void testSetByte() throws Exception {
+        ByteBuf buf = new MappedFileByteBuf(UnpooledByteBufAllocator.DEFAULT, channel, 0, 16);
+        try {
+            buf.setByte(0, 1);
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        ByteBuf buf = new MappedFileByteBuf(UnpooledByteBufAllocator.DEFAULT, channel, 0, 16).load();
+        ByteBuf copy = buf.copy();
+        assertTrue(buf.release());
+        try {
+            buf.getByte(0);
+            fail();
+        } catch (IllegalReferenceCountException expected) {
+            // expected
+        }
+        assertEquals(Unpooled.wrappedBuffer(BYTES, 0, 16), copy);
+        copy.release();
+    }
+}
@@ -16,18 +16,24 @@
 
 package io.netty.buffer;
 
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class PoolArenaTest {
 
     @Test
     public void testNormalizeCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 0);
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, null, 0, 0, 9, 999999, 0);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
-        int[] expectedResult = {0, 16, 512, 1024, 1024, 2048};
+        int[] expectedResult = {0, 16, 512, 1024, 1024, 1280};
         for (int i = 0; i < reqCapacities.length; i ++) {
             Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
         }
@@ -35,14 +41,160 @@ public class PoolArenaTest {
 
     @Test
     public void testNormalizeAlignedCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 64);
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, null, 0, 0, 9, 999999, 64);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
-        int[] expectedResult = {0, 64, 512, 1024, 1024, 2048};
+        int[] expectedResult = {0, 64, 512, 1024, 1024, 1280};
         for (int i = 0; i < reqCapacities.length; i ++) {
             Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
         }
     }
 
+    @Test
+    public void testNormalizeCapacitySizeClasses() throws Exception {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, null, 8192, 11, 13, 8192 << 11, 0);
+        int[] reqCapacities = {513, 9 * 1024, 12 * 1024 + 1, 33 * 1024, 40 * 1024, 64 * 1024 + 1};
+        int[] expectedResult = {640, 10 * 1024, 14 * 1024, 40 * 1024, 40 * 1024, 80 * 1024};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testSizeClassIdx() {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, null, 8192, 11, 13, 8192 << 11, 0);
+        // 512 ... 28k are served out of subpages, 32k is the first normal size class.
+        Assert.assertEquals(24, arena.numSmallSubpagePools);
+        Assert.assertEquals(0, PoolArena.sizeClassIdx(512));
+        Assert.assertEquals(1, PoolArena.sizeClassIdx(640));
+        Assert.assertEquals(4, PoolArena.sizeClassIdx(1024));
+        Assert.assertEquals(23, PoolArena.sizeClassIdx(28 * 1024));
+        Assert.assertEquals(24, PoolArena.sizeClassIdx(32 * 1024));
+        Assert.assertEquals(25, PoolArena.sizeClassIdx(40 * 1024));
+    }
+
+    @Test
+    public void testSubpageRunSize() {
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, null, 8192, 11, 13, 8192 << 11, 0);
+        Assert.assertEquals(8192, arena.subpageRunSize(16));
+        Assert.assertEquals(8192, arena.subpageRunSize(512));
+        Assert.assertEquals(5 * 8192, arena.subpageRunSize(640));
+        Assert.assertEquals(5 * 8192, arena.subpageRunSize(10 * 1024));
+        Assert.assertEquals(3 * 8192, arena.subpageRunSize(24 * 1024));
+        Assert.assertEquals(7 * 8192, arena.subpageRunSize(28 * 1024));
+    }
+
+    @Test
+    public void testHugePageAlignedChunk() {
+        Assume.assumeTrue(PlatformDependent.hasUnsafe());
+        int hugePageSize = 2 * 1024 * 1024;
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(
+                null, null, 8192, 11, 13, 8192 << 11, 0, hugePageSize, null);
+        PoolChunk<ByteBuffer> chunk = arena.newChunk(13, 8192 << 11);
+        try {
+            Assert.assertEquals(0, (PlatformDependent.directBufferAddress(chunk.memory) + chunk.offset)
+                    & (hugePageSize - 1));
+            Assert.assertTrue(chunk.memory.capacity() - chunk.offset >= 8192 << 11);
+        } finally {
+            arena.destroyChunk(chunk);
+        }
+    }
+
+    @Test
+    public void testHugePageMappedChunk() {
+        File directory = new File(SystemPropertyUtil.get("java.io.tmpdir"));
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(
+                null, null, 8192, 11, 13, 8192 << 11, 0, 2 * 1024 * 1024, directory);
+        PoolChunk<ByteBuffer> chunk = arena.newChunk(13, 8192 << 11);
+        try {
+            // A regular file system can be mapped as well, it is just not backed by huge pages.
+            Assert.assertEquals(0, chunk.offset);
+            Assert.assertEquals(8192 << 11, chunk.memory.capacity());
+            chunk.memory.putLong((8192 << 11) - 8, 42);
+            Assert.assertEquals(42, chunk.memory.getLong((8192 << 11) - 8));
+        } finally {
+            arena.destroyChunk(chunk);
+        }
+    }
+
+    @Test
+    public void testHugePageMappingNotRetriedAfterFailure() throws Exception {
+        File directory = new File(SystemPropertyUtil.get("java.io.tmpdir"), "netty-hugepages-" + System.nanoTime());
+        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(
+                null, null, 8192, 11, 13, 8192 << 11, 0, 2 * 1024 * 1024, directory);
+        PoolChunk<ByteBuffer> chunk = arena.newChunk(13, 8192 << 11);
+        try {
+            // The directory does not exist, so the memory is allocated instead.
+            Assert.assertEquals((8192 << 11) + 2 * 1024 * 1024, chunk.memory.capacity());
+        } finally {
+            arena.destroyChunk(chunk);
+        }
+        Assert.assertTrue(directory.mkdir());
+        try {
+            chunk = arena.newChunk(13, 8192 << 11);
+            try {
+                Assert.assertEquals((8192 << 11) + 2 * 1024 * 1024, chunk.memory.capacity());
+            } finally {
+                arena.destroyChunk(chunk);
+            }
+        } finally {
+            Assert.assertTrue(directory.delete());
+        }
+    }
+
+    @Test
+    public void testSubpageRunsDoNotWasteMemory() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0);
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        try {
+            for (int i = 0; i < 40; i++) {
+                buffers.add(allocator.heapBuffer(9 * 1024));
+            }
+            // Each buffer uses 10k, four of them share a run of five pages.
+            Assert.assertEquals(40 * 10 * 1024, usedBytes(allocator.metric().heapArenas().get(0)));
+        } finally {
+            for (ByteBuf buffer: buffers) {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    public void testRunsAreCoalesced() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 0, 8192, 11, 0, 0, 0);
+        ByteBuf first = allocator.heapBuffer(32 * 1024);
+        ByteBuf second = allocator.heapBuffer(32 * 1024);
+        ByteBuf third = allocator.heapBuffer(32 * 1024);
+        ByteBuf fourth = allocator.heapBuffer(32 * 1024);
+        try {
+            Assert.assertSame(first.array(), fourth.array());
+            int firstOffset = first.arrayOffset();
+            Assert.assertEquals(firstOffset + 32 * 1024, second.arrayOffset());
+            Assert.assertEquals(firstOffset + 64 * 1024, third.arrayOffset());
+
+            Assert.assertTrue(first.release());
+            Assert.assertTrue(third.release());
+            Assert.assertTrue(second.release());
+
+            // The three freed runs must be merged, so the lowest address can be reused for a bigger run.
+            ByteBuf merged = allocator.heapBuffer(96 * 1024);
+            Assert.assertSame(fourth.array(), merged.array());
+            Assert.assertEquals(firstOffset, merged.arrayOffset());
+            Assert.assertTrue(merged.release());
+        } finally {
+            Assert.assertTrue(fourth.release());
+        }
+    }
+
+    private static long usedBytes(PoolArenaMetric metric) {
+        long used = 0;
+        for (PoolChunkListMetric list: metric.chunkLists()) {
+            for (PoolChunkMetric chunk: list) {
+                used += chunk.chunkSize() - chunk.freeBytes();
+            }
+        }
+        return used;
+    }
+
     @Test
     public final void testAllocationCounter() {
         final PooledByteBufAllocator allocator = new PooledByteBufAllocator(
@@ -62,7 +214,7 @@ public class PoolArenaTest {
         // create small buffer
         final ByteBuf b2 = allocator.directBuffer(800);
         // create normal buffer
-        final ByteBuf b3 = allocator.directBuffer(8192 * 2);
+        final ByteBuf b3 = allocator.directBuffer(8192 * 4);
 
         Assert.assertNotNull(b1);
         Assert.assertNotNull(b2);
@@ -16,8 +16,12 @@
 
 package io.netty.buffer;
 
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.Assume;
@@ -26,8 +30,10 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
@@ -36,6 +42,8 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<PooledByteBufAllocator> {
@@ -240,6 +248,163 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         assertFalse(lists.get(5).iterator().hasNext());
     }
 
+    @Test
+    public void testReleaseIdleChunks() {
+        int chunkSize = 16 * 1024 * 1024;
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        assertTrue(allocator.directBuffer(64 * 1024).release());
+
+        // The empty chunk is kept in qInit until it was idle for long enough.
+        assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+        assertEquals(0, allocator.releaseIdleChunks(1, TimeUnit.HOURS));
+        assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+
+        assertEquals(chunkSize, allocator.releaseIdleChunks(0, TimeUnit.MILLISECONDS));
+        assertEquals(0, allocator.metric().usedDirectMemory());
+        assertEquals(1, allocator.metric().numReleasedChunks());
+        assertEquals(chunkSize, allocator.metric().releasedBytes());
+
+        // The arena must still be usable after its chunks were released.
+        ByteBuf buffer = allocator.directBuffer(64 * 1024);
+        assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+        assertEquals(0, allocator.releaseIdleChunks(0, TimeUnit.MILLISECONDS));
+        assertTrue(buffer.release());
+    }
+
+    @Test(timeout = 5000)
+    public void testBoundAllocator() throws Exception {
+        int chunkSize = 16 * 1024 * 1024;
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        EventExecutor executor = new DefaultEventExecutor();
+        try {
+            final ByteBufAllocator bound = allocator.boundAllocator(executor);
+            assertSame(bound, allocator.boundAllocator(executor));
+            ByteBufAllocatorMetric boundMetric = ((ByteBufAllocatorMetricProvider) bound).metric();
+
+            // Allocations from other threads are served by the shared arenas.
+            ByteBuf shared = bound.directBuffer(1024);
+            assertEquals(chunkSize, allocator.metric().usedDirectMemory());
+            assertEquals(0, boundMetric.usedDirectMemory());
+            assertTrue(shared.release());
+
+            Callable<ByteBuf> allocate = new Callable<ByteBuf>() {
+                @Override
+                public ByteBuf call() {
+                    return bound.directBuffer(1024);
+                }
+            };
+            ByteBuf owned = executor.submit(allocate).get();
+            assertEquals(chunkSize, boundMetric.usedDirectMemory());
+            PooledByteBuf<?> pooled = unwrapPooled(owned);
+            PoolChunk<?> chunk = pooled.chunk;
+            long handle = pooled.handle;
+            assertNotSame(chunk.arena, unwrapPooled(shared = allocator.directBuffer(1024)).chunk.arena);
+            assertTrue(shared.release());
+
+            // Released by another thread, so the memory is handed over to the executor before it can be reused.
+            assertTrue(owned.release());
+            owned = executor.submit(allocate).get();
+            pooled = unwrapPooled(owned);
+            assertSame(chunk, pooled.chunk);
+            assertEquals(handle, pooled.handle);
+            assertTrue(owned.release());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testBoundAllocatorAfterTermination() throws Exception {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 64, 64, 64);
+        EventExecutor executor = new DefaultEventExecutor();
+        final ByteBufAllocator bound = allocator.boundAllocator(executor);
+        ByteBuf owned = executor.submit(new Callable<ByteBuf>() {
+            @Override
+            public ByteBuf call() {
+                return bound.directBuffer(1024);
+            }
+        }).get();
+        executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
+
+        // Nobody would drain the handed over memory anymore, so it is freed directly.
+        assertTrue(owned.release());
+        // Allocations fall back to the shared arenas.
+        assertTrue(bound.directBuffer(1024).release());
+    }
+
+    @Test(timeout = 5000)
+    public void testBoundAllocatorReleaseWhileTerminating() throws Exception {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        final AtomicReference<Thread> releasingThread = new AtomicReference<Thread>();
+        EventExecutor executor = new SingleThreadEventExecutor(null, new DefaultThreadFactory("test"), false) {
+            @Override
+            protected void run() {
+                while (!confirmShutdown()) {
+                    Runnable task = takeTask();
+                    if (task != null) {
+                        task.run();
+                    }
+                }
+            }
+
+            @Override
+            public boolean isTerminated() {
+                // Pretend the executor terminates right after the releasing thread checked it.
+                return !releasingThread.compareAndSet(Thread.currentThread(), null) && super.isTerminated();
+            }
+        };
+        final ByteBufAllocator bound = allocator.boundAllocator(executor);
+        ByteBuf owned = executor.submit(new Callable<ByteBuf>() {
+            @Override
+            public ByteBuf call() {
+                return bound.directBuffer(1024);
+            }
+        }).get();
+        PoolArena<?> arena = unwrapPooled(owned).chunk.arena;
+        executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).sync();
+
+        // The allocator drained the handed over memory already, so the releasing thread must free it itself.
+        releasingThread.set(Thread.currentThread());
+        assertTrue(owned.release());
+        assertEquals(0, arena.numActiveAllocations());
+    }
+
+    private static PooledByteBuf<?> unwrapPooled(ByteBuf buf) {
+        return (PooledByteBuf<?>) (buf instanceof PooledByteBuf ? buf : buf.unwrap());
+    }
+
+    @Test
+    public void testTrimCurrentThreadCache() throws Exception {
+        final int chunkSize = 16 * 1024 * 1024;
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 64, 64, 64);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread thread = new FastThreadLocalThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    assertFalse(allocator.trimCurrentThreadCache());
+                    assertTrue(allocator.directBuffer(1024).release());
+                    assertTrue(allocator.directBuffer(32 * 1024).release());
+
+                    // Both buffers are cached, so the chunk can not be released.
+                    assertEquals(0, allocator.releaseIdleChunks(0, TimeUnit.MILLISECONDS));
+
+                    assertTrue(allocator.trimCurrentThreadCache());
+                    assertEquals(2, allocator.metric().numTrimmedCacheEntries());
+                    assertEquals(chunkSize, allocator.releaseIdleChunks(0, TimeUnit.MILLISECONDS));
+                    assertEquals(0, allocator.metric().usedDirectMemory());
+                } catch (Throwable cause) {
+                    error.set(cause);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+    }
+
     @Test (timeout = 4000)
     public void testThreadCacheDestroyedByThreadCleaner() throws InterruptedException {
         testThreadCacheDestroyed(false);
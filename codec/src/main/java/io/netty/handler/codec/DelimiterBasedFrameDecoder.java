@@ -317,7 +317,13 @@ public class DelimiterBasedFrameDecoder extends ByteToMessageDecoder {
      * found in the haystack.
      */
     private static int indexOf(ByteBuf haystack, ByteBuf needle) {
+        final byte firstNeedleByte = needle.getByte(0);
         for (int i = haystack.readerIndex(); i < haystack.writerIndex(); i ++) {
+            // Skip right to the next occurrence of the first byte of the needle.
+            i = haystack.indexOf(i, haystack.writerIndex(), firstNeedleByte);
+            if (i < 0) {
+                return -1;
+            }
             int haystackIndex = i;
             int needleIndex;
             for (needleIndex = 0; needleIndex < needle.capacity(); needleIndex ++) {
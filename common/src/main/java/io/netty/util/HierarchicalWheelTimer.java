@@ -0,0 +1,774 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static io.netty.util.internal.StringUtil.simpleClassName;
+
+/**
+ * A {@link Timer} optimized for a very large number of approximated I/O timeouts, most of which are cancelled
+ * before they expire.
+ *
+ * <h3>Wheels</h3>
+ *
+ * {@link HierarchicalWheelTimer} maintains several wheels of the same size.  A slot of the first wheel covers a
+ * single tick, a slot of the second wheel covers a full rotation of the first wheel and so on.  A timeout is put
+ * into the lowest wheel that can hold its deadline, and is moved ('cascaded') to a lower wheel once the slot it
+ * lives in comes around.  Only the current slot of the first wheel is expired on each tick, so the cost of a tick
+ * does not depend on the number of pending timeouts.  Timeouts that are too far in the future for the highest
+ * wheel are kept in an overflow list which is only examined once all wheels have completed a rotation.
+ * <p>
+ * With the default configuration of 4 wheels with 256 slots each, a tick duration of 100 milliseconds covers
+ * delays of more than 13 years before the overflow list is used.
+ *
+ * <h3>Cancellation</h3>
+ *
+ * Unlike {@link HashedWheelTimer}, a cancelled {@link Timeout} is unlinked from its slot immediately, so it
+ * neither occupies memory nor costs any work on later ticks.  All changes to the wheels are guarded by a single
+ * lock which is only held for constant time operations; {@link TimerTask}s are always executed without holding it.
+ *
+ * <h3>Do not create many instances.</h3>
+ *
+ * {@link HierarchicalWheelTimer} creates a new thread whenever it is instantiated and started.  Therefore, you
+ * should make sure to create only one instance and share it across your application.
+ *
+ * <h3>Implementation Details</h3>
+ *
+ * {@link HierarchicalWheelTimer} is based on the hierarchical scheme of
+ * <a href="http://cseweb.ucsd.edu/users/varghese/">George Varghese</a> and
+ * Tony Lauck's paper,
+ * <a href="http://cseweb.ucsd.edu/users/varghese/PAPERS/twheel.ps.Z">'Hashed
+ * and Hierarchical Timing Wheels: data structures to efficiently implement a
+ * timer facility'</a>.
+ */
+public class HierarchicalWheelTimer implements Timer {
+
+    static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(HierarchicalWheelTimer.class);
+
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+    private static final AtomicBoolean WARNED_TOO_MANY_INSTANCES = new AtomicBoolean();
+    private static final int INSTANCE_COUNT_LIMIT = 64;
+    private static final ResourceLeakDetector<HierarchicalWheelTimer> leakDetector =
+            ResourceLeakDetectorFactory.instance().newResourceLeakDetector(HierarchicalWheelTimer.class, 1);
+
+    private static final AtomicIntegerFieldUpdater<HierarchicalWheelTimer> WORKER_STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(HierarchicalWheelTimer.class, "workerState");
+
+    private static final int WORKER_STATE_INIT = 0;
+    private static final int WORKER_STATE_STARTED = 1;
+    private static final int WORKER_STATE_SHUTDOWN = 2;
+
+    private final ResourceLeakTracker<HierarchicalWheelTimer> leak;
+    private final Worker worker = new Worker();
+    private final Thread workerThread;
+
+    @SuppressWarnings({ "unused", "FieldMayBeFinal" })
+    private volatile int workerState; // 0 - init, 1 - started, 2 - shut down
+
+    private final long tickDuration;
+    private final int wheelBits;
+    private final int mask;
+    private final long rotationMask;
+    private final TimeoutBucket[][] wheels;
+    private final TimeoutBucket overflow = new TimeoutBucket();
+    private final Object lock = new Object();
+    private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
+    private final long maxPendingTimeouts;
+
+    // The next tick to be processed by the worker, guarded by lock.
+    private long currentTick;
+    // Only modified while holding lock.
+    private volatile long pendingTimeouts;
+
+    private volatile long startTime;
+    private volatile long tickLagNanos;
+    private volatile long maxTickLagNanos;
+
+    /**
+     * Creates a new timer with the default thread factory
+     * ({@link Executors#defaultThreadFactory()}), default tick duration, and
+     * default number and size of wheels.
+     */
+    public HierarchicalWheelTimer() {
+        this(Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a new timer with the default thread factory
+     * ({@link Executors#defaultThreadFactory()}) and default number and size of wheels.
+     *
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @throws NullPointerException     if {@code unit} is {@code null}
+     * @throws IllegalArgumentException if {@code tickDuration} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(long tickDuration, TimeUnit unit) {
+        this(Executors.defaultThreadFactory(), tickDuration, unit);
+    }
+
+    /**
+     * Creates a new timer with the default tick duration and default number and size of wheels.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a
+     *                       background {@link Thread} which is dedicated to
+     *                       {@link TimerTask} execution.
+     * @throws NullPointerException if {@code threadFactory} is {@code null}
+     */
+    public HierarchicalWheelTimer(ThreadFactory threadFactory) {
+        this(threadFactory, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a new timer with the default number and size of wheels.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a
+     *                       background {@link Thread} which is dedicated to
+     *                       {@link TimerTask} execution.
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if {@code tickDuration} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(ThreadFactory threadFactory, long tickDuration, TimeUnit unit) {
+        this(threadFactory, tickDuration, unit, 256, 4);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a
+     *                       background {@link Thread} which is dedicated to
+     *                       {@link TimerTask} execution.
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @param ticksPerWheel  the size of each wheel
+     * @param wheelCount     the number of wheels
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration}, {@code ticksPerWheel} and
+     *                                  {@code wheelCount} is &lt;= 0
+     */
+    public HierarchicalWheelTimer(
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel, int wheelCount) {
+        this(threadFactory, tickDuration, unit, ticksPerWheel, wheelCount, true, -1);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory        a {@link ThreadFactory} that creates a
+     *                             background {@link Thread} which is dedicated to
+     *                             {@link TimerTask} execution.
+     * @param tickDuration         the duration between tick
+     * @param unit                 the time unit of the {@code tickDuration}
+     * @param ticksPerWheel        the size of each wheel, rounded up to the next power of two
+     * @param wheelCount           the number of wheels
+     * @param leakDetection        {@code true} if leak detection should be enabled always,
+     *                             if false it will only be enabled if the worker thread is not
+     *                             a daemon thread.
+     * @param  maxPendingTimeouts  The maximum number of pending timeouts after which call to
+     *                             {@code newTimeout} will result in
+     *                             {@link java.util.concurrent.RejectedExecutionException}
+     *                             being thrown. No maximum pending timeouts limit is assumed if
+     *                             this value is 0 or negative.
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration}, {@code ticksPerWheel} and
+     *                                  {@code wheelCount} is &lt;= 0, or if the wheels together would cover
+     *                                  more than 2^62 ticks
+     */
+    public HierarchicalWheelTimer(
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel, int wheelCount,
+            boolean leakDetection, long maxPendingTimeouts) {
+
+        if (threadFactory == null) {
+            throw new NullPointerException("threadFactory");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel must be greater than 0: " + ticksPerWheel);
+        }
+        if (ticksPerWheel > 1 << 16) {
+            throw new IllegalArgumentException("ticksPerWheel may not be greater than 2^16: " + ticksPerWheel);
+        }
+        if (wheelCount <= 0) {
+            throw new IllegalArgumentException("wheelCount must be greater than 0: " + wheelCount);
+        }
+
+        // Normalize ticksPerWheel to power of two so slots can be selected by shifting and masking.
+        wheelBits = ticksPerWheel == 1 ? 1 : Integer.SIZE - Integer.numberOfLeadingZeros(ticksPerWheel - 1);
+        if ((long) wheelBits * wheelCount > 62) {
+            throw new IllegalArgumentException(String.format(
+                    "ticksPerWheel: %d, wheelCount: %d (expected: ticksPerWheel ^ wheelCount <= 2^62)",
+                    ticksPerWheel, wheelCount));
+        }
+        mask = (1 << wheelBits) - 1;
+        rotationMask = (1L << wheelBits * wheelCount) - 1;
+        wheels = new TimeoutBucket[wheelCount][mask + 1];
+        for (TimeoutBucket[] wheel: wheels) {
+            for (int i = 0; i < wheel.length; i ++) {
+                wheel[i] = new TimeoutBucket();
+            }
+        }
+
+        // Convert tickDuration to nanos.
+        this.tickDuration = unit.toNanos(tickDuration);
+
+        workerThread = threadFactory.newThread(worker);
+
+        leak = leakDetection || !workerThread.isDaemon() ? leakDetector.track(this) : null;
+
+        this.maxPendingTimeouts = maxPendingTimeouts;
+
+        if (INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT &&
+            WARNED_TOO_MANY_INSTANCES.compareAndSet(false, true)) {
+            reportTooManyInstances();
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            super.finalize();
+        } finally {
+            // This object is going to be GCed and it is assumed the ship has sailed to do a proper shutdown. If
+            // we have not yet shutdown then we want to make sure we decrement the active instance count.
+            if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
+                INSTANCE_COUNTER.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Starts the background thread explicitly.  The background thread will
+     * start automatically on demand even if you did not call this method.
+     *
+     * @throws IllegalStateException if this timer has been
+     *                               {@linkplain #stop() stopped} already
+     */
+    public void start() {
+        switch (WORKER_STATE_UPDATER.get(this)) {
+            case WORKER_STATE_INIT:
+                if (WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_INIT, WORKER_STATE_STARTED)) {
+                    workerThread.start();
+                }
+                break;
+            case WORKER_STATE_STARTED:
+                break;
+            case WORKER_STATE_SHUTDOWN:
+                throw new IllegalStateException("cannot be started once stopped");
+            default:
+                throw new Error("Invalid WorkerState");
+        }
+
+        // Wait until the startTime is initialized by the worker.
+        while (startTime == 0) {
+            try {
+                startTimeInitialized.await();
+            } catch (InterruptedException ignore) {
+                // Ignore - it will be ready very soon.
+            }
+        }
+    }
+
+    @Override
+    public Set<Timeout> stop() {
+        if (Thread.currentThread() == workerThread) {
+            throw new IllegalStateException(
+                    HierarchicalWheelTimer.class.getSimpleName() +
+                            ".stop() cannot be called from " +
+                            TimerTask.class.getSimpleName());
+        }
+
+        if (!WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_STARTED, WORKER_STATE_SHUTDOWN)) {
+            // workerState can be 0 or 2 at this moment - let it always be 2.
+            if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
+                INSTANCE_COUNTER.decrementAndGet();
+                if (leak != null) {
+                    boolean closed = leak.close(this);
+                    assert closed;
+                }
+            }
+
+            return Collections.emptySet();
+        }
+
+        try {
+            boolean interrupted = false;
+            while (workerThread.isAlive()) {
+                workerThread.interrupt();
+                try {
+                    workerThread.join(100);
+                } catch (InterruptedException ignored) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            INSTANCE_COUNTER.decrementAndGet();
+            if (leak != null) {
+                boolean closed = leak.close(this);
+                assert closed;
+            }
+        }
+        return worker.unprocessedTimeouts();
+    }
+
+    @Override
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+
+        start();
+
+        long deadline = System.nanoTime() + unit.toNanos(delay) - startTime;
+
+        // Guard against overflow.
+        if (delay > 0 && deadline < 0) {
+            deadline = Long.MAX_VALUE;
+        }
+        HierarchicalWheelTimeout timeout = new HierarchicalWheelTimeout(this, task, deadline);
+        synchronized (lock) {
+            if (WORKER_STATE_UPDATER.get(this) == WORKER_STATE_SHUTDOWN) {
+                // The worker may already have collected the unprocessed timeouts.
+                throw new IllegalStateException("cannot be started once stopped");
+            }
+            long pendingTimeoutsCount = pendingTimeouts + 1;
+            if (maxPendingTimeouts > 0 && pendingTimeoutsCount > maxPendingTimeouts) {
+                throw new RejectedExecutionException("Number of pending timeouts ("
+                    + pendingTimeoutsCount + ") is greater than or equal to maximum allowed pending "
+                    + "timeouts (" + maxPendingTimeouts + ")");
+            }
+            pendingTimeouts = pendingTimeoutsCount;
+            schedule(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns the number of pending timeouts of this {@link Timer}.
+     */
+    public long pendingTimeouts() {
+        return pendingTimeouts;
+    }
+
+    /**
+     * Returns how many nanoseconds the worker thread was behind schedule when it processed the most recent tick.
+     */
+    public long tickLagNanos() {
+        return tickLagNanos;
+    }
+
+    /**
+     * Returns the largest value {@link #tickLagNanos()} has reported since this {@link Timer} was started.
+     */
+    public long maxTickLagNanos() {
+        return maxTickLagNanos;
+    }
+
+    /**
+     * Puts the {@link HierarchicalWheelTimeout} into the lowest wheel that can hold its deadline. Must be called
+     * while holding {@link #lock}.
+     */
+    private void schedule(HierarchicalWheelTimeout timeout) {
+        // Ensure we don't schedule for past.
+        long expirationTick = Math.max(timeout.expirationTick, currentTick);
+        long ticks = expirationTick - currentTick;
+        for (int i = 0; i < wheels.length; i ++) {
+            int shift = wheelBits * i;
+            if (ticks >>> shift + wheelBits == 0) {
+                wheels[i][(int) (expirationTick >>> shift) & mask].addTimeout(timeout);
+                return;
+            }
+        }
+        overflow.addTimeout(timeout);
+    }
+
+    /**
+     * Moves all timeouts of the given bucket to the wheels they now belong to. Must be called while holding
+     * {@link #lock}.
+     */
+    private void cascade(TimeoutBucket bucket) {
+        // Detach the whole list first, as timeouts from the overflow list may be added back to it.
+        HierarchicalWheelTimeout timeout = bucket.clear();
+        while (timeout != null) {
+            HierarchicalWheelTimeout next = timeout.next;
+            timeout.next = null;
+            timeout.prev = null;
+            timeout.bucket = null;
+            schedule(timeout);
+            timeout = next;
+        }
+    }
+
+    private static void reportTooManyInstances() {
+        if (logger.isErrorEnabled()) {
+            String resourceType = simpleClassName(HierarchicalWheelTimer.class);
+            logger.error("You are creating too many " + resourceType + " instances. " +
+                    resourceType + " is a shared resource that must be reused across the JVM," +
+                    "so that only a few instances are created.");
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final Set<Timeout> unprocessedTimeouts = new HashSet<Timeout>();
+        private final TimeoutBucket expired = new TimeoutBucket();
+
+        @Override
+        public void run() {
+            // Initialize the startTime.
+            startTime = System.nanoTime();
+            if (startTime == 0) {
+                // We use 0 as an indicator for the uninitialized value here, so make sure it's not 0 when initialized.
+                startTime = 1;
+            }
+
+            // Notify the other threads waiting for the initialization at start().
+            startTimeInitialized.countDown();
+
+            do {
+                final long deadline = waitForNextTick();
+                if (deadline > 0) {
+                    long lag = Math.max(0, deadline - tickDuration * (currentTick + 1));
+                    synchronized (lock) {
+                        // Catch up with all ticks that are due, so a late wake-up does not delay later timeouts.
+                        do {
+                            processTick();
+                            currentTick ++;
+                        } while (tickDuration * (currentTick + 1) <= deadline);
+                    }
+                    tickLagNanos = lag;
+                    if (lag > maxTickLagNanos) {
+                        maxTickLagNanos = lag;
+                    }
+                    expireTimeouts();
+                }
+            } while (WORKER_STATE_UPDATER.get(HierarchicalWheelTimer.this) == WORKER_STATE_STARTED);
+
+            // Fill the unprocessedTimeouts so we can return them from stop() method.
+            synchronized (lock) {
+                for (TimeoutBucket[] wheel: wheels) {
+                    for (TimeoutBucket bucket: wheel) {
+                        bucket.clearTimeouts(unprocessedTimeouts);
+                    }
+                }
+                overflow.clearTimeouts(unprocessedTimeouts);
+            }
+        }
+
+        /**
+         * Cascades the higher wheels if the first wheel completed a rotation and moves all timeouts of the current
+         * slot to {@link #expired}. Must be called while holding {@link #lock}.
+         */
+        private void processTick() {
+            final long tick = currentTick;
+            final int idx = (int) tick & mask;
+            if (idx == 0) {
+                if ((tick & rotationMask) == 0) {
+                    // All wheels completed a rotation, pull in what is now in reach.
+                    cascade(overflow);
+                }
+                for (int i = 1; i < wheels.length; i ++) {
+                    int wheelIdx = (int) (tick >>> wheelBits * i) & mask;
+                    cascade(wheels[i][wheelIdx]);
+                    if (wheelIdx != 0) {
+                        break;
+                    }
+                }
+            }
+
+            TimeoutBucket bucket = wheels[0][idx];
+            for (;;) {
+                HierarchicalWheelTimeout timeout = bucket.pollTimeout();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.expirationTick > tick) {
+                    // The timeout was placed into a wrong slot. This should never happen.
+                    throw new IllegalStateException(String.format(
+                            "timeout.expirationTick (%d) > tick (%d)", timeout.expirationTick, tick));
+                }
+                timeout.state = HierarchicalWheelTimeout.ST_EXPIRED;
+                pendingTimeouts --;
+                expired.addTimeout(timeout);
+            }
+        }
+
+        private void expireTimeouts() {
+            for (;;) {
+                HierarchicalWheelTimeout timeout = expired.pollTimeout();
+                if (timeout == null) {
+                    return;
+                }
+                timeout.expire();
+            }
+        }
+
+        /**
+         * calculate goal nanoTime from startTime and current tick number,
+         * then wait until that goal has been reached.
+         * @return Long.MIN_VALUE if received a shutdown request,
+         * current time otherwise (with Long.MIN_VALUE changed by +1)
+         */
+        private long waitForNextTick() {
+            long deadline = tickDuration * (currentTick + 1);
+
+            for (;;) {
+                final long currentTime = System.nanoTime() - startTime;
+                long sleepTimeMs = (deadline - currentTime + 999999) / 1000000;
+
+                if (sleepTimeMs <= 0) {
+                    if (currentTime == Long.MIN_VALUE) {
+                        return -Long.MAX_VALUE;
+                    } else {
+                        return currentTime;
+                    }
+                }
+
+                // Check if we run on windows, as if thats the case we will need
+                // to round the sleepTime as workaround for a bug that only affect
+                // the JVM if it runs on windows.
+                //
+                // See https://github.com/netty/netty/issues/356
+                if (PlatformDependent.isWindows()) {
+                    sleepTimeMs = sleepTimeMs / 10 * 10;
+                }
+
+                try {
+                    Thread.sleep(sleepTimeMs);
+                } catch (InterruptedException ignored) {
+                    if (WORKER_STATE_UPDATER.get(HierarchicalWheelTimer.this) == WORKER_STATE_SHUTDOWN) {
+                        return Long.MIN_VALUE;
+                    }
+                }
+            }
+        }
+
+        Set<Timeout> unprocessedTimeouts() {
+            return Collections.unmodifiableSet(unprocessedTimeouts);
+        }
+    }
+
+    private static final class HierarchicalWheelTimeout implements Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final HierarchicalWheelTimer timer;
+        private final TimerTask task;
+        private final long deadline;
+        // The tick during which this timeout expires.
+        final long expirationTick;
+
+        // Only modified while holding the lock of the timer.
+        volatile int state = ST_INIT;
+
+        // This will be used to chain timeouts in TimeoutBucket via a double-linked-list.
+        // Only accessed while holding the lock of the timer, or by the worker thread after the timeout expired.
+        HierarchicalWheelTimeout next;
+        HierarchicalWheelTimeout prev;
+
+        // The bucket to which the timeout was added
+        TimeoutBucket bucket;
+
+        HierarchicalWheelTimeout(HierarchicalWheelTimer timer, TimerTask task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            // Tick n is processed once (n + 1) * tickDuration elapsed.
+            expirationTick = deadline <= 0 ? 0 : (deadline - 1) / timer.tickDuration;
+        }
+
+        @Override
+        public Timer timer() {
+            return timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean cancel() {
+            synchronized (timer.lock) {
+                if (state != ST_INIT) {
+                    return false;
+                }
+                state = ST_CANCELLED;
+                TimeoutBucket bucket = this.bucket;
+                // The bucket is null if the timer was stopped and the timeout is one of its unprocessed timeouts.
+                if (bucket != null) {
+                    bucket.remove(this);
+                    timer.pendingTimeouts --;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        void expire() {
+            try {
+                task.run(this);
+            } catch (Throwable t) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("An exception was thrown by " + TimerTask.class.getSimpleName() + '.', t);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            final long currentTime = System.nanoTime();
+            long remaining = deadline - currentTime + timer.startTime;
+
+            StringBuilder buf = new StringBuilder(192)
+               .append(simpleClassName(this))
+               .append('(')
+               .append("deadline: ");
+            if (remaining > 0) {
+                buf.append(remaining)
+                   .append(" ns later");
+            } else if (remaining < 0) {
+                buf.append(-remaining)
+                   .append(" ns ago");
+            } else {
+                buf.append("now");
+            }
+
+            if (isCancelled()) {
+                buf.append(", cancelled");
+            }
+
+            return buf.append(", task: ")
+                      .append(task())
+                      .append(')')
+                      .toString();
+        }
+    }
+
+    /**
+     * Bucket that stores HierarchicalWheelTimeouts in a double-linked-list so a timeout can be unlinked in
+     * constant time when it is cancelled. The HierarchicalWheelTimeouts act as nodes themself and so no extra
+     * object creation is needed.
+     */
+    private static final class TimeoutBucket {
+        // Used for the linked-list datastructure
+        private HierarchicalWheelTimeout head;
+        private HierarchicalWheelTimeout tail;
+
+        /**
+         * Add {@link HierarchicalWheelTimeout} to this bucket.
+         */
+        void addTimeout(HierarchicalWheelTimeout timeout) {
+            assert timeout.bucket == null;
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(HierarchicalWheelTimeout timeout) {
+            HierarchicalWheelTimeout prev = timeout.prev;
+            HierarchicalWheelTimeout next = timeout.next;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            // null out prev, next and bucket to allow for GC.
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Clear this bucket and return all not expired / cancelled {@link Timeout}s.
+         */
+        void clearTimeouts(Set<Timeout> set) {
+            for (;;) {
+                HierarchicalWheelTimeout timeout = pollTimeout();
+                if (timeout == null) {
+                    return;
+                }
+                set.add(timeout);
+            }
+        }
+
+        /**
+         * Detaches all {@link HierarchicalWheelTimeout}s from this bucket and returns the head of the list.
+         */
+        HierarchicalWheelTimeout clear() {
+            HierarchicalWheelTimeout head = this.head;
+            this.head = tail = null;
+            return head;
+        }
+
+        HierarchicalWheelTimeout pollTimeout() {
+            HierarchicalWheelTimeout head = this.head;
+            if (head == null) {
+                return null;
+            }
+            remove(head);
+            return head;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * {@link AttributeMap} implementation which uses the {@link AttributeKey#id()} as index into an array, so a lookup
+ * is a single volatile read and an array access without any hashing or synchronization.
+ * <p>
+ * The array is never modified once published. Adding or removing an {@link Attribute} copies it and publishes the
+ * copy with a compare and set, which is cheap because attributes are usually added once per {@link AttributeMap} and
+ * read many times afterwards. The array is sized by the highest {@link AttributeKey#id()} in use, which is small as
+ * ids are assigned densely in creation order.
+ * <p>
+ * It extends {@link DefaultAttributeMap} only so it can replace it as the super class of existing public classes
+ * without breaking their compatibility; none of the state of {@link DefaultAttributeMap} is ever used.
+ */
+public class IndexedAttributeMap extends DefaultAttributeMap {
+
+    private static final IndexedAttribute<?>[] EMPTY_ATTRIBUTES = new IndexedAttribute<?>[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<IndexedAttributeMap, IndexedAttribute[]> updater =
+            AtomicReferenceFieldUpdater.newUpdater(IndexedAttributeMap.class, IndexedAttribute[].class, "attributes");
+
+    // Shares an empty array until the first attribute is added; updated by AtomicReferenceFieldUpdater above.
+    private volatile IndexedAttribute<?>[] attributes = EMPTY_ATTRIBUTES;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Attribute<T> attr(AttributeKey<T> key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        final int id = key.id();
+        IndexedAttribute<T> newAttribute = null;
+        for (;;) {
+            IndexedAttribute<?>[] attributes = this.attributes;
+            if (id < attributes.length) {
+                IndexedAttribute<?> attribute = attributes[id];
+                if (attribute != null) {
+                    return (Attribute<T>) attribute;
+                }
+            }
+            if (newAttribute == null) {
+                newAttribute = new IndexedAttribute<T>(this, key);
+            }
+            IndexedAttribute<?>[] newAttributes = Arrays.copyOf(attributes, Math.max(attributes.length, id + 1));
+            newAttributes[id] = newAttribute;
+            if (updater.compareAndSet(this, attributes, newAttributes)) {
+                return newAttribute;
+            }
+        }
+    }
+
+    @Override
+    public <T> boolean hasAttr(AttributeKey<T> key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        final int id = key.id();
+        IndexedAttribute<?>[] attributes = this.attributes;
+        return id < attributes.length && attributes[id] != null;
+    }
+
+    private void removeAttribute(int id, IndexedAttribute<?> attribute) {
+        for (;;) {
+            IndexedAttribute<?>[] attributes = this.attributes;
+            if (id >= attributes.length || attributes[id] != attribute) {
+                // Removed before.
+                return;
+            }
+            IndexedAttribute<?>[] newAttributes = attributes.clone();
+            newAttributes[id] = null;
+            if (updater.compareAndSet(this, attributes, newAttributes)) {
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class IndexedAttribute<T> extends AtomicReference<T> implements Attribute<T> {
+
+        private static final long serialVersionUID = 3929264432097519213L;
+
+        private final IndexedAttributeMap map;
+        private final AttributeKey<T> key;
+
+        IndexedAttribute(IndexedAttributeMap map, AttributeKey<T> key) {
+            this.map = map;
+            this.key = key;
+        }
+
+        @Override
+        public AttributeKey<T> key() {
+            return key;
+        }
+
+        @Override
+        public T setIfAbsent(T value) {
+            while (!compareAndSet(null, value)) {
+                T old = get();
+                if (old != null) {
+                    return old;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public T getAndRemove() {
+            T oldValue = getAndSet(null);
+            map.removeAttribute(key.id(), this);
+            return oldValue;
+        }
+
+        @Override
+        public void remove() {
+            set(null);
+            map.removeAttribute(key.id(), this);
+        }
+    }
+}
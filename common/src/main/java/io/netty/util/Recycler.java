@@ -17,6 +17,8 @@
 package io.netty.util;
 
 import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
@@ -24,8 +26,10 @@ import io.netty.util.internal.logging.InternalLoggerFactory;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.Queue;
 import java.util.WeakHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import static io.netty.util.internal.MathUtil.safeFindNextPositivePowerOfTwo;
 import static java.lang.Math.max;
@@ -33,6 +37,10 @@ import static java.lang.Math.min;
 
 /**
  * Light-weight object pool based on a thread-local stack.
+ * <p>
+ * If {@code -Dio.netty.recycler.magazines=true} is set, objects are kept in fixed size thread-local magazines
+ * instead. Objects recycled by another thread are then handed back through a bounded queue per owner thread,
+ * which is drained a whole magazine at a time.
  *
  * @param <T> the type of the pooled object
  */
@@ -56,6 +64,10 @@ public abstract class Recycler<T> {
     private static final int MAX_DELAYED_QUEUES_PER_THREAD;
     private static final int LINK_CAPACITY;
     private static final int RATIO;
+    private static final boolean USE_MAGAZINES;
+    private static final int MAGAZINE_SIZE;
+    // Hits are counted per thread and only published to the shared counter every HIT_FLUSH_THRESHOLD hits.
+    private static final int HIT_FLUSH_THRESHOLD = 64;
 
     static {
         // In the future, we might have different maxCapacity for different object types.
@@ -86,17 +98,24 @@ public abstract class Recycler<T> {
         // bursts.
         RATIO = safeFindNextPositivePowerOfTwo(SystemPropertyUtil.getInt("io.netty.recycler.ratio", 8));
 
+        USE_MAGAZINES = SystemPropertyUtil.getBoolean("io.netty.recycler.magazines", false);
+        MAGAZINE_SIZE = max(1, SystemPropertyUtil.getInt("io.netty.recycler.magazineSize", 64));
+
         if (logger.isDebugEnabled()) {
             if (DEFAULT_MAX_CAPACITY_PER_THREAD == 0) {
                 logger.debug("-Dio.netty.recycler.maxCapacityPerThread: disabled");
                 logger.debug("-Dio.netty.recycler.maxSharedCapacityFactor: disabled");
                 logger.debug("-Dio.netty.recycler.linkCapacity: disabled");
                 logger.debug("-Dio.netty.recycler.ratio: disabled");
+                logger.debug("-Dio.netty.recycler.magazines: disabled");
+                logger.debug("-Dio.netty.recycler.magazineSize: disabled");
             } else {
                 logger.debug("-Dio.netty.recycler.maxCapacityPerThread: {}", DEFAULT_MAX_CAPACITY_PER_THREAD);
                 logger.debug("-Dio.netty.recycler.maxSharedCapacityFactor: {}", MAX_SHARED_CAPACITY_FACTOR);
                 logger.debug("-Dio.netty.recycler.linkCapacity: {}", LINK_CAPACITY);
                 logger.debug("-Dio.netty.recycler.ratio: {}", RATIO);
+                logger.debug("-Dio.netty.recycler.magazines: {}", USE_MAGAZINES);
+                logger.debug("-Dio.netty.recycler.magazineSize: {}", MAGAZINE_SIZE);
             }
         }
 
@@ -108,6 +127,31 @@ public abstract class Recycler<T> {
     private final int ratioMask;
     private final int maxDelayedQueuesPerThread;
 
+    private final LongCounter hits = PlatformDependent.newLongCounter();
+    // Misses and drops are only counted by the magazine backend, the stack backend would need to update them on
+    // its hot paths for every recycled object that is dropped to limit the growth of the pool.
+    private final LongCounter misses = PlatformDependent.newLongCounter();
+    private final LongCounter drops = PlatformDependent.newLongCounter();
+    private final RecyclerMetric metric = new RecyclerMetric() {
+        @Override
+        public long hits() {
+            return hits.value();
+        }
+
+        @Override
+        public long misses() {
+            return misses.value();
+        }
+
+        @Override
+        public long drops() {
+            return drops.value();
+        }
+    };
+
+    // Only used if magazines are enabled, null otherwise.
+    private final FastThreadLocal<Magazines<T>> magazineLocal;
+
     private final FastThreadLocal<Stack<T>> threadLocal = new FastThreadLocal<Stack<T>>() {
         @Override
         protected Stack<T> initialValue() {
@@ -140,6 +184,11 @@ public abstract class Recycler<T> {
 
     protected Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
                        int ratio, int maxDelayedQueuesPerThread) {
+        this(maxCapacityPerThread, maxSharedCapacityFactor, ratio, maxDelayedQueuesPerThread, USE_MAGAZINES);
+    }
+
+    Recycler(int maxCapacityPerThread, int maxSharedCapacityFactor,
+             int ratio, int maxDelayedQueuesPerThread, boolean useMagazines) {
         ratioMask = safeFindNextPositivePowerOfTwo(ratio) - 1;
         if (maxCapacityPerThread <= 0) {
             this.maxCapacityPerThread = 0;
@@ -150,6 +199,17 @@ public abstract class Recycler<T> {
             this.maxSharedCapacityFactor = max(1, maxSharedCapacityFactor);
             this.maxDelayedQueuesPerThread = max(0, maxDelayedQueuesPerThread);
         }
+        if (useMagazines && this.maxCapacityPerThread != 0) {
+            magazineLocal = new FastThreadLocal<Magazines<T>>() {
+                @Override
+                protected Magazines<T> initialValue() {
+                    return new Magazines<T>(Recycler.this, Thread.currentThread(),
+                            Recycler.this.maxCapacityPerThread, Recycler.this.maxSharedCapacityFactor, ratioMask);
+                }
+            };
+        } else {
+            magazineLocal = null;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -157,6 +217,16 @@ public abstract class Recycler<T> {
         if (maxCapacityPerThread == 0) {
             return newObject((Handle<T>) NOOP_HANDLE);
         }
+        if (magazineLocal != null) {
+            Magazines<T> magazines = magazineLocal.get();
+            MagazineHandle<T> handle = magazines.pop();
+            if (handle == null) {
+                misses.increment();
+                handle = magazines.newHandle();
+                handle.value = newObject(handle);
+            }
+            return (T) handle.value;
+        }
         Stack<T> stack = threadLocal.get();
         DefaultHandle<T> handle = stack.pop();
         if (handle == null) {
@@ -175,21 +245,31 @@ public abstract class Recycler<T> {
             return false;
         }
 
-        DefaultHandle<T> h = (DefaultHandle<T>) handle;
-        if (h.stack.parent != this) {
+        if (handle instanceof MagazineHandle) {
+            if (((MagazineHandle<T>) handle).magazines.parent != this) {
+                return false;
+            }
+        } else if (((DefaultHandle<T>) handle).stack.parent != this) {
             return false;
         }
 
-        h.recycle(o);
+        handle.recycle(o);
         return true;
     }
 
+    /**
+     * Returns a {@link RecyclerMetric} for this {@link Recycler}.
+     */
+    public final RecyclerMetric metric() {
+        return metric;
+    }
+
     final int threadLocalCapacity() {
-        return threadLocal.get().elements.length;
+        return magazineLocal != null ? magazineLocal.get().capacity() : threadLocal.get().elements.length;
     }
 
     final int threadLocalSize() {
-        return threadLocal.get().size;
+        return magazineLocal != null ? magazineLocal.get().size() : threadLocal.get().size;
     }
 
     protected abstract T newObject(Handle<T> handle);
@@ -461,6 +541,7 @@ public abstract class Recycler<T> {
         private DefaultHandle<?>[] elements;
         private int size;
         private int handleRecycleCount = -1; // Start with -1 so the first one will be recycled.
+        private int pendingHits;
         private WeakOrderQueue cursor, prev;
         private volatile WeakOrderQueue head;
 
@@ -514,6 +595,10 @@ public abstract class Recycler<T> {
             ret.recycleId = 0;
             ret.lastRecycledId = 0;
             this.size = size;
+            if (++pendingHits == HIT_FLUSH_THRESHOLD) {
+                parent.hits.add(pendingHits);
+                pendingHits = 0;
+            }
             return ret;
         }
 
@@ -652,4 +737,224 @@ public abstract class Recycler<T> {
             return new DefaultHandle<T>(this);
         }
     }
+
+    static final class MagazineHandle<T> implements Handle<T> {
+        boolean hasBeenRecycled;
+        // Set by the recycling thread, the return queue makes it visible to the owner thread.
+        boolean recycled;
+
+        private final Magazines<?> magazines;
+        private Object value;
+
+        MagazineHandle(Magazines<?> magazines) {
+            this.magazines = magazines;
+        }
+
+        @Override
+        public void recycle(Object object) {
+            if (object != value) {
+                throw new IllegalArgumentException("object does not belong to handle");
+            }
+            magazines.push(this);
+        }
+    }
+
+    /**
+     * Thread-local pool that stores recycled objects in magazines of a fixed size. The loaded magazine serves
+     * {@link #pop()} and {@link #push(MagazineHandle)}, the previous magazine absorbs alternating pops and pushes at a
+     * magazine boundary and full magazines beyond those two are kept in a bounded depot. Objects recycled by other
+     * threads are offered to a bounded MPSC queue which is only drained once all magazines are empty, and then a
+     * whole magazine at a time.
+     */
+    static final class Magazines<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Magazines, Queue> RETURN_QUEUE_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Magazines.class, Queue.class, "returnQueue");
+
+        final Recycler<T> parent;
+        // See Stack.threadRef for why this is a WeakReference.
+        final WeakReference<Thread> threadRef;
+
+        private final int magazineSize;
+        private final boolean hasPrevious;
+        private final int returnQueueCapacity;
+        private final int ratioMask;
+        private final MagazineHandle<?>[][] full;
+        private int fullCount;
+
+        private MagazineHandle<?>[] loaded;
+        private int loadedSize;
+        private MagazineHandle<?>[] previous;
+        private int previousSize;
+        private int handleRecycleCount = -1; // Start with -1 so the first one will be recycled.
+        private int pendingHits;
+
+        // Created on the first recycle from another thread.
+        private volatile Queue<MagazineHandle<?>> returnQueue;
+
+        Magazines(Recycler<T> parent, Thread thread, int maxCapacity, int maxSharedCapacityFactor, int ratioMask) {
+            this.parent = parent;
+            threadRef = new WeakReference<Thread>(thread);
+            magazineSize = min(MAGAZINE_SIZE, maxCapacity);
+            int maxMagazines = maxCapacity / magazineSize;
+            hasPrevious = maxMagazines > 1;
+            full = new MagazineHandle[max(0, maxMagazines - 2)][];
+            returnQueueCapacity = max(maxCapacity / maxSharedCapacityFactor, magazineSize);
+            this.ratioMask = ratioMask;
+            loaded = new MagazineHandle[magazineSize];
+        }
+
+        int capacity() {
+            return (full.length + (hasPrevious ? 2 : 1)) * magazineSize;
+        }
+
+        int size() {
+            return loadedSize + previousSize + fullCount * magazineSize;
+        }
+
+        @SuppressWarnings("unchecked")
+        MagazineHandle<T> pop() {
+            if (loadedSize == 0 && !reload()) {
+                return null;
+            }
+            int size = --loadedSize;
+            MagazineHandle<T> ret = (MagazineHandle<T>) loaded[size];
+            loaded[size] = null;
+            ret.recycled = false;
+            if (++pendingHits == HIT_FLUSH_THRESHOLD) {
+                parent.hits.add(pendingHits);
+                pendingHits = 0;
+            }
+            return ret;
+        }
+
+        private boolean reload() {
+            if (previousSize != 0) {
+                swapMagazines();
+                return true;
+            }
+            if (fullCount != 0) {
+                // The empty loaded magazine becomes the previous one, so the next push does not need to allocate.
+                previous = loaded;
+                loaded = full[--fullCount];
+                full[fullCount] = null;
+                loadedSize = magazineSize;
+                return true;
+            }
+            return transfer();
+        }
+
+        // Fill the loaded magazine from the return queue, returning true if any objects were transferred.
+        private boolean transfer() {
+            Queue<MagazineHandle<?>> queue = returnQueue;
+            if (queue == null) {
+                return false;
+            }
+            MagazineHandle<?>[] loaded = this.loaded;
+            int size = 0;
+            while (size < magazineSize) {
+                MagazineHandle<?> handle = queue.poll();
+                if (handle == null) {
+                    break;
+                }
+                if (dropHandle(handle)) {
+                    // Drop the object.
+                    parent.drops.increment();
+                    continue;
+                }
+                loaded[size ++] = handle;
+            }
+            loadedSize = size;
+            return size != 0;
+        }
+
+        void push(MagazineHandle<?> handle) {
+            if (handle.recycled) {
+                throw new IllegalStateException("recycled already");
+            }
+            handle.recycled = true;
+
+            Thread owner = threadRef.get();
+            if (owner == Thread.currentThread()) {
+                pushNow(handle);
+            } else if (owner == null) {
+                // The owner is gone, there is no one left to drain the return queue.
+                parent.drops.increment();
+            } else {
+                pushLater(handle);
+            }
+        }
+
+        private void pushNow(MagazineHandle<?> handle) {
+            if (dropHandle(handle)) {
+                // Drop the object.
+                parent.drops.increment();
+                return;
+            }
+            if (loadedSize == magazineSize) {
+                if (hasPrevious && previousSize == 0) {
+                    if (previous == null) {
+                        previous = new MagazineHandle[magazineSize];
+                    }
+                    swapMagazines();
+                } else if (fullCount < full.length) {
+                    full[fullCount ++] = previous;
+                    previous = loaded;
+                    previousSize = magazineSize;
+                    loaded = new MagazineHandle[magazineSize];
+                    loadedSize = 0;
+                } else {
+                    // Hit the maximum capacity - drop the possibly youngest object.
+                    parent.drops.increment();
+                    return;
+                }
+            }
+            loaded[loadedSize ++] = handle;
+        }
+
+        private void pushLater(MagazineHandle<?> handle) {
+            Queue<MagazineHandle<?>> queue = returnQueue;
+            if (queue == null) {
+                queue = newReturnQueue();
+            }
+            if (!queue.offer(handle)) {
+                // The owner does not keep up, drop the object instead of letting the queue grow.
+                parent.drops.increment();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Queue<MagazineHandle<?>> newReturnQueue() {
+            Queue<MagazineHandle<?>> queue = PlatformDependent.newFixedMpscQueue(returnQueueCapacity);
+            if (!RETURN_QUEUE_UPDATER.compareAndSet(this, null, queue)) {
+                queue = returnQueue;
+            }
+            return queue;
+        }
+
+        private void swapMagazines() {
+            MagazineHandle<?>[] magazine = loaded;
+            loaded = previous;
+            previous = magazine;
+            int size = loadedSize;
+            loadedSize = previousSize;
+            previousSize = size;
+        }
+
+        private boolean dropHandle(MagazineHandle<?> handle) {
+            if (!handle.hasBeenRecycled) {
+                if ((++handleRecycleCount & ratioMask) != 0) {
+                    // Drop the object.
+                    return true;
+                }
+                handle.hasBeenRecycled = true;
+            }
+            return false;
+        }
+
+        MagazineHandle<T> newHandle() {
+            return new MagazineHandle<T>(this);
+        }
+    }
 }
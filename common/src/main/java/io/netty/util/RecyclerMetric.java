@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+/**
+ * Metrics of a {@link Recycler}. Hits are counted per thread and published in small batches, so the value of
+ * {@link #hits()} may lag behind a little. Misses and drops are only counted if the magazine backend is used, which
+ * is enabled via {@code -Dio.netty.recycler.magazines=true}.
+ */
+public interface RecyclerMetric {
+
+    /**
+     * Returns the number of {@link Recycler#get()} calls that were served by a pooled object.
+     */
+    long hits();
+
+    /**
+     * Returns the number of {@link Recycler#get()} calls that had to create a new object.
+     */
+    long misses();
+
+    /**
+     * Returns the number of recycled objects that were dropped instead of being pooled, either because the pool
+     * was full or to limit its growth.
+     */
+    long drops();
+}
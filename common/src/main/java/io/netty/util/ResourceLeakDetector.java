@@ -17,6 +17,7 @@
 package io.netty.util;
 
 import io.netty.util.internal.EmptyArrays;
+import io.netty.util.internal.LongCounter;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
 import io.netty.util.internal.logging.InternalLogger;
@@ -26,7 +27,10 @@ import java.lang.ref.WeakReference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
@@ -52,6 +56,17 @@ public class ResourceLeakDetector<T> {
 
     private static final int TARGET_RECORDS;
 
+    private static final String PROP_SAMPLING_INTERVAL = "io.netty.leakDetection.samplingInterval";
+    // There is a minor performance benefit in TLR if this is a power of 2.
+    private static final int DEFAULT_DEFAULT_SAMPLING_INTERVAL = 128;
+
+    static final int DEFAULT_SAMPLING_INTERVAL;
+
+    private static final String PROP_MAX_ALLOCATION_SITES = "io.netty.leakDetection.maxAllocationSites";
+    private static final int DEFAULT_MAX_ALLOCATION_SITES = 0;
+
+    private static final int MAX_ALLOCATION_SITES;
+
     /**
      * Represents the level of resource leak detection.
      */
@@ -119,17 +134,20 @@ public class ResourceLeakDetector<T> {
         Level level = Level.parseLevel(levelStr);
 
         TARGET_RECORDS = SystemPropertyUtil.getInt(PROP_TARGET_RECORDS, DEFAULT_TARGET_RECORDS);
+        DEFAULT_SAMPLING_INTERVAL = Math.max(1,
+                SystemPropertyUtil.getInt(PROP_SAMPLING_INTERVAL, DEFAULT_DEFAULT_SAMPLING_INTERVAL));
+        MAX_ALLOCATION_SITES = Math.max(0,
+                SystemPropertyUtil.getInt(PROP_MAX_ALLOCATION_SITES, DEFAULT_MAX_ALLOCATION_SITES));
 
         ResourceLeakDetector.level = level;
         if (logger.isDebugEnabled()) {
             logger.debug("-D{}: {}", PROP_LEVEL, level.name().toLowerCase());
             logger.debug("-D{}: {}", PROP_TARGET_RECORDS, TARGET_RECORDS);
+            logger.debug("-D{}: {}", PROP_SAMPLING_INTERVAL, DEFAULT_SAMPLING_INTERVAL);
+            logger.debug("-D{}: {}", PROP_MAX_ALLOCATION_SITES, MAX_ALLOCATION_SITES);
         }
     }
 
-    // There is a minor performance benefit in TLR if this is a power of 2.
-    static final int DEFAULT_SAMPLING_INTERVAL = 128;
-
     /**
      * @deprecated Use {@link #setLevel(Level)} instead.
      */
@@ -171,6 +189,35 @@ public class ResourceLeakDetector<T> {
     private final String resourceType;
     private final int samplingInterval;
 
+    private final LongCounter sampledResources = PlatformDependent.newLongCounter();
+    private final LongCounter leaks = PlatformDependent.newLongCounter();
+    // Number of leaks per allocation site, null if every leak is reported on its own.
+    private final ConcurrentMap<String, LongCounter> leaksBySite;
+    private final int maxAllocationSites;
+    private final ResourceLeakDetectorMetric metric = new ResourceLeakDetectorMetric() {
+        @Override
+        public long sampledResources() {
+            return sampledResources.value();
+        }
+
+        @Override
+        public long leaks() {
+            return leaks.value();
+        }
+
+        @Override
+        public Map<String, Long> leaksByAllocationSite() {
+            if (leaksBySite == null) {
+                return Collections.emptyMap();
+            }
+            Map<String, Long> snapshot = new HashMap<String, Long>(leaksBySite.size());
+            for (Map.Entry<String, LongCounter> entry : leaksBySite.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().value());
+            }
+            return Collections.unmodifiableMap(snapshot);
+        }
+    };
+
     /**
      * @deprecated use {@link ResourceLeakDetectorFactory#newResourceLeakDetector(Class, int, long)}.
      */
@@ -218,12 +265,25 @@ public class ResourceLeakDetector<T> {
      */
     @Deprecated
     public ResourceLeakDetector(String resourceType, int samplingInterval, long maxActive) {
+        this(resourceType, samplingInterval, MAX_ALLOCATION_SITES);
+    }
+
+    ResourceLeakDetector(String resourceType, int samplingInterval, int maxAllocationSites) {
         if (resourceType == null) {
             throw new NullPointerException("resourceType");
         }
 
         this.resourceType = resourceType;
         this.samplingInterval = samplingInterval;
+        this.maxAllocationSites = maxAllocationSites;
+        leaksBySite = maxAllocationSites > 0 ? PlatformDependent.<String, LongCounter>newConcurrentHashMap() : null;
+    }
+
+    /**
+     * Returns a {@link ResourceLeakDetectorMetric} for this {@link ResourceLeakDetector}.
+     */
+    public final ResourceLeakDetectorMetric metric() {
+        return metric;
     }
 
     /**
@@ -259,11 +319,13 @@ public class ResourceLeakDetector<T> {
         if (level.ordinal() < Level.PARANOID.ordinal()) {
             if ((PlatformDependent.threadLocalRandom().nextInt(samplingInterval)) == 0) {
                 reportLeak();
+                sampledResources.increment();
                 return new DefaultResourceLeak(obj, refQueue, allLeaks);
             }
             return null;
         }
         reportLeak();
+        sampledResources.increment();
         return new DefaultResourceLeak(obj, refQueue, allLeaks);
     }
 
@@ -274,11 +336,17 @@ public class ResourceLeakDetector<T> {
             if (ref == null) {
                 break;
             }
-            ref.dispose();
+            if (ref.dispose()) {
+                leaks.increment();
+            }
         }
     }
 
     private void reportLeak() {
+        if (leaksBySite != null) {
+            aggregateLeaks();
+            return;
+        }
         if (!logger.isErrorEnabled()) {
             clearRefQueue();
             return;
@@ -295,6 +363,7 @@ public class ResourceLeakDetector<T> {
             if (!ref.dispose()) {
                 continue;
             }
+            leaks.increment();
 
             String records = ref.toString();
             if (reportedLeaks.putIfAbsent(records, Boolean.TRUE) == null) {
@@ -307,6 +376,58 @@ public class ResourceLeakDetector<T> {
         }
     }
 
+    /**
+     * Counts previous leaks by the stack trace of their allocation, so only the first leak of each allocation site is
+     * logged. The number of allocation sites is bounded, leaks of other sites are only counted in total.
+     */
+    private void aggregateLeaks() {
+        for (;;) {
+            @SuppressWarnings("unchecked")
+            DefaultResourceLeak ref = (DefaultResourceLeak) refQueue.poll();
+            if (ref == null) {
+                break;
+            }
+
+            if (!ref.dispose()) {
+                continue;
+            }
+            leaks.increment();
+
+            String site = ref.allocationSite();
+            if (site == null) {
+                continue;
+            }
+            LongCounter counter = leaksBySite.get(site);
+            if (counter == null) {
+                // The size check and the insert are not atomic, so concurrent reports may overshoot the bound a bit.
+                if (leaksBySite.size() >= maxAllocationSites) {
+                    continue;
+                }
+                LongCounter newCounter = PlatformDependent.newLongCounter();
+                counter = leaksBySite.putIfAbsent(site, newCounter);
+                if (counter == null) {
+                    counter = newCounter;
+                    if (logger.isErrorEnabled()) {
+                        reportAllocationSite(resourceType, site);
+                    }
+                }
+            }
+            counter.increment();
+        }
+    }
+
+    /**
+     * This method is called when the first leak of an allocation site is detected while leaks are aggregated by
+     * allocation site. Later leaks of the same site are only counted, see {@link #metric()}.
+     */
+    protected void reportAllocationSite(String resourceType, String site) {
+        logger.error(
+                "LEAK: {}.release() was not called before it's garbage-collected. Further leaks of resources " +
+                "allocated at the same site are only counted, see {}.metric(). " +
+                "See http://netty.io/wiki/reference-counted-objects.html for more information.{}Created at:{}{}",
+                resourceType, simpleClassName(this), NEWLINE, NEWLINE, site);
+    }
+
     /**
      * This method is called when a traced leak is detected. It can be overridden for tracking how many times leaks
      * have been detected.
@@ -472,6 +593,21 @@ public class ResourceLeakDetector<T> {
             return close() && trackedObject != null;
         }
 
+        /**
+         * Returns the stack trace of the allocation of the leaked resource, or {@code null} if already closed.
+         */
+        String allocationSite() {
+            Record oldHead = headUpdater.getAndSet(this, null);
+            if (oldHead == null) {
+                // Already closed
+                return null;
+            }
+            while (oldHead.next != Record.BOTTOM) {
+                oldHead = oldHead.next;
+            }
+            return oldHead.toString();
+        }
+
         @Override
         public String toString() {
             Record oldHead = headUpdater.getAndSet(this, null);
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import java.util.Map;
+
+/**
+ * Metrics of a {@link ResourceLeakDetector}. Leaks are only detected for sampled resources, so the numbers
+ * describe the sample and not every tracked resource.
+ */
+public interface ResourceLeakDetectorMetric {
+
+    /**
+     * Returns the number of resources that were sampled and are, or were, watched for leaks.
+     */
+    long sampledResources();
+
+    /**
+     * Returns the number of leaks that were detected so far.
+     */
+    long leaks();
+
+    /**
+     * Returns a snapshot of the number of leaks per allocation site, keyed by the stack trace of the allocation.
+     * This is empty unless leaks are aggregated by allocation site, see
+     * {@code -Dio.netty.leakDetection.maxAllocationSites}.
+     * Leaks from allocation sites that did not fit into the bounded table are only included in {@link #leaks()}.
+     */
+    Map<String, Long> leaksByAllocationSite();
+}
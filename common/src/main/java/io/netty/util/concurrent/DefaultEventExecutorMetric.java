@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * An {@link EventExecutorMetric} which records into {@link LatencyHistogram}s, so it can be read from any thread
+ * while the executor records into it.
+ */
+@UnstableApi
+public class DefaultEventExecutorMetric implements EventExecutorMetric {
+
+    private final SingleThreadEventExecutor executor;
+    private final LatencyHistogram taskQueueLatency = new LatencyHistogram();
+
+    public DefaultEventExecutorMetric(SingleThreadEventExecutor executor) {
+        this.executor = ObjectUtil.checkNotNull(executor, "executor");
+    }
+
+    /**
+     * Returns the number of tasks that are pending for processing.
+     *
+     * @see SingleThreadEventExecutor#pendingTasks()
+     */
+    public int pendingTasks() {
+        return executor.pendingTasks();
+    }
+
+    /**
+     * Returns the time tasks spent in the task queue before they were run.
+     *
+     * @see #recordTaskQueueLatency(long)
+     */
+    public LatencyHistogram taskQueueLatency() {
+        return taskQueueLatency;
+    }
+
+    @Override
+    public void recordTaskQueueLatency(long nanos) {
+        taskQueueLatency.record(nanos);
+    }
+}
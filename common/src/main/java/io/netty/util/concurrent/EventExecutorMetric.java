@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Records the metrics of a {@link SingleThreadEventExecutor}. An instance is created for each executor by the
+ * {@link EventExecutorMetricFactory}, and nothing is measured if there is none. The methods are called by the thread
+ * of the executor, so implementations must neither block nor allocate if the executor should not be slowed down.
+ *
+ * @see DefaultEventExecutorMetric
+ */
+@UnstableApi
+public interface EventExecutorMetric {
+
+    /**
+     * Records the time a task spent in the task queue before it was run. To not add any work per task, only one task
+     * is measured at a time, which is the next task added after the previous measured one was run.
+     */
+    void recordTaskQueueLatency(long nanos);
+}
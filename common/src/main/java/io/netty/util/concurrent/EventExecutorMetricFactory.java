@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Creates the {@link EventExecutorMetric} of each {@link SingleThreadEventExecutor}. There is no factory by default,
+ * so no metrics are recorded. {@code -Dio.netty.eventexecutor.metrics=true} installs {@link #DEFAULT}, or another
+ * factory can be set via {@link #setInstance(EventExecutorMetricFactory)}.
+ */
+@UnstableApi
+public abstract class EventExecutorMetricFactory {
+
+    /**
+     * Records the metrics into the {@link LatencyHistogram}s of a {@link DefaultEventExecutorMetric}, or of the
+     * sub-class returned by {@link SingleThreadEventExecutor#newDefaultMetric()}.
+     */
+    public static final EventExecutorMetricFactory DEFAULT = new EventExecutorMetricFactory() {
+        @Override
+        public EventExecutorMetric newMetric(SingleThreadEventExecutor executor) {
+            return executor.newDefaultMetric();
+        }
+    };
+
+    private static volatile EventExecutorMetricFactory factoryInstance =
+            SystemPropertyUtil.getBoolean("io.netty.eventexecutor.metrics", false) ? DEFAULT : null;
+
+    /**
+     * Returns the current factory, or {@code null} if no metrics are recorded.
+     */
+    public static EventExecutorMetricFactory instance() {
+        return factoryInstance;
+    }
+
+    /**
+     * Sets the factory which is used for all {@link SingleThreadEventExecutor}s created afterwards, or disables the
+     * metrics of those if {@code null}. Executors which were created before keep their metrics.
+     */
+    public static void setInstance(EventExecutorMetricFactory factory) {
+        factoryInstance = factory;
+    }
+
+    /**
+     * Returns a new {@link EventExecutorMetric} for the given executor, or {@code null} if its metrics should not be
+     * recorded. It is called by the constructor of the executor, so it must not be used before it was constructed.
+     * The {@link EventExecutorMetric} of an {@code EventLoop} also records its I/O if it implements
+     * {@code io.netty.channel.EventLoopMetric}.
+     */
+    public abstract EventExecutorMetric newMetric(SingleThreadEventExecutor executor);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A lock-free histogram of durations in nanoseconds. Values are counted in buckets whose upper bounds are powers of
+ * two, so {@link #record(long)} never allocates and percentiles are accurate up to a factor of two.
+ */
+@UnstableApi
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private static final AtomicLongFieldUpdater<LatencyHistogram> TOTAL_NANOS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LatencyHistogram.class, "totalNanos");
+    private static final AtomicLongFieldUpdater<LatencyHistogram> MAX_NANOS_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LatencyHistogram.class, "maxNanos");
+
+    // Bucket 0 counts 0ns, bucket i counts values in [2^(i-1), 2^i).
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    @SuppressWarnings("unused")
+    private volatile long totalNanos;
+    @SuppressWarnings("unused")
+    private volatile long maxNanos;
+
+    /**
+     * Records a duration. Negative values, which may be caused by {@link System#nanoTime()} not being monotonic on
+     * some platforms, are recorded as {@code 0}.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.getAndIncrement(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        TOTAL_NANOS_UPDATER.getAndAdd(this, nanos);
+        for (;;) {
+            long max = maxNanos;
+            if (nanos <= max || MAX_NANOS_UPDATER.compareAndSet(this, max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of all recorded durations in nanoseconds.
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the longest recorded duration in nanoseconds.
+     */
+    public long maxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Returns the number of buckets of this histogram.
+     */
+    public int buckets() {
+        return BUCKETS;
+    }
+
+    /**
+     * Returns the number of recorded durations which are less than {@link #bucketUpperBound(int)} of the bucket and
+     * at least the upper bound of the previous bucket.
+     */
+    public long bucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * Returns the exclusive upper bound of the durations counted by the bucket in nanoseconds.
+     */
+    public long bucketUpperBound(int bucket) {
+        if (bucket < 0 || bucket >= BUCKETS) {
+            throw new IndexOutOfBoundsException("bucket: " + bucket + " (expected: 0-" + (BUCKETS - 1) + ')');
+        }
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Returns the upper bound of the bucket which contains the duration at the given percentile in nanoseconds, or
+     * {@code 0} if nothing was recorded yet.
+     *
+     * @param percentile a value between {@code 0} and {@code 100}
+     */
+    public long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile: " + percentile + " (expected: 0-100)");
+        }
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+}
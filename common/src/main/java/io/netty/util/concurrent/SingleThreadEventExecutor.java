@@ -18,6 +18,7 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
@@ -78,6 +79,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     private static final AtomicReferenceFieldUpdater<SingleThreadEventExecutor, ThreadProperties> PROPERTIES_UPDATER =
             AtomicReferenceFieldUpdater.newUpdater(
                     SingleThreadEventExecutor.class, ThreadProperties.class, "threadProperties");
+    private static final AtomicReferenceFieldUpdater<SingleThreadEventExecutor, Runnable> SAMPLED_TASK_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(SingleThreadEventExecutor.class, Runnable.class, "sampledTask");
 
     private final Queue<Runnable> taskQueue;
 
@@ -92,6 +95,11 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
     private final boolean addTaskWakesUp;
     private final int maxPendingTasks;
     private final RejectedExecutionHandler rejectedExecutionHandler;
+    // null if metrics are disabled.
+    private final EventExecutorMetric metric;
+    // The task whose time in the task queue is measured, and the System.nanoTime() it was added at.
+    private volatile Runnable sampledTask;
+    private volatile long sampledTaskTime;
 
     private long lastExecutionTime;
 
@@ -164,6 +172,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         this.executor = ObjectUtil.checkNotNull(executor, "executor");
         taskQueue = newTaskQueue(this.maxPendingTasks);
         rejectedExecutionHandler = ObjectUtil.checkNotNull(rejectedHandler, "rejectedHandler");
+        EventExecutorMetricFactory metricFactory = EventExecutorMetricFactory.instance();
+        metric = metricFactory == null ? null : metricFactory.newMetric(this);
     }
 
     /**
@@ -201,7 +211,9 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      */
     protected Runnable pollTask() {
         assert inEventLoop();
-        return pollTaskFrom(taskQueue);
+        Runnable task = pollTaskFrom(taskQueue);
+        recordTaskQueueLatency(task);
+        return task;
     }
 
     protected static Runnable pollTaskFrom(Queue<Runnable> taskQueue) {
@@ -242,6 +254,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 } catch (InterruptedException e) {
                     // Ignore
                 }
+                recordTaskQueueLatency(task);
                 return task;
             } else {
                 long delayNanos = scheduledTask.delayNanos();
@@ -264,6 +277,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 }
 
                 if (task != null) {
+                    recordTaskQueueLatency(task);
                     return task;
                 }
             }
@@ -310,6 +324,25 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         return taskQueue.size();
     }
 
+    /**
+     * Returns the {@link EventExecutorMetric} which the {@link EventExecutorMetricFactory} created for this executor,
+     * or {@code null} if metrics are disabled.
+     */
+    @UnstableApi
+    public EventExecutorMetric metric() {
+        return metric;
+    }
+
+    /**
+     * Returns a new {@link DefaultEventExecutorMetric} for this executor, which is used by
+     * {@link EventExecutorMetricFactory#DEFAULT}. Sub-classes which record more metrics return a sub-class of it.
+     * This is called by the constructor, so an implementation must not access the fields of a sub-class.
+     */
+    @UnstableApi
+    protected DefaultEventExecutorMetric newDefaultMetric() {
+        return new DefaultEventExecutorMetric(this);
+    }
+
     /**
      * Add a task to the task queue, or throws a {@link RejectedExecutionException} if this instance was shutdown
      * before.
@@ -318,11 +351,42 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         if (task == null) {
             throw new NullPointerException("task");
         }
-        if (!offerTask(task)) {
+        if (metric != null && sampledTask == null) {
+            addSampledTask(task);
+        } else if (!offerTask(task)) {
             reject(task);
         }
     }
 
+    /**
+     * Adds the task and measures its time in the task queue, unless another thread just started to measure the time of
+     * its own task.
+     */
+    private void addSampledTask(Runnable task) {
+        // Set before the task is added, so the task queue publishes it to the executor thread.
+        sampledTaskTime = System.nanoTime();
+        boolean sampled = SAMPLED_TASK_UPDATER.compareAndSet(this, null, task);
+        boolean added = false;
+        try {
+            added = offerTask(task);
+        } finally {
+            if (sampled && !added) {
+                sampledTask = null;
+            }
+        }
+        if (!added) {
+            reject(task);
+        }
+    }
+
+    private void recordTaskQueueLatency(Runnable task) {
+        EventExecutorMetric metric = this.metric;
+        if (metric != null && task != null && task == sampledTask) {
+            metric.recordTaskQueueLatency(System.nanoTime() - sampledTaskTime);
+            sampledTask = null;
+        }
+    }
+
     final boolean offerTask(Runnable task) {
         if (isShutdown()) {
             reject();
@@ -337,7 +401,14 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         if (task == null) {
             throw new NullPointerException("task");
         }
-        return taskQueue.remove(task);
+        if (!taskQueue.remove(task)) {
+            return false;
+        }
+        if (metric != null) {
+            // Do not wait for a task which will not be run anymore.
+            SAMPLED_TASK_UPDATER.compareAndSet(this, task, null);
+        }
+        return true;
     }
 
     /**
@@ -377,6 +448,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             return false;
         }
         for (;;) {
+            recordTaskQueueLatency(task);
             safeExecute(task);
             task = pollTaskFrom(taskQueue);
             if (task == null) {
@@ -777,7 +849,6 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 reject();
             }
         }
-
         if (!addTaskWakesUp && wakesUpForTask(task)) {
             wakeup(inEventLoop);
         }
@@ -885,6 +956,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
             @Override
             public void run() {
                 thread = Thread.currentThread();
+                ThreadExecutorMap.setCurrentEventExecutor(SingleThreadEventExecutor.this);
                 if (interrupted) {
                     thread.interrupt();
                 }
@@ -416,6 +416,21 @@ public final class PlatformDependent {
         return PlatformDependent0.getInt(address);
     }
 
+    /**
+     * Reads the {@code int} at the given native memory address with volatile semantics.
+     */
+    public static int getIntVolatile(long address) {
+        return PlatformDependent0.getIntVolatile(address);
+    }
+
+    /**
+     * Stores the {@code int} at the given native memory address using an ordered (lazy) write, so that all previous
+     * stores are visible before this one.
+     */
+    public static void putIntOrdered(long address, int newValue) {
+        PlatformDependent0.putIntOrdered(address, newValue);
+    }
+
     public static long getLong(long address) {
         return PlatformDependent0.getLong(address);
     }
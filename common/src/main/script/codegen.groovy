@@ -15,6 +15,21 @@ void convertSources(String templateDir, String outputDir) {
     keyPrimitives.eachWithIndex { keyPrimitive, i ->
         convertTemplates templateDir, outputDir, keyPrimitive, keyObjects[i], keyNumberMethod[i]
     }
+
+    // Primitive to primitive maps, only generated for the key and value types which are commonly used.
+    String[] keyValuePrimitives = ["int", "long"]
+    String[] keyValueObjects = ["Integer", "Long"]
+
+    keyValuePrimitives.eachWithIndex { keyPrimitive, i ->
+        keyValuePrimitives.eachWithIndex { valuePrimitive, j ->
+            convertKeyValueTemplates templateDir, outputDir, keyPrimitive, keyValueObjects[i],
+                                     valuePrimitive, keyValueObjects[j]
+        }
+    }
+}
+
+String hashCodeFunction(String primitive, String variable) {
+    return primitive.equals("long") ? "(int) (" + variable + " ^ (" + variable + " >>> 32))" : "(int) " + variable
 }
 
 void convertTemplates(String templateDir,
@@ -25,10 +40,12 @@ void convertTemplates(String templateDir,
     def keyName = keyPrimitive.capitalize()
     def replaceFrom = "(^.*)K([^.]+)\\.template\$"
     def replaceTo = "\\1" + keyName + "\\2.java"
-    def hashCodeFn = keyPrimitive.equals("long") ? "(int) (key ^ (key >>> 32))" : "(int) key"
+    def hashCodeFn = hashCodeFunction(keyPrimitive, "key")
     ant.copy(todir: outputDir) {
         fileset(dir: templateDir) {
             include(name: "**/*.template")
+            // Handled by convertKeyValueTemplates
+            exclude(name: "**/KV*.template")
         }
         filterset() {
             filter(token: "K", value: keyName)
@@ -39,4 +56,32 @@ void convertTemplates(String templateDir,
         }
         regexpmapper(from: replaceFrom, to: replaceTo)
     }
-}
\ No newline at end of file
+}
+
+void convertKeyValueTemplates(String templateDir,
+                              String outputDir,
+                              String keyPrimitive,
+                              String keyObject,
+                              String valuePrimitive,
+                              String valueObject) {
+    def keyName = keyPrimitive.capitalize()
+    def valueName = valuePrimitive.capitalize()
+    def replaceFrom = "(^.*)KV([^.]+)\\.template\$"
+    def replaceTo = "\\1" + keyName + valueName + "\\2.java"
+    ant.copy(todir: outputDir) {
+        fileset(dir: templateDir) {
+            include(name: "**/KV*.template")
+        }
+        filterset() {
+            filter(token: "K", value: keyName)
+            filter(token: "k", value: keyPrimitive)
+            filter(token: "O", value: keyObject)
+            filter(token: "V", value: valueName)
+            filter(token: "v", value: valuePrimitive)
+            filter(token: "VO", value: valueObject)
+            filter(token: "HASH_CODE", value: hashCodeFunction(keyPrimitive, "key"))
+            filter(token: "VALUE_HASH_CODE", value: hashCodeFunction(valuePrimitive, "value"))
+        }
+        regexpmapper(from: replaceFrom, to: replaceTo)
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HierarchicalWheelTimerTest {
+
+    private static final TimerTask NO_OP = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+        }
+    };
+
+    @Test
+    public void testScheduleTimeoutShouldRunAfterDelay() throws InterruptedException {
+        final HierarchicalWheelTimer timer = new HierarchicalWheelTimer(10, TimeUnit.MILLISECONDS);
+        final CountDownLatch barrier = new CountDownLatch(1);
+        final Timeout timeout = timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                barrier.countDown();
+            }
+        }, 100, TimeUnit.MILLISECONDS);
+        assertTrue(barrier.await(3, TimeUnit.SECONDS));
+        assertTrue("timer should expire", timeout.isExpired());
+        assertEquals(0, timer.pendingTimeouts());
+        timer.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void testTimeoutsAcrossWheelsShouldNotRunBeforeDelay() throws InterruptedException {
+        // 2 wheels of 4 slots cover 16 ticks, so most timeouts have to be cascaded or go through the overflow list.
+        final HierarchicalWheelTimer timer = new HierarchicalWheelTimer(
+                Executors.defaultThreadFactory(), 1, TimeUnit.MILLISECONDS, 4, 2);
+        final int count = 100;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i ++) {
+            final long delay = i * 7 % 200;
+            final long start = System.nanoTime();
+            timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) {
+                    // Allow for the rounding of the sleep time of the worker.
+                    if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay - 1)) {
+                        early.incrementAndGet();
+                    }
+                    latch.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        latch.await();
+        assertEquals(0, early.get());
+        assertEquals(0, timer.pendingTimeouts());
+        timer.stop();
+    }
+
+    @Test
+    public void testCancelShouldUnlinkImmediately() throws InterruptedException {
+        final HierarchicalWheelTimer timer = new HierarchicalWheelTimer();
+        final CountDownLatch barrier = new CountDownLatch(1);
+        final Timeout timeout = timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                barrier.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        assertEquals(1, timer.pendingTimeouts());
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(0, timer.pendingTimeouts());
+        assertFalse(timeout.cancel());
+        assertFalse(barrier.await(1, TimeUnit.SECONDS));
+        assertEquals(0, timer.stop().size());
+    }
+
+    @Test(timeout = 3000)
+    public void testStopTimer() {
+        final HierarchicalWheelTimer timer = new HierarchicalWheelTimer();
+        for (int i = 0; i < 5; i ++) {
+            timer.newTimeout(NO_OP, 10, TimeUnit.SECONDS);
+        }
+        // Goes to the overflow list.
+        timer.newTimeout(NO_OP, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        Set<Timeout> unprocessed = timer.stop();
+        assertEquals("Number of unprocessed timeouts should be 6", 6, unprocessed.size());
+        for (Timeout timeout : unprocessed) {
+            assertTrue(timeout.cancel());
+        }
+        try {
+            timer.newTimeout(NO_OP, 1, TimeUnit.MILLISECONDS);
+            fail("Expected exception didn't occur.");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRejectedExecutionExceptionWhenTooManyTimeoutsAreAddedBackToBack() {
+        HierarchicalWheelTimer timer = new HierarchicalWheelTimer(Executors.defaultThreadFactory(), 100,
+                TimeUnit.MILLISECONDS, 32, 2, true, 2);
+        timer.newTimeout(NO_OP, 5, TimeUnit.SECONDS);
+        Timeout timeout = timer.newTimeout(NO_OP, 5, TimeUnit.SECONDS);
+        try {
+            timer.newTimeout(NO_OP, 1, TimeUnit.MILLISECONDS);
+            fail("Timer allowed adding 3 timeouts when maxPendingTimeouts was 2");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        // Cancelling frees up a slot straight away.
+        timeout.cancel();
+        timer.newTimeout(NO_OP, 1, TimeUnit.MILLISECONDS);
+        timer.stop();
+    }
+
+    @Test
+    public void testTickLagShouldNotBeNegative() throws InterruptedException {
+        final HierarchicalWheelTimer timer = new HierarchicalWheelTimer(1, TimeUnit.MILLISECONDS);
+        final CountDownLatch barrier = new CountDownLatch(1);
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) throws Exception {
+                barrier.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(barrier.await(3, TimeUnit.SECONDS));
+        assertTrue(timer.tickLagNanos() >= 0);
+        assertTrue(timer.maxTickLagNanos() >= timer.tickLagNanos());
+        timer.stop();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyWheels() {
+        new HierarchicalWheelTimer(Executors.defaultThreadFactory(), 100, TimeUnit.MILLISECONDS, 1 << 16, 4);
+    }
+}
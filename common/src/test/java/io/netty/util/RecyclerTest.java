@@ -17,7 +17,10 @@ package io.netty.util;
 
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -245,6 +248,114 @@ public class RecyclerTest {
                 " internally", array.length - maxCapacity / 2 <= instancesCount.get());
     }
 
+    private static Recycler<HandledObject> newMagazineRecycler(int max, int maxSharedCapacityFactor) {
+        return new Recycler<HandledObject>(max, maxSharedCapacityFactor, 1, 0, true) {
+            @Override
+            protected HandledObject newObject(Recycler.Handle<HandledObject> handle) {
+                return new HandledObject(handle);
+            }
+        };
+    }
+
+    @Test
+    public void testMagazineRecycle() {
+        Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2);
+        HandledObject object = recycler.get();
+        object.recycle();
+        HandledObject object2 = recycler.get();
+        assertSame(object, object2);
+        object2.recycle();
+        assertEquals(1, recycler.metric().misses());
+        assertEquals(0, recycler.metric().drops());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMagazineMultipleRecycle() {
+        Recycler<HandledObject> recycler = newMagazineRecycler(1024, 2);
+        HandledObject object = recycler.get();
+        object.recycle();
+        object.recycle();
+    }
+
+    @Test
+    public void testMagazineMaxCapacity() {
+        final int maxCapacity = 300;
+        Recycler<HandledObject> recycler = newMagazineRecycler(maxCapacity, 2);
+        HandledObject[] objects = new HandledObject[maxCapacity * 3];
+        for (int i = 0; i < objects.length; i++) {
+            objects[i] = recycler.get();
+        }
+        for (HandledObject object : objects) {
+            object.recycle();
+        }
+
+        assertTrue(recycler.threadLocalCapacity() <= maxCapacity);
+        assertEquals(recycler.threadLocalCapacity(), recycler.threadLocalSize());
+        assertEquals(objects.length - recycler.threadLocalSize(), recycler.metric().drops());
+
+        // Everything that was pooled is handed out again, in the reverse order it was recycled.
+        for (int i = recycler.threadLocalSize() - 1; i >= 0; i--) {
+            assertSame(objects[i], recycler.get());
+        }
+        assertEquals(0, recycler.threadLocalSize());
+        assertEquals(objects.length, recycler.metric().misses());
+    }
+
+    @Test
+    public void testMagazineRecycleAtDifferentThread() throws Exception {
+        final Recycler<HandledObject> recycler = newMagazineRecycler(256, 2);
+        final HandledObject o = recycler.get();
+        final HandledObject o2 = recycler.get();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                o.recycle();
+                o2.recycle();
+            }
+        };
+        thread.start();
+        thread.join();
+
+        // Both objects are transferred as one batch.
+        assertSame(o2, recycler.get());
+        assertEquals(1, recycler.threadLocalSize());
+        assertSame(o, recycler.get());
+        assertNotSame(o, recycler.get());
+    }
+
+    @Test
+    public void testMagazineReturnQueueIsBounded() throws Exception {
+        final int maxCapacity = 256;
+        final Recycler<HandledObject> recycler = newMagazineRecycler(maxCapacity, 4);
+        final HandledObject[] array = new HandledObject[maxCapacity * 2];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = recycler.get();
+        }
+
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                for (HandledObject object : array) {
+                    object.recycle();
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        // Only maxCapacity / maxSharedCapacityFactor objects fit into the return queue.
+        assertEquals(array.length - maxCapacity / 4, recycler.metric().drops());
+        Set<HandledObject> recycled = Collections.newSetFromMap(new IdentityHashMap<HandledObject, Boolean>());
+        Collections.addAll(recycled, array);
+        int reused = 0;
+        for (int i = 0; i < array.length; i++) {
+            if (recycled.contains(recycler.get())) {
+                reused++;
+            }
+        }
+        assertEquals(maxCapacity / 4, reused);
+    }
+
     static final class HandledObject {
         Recycler.Handle<HandledObject> handle;
 
@@ -18,11 +18,15 @@ package io.netty.util;
 import org.junit.Test;
 
 import java.util.ArrayDeque;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.Assert.assertEquals;
+
 public class ResourceLeakDetectorTest {
 
     @Test(timeout = 60000)
@@ -95,6 +99,63 @@ public class ResourceLeakDetectorTest {
         assertNoErrors(error);
     }
 
+    @Test(timeout = 60000)
+    public void testLeaksAreAggregatedByAllocationSite() throws Exception {
+        ResourceLeakDetector.Level level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.SIMPLE);
+        try {
+            final AtomicInteger reportedSites = new AtomicInteger();
+            // Sample every allocation and keep at most 2 allocation sites.
+            ResourceLeakDetector<Object> detector = new ResourceLeakDetector<Object>("Object", 1, 2) {
+                @Override
+                protected void reportAllocationSite(String resourceType, String site) {
+                    reportedSites.incrementAndGet();
+                }
+            };
+            leakTwice(detector);
+            leakTwiceFromOtherSite(detector);
+            leakTwiceFromThirdSite(detector);
+            assertEquals(6, detector.metric().sampledResources());
+
+            while (detector.metric().leaks() < 6) {
+                System.gc();
+                Thread.sleep(10);
+                // Previous leaks are only detected when a new resource is tracked.
+                Object resource = new Object();
+                detector.track(resource).close(resource);
+            }
+
+            assertEquals(6, detector.metric().leaks());
+            // Once the table is full, leaks of new allocation sites are not aggregated.
+            Map<String, Long> leaksBySite = detector.metric().leaksByAllocationSite();
+            assertEquals(2, leaksBySite.size());
+            for (Long leaks: leaksBySite.values()) {
+                assertEquals(2, leaks.longValue());
+            }
+            assertEquals(2, reportedSites.get());
+        } finally {
+            ResourceLeakDetector.setLevel(level);
+        }
+    }
+
+    private static void leakTwice(ResourceLeakDetector<Object> detector) {
+        for (int i = 0; i < 2; i++) {
+            detector.track(new Object());
+        }
+    }
+
+    private static void leakTwiceFromOtherSite(ResourceLeakDetector<Object> detector) {
+        for (int i = 0; i < 2; i++) {
+            detector.track(new Object());
+        }
+    }
+
+    private static void leakTwiceFromThirdSite(ResourceLeakDetector<Object> detector) {
+        for (int i = 0; i < 2; i++) {
+            detector.track(new Object());
+        }
+    }
+
     // Mimic the way how we implement our classes that should help with leak detection
     private static final  class LeakAwareResource implements Resource {
         private final Resource resource;
@@ -156,6 +217,11 @@ public class ResourceLeakDetectorTest {
             reportError(new AssertionError("Leak reported for '" + resourceType + '\''));
         }
 
+        @Override
+        protected void reportAllocationSite(String resourceType, String site) {
+            reportError(new AssertionError("Leak reported for '" + resourceType + "':\n" + site));
+        }
+
         @Override
         protected void reportInstancesLeak(String resourceType) {
             reportError(new AssertionError("Leak reported for '" + resourceType + '\''));
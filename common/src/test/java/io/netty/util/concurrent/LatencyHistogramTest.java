@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.maxNanos());
+        assertEquals(0, histogram.valueAtPercentile(99));
+    }
+
+    @Test
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(1000);
+        histogram.record(1023);
+        histogram.record(1024);
+        histogram.record(-5);
+
+        assertEquals(6, histogram.count());
+        assertEquals(3048, histogram.totalNanos());
+        assertEquals(1024, histogram.maxNanos());
+        assertEquals(2, histogram.bucketCount(0));
+        assertEquals(1, histogram.bucketCount(1));
+        assertEquals(2, histogram.bucketCount(10));
+        assertEquals(1024, histogram.bucketUpperBound(10));
+        assertEquals(1, histogram.bucketCount(11));
+        assertEquals(Long.MAX_VALUE, histogram.bucketUpperBound(histogram.buckets() - 1));
+    }
+
+    @Test
+    public void testValueAtPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(1000000);
+
+        assertEquals(128, histogram.valueAtPercentile(50));
+        assertEquals(128, histogram.valueAtPercentile(99));
+        // The bucket upper bound is capped by the maximum.
+        assertEquals(1000000, histogram.valueAtPercentile(99.5));
+        assertEquals(1000000, histogram.valueAtPercentile(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyHistogram().valueAtPercentile(101);
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentRecord() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = 4;
+        final int records = 10000;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final long value = i + 1;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < records; j++) {
+                        histogram.record(value);
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+        latch.await();
+
+        assertEquals(threads * records, histogram.count());
+        assertEquals((1 + 2 + 3 + 4) * records, histogram.totalNanos());
+        assertEquals(4, histogram.maxNanos());
+    }
+}
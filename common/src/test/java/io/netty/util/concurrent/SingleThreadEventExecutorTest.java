@@ -15,12 +15,14 @@
  */
 package io.netty.util.concurrent;
 
+import io.netty.util.internal.ThreadExecutorMap;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -100,6 +102,96 @@ public class SingleThreadEventExecutorTest {
         executor.shutdownGracefully();
     }
 
+    @Test(timeout = 3000)
+    public void testCurrentExecutor() throws Exception {
+        SingleThreadEventExecutor executor = new SingleThreadEventExecutor(
+                null, new DefaultThreadFactory("test"), false) {
+            @Override
+            protected void run() {
+                while (!confirmShutdown()) {
+                    Runnable task = takeTask();
+                    if (task != null) {
+                        task.run();
+                    }
+                }
+            }
+        };
+        try {
+            EventExecutor current = executor.submit(new Callable<EventExecutor>() {
+                @Override
+                public EventExecutor call() {
+                    return ThreadExecutorMap.currentExecutor();
+                }
+            }).get();
+            Assert.assertSame(executor, current);
+            Assert.assertNull(ThreadExecutorMap.currentExecutor());
+        } finally {
+            executor.shutdownGracefully();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testTaskQueueLatencyIsRecorded() throws Exception {
+        EventExecutorMetricFactory factory = EventExecutorMetricFactory.instance();
+        EventExecutorMetricFactory.setInstance(EventExecutorMetricFactory.DEFAULT);
+        SingleThreadEventExecutor executor;
+        try {
+            executor = new DefaultEventExecutor();
+        } finally {
+            EventExecutorMetricFactory.setInstance(factory);
+        }
+        try {
+            DefaultEventExecutorMetric metric = (DefaultEventExecutorMetric) executor.metric();
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            started.await();
+
+            Runnable noop = new Runnable() {
+                @Override
+                public void run() {
+                    // Noop.
+                }
+            };
+            for (int i = 0; i < 3; i++) {
+                executor.execute(noop);
+            }
+            // Measuring the latency must not add tasks to the task queue.
+            Assert.assertEquals(3, metric.pendingTasks());
+
+            Thread.sleep(10);
+            release.countDown();
+            executor.submit(noop).sync();
+
+            // The blocking task and the first task which was added while it was running.
+            Assert.assertTrue(metric.taskQueueLatency().count() >= 2);
+            Assert.assertTrue(metric.taskQueueLatency().maxNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void testMetricDisabledWithoutFactory() {
+        EventExecutorMetricFactory factory = EventExecutorMetricFactory.instance();
+        EventExecutorMetricFactory.setInstance(null);
+        try {
+            Assert.assertNull(new DefaultEventExecutor().metric());
+        } finally {
+            EventExecutorMetricFactory.setInstance(factory);
+        }
+    }
+
     @Test(expected = RejectedExecutionException.class, timeout = 3000)
     public void testInvokeAnyInEventLoop() {
         testInvokeInEventLoop(true, false);
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.stream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.MappedFileByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.FileRegion;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link ChunkedInput} that maps a file into memory and returns slices of the mapping as chunks, so the contents
+ * of the file are never copied into an intermediate buffer.
+ * <p>
+ * Unlike a {@link FileRegion} the chunks are {@link MappedFileByteBuf} slices which can pass through handlers that
+ * need to read the bytes, like {@code SslHandler} or compression handlers. The file is mapped in regions of at most
+ * {@code mappingSize} bytes, which are unmapped once all of their chunks were released.
+ * <p>
+ * The file must not be truncated while the transfer is in progress.
+ */
+public class ChunkedMappedFile implements ChunkedInput<ByteBuf> {
+
+    static final int DEFAULT_MAPPING_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel in;
+    private final long startOffset;
+    private final long endOffset;
+    private final int chunkSize;
+    private final int mappingSize;
+    private long offset;
+    private MappedFileByteBuf mapping;
+    private long mappingOffset;
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     */
+    public ChunkedMappedFile(File in) throws IOException {
+        this(new FileInputStream(in).getChannel());
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     *
+     * @param chunkSize the number of bytes to fetch on each
+     *                  {@link #readChunk(ChannelHandlerContext)} call
+     */
+    public ChunkedMappedFile(File in, int chunkSize) throws IOException {
+        this(new FileInputStream(in).getChannel(), chunkSize);
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     */
+    public ChunkedMappedFile(FileChannel in) throws IOException {
+        this(in, ChunkedStream.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     *
+     * @param chunkSize the number of bytes to fetch on each
+     *                  {@link #readChunk(ChannelHandlerContext)} call
+     */
+    public ChunkedMappedFile(FileChannel in, int chunkSize) throws IOException {
+        this(in, 0, in.size(), chunkSize);
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     *
+     * @param offset the offset of the file where the transfer begins
+     * @param length the number of bytes to transfer
+     * @param chunkSize the number of bytes to fetch on each
+     *                  {@link #readChunk(ChannelHandlerContext)} call
+     */
+    public ChunkedMappedFile(FileChannel in, long offset, long length, int chunkSize) throws IOException {
+        this(in, offset, length, chunkSize, DEFAULT_MAPPING_SIZE);
+    }
+
+    /**
+     * Creates a new instance that fetches data from the specified file.
+     *
+     * @param offset the offset of the file where the transfer begins
+     * @param length the number of bytes to transfer
+     * @param chunkSize the number of bytes to fetch on each
+     *                  {@link #readChunk(ChannelHandlerContext)} call
+     * @param mappingSize the maximum number of bytes which are mapped into memory at once
+     */
+    public ChunkedMappedFile(FileChannel in, long offset, long length, int chunkSize, int mappingSize)
+            throws IOException {
+        if (in == null) {
+            throw new NullPointerException("in");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException(
+                    "offset: " + offset + " (expected: 0 or greater)");
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException(
+                    "length: " + length + " (expected: 0 or greater)");
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException(
+                    "chunkSize: " + chunkSize +
+                    " (expected: a positive integer)");
+        }
+        if (mappingSize < chunkSize) {
+            throw new IllegalArgumentException(
+                    "mappingSize: " + mappingSize +
+                    " (expected: greater than or equal to chunkSize " + chunkSize + ')');
+        }
+        // Mapping a region beyond the end of the file would not fail, but reading it would crash the JVM.
+        long size = in.size();
+        if (offset + length > size) {
+            throw new IllegalArgumentException(
+                    "offset: " + offset + ", length: " + length + " (expected: a region of the file with size " +
+                    size + ')');
+        }
+
+        this.in = in;
+        this.chunkSize = chunkSize;
+        this.mappingSize = mappingSize;
+        this.offset = startOffset = offset;
+        endOffset = offset + length;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer began.
+     */
+    public long startOffset() {
+        return startOffset;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer will end.
+     */
+    public long endOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Returns the offset in the file where the transfer is happening currently.
+     */
+    public long currentOffset() {
+        return offset;
+    }
+
+    @Override
+    public boolean isEndOfInput() throws Exception {
+        return !(offset < endOffset && in.isOpen());
+    }
+
+    @Override
+    public void close() throws Exception {
+        releaseMapping();
+        in.close();
+    }
+
+    @Deprecated
+    @Override
+    public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+        return readChunk(ctx.alloc());
+    }
+
+    @Override
+    public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+        long offset = this.offset;
+        if (offset >= endOffset) {
+            return null;
+        }
+
+        MappedFileByteBuf mapping = this.mapping;
+        if (mapping == null) {
+            int length = (int) Math.min(mappingSize, endOffset - offset);
+            this.mapping = mapping = new MappedFileByteBuf(allocator, in, offset, length);
+            mappingOffset = offset;
+        }
+
+        int index = (int) (offset - mappingOffset);
+        int chunkSize = Math.min(this.chunkSize, mapping.capacity() - index);
+        ByteBuf chunk = mapping.retainedSlice(index, chunkSize);
+        this.offset = offset + chunkSize;
+        if (index + chunkSize == mapping.capacity()) {
+            // The chunks which are still in flight keep the region mapped until they are released.
+            releaseMapping();
+        }
+        return chunk;
+    }
+
+    private void releaseMapping() {
+        if (mapping != null) {
+            mapping.release();
+            mapping = null;
+        }
+    }
+
+    @Override
+    public long length() {
+        return endOffset - startOffset;
+    }
+
+    @Override
+    public long progress() {
+        return offset - startOffset;
+    }
+}
@@ -32,6 +32,8 @@ import java.nio.channels.FileChannel;
  * If your operating system supports
  * <a href="http://en.wikipedia.org/wiki/Zero-copy">zero-copy file transfer</a>
  * such as {@code sendfile()}, you might want to use {@link FileRegion} instead.
+ * If the data has to pass through handlers which read it, {@link ChunkedMappedFile}
+ * avoids copying the file into buffers.
  */
 public class ChunkedNioFile implements ChunkedInput<ByteBuf> {
 
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Flushes many small messages and writes them with gathering writes like {@code NioSocketChannel} does, where the
+ * socket accepts at most {@code bytesPerWrite} bytes per write and so most writes are partial.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ChannelOutboundBufferBenchmark extends AbstractMicrobenchmark {
+
+    private static final int MAX_BYTES_PER_GATHERING_WRITE = Integer.MAX_VALUE;
+
+    @Param({ "16", "256" })
+    public int messagesPerFlush;
+
+    @Param({ "64" })
+    public int messageSize;
+
+    @Param({ "1024", "65536" })
+    public int bytesPerWrite;
+
+    private EmbeddedChannel channel;
+    private ChannelOutboundBuffer buffer;
+    private ByteBuf[] messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        channel = new EmbeddedChannel();
+        // Never change the writability, so no tasks are scheduled on the EmbeddedEventLoop.
+        channel.config().setWriteBufferHighWaterMark(Integer.MAX_VALUE);
+        buffer = new ChannelOutboundBuffer(channel);
+        messages = new ByteBuf[messagesPerFlush];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = Unpooled.directBuffer(messageSize).writeZero(messageSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        for (ByteBuf message : messages) {
+            message.release();
+        }
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public int flushAndWrite() {
+        ChannelPromise promise = channel.voidPromise();
+        for (ByteBuf message : messages) {
+            // Written messages are released by the ChannelOutboundBuffer.
+            buffer.addMessage(message.retain().readerIndex(0), messageSize, promise);
+        }
+        buffer.addFlush();
+
+        int writes = 0;
+        while (!buffer.isEmpty()) {
+            ByteBuffer[] nioBuffers = buffer.nioBuffers(1024, MAX_BYTES_PER_GATHERING_WRITE);
+            buffer.removeBytes(write(nioBuffers, buffer.nioBufferCount()));
+            writes++;
+        }
+        return writes;
+    }
+
+    private int write(ByteBuffer[] nioBuffers, int nioBufferCount) {
+        int written = 0;
+        for (int i = 0; i < nioBufferCount && written < bytesPerWrite; i++) {
+            ByteBuffer nioBuffer = nioBuffers[i];
+            int bytes = Math.min(nioBuffer.remaining(), bytesPerWrite - written);
+            nioBuffer.position(nioBuffer.position() + bytes);
+            written += bytes;
+        }
+        return written;
+    }
+}
@@ -16,29 +16,115 @@
 package io.netty.microbench.buffer;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 @State(Scope.Benchmark)
 @Warmup(iterations = 5)
 @Measurement(iterations = 10)
 @Threads(8)
 public class ByteBufAllocatorConcurrentBenchmark  extends AbstractMicrobenchmark {
 
-    private static final ByteBufAllocator unpooledAllocator = new UnpooledByteBufAllocator(true, true);
+    // The number of buffers every event loop allocates and releases per invocation of allocateReleaseOnEventLoops().
+    private static final int BATCH_SIZE = 1024;
+
+    public enum AllocatorType {
+        UNPOOLED, POOLED, POOLED_BOUND
+    }
 
     @Param({ "00064", "00256", "01024", "04096" })
     public int size;
 
+    @Param
+    public AllocatorType allocatorType;
+
+    @Param({ "8" })
+    public int eventLoops;
+
+    private ByteBufAllocator allocator;
+    private EventLoopGroup group;
+    private List<EventExecutor> executors;
+    private List<Callable<Boolean>> tasks;
+
+    @Setup
+    public void setup() {
+        switch (allocatorType) {
+            case UNPOOLED:
+                allocator = new UnpooledByteBufAllocator(true, true);
+                break;
+            case POOLED:
+            case POOLED_BOUND:
+                allocator = new PooledByteBufAllocator(true);
+                break;
+            default:
+                throw new Error();
+        }
+        group = new DefaultEventLoopGroup(eventLoops);
+        executors = new ArrayList<EventExecutor>(eventLoops);
+        tasks = new ArrayList<Callable<Boolean>>(eventLoops);
+        for (EventExecutor executor : group) {
+            final ByteBufAllocator alloc = allocatorType == AllocatorType.POOLED_BOUND ?
+                    ((PooledByteBufAllocator) allocator).boundAllocator(executor) : allocator;
+            executors.add(executor);
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    boolean released = true;
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        released &= alloc.directBuffer(size).release();
+                    }
+                    return released;
+                }
+            });
+        }
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        group.shutdownGracefully().sync();
+    }
+
+    /**
+     * Allocates from the benchmark threads, which {@link PooledByteBufAllocator#boundAllocator} serves out of the
+     * shared arenas.
+     */
     @Benchmark
     public boolean allocateRelease() {
-        return unpooledAllocator.directBuffer(size).release();
+        return allocator.directBuffer(size).release();
+    }
+
+    /**
+     * Allocates and releases {@link #BATCH_SIZE} buffers on every event loop at the same time.
+     */
+    @Benchmark
+    @Threads(1)
+    public boolean allocateReleaseOnEventLoops() throws Exception {
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(executors.size());
+        for (int i = 0; i < executors.size(); i++) {
+            futures.add(executors.get(i).submit(tasks.get(i)));
+        }
+        boolean released = true;
+        for (Future<Boolean> future : futures) {
+            released &= future.get();
+        }
+        return released;
     }
 }
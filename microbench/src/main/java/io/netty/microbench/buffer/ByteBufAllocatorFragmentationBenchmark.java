@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.CharsetUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.IterationParams;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Random;
+
+/**
+ * Variant of {@link ByteBufAllocatorBenchmark} which allocates buffers with random sizes out of a range and keeps
+ * them alive for a while, so the pooled memory gets fragmented. Besides the throughput it reports how much of the
+ * memory which is used by the pool is wasted and the resident set size of the process.
+ */
+@State(Scope.Benchmark)
+public class ByteBufAllocatorFragmentationBenchmark extends AbstractMicrobenchmark {
+
+    public enum SizeRange {
+        SMALL(512, 8 * 1024),
+        HTTP_BODY(9 * 1024, 40 * 1024),
+        NORMAL(32 * 1024, 512 * 1024);
+
+        final int min;
+        final int max;
+
+        SizeRange(int min, int max) {
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    private static final int MAX_LIVE_BUFFERS = 2048;
+
+    @Param({ "SMALL", "HTTP_BODY", "NORMAL" })
+    public SizeRange sizeRange;
+
+    private final Random rand = new Random();
+    private final ByteBuf[] buffers = new ByteBuf[MAX_LIVE_BUFFERS];
+    private PooledByteBufAllocator allocator;
+    long liveBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Disable thread-local cache so every allocation hits the arena.
+        allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        for (int i = 0; i < buffers.length; i++) {
+            if (buffers[i] != null) {
+                buffers[i].release();
+                buffers[i] = null;
+            }
+        }
+        liveBytes = 0;
+    }
+
+    @Benchmark
+    public void pooledDirectAllocAndFree(FragmentationCounters counters) {
+        int idx = rand.nextInt(buffers.length);
+        ByteBuf oldBuf = buffers[idx];
+        if (oldBuf != null) {
+            liveBytes -= oldBuf.capacity();
+            oldBuf.release();
+        }
+        int size = sizeRange.min + rand.nextInt(sizeRange.max - sizeRange.min + 1);
+        buffers[idx] = allocator.directBuffer(size);
+        liveBytes += size;
+    }
+
+    /**
+     * Reports the state of the pool at the end of each iteration. JMH sums up {@link AuxCounters.Type#EVENTS} of all
+     * iterations, so each value is divided by the number of measurement iterations to report the average.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FragmentationCounters {
+        private ByteBufAllocatorFragmentationBenchmark benchmark;
+        private int iterations;
+        private double fragmentationPercent;
+        private double pooledKb;
+        private double rssKb;
+
+        @Setup(Level.Iteration)
+        public void setup(ByteBufAllocatorFragmentationBenchmark benchmark, IterationParams params) {
+            this.benchmark = benchmark;
+            iterations = params.getCount();
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() {
+            // Take a snapshot as the counters may be read after the buffers were released.
+            long used = usedPooledBytes(benchmark.allocator);
+            fragmentationPercent = used == 0 ? 0 : (used - benchmark.liveBytes) * 100.0 / used / iterations;
+            long active = 0;
+            for (PoolArenaMetric arena: benchmark.allocator.metric().directArenas()) {
+                active += arena.numActiveBytes();
+            }
+            pooledKb = active / 1024.0 / iterations;
+            rssKb = (double) residentSetSizeKb() / iterations;
+        }
+
+        /**
+         * The percentage of the memory used by the pool which does not hold requested bytes.
+         */
+        public double fragmentationPercent() {
+            return fragmentationPercent;
+        }
+
+        /**
+         * The size of all chunks which are allocated by the pool.
+         */
+        public double pooledKb() {
+            return pooledKb;
+        }
+
+        /**
+         * The resident set size of the process.
+         */
+        public double rssKb() {
+            return rssKb;
+        }
+    }
+
+    static long usedPooledBytes(PooledByteBufAllocator allocator) {
+        long used = 0;
+        for (PoolArenaMetric arena: allocator.metric().directArenas()) {
+            for (PoolChunkListMetric list: arena.chunkLists()) {
+                for (PoolChunkMetric chunk: list) {
+                    used += chunk.chunkSize() - chunk.freeBytes();
+                }
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Returns the resident set size of this process as reported by {@code /proc/self/status} or {@code -1} if it is
+     * not available.
+     */
+    static long residentSetSizeKb() {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream("/proc/self/status"), CharsetUtil.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6, line.length() - 2).trim());
+                }
+            }
+        } catch (IOException ignore) {
+            // Not supported on this platform.
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) {
+                    // ignore
+                }
+            }
+        }
+        return -1;
+    }
+}
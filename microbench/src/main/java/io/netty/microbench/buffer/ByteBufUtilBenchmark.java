@@ -19,9 +19,11 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.ByteProcessor;
 import io.netty.util.CharsetUtil;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -182,4 +184,49 @@ public class
     public String decodeStringUtf8() {
         return utf8Buffer.toString(CharsetUtil.UTF_8);
     }
+
+    /**
+     * A buffer which only contains the searched byte at its end, so it is scanned completely.
+     */
+    @State(Scope.Benchmark)
+    public static class SearchState {
+        @Param({ "1024", "8192", "65536" })
+        public int size;
+
+        @Param({ "true", "false" })
+        public boolean direct;
+
+        ByteBuf buffer;
+
+        @Setup
+        public void setup() {
+            buffer = direct ? Unpooled.directBuffer(size) : Unpooled.buffer(size);
+            for (int i = 0; i < size - 1; i++) {
+                buffer.writeByte('a');
+            }
+            buffer.writeByte('\n');
+        }
+
+        @TearDown
+        public void tearDown() {
+            buffer.release();
+        }
+    }
+
+    private static final ByteProcessor FIND_LF_BYTE_BY_BYTE = new ByteProcessor.IndexOfProcessor((byte) '\n');
+
+    @Benchmark
+    public int indexOf(SearchState state) {
+        return ByteBufUtil.indexOf(state.buffer, 0, state.size, (byte) '\n');
+    }
+
+    @Benchmark
+    public int forEachByteFindLf(SearchState state) {
+        return state.buffer.forEachByte(ByteProcessor.FIND_LF);
+    }
+
+    @Benchmark
+    public int forEachByteByteByByte(SearchState state) {
+        return state.buffer.forEachByte(FIND_LF_BYTE_BY_BYTE);
+    }
 }
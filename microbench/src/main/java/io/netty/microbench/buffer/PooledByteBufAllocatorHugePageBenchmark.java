@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads and writes random locations of 512 MiB of pooled direct memory, which causes a TLB miss for nearly every
+ * access unless the chunks are backed by huge pages.
+ * <p>
+ * The {@code HUGETLBFS} mode needs a hugetlbfs mount at {@link #hugePageDirectory} with enough reserved huge pages,
+ * for example via {@code echo 300 > /proc/sys/vm/nr_hugepages}. The {@code TRANSPARENT} mode only uses huge pages if
+ * {@code /sys/kernel/mm/transparent_hugepage/enabled} is set to {@code always}.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class PooledByteBufAllocatorHugePageBenchmark extends AbstractMicrobenchmark {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int NUM_BUFFERS = 8192;
+
+    public enum HugePages {
+        NONE, TRANSPARENT, HUGETLBFS
+    }
+
+    @Param
+    public HugePages hugePages;
+
+    @Param({ "/dev/hugepages" })
+    public String hugePageDirectory;
+
+    private ByteBuf[] buffers;
+    private long seed = 1;
+
+    @Setup
+    public void setup() {
+        // Read once when PooledByteBufAllocator is initialized, which is fine as every trial runs in its own JVM.
+        switch (hugePages) {
+            case NONE:
+                break;
+            case TRANSPARENT:
+                System.setProperty("io.netty.allocator.hugePages", "true");
+                break;
+            case HUGETLBFS:
+                System.setProperty("io.netty.allocator.hugePageDirectory", hugePageDirectory);
+                break;
+            default:
+                throw new Error();
+        }
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        buffers = new ByteBuf[NUM_BUFFERS];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = allocator.directBuffer(BUFFER_SIZE, BUFFER_SIZE);
+            // Touch all pages up front, so the benchmark does not measure page faults.
+            buffers[i].setZero(0, BUFFER_SIZE);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        for (ByteBuf buffer : buffers) {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    public long randomReadWrite() {
+        // xorshift, so the next location can not be prefetched.
+        long seed = this.seed;
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        this.seed = seed;
+
+        ByteBuf buffer = buffers[(int) (seed >>> 32) & NUM_BUFFERS - 1];
+        int index = (int) seed & BUFFER_SIZE - 8;
+        long value = buffer.getLong(index);
+        buffer.setLong(index, value + 1);
+        return value;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sets up the pipeline of a new connection with a {@link ChannelInitializer}, which adds its handlers and then removes
+ * itself, optionally followed by a protocol switch which replaces and removes handlers.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ChannelPipelineSetupBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "4", "8", "16" })
+    public int handlers;
+
+    private ChannelHandler initializer;
+    private ChannelHandler upgradeHandler;
+
+    @Setup
+    public void setup() {
+        final String[] names = new String[handlers];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "handler" + i;
+        }
+        final ChannelHandler handler = new SharableHandler();
+        initializer = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) {
+                ChannelPipeline pipeline = ch.pipeline();
+                for (String name : names) {
+                    pipeline.addLast(name, handler);
+                }
+            }
+        };
+        upgradeHandler = new SharableHandler();
+    }
+
+    @Benchmark
+    public ChannelPipeline initChannel() {
+        EmbeddedChannel channel = new EmbeddedChannel(initializer);
+        channel.close();
+        return channel.pipeline();
+    }
+
+    @Benchmark
+    public ChannelPipeline initChannelAndSwitchProtocol() {
+        EmbeddedChannel channel = new EmbeddedChannel(initializer);
+        ChannelPipeline pipeline = channel.pipeline();
+        pipeline.replace("handler0", "upgrade", upgradeHandler);
+        pipeline.remove("handler1");
+        channel.close();
+        return pipeline;
+    }
+
+    @Sharable
+    private static final class SharableHandler extends ChannelInboundHandlerAdapter { }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.SingleThreadEventLoop;
+import io.netty.channel.local.LocalChannel;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes small messages to a single {@link Channel} from several threads outside of its event loop, like backend
+ * threads which write the responses of a connection do. Every {@code writesPerFlush}-th message is written with
+ * {@link Channel#writeAndFlush(Object, ChannelPromise)}. Besides the throughput, the number of times the event loop was
+ * woken up per message is reported. Run with {@code -Dio.netty.transport.stageOutboundOperations=true} to stage the
+ * writes instead of submitting one task per write.
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class CrossThreadWriteBenchmark extends AbstractMicrobenchmark {
+
+    private static final Object MESSAGE = new Object();
+    private static final ThreadLocal<WakeupCounters> COUNTERS = new ThreadLocal<WakeupCounters>();
+
+    @Param({ "1", "16" })
+    public int writesPerFlush;
+
+    private WakeupCountingEventLoop eventLoop;
+    private Channel channel;
+    private ChannelPromise promise;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        eventLoop = new WakeupCountingEventLoop();
+        channel = new LocalChannel();
+        // Swallows all writes and flushes before they reach the head of the pipeline.
+        channel.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                // NOOP
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                // NOOP
+            }
+        });
+        eventLoop.register(channel).syncUninterruptibly();
+        promise = channel.voidPromise();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.close().syncUninterruptibly();
+        eventLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Benchmark
+    public void write(WakeupCounters counters) {
+        if (++counters.messages % writesPerFlush == 0) {
+            channel.writeAndFlush(MESSAGE, promise);
+        } else {
+            channel.write(MESSAGE, promise);
+        }
+    }
+
+    /**
+     * Reports the wakeups of the event loop which were caused by the writes of a thread. JMH sums up
+     * {@link AuxCounters.Type#EVENTS} of all iterations and threads, so the value is divided by their number to report
+     * the average.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WakeupCounters {
+        long messages;
+        long wakeups;
+        private int samples;
+        private double wakeupsPerMessage;
+
+        @Setup(Level.Iteration)
+        public void setup(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+            messages = 0;
+            wakeups = 0;
+            samples = benchmarkParams.getThreads() * iterationParams.getCount();
+            COUNTERS.set(this);
+        }
+
+        @TearDown(Level.Iteration)
+        public void teardown() {
+            COUNTERS.remove();
+            wakeupsPerMessage = messages == 0 ? 0 : (double) wakeups / messages / samples;
+        }
+
+        /**
+         * The number of times the event loop was woken up per message written.
+         */
+        public double wakeupsPerMessage() {
+            return wakeupsPerMessage;
+        }
+    }
+
+    /**
+     * Sleeps like a selector until it is woken up for a task or a short timeout elapsed, and counts the wakeups
+     * requested by the threads which submit the tasks.
+     */
+    private static final class WakeupCountingEventLoop extends SingleThreadEventLoop {
+
+        private static final long SLEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private volatile Thread thread;
+
+        WakeupCountingEventLoop() {
+            super(null, new DefaultThreadFactory(WakeupCountingEventLoop.class), false);
+        }
+
+        @Override
+        protected void run() {
+            thread = Thread.currentThread();
+            for (;;) {
+                if (!hasTasks()) {
+                    LockSupport.parkNanos(this, SLEEP_NANOS);
+                }
+                runAllTasks();
+                if (confirmShutdown()) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        protected void wakeup(boolean inEventLoop) {
+            if (!inEventLoop) {
+                WakeupCounters counters = COUNTERS.get();
+                if (counters != null) {
+                    counters.wakeups++;
+                }
+            }
+            Thread thread = this.thread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+}
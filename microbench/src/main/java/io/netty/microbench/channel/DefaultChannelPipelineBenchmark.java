@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Passes events through a pipeline in which most handlers only forward the events, like the decoders, encoders and
+ * duplex handlers of a typical protocol stack do for all events they are not interested in.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class DefaultChannelPipelineBenchmark extends AbstractMicrobenchmark {
+
+    private static final Object MESSAGE = new Object();
+
+    @Param({ "4", "16" })
+    public int passThroughHandlers;
+
+    private EmbeddedChannel channel;
+    private ChannelPipeline pipeline;
+    private ChannelPromise promise;
+
+    @Setup
+    public void setup() {
+        channel = new EmbeddedChannel();
+        pipeline = channel.pipeline();
+        // Swallows all outbound operations before they reach the head of the pipeline.
+        pipeline.addLast(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                // NOOP
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                // NOOP
+            }
+        });
+        for (int i = 0; i < passThroughHandlers; i++) {
+            pipeline.addLast(newPassThroughHandler(i));
+        }
+        // Swallows all inbound events before they reach the tail of the pipeline.
+        pipeline.addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                // NOOP
+            }
+
+            @Override
+            public void channelReadComplete(ChannelHandlerContext ctx) {
+                // NOOP
+            }
+        });
+        promise = channel.voidPromise();
+    }
+
+    private static ChannelHandler newPassThroughHandler(int i) {
+        switch (i % 3) {
+            case 0:
+                return new ChannelInboundHandlerAdapter();
+            case 1:
+                return new ChannelOutboundHandlerAdapter();
+            default:
+                // Only interested in user events, like an idle state handler.
+                return new ChannelDuplexHandler() {
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                        ctx.fireUserEventTriggered(evt);
+                    }
+                };
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void channelRead() {
+        pipeline.fireChannelRead(MESSAGE);
+    }
+
+    @Benchmark
+    public void channelReadComplete() {
+        pipeline.fireChannelReadComplete();
+    }
+
+    @Benchmark
+    public void write() {
+        pipeline.write(MESSAGE, promise);
+    }
+
+    @Benchmark
+    public void flush() {
+        pipeline.flush();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.SegmentedDatagramPacket;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.NetUtil;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Compares the number of datagrams per second that can be sent with and without UDP_SEGMENT (GSO). Each invocation
+ * sends {@link #SEGMENTS} datagrams, either as one {@link SegmentedDatagramPacket} or as separate
+ * {@link DatagramPacket}s which are written with one sendmmsg(...) call. The receiver uses UDP_GRO if
+ * {@link #udpGro} is {@code true}.
+ */
+@State(Scope.Benchmark)
+public class EpollDatagramSegmentationOffloadBenchmark extends AbstractMicrobenchmark {
+
+    private static final int SEGMENTS = 32;
+
+    @Param({ "512", "1400" })
+    public int segmentSize;
+
+    @Param({ "false", "true" })
+    public boolean udpGro;
+
+    private EventLoopGroup group;
+    private Channel receiver;
+    private Channel sender;
+    private InetSocketAddress recipient;
+    private ByteBuf data;
+
+    @Setup
+    public void setup() throws Exception {
+        if (!SegmentedDatagramPacket.isSupported()) {
+            throw new IllegalStateException("UDP_SEGMENT not supported");
+        }
+        group = new EpollEventLoopGroup(2);
+        receiver = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                .option(ChannelOption.SO_RCVBUF, 4 * 1024 * 1024)
+                .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(64 * 1024))
+                .option(EpollChannelOption.DATAGRAM_READ_BATCH_SIZE, 16)
+                .option(EpollChannelOption.UDP_GRO, udpGro)
+                .handler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ReferenceCountUtil.release(msg);
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).sync().channel();
+        sender = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                .option(ChannelOption.SO_SNDBUF, 4 * 1024 * 1024)
+                .handler(new ChannelInboundHandlerAdapter())
+                .bind(NetUtil.LOCALHOST4, 0).sync().channel();
+        recipient = (InetSocketAddress) receiver.localAddress();
+        data = Unpooled.directBuffer(segmentSize * SEGMENTS).writeZero(segmentSize * SEGMENTS);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        sender.close().sync();
+        receiver.close().sync();
+        group.shutdownGracefully().sync();
+        data.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS)
+    public void segmented() {
+        sender.writeAndFlush(new SegmentedDatagramPacket(data.retainedDuplicate(), segmentSize, recipient))
+                .syncUninterruptibly();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SEGMENTS)
+    public void datagrams() {
+        for (int i = 0; i < SEGMENTS - 1; i++) {
+            sender.write(new DatagramPacket(data.retainedSlice(i * segmentSize, segmentSize), recipient));
+        }
+        sender.writeAndFlush(new DatagramPacket(
+                data.retainedSlice((SEGMENTS - 1) * segmentSize, segmentSize), recipient)).syncUninterruptibly();
+    }
+}
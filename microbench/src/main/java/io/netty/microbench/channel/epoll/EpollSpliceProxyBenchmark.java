@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.epoll.EpollSpliceProxyHandler;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.NetUtil;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.net.SocketAddress;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of a TCP proxy which either copies the payload through user space in the same way as the
+ * {@code HexDumpProxy} example or splices it through a kernel pipe via {@link EpollSpliceProxyHandler}. Each
+ * invocation sends {@link #size} bytes from the client through the proxy to a sink and waits until all of them
+ * arrived.
+ */
+@State(Scope.Benchmark)
+public class EpollSpliceProxyBenchmark extends AbstractMicrobenchmark {
+
+    public enum ProxyMode {
+        COPY, SPLICE
+    }
+
+    @Param({ "COPY", "SPLICE" })
+    public ProxyMode mode;
+
+    @Param({ "65536", "1048576" })
+    public int size;
+
+    private EventLoopGroup group;
+    private Channel sink;
+    private Channel proxy;
+    private Channel client;
+    private ByteBuf data;
+
+    private volatile long expected;
+    private volatile long received;
+    private volatile CountDownLatch latch;
+
+    @Setup
+    public void setup() throws Exception {
+        group = new EpollEventLoopGroup(3);
+        sink = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childHandler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        long received = EpollSpliceProxyBenchmark.this.received +=
+                                ((ByteBuf) msg).readableBytes();
+                        ReferenceCountUtil.release(msg);
+                        if (received >= expected) {
+                            latch.countDown();
+                        }
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).sync().channel();
+
+        final SocketAddress sinkAddress = sink.localAddress();
+        proxy = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelActive(ChannelHandlerContext ctx) {
+                        connectBackend((EpollSocketChannel) ctx.channel(), sinkAddress);
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).sync().channel();
+
+        client = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(proxy.localAddress()).sync().channel();
+        data = Unpooled.directBuffer(size).writeZero(size);
+    }
+
+    private void connectBackend(final EpollSocketChannel inbound, SocketAddress address) {
+        new Bootstrap().group(inbound.eventLoop()).channel(EpollSocketChannel.class)
+                .option(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED)
+                .option(ChannelOption.AUTO_READ, false)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(address).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (!future.isSuccess()) {
+                            inbound.close();
+                            return;
+                        }
+                        EpollSocketChannel outbound = (EpollSocketChannel) future.channel();
+                        if (mode == ProxyMode.SPLICE) {
+                            EpollSpliceProxyHandler.proxy(inbound, outbound);
+                        } else {
+                            inbound.pipeline().addLast(new CopyProxyHandler(outbound));
+                            inbound.read();
+                        }
+                    }
+                });
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        client.close().sync();
+        proxy.close().sync();
+        sink.close().sync();
+        group.shutdownGracefully().sync();
+        data.release();
+    }
+
+    @Benchmark
+    public void proxy() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        this.latch = latch;
+        expected += size;
+        client.writeAndFlush(data.retainedDuplicate());
+        latch.await();
+    }
+
+    /**
+     * Forwards the data in the same way as {@code HexDumpProxyFrontendHandler}, which only reads the next chunk once
+     * the previous one was written.
+     */
+    private static final class CopyProxyHandler extends ChannelInboundHandlerAdapter {
+        private final Channel outbound;
+
+        CopyProxyHandler(Channel outbound) {
+            this.outbound = outbound;
+        }
+
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, Object msg) {
+            outbound.writeAndFlush(msg).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (future.isSuccess()) {
+                        ctx.channel().read();
+                    } else {
+                        future.channel().close();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            outbound.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.util;
+
+import io.netty.util.AttributeKey;
+import io.netty.util.AttributeMap;
+import io.netty.util.DefaultAttributeMap;
+import io.netty.util.IndexedAttributeMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link DefaultAttributeMap} with {@link IndexedAttributeMap}. The {@code populate} benchmark creates a
+ * new map per invocation, like a new {@link io.netty.channel.Channel} does, so running it with {@code -prof gc}
+ * shows the per channel footprint as allocated bytes per operation.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AttributeMapBenchmark extends AbstractMicrobenchmark {
+
+    public enum MapType {
+        DEFAULT, INDEXED
+    }
+
+    @Param
+    public MapType mapType;
+
+    @Param({ "1", "4", "16" })
+    public int attributes;
+
+    private AttributeKey<Integer>[] keys;
+    private AttributeMap map;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setup() {
+        keys = new AttributeKey[attributes];
+        for (int i = 0; i < attributes; i++) {
+            keys[i] = AttributeKey.valueOf(AttributeMapBenchmark.class, "key" + i);
+        }
+        map = populate();
+    }
+
+    private AttributeMap newMap() {
+        switch (mapType) {
+            case DEFAULT:
+                return new DefaultAttributeMap();
+            case INDEXED:
+                return new IndexedAttributeMap();
+            default:
+                throw new Error();
+        }
+    }
+
+    @Benchmark
+    public AttributeMap populate() {
+        AttributeMap map = newMap();
+        for (int i = 0; i < keys.length; i++) {
+            map.attr(keys[i]).set(i);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int get() {
+        int sum = 0;
+        for (AttributeKey<Integer> key : keys) {
+            sum += map.attr(key).get();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void set() {
+        for (int i = 0; i < keys.length; i++) {
+            map.attr(keys[i]).set(i);
+        }
+    }
+}
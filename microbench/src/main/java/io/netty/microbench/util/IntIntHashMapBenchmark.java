@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.util;
+
+import io.netty.util.collection.IntIntHashMap;
+import io.netty.util.collection.IntIntMap.PrimitiveEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares {@link IntIntHashMap} with a {@link HashMap} of boxed {@link Integer}s.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class IntIntHashMapBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    private int[] keys;
+    private IntIntHashMap nettyMap;
+    private Map<Integer, Integer> jdkMap;
+
+    @Setup
+    public void setup() {
+        // Use a fixed seed, so all runs use the same keys.
+        Random random = new Random(0);
+        keys = new int[size];
+        nettyMap = new IntIntHashMap();
+        jdkMap = new HashMap<Integer, Integer>();
+        for (int i = 0; i < size; i++) {
+            int key = random.nextInt();
+            keys[i] = key;
+            nettyMap.put(key, i);
+            jdkMap.put(key, i);
+        }
+    }
+
+    @Benchmark
+    public IntIntHashMap putNetty() {
+        IntIntHashMap map = new IntIntHashMap();
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> putJdk() {
+        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
+        for (int key : keys) {
+            map.put(key, key);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int getNetty() {
+        int sum = 0;
+        for (int key : keys) {
+            sum += nettyMap.get(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int getJdk() {
+        int sum = 0;
+        for (int key : keys) {
+            sum += jdkMap.get(key);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int iterateNetty() {
+        int sum = 0;
+        for (PrimitiveEntry entry : nettyMap.entries()) {
+            sum += entry.key() ^ entry.value();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int iterateJdk() {
+        int sum = 0;
+        for (Map.Entry<Integer, Integer> entry : jdkMap.entrySet()) {
+            sum += entry.getKey() ^ entry.getValue();
+        }
+        return sum;
+    }
+}
@@ -16,7 +16,9 @@
 package io.netty.microbench.util;
 
 import io.netty.util.ResourceLeakDetector;
+import io.netty.util.ResourceLeakTracker;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Setup;
 
 public class ResourceLeakDetectorBenchmark extends AbstractMicrobenchmark {
@@ -24,8 +26,17 @@ public class ResourceLeakDetectorBenchmark extends AbstractMicrobenchmark {
     private static final Object DUMMY = new Object();
     private ResourceLeakDetector<Object> detector;
 
+    @Param({ "DISABLED", "SIMPLE" })
+    public ResourceLeakDetector.Level level;
+
+    @Param({ "0", "64" })
+    public int maxAllocationSites;
+
     @Setup
     public void setup() {
+        // Read once when ResourceLeakDetector is initialized, which happens in the forked JVM of each trial.
+        System.setProperty("io.netty.leakDetection.maxAllocationSites", String.valueOf(maxAllocationSites));
+        ResourceLeakDetector.setLevel(level);
         detector = new ResourceLeakDetector<Object>(getClass(), 128, Long.MAX_VALUE);
     }
 
@@ -33,4 +44,13 @@ public class ResourceLeakDetectorBenchmark extends AbstractMicrobenchmark {
     public Object open() {
         return detector.open(DUMMY);
     }
+
+    @Benchmark
+    public Object trackAndClose() {
+        ResourceLeakTracker<Object> tracker = detector.track(DUMMY);
+        if (tracker != null) {
+            tracker.close(DUMMY);
+        }
+        return tracker;
+    }
 }
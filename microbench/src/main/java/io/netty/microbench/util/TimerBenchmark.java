@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.util;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.HierarchicalWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules and cancels timeouts at a high rate, like idle and request timeouts of short lived requests do, while
+ * the {@link Timer} holds many other pending timeouts.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Threads(4)
+public class TimerBenchmark extends AbstractMicrobenchmark {
+
+    private static final TimerTask NO_OP = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+        }
+    };
+
+    public enum TimerType {
+        HASHED, HIERARCHICAL
+    }
+
+    @Param
+    public TimerType timerType;
+
+    @Param({ "0", "1000000" })
+    public int pending;
+
+    private Timer timer;
+
+    @Setup
+    public void setup() {
+        switch (timerType) {
+            case HASHED:
+                timer = new HashedWheelTimer(1, TimeUnit.MILLISECONDS);
+                break;
+            case HIERARCHICAL:
+                timer = new HierarchicalWheelTimer(1, TimeUnit.MILLISECONDS);
+                break;
+            default:
+                throw new Error();
+        }
+        for (int i = 0; i < pending; i++) {
+            // Spread the pending timeouts over the next minutes so the worker has to deal with them on every tick.
+            timer.newTimeout(NO_OP, 60000 + i % 300000, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        timer.stop();
+    }
+
+    @Benchmark
+    public boolean scheduleAndCancel() {
+        return timer.newTimeout(NO_OP, 30, TimeUnit.SECONDS).cancel();
+    }
+}
@@ -513,6 +513,14 @@ abstract class AbstractEpollChannel extends AbstractChannel implements UnixChann
             }
         }
 
+        /**
+         * Called once a EPOLLERR event is ready to be processed, before {@link #epollOutReady()} and
+         * {@link #epollInReady()} are called.
+         */
+        void epollErrReady() {
+            // NOOP by default
+        }
+
         /**
          * Called once a EPOLLOUT event is ready to be processed
          */
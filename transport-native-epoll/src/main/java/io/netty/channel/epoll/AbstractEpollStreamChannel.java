@@ -23,6 +23,7 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelMetadata;
 import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelOutboundBuffer.MessageProcessor;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultFileRegion;
@@ -30,23 +31,28 @@ import io.netty.channel.EventLoop;
 import io.netty.channel.FileRegion;
 import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.internal.ChannelUtils;
+import io.netty.channel.VoidChannelPromise;
 import io.netty.channel.socket.DuplexChannel;
 import io.netty.channel.unix.FileDescriptor;
 import io.netty.channel.unix.IovArray;
 import io.netty.channel.unix.SocketWritableByteChannel;
 import io.netty.channel.unix.UnixChannelUtil;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.PromiseNotificationUtil;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.ThrowableUtil;
 import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.concurrent.Executor;
 
@@ -61,12 +67,17 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             " (expected: " + StringUtil.simpleClassName(ByteBuf.class) + ", " +
                     StringUtil.simpleClassName(DefaultFileRegion.class) + ')';
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractEpollStreamChannel.class);
+    // Upper bound for the buffers allocated when EpollChannelConfig.isLazyReadAllocation() is used. This matches the
+    // default maximum of AdaptiveRecvByteBufAllocator.
+    private static final int MAX_LAZY_READ_BUFFER_SIZE = 65536;
     private static final ClosedChannelException CLEAR_SPLICE_QUEUE_CLOSED_CHANNEL_EXCEPTION =
             ThrowableUtil.unknownStackTrace(new ClosedChannelException(),
                     AbstractEpollStreamChannel.class, "clearSpliceQueue()");
     private static final ClosedChannelException SPLICE_TO_CLOSED_CHANNEL_EXCEPTION = ThrowableUtil.unknownStackTrace(
             new ClosedChannelException(),
             AbstractEpollStreamChannel.class, "spliceTo(...)");
+    private static final EOFException SPLICE_IN_EOF_EXCEPTION = ThrowableUtil.unknownStackTrace(
+            new EOFException(), AbstractEpollStreamChannel.class, "spliceIn(...)");
     private static final ClosedChannelException FAIL_SPLICE_IF_CLOSED_CLOSED_CHANNEL_EXCEPTION =
             ThrowableUtil.unknownStackTrace(new ClosedChannelException(),
             AbstractEpollStreamChannel.class, "failSpliceIfClosed(...)");
@@ -86,6 +97,13 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
 
     private WritableByteChannel byteChannel;
 
+    // Lazy init these if we write with MSG_ZEROCOPY.
+    private ArrayDeque<ZeroCopyWrite> zeroCopyWrites;
+    private ZeroCopyIovProcessor zeroCopyIovProcessor;
+    private int[] zeroCopyRange;
+    // The id the kernel will assign to the next send(...) call with MSG_ZEROCOPY.
+    private int zeroCopyNextId;
+
     protected AbstractEpollStreamChannel(Channel parent, int fd) {
         this(parent, new LinuxSocket(fd));
     }
@@ -129,7 +147,10 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
     /**
      * Splice from this {@link AbstractEpollStreamChannel} to another {@link AbstractEpollStreamChannel}.
      * The {@code len} is the number of bytes to splice. If using {@link Integer#MAX_VALUE} it will
-     * splice until the {@link ChannelFuture} was canceled or it was failed.
+     * splice until the end of the stream is reached, the {@link ChannelFuture} was canceled or it was failed. Once
+     * the end of the stream is reached the {@link ChannelFuture} is notified after all spliced data was written to
+     * the target {@link AbstractEpollStreamChannel}. If the end of the stream is reached before {@code len} bytes
+     * were spliced it is failed with an {@link EOFException}.
      *
      * Please note:
      * <ul>
@@ -147,7 +168,10 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
     /**
      * Splice from this {@link AbstractEpollStreamChannel} to another {@link AbstractEpollStreamChannel}.
      * The {@code len} is the number of bytes to splice. If using {@link Integer#MAX_VALUE} it will
-     * splice until the {@link ChannelFuture} was canceled or it was failed.
+     * splice until the end of the stream is reached, the {@link ChannelFuture} was canceled or it was failed. Once
+     * the end of the stream is reached the {@link ChannelFuture} is notified after all spliced data was written to
+     * the target {@link AbstractEpollStreamChannel}. If the end of the stream is reached before {@code len} bytes
+     * were spliced it is failed with an {@link EOFException}.
      *
      * Please note:
      * <ul>
@@ -279,6 +303,142 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
         }
     }
 
+    /**
+     * Write bytes from the given {@link ByteBuf} to the underlying {@link java.nio.channels.Channel} with
+     * {@code MSG_ZEROCOPY}. Once the buffer was written completely it is removed from the
+     * {@link ChannelOutboundBuffer} but only released and notified once the kernel signals the completion.
+     * @param in the collection which contains objects to write.
+     * @param buf the {@link ByteBuf} from which the bytes should be written
+     * @return The value that should be decremented from the write quantum which starts at
+     * {@link ChannelConfig#getWriteSpinCount()}. The typical use cases are as follows:
+     * <ul>
+     *     <li>1 - if a single call to write data was made to the OS</li>
+     *     <li>{@link ChannelUtils#WRITE_STATUS_SNDBUF_FULL} - if an attempt to write data was made to the OS, but
+     *     no data was accepted</li>
+     * </ul>
+     */
+    private int writeBytesZeroCopy(ChannelOutboundBuffer in, ByteBuf buf) throws IOException {
+        final int readerIndex = buf.readerIndex();
+        final int localWrittenBytes = socket.sendAddressZeroCopy(
+                buf.memoryAddress(), readerIndex, buf.writerIndex());
+        if (localWrittenBytes <= 0) {
+            return WRITE_STATUS_SNDBUF_FULL;
+        }
+
+        ZeroCopyWrite write = zeroCopyWrites.peekLast();
+        if (write == null || write.written || write.buf != buf) {
+            write = new ZeroCopyWrite(buf, zeroCopyNextId);
+            zeroCopyWrites.add(write);
+        }
+        write.lastId = zeroCopyNextId++;
+        write.pendingIds++;
+
+        buf.readerIndex(readerIndex + localWrittenBytes);
+        in.progress(localWrittenBytes);
+        if (!buf.isReadable()) {
+            // The kernel may still use the memory of the buffer, so take over the ownership of the buffer and its
+            // promise until the completion is received.
+            write.promise = in.removeDeferred();
+            write.written = true;
+        }
+        return 1;
+    }
+
+    /**
+     * Returns {@code true} if {@code msg} should be written via {@link #writeBytesZeroCopy(ChannelOutboundBuffer,
+     * ByteBuf)}.
+     */
+    private boolean isZeroCopyWrite(Object msg, int zeroCopyWriteThreshold) {
+        if (!(msg instanceof ByteBuf)) {
+            return false;
+        }
+        ByteBuf buf = (ByteBuf) msg;
+        if (zeroCopyWrites != null) {
+            // Once a part of a buffer was written with MSG_ZEROCOPY the rest must be written the same way, as the
+            // buffer must not be released before the kernel signals the completion.
+            ZeroCopyWrite write = zeroCopyWrites.peekLast();
+            if (write != null && !write.written && write.buf == buf) {
+                return true;
+            }
+        }
+        if (zeroCopyWriteThreshold > 0 && buf.readableBytes() >= zeroCopyWriteThreshold && buf.hasMemoryAddress()) {
+            if (zeroCopyWrites == null) {
+                zeroCopyWrites = new ArrayDeque<ZeroCopyWrite>();
+                zeroCopyRange = new int[2];
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of readable bytes a {@link ByteBuf} needs to be written with {@code MSG_ZEROCOPY} or
+     * {@code 0} if {@code MSG_ZEROCOPY} should not be used.
+     */
+    int zeroCopyWriteThreshold() {
+        return 0;
+    }
+
+    private void processZeroCopyCompletions() throws IOException {
+        final int[] range = zeroCopyRange;
+        while (socket.recvZeroCopyCompletion(range)) {
+            final int lo = range[0];
+            final int hi = range[1];
+            for (ZeroCopyWrite write: zeroCopyWrites) {
+                // Ids are unsigned 32 bit integers which may wrap around, so compare the differences.
+                if (write.firstId - hi > 0) {
+                    break;
+                }
+                write.complete(lo, hi);
+            }
+        }
+
+        // Notify in the same order as the buffers were written.
+        for (;;) {
+            ZeroCopyWrite write = zeroCopyWrites.peek();
+            if (write == null || !write.written || write.pendingIds != 0) {
+                break;
+            }
+            zeroCopyWrites.remove();
+            write.release(null);
+        }
+    }
+
+    /**
+     * Receives the completions the kernel signalled so far, which is only possible until the socket is closed.
+     */
+    private void drainZeroCopyCompletions() {
+        if (zeroCopyWrites == null || zeroCopyWrites.isEmpty()) {
+            return;
+        }
+        try {
+            processZeroCopyCompletions();
+        } catch (IOException e) {
+            logger.debug("Failed to receive the MSG_ZEROCOPY completions before closing the socket.", e);
+        }
+    }
+
+    /**
+     * Releases the buffers whose completion was not received before the socket was closed, which must only be called
+     * once the socket was closed. The kernel accepted all data of a written buffer, so its promise is notified with
+     * success like the one of any other buffer which was written completely. A buffer which was not written completely
+     * is still part of the {@link ChannelOutboundBuffer}, which releases it after the socket was closed as well.
+     */
+    private void clearZeroCopyWrites() {
+        if (zeroCopyWrites == null) {
+            return;
+        }
+        for (;;) {
+            ZeroCopyWrite write = zeroCopyWrites.poll();
+            if (write == null) {
+                break;
+            }
+            if (write.written) {
+                write.release(null);
+            }
+        }
+    }
+
     private void adjustMaxBytesPerGatheringWrite(long attempted, long written, long oldMaxBytesPerGatheringWrite) {
         // By default we track the SO_SNDBUF when ever it is explicitly set. However some OSes may dynamically change
         // SO_SNDBUF (and other characteristics that determine how much data can be written at once) so we should try
@@ -427,11 +587,14 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
     @Override
     protected void doWrite(ChannelOutboundBuffer in) throws Exception {
         int writeSpinCount = config().getWriteSpinCount();
+        final int zeroCopyWriteThreshold = zeroCopyWriteThreshold();
         do {
             final int msgCount = in.size();
-            // Do gathering write if the outbound buffer entries start with more than one ByteBuf.
-            if (msgCount > 1 && in.current() instanceof ByteBuf) {
-                writeSpinCount -= doWriteMultiple(in);
+            if (msgCount > 0 && isZeroCopyWrite(in.current(), zeroCopyWriteThreshold)) {
+                writeSpinCount -= writeBytesZeroCopy(in, (ByteBuf) in.current());
+            } else if (msgCount > 1 && in.current() instanceof ByteBuf) {
+                // Do gathering write if the outbound buffer entries start with more than one ByteBuf.
+                writeSpinCount -= doWriteMultiple(in, zeroCopyWriteThreshold);
             } else if (msgCount == 0) {
                 // Wrote all messages.
                 clearFlag(Native.EPOLLOUT);
@@ -511,12 +674,23 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
      * </ul>
      * @throws Exception If an I/O error occurs.
      */
-    private int doWriteMultiple(ChannelOutboundBuffer in) throws Exception {
+    private int doWriteMultiple(ChannelOutboundBuffer in, int zeroCopyWriteThreshold) throws Exception {
         final long maxBytesPerGatheringWrite = config().getMaxBytesPerGatheringWrite();
         if (PlatformDependent.hasUnsafe()) {
             IovArray array = ((EpollEventLoop) eventLoop()).cleanIovArray();
             array.maxBytes(maxBytesPerGatheringWrite);
-            in.forEachFlushedMessage(array);
+            if (zeroCopyWriteThreshold > 0) {
+                // Stop at the first buffer which should be written with MSG_ZEROCOPY so it is not copied.
+                if (zeroCopyIovProcessor == null) {
+                    zeroCopyIovProcessor = new ZeroCopyIovProcessor();
+                }
+                zeroCopyIovProcessor.array = array;
+                zeroCopyIovProcessor.zeroCopyWriteThreshold = zeroCopyWriteThreshold;
+                in.forEachFlushedMessage(zeroCopyIovProcessor);
+                zeroCopyIovProcessor.array = null;
+            } else {
+                in.forEachFlushedMessage(array);
+            }
 
             if (array.count() >= 1) {
                 // TODO: Handle the case where cnt == 1 specially.
@@ -688,6 +862,8 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
 
     @Override
     protected void doClose() throws Exception {
+        // Release the buffers the kernel is done with now, as their completions are lost once the socket is closed.
+        drainZeroCopyCompletions();
         try {
             // Calling super.doClose() first so spliceTo(...) will fail on next call.
             super.doClose();
@@ -695,6 +871,9 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             safeClosePipe(pipeIn);
             safeClosePipe(pipeOut);
             clearSpliceQueue();
+            // No completions can be received once the socket is closed. If SO_LINGER is set closing it waited until
+            // the remaining data was sent.
+            clearZeroCopyWrites();
         }
     }
 
@@ -753,6 +932,19 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             return new EpollRecvByteAllocatorStreamingHandle(handle);
         }
 
+        @Override
+        void epollErrReady() {
+            if (zeroCopyWrites == null || zeroCopyWrites.isEmpty()) {
+                return;
+            }
+            try {
+                processZeroCopyCompletions();
+            } catch (IOException e) {
+                pipeline().fireExceptionCaught(e);
+                close(voidPromise());
+            }
+        }
+
         @Override
         void epollInReady() {
             final ChannelConfig config = config();
@@ -765,6 +957,7 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
 
             final ChannelPipeline pipeline = pipeline();
             final ByteBufAllocator allocator = config.getAllocator();
+            final boolean lazyReadAllocation = config().isLazyReadAllocation();
             allocHandle.reset(config);
             epollInBefore();
 
@@ -788,9 +981,25 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
                         }
                     }
 
-                    // we use a direct buffer here as the native implementations only be able
-                    // to handle direct buffers.
-                    byteBuf = allocHandle.allocate(allocator);
+                    if (lazyReadAllocation) {
+                        // Only allocate once we know how many bytes are pending so idle connections do not hold
+                        // any buffer and we do not need to guess the size.
+                        int pending = socket.pendingBytes();
+                        if (pending <= 0) {
+                            allocHandle.lastBytesRead(pending);
+                            close = pending < 0;
+                            if (close) {
+                                // There is nothing left to read as we received an EOF.
+                                readPending = false;
+                            }
+                            break;
+                        }
+                        byteBuf = allocator.ioBuffer(Math.min(pending, MAX_LAZY_READ_BUFFER_SIZE));
+                    } else {
+                        // we use a direct buffer here as the native implementations only be able
+                        // to handle direct buffers.
+                        byteBuf = allocHandle.allocate(allocator);
+                    }
                     allocHandle.lastBytesRead(doReadBytes(byteBuf));
                     if (allocHandle.lastBytesRead() <= 0) {
                         // nothing was read, release the buffer.
@@ -873,6 +1082,7 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
         protected final int spliceIn(FileDescriptor pipeOut, RecvByteBufAllocator.Handle handle) throws IOException {
             // calculate the maximum amount of data we are allowed to splice
             int length = Math.min(handle.guess(), len);
+            handle.attemptedBytesRead(length);
             int splicedIn = 0;
             for (;;) {
                 // Splicing until there is nothing left to splice.
@@ -883,7 +1093,8 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
                 splicedIn += localSplicedIn;
                 length -= localSplicedIn;
             }
-
+            // Let the handle adjust its guess, so the next splice operation can transfer more at once.
+            handle.lastBytesRead(splicedIn);
             return splicedIn;
         }
     }
@@ -952,6 +1163,17 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
                         // - The user may want to to trigger another splice operation once the splicing was complete.
                         config().setAutoRead(false);
                     }
+                } else if (socket.pendingBytes() < 0) {
+                    // The end of the stream was reached so there is nothing left to splice. This must be detected
+                    // here as otherwise we would be woken up for EPOLLIN over and over again.
+                    if (len != Integer.MAX_VALUE) {
+                        promise.setFailure(SPLICE_IN_EOF_EXCEPTION);
+                    } else {
+                        // Notify the promise once everything that was spliced before was written to the target.
+                        ch.unsafe().write(new SpliceOutTask(ch, 0, false), promise);
+                        ch.unsafe().flush();
+                    }
+                    return true;
                 }
 
                 return len == 0;
@@ -1048,6 +1270,61 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
         }
     }
 
+    /**
+     * A {@link ByteBuf} which was written with {@code MSG_ZEROCOPY} and so must not be released before the kernel
+     * signals the completion of all {@code send(...)} calls which used its memory.
+     */
+    private static final class ZeroCopyWrite {
+        final ByteBuf buf;
+        final int firstId;
+        int lastId;
+        int pendingIds;
+        boolean written;
+        ChannelPromise promise;
+
+        ZeroCopyWrite(ByteBuf buf, int firstId) {
+            this.buf = buf;
+            this.firstId = firstId;
+        }
+
+        /**
+         * Marks the ids in the inclusive range {@code [lo, hi]} as completed.
+         */
+        void complete(int lo, int hi) {
+            int start = lo - firstId > 0 ? lo : firstId;
+            int end = hi - lastId < 0 ? hi : lastId;
+            if (end - start >= 0) {
+                pendingIds -= end - start + 1;
+            }
+        }
+
+        void release(Throwable cause) {
+            // The promise is null if the write was cancelled, in this case the buffer was already released.
+            if (promise == null) {
+                return;
+            }
+            ReferenceCountUtil.safeRelease(buf);
+            // Only log if the given promise is not of type VoidChannelPromise as trySuccess(...) / tryFailure(...)
+            // is expected to return false.
+            InternalLogger promiseLogger = promise instanceof VoidChannelPromise ? null : logger;
+            if (cause == null) {
+                PromiseNotificationUtil.trySuccess(promise, null, promiseLogger);
+            } else {
+                PromiseNotificationUtil.tryFailure(promise, cause, promiseLogger);
+            }
+        }
+    }
+
+    private final class ZeroCopyIovProcessor implements MessageProcessor {
+        IovArray array;
+        int zeroCopyWriteThreshold;
+
+        @Override
+        public boolean processMessage(Object msg) throws Exception {
+            return !isZeroCopyWrite(msg, zeroCopyWriteThreshold) && array.processMessage(msg);
+        }
+    }
+
     private final class EpollSocketWritableByteChannel extends SocketWritableByteChannel {
         EpollSocketWritableByteChannel() {
             super(socket);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.channel.SelectStrategy;
+import io.netty.channel.SelectStrategyFactory;
+import io.netty.util.IntSupplier;
+import io.netty.util.internal.ObjectUtil;
+
+/**
+ * {@link SelectStrategy} which lets an {@link EpollEventLoopGroup} spin on a non-blocking {@code epoll_wait(...)}
+ * for up to {@link #busyWaitNanos()} before it falls back to a blocking {@code epoll_wait(...)}. This trades CPU
+ * for latency, as the thread does not need to be woken up once an event arrives while it spins.
+ * <p>
+ * Each {@link EpollEventLoop} uses its own instance, which counts how often spinning found something to do
+ * ({@link #spinHits()}) and how often the loop had to block anyway ({@link #parks()}). Sub-classes can use these to
+ * implement adaptive policies by overriding {@link #calculateStrategy(IntSupplier, boolean)} or
+ * {@link #busyWaitNanos()}.
+ */
+public class EpollBusyWaitSelectStrategy implements SelectStrategy {
+
+    private final long busyWaitNanos;
+
+    // Only written by the EventLoop but may be read by other threads.
+    private volatile long spinHits;
+    private volatile long parks;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param busyWaitNanos the maximal time to spin before a blocking {@code epoll_wait(...)} is used.
+     */
+    public EpollBusyWaitSelectStrategy(long busyWaitNanos) {
+        this.busyWaitNanos = ObjectUtil.checkPositiveOrZero(busyWaitNanos, "busyWaitNanos");
+    }
+
+    @Override
+    public int calculateStrategy(IntSupplier selectSupplier, boolean hasTasks) throws Exception {
+        return hasTasks ? selectSupplier.get() : SelectStrategy.BUSY_WAIT;
+    }
+
+    /**
+     * Returns the maximal time in nanoseconds to spin before a blocking {@code epoll_wait(...)} is used. This is
+     * called before each busy wait.
+     */
+    public long busyWaitNanos() {
+        return busyWaitNanos;
+    }
+
+    /**
+     * Returns the number of busy waits which found events or tasks before {@link #busyWaitNanos()} elapsed.
+     */
+    public final long spinHits() {
+        return spinHits;
+    }
+
+    /**
+     * Returns the number of busy waits which did not find any events or tasks and so fell back to a blocking
+     * {@code epoll_wait(...)}.
+     */
+    public final long parks() {
+        return parks;
+    }
+
+    final void spinHit() {
+        spinHits++;
+    }
+
+    final void parked() {
+        parks++;
+    }
+
+    /**
+     * Returns a {@link SelectStrategyFactory} which creates a new {@link EpollBusyWaitSelectStrategy} with the
+     * given {@code busyWaitNanos} for each {@link EpollEventLoop}.
+     */
+    public static SelectStrategyFactory newFactory(final long busyWaitNanos) {
+        ObjectUtil.checkPositiveOrZero(busyWaitNanos, "busyWaitNanos");
+        return new SelectStrategyFactory() {
+            @Override
+            public SelectStrategy newSelectStrategy() {
+                return new EpollBusyWaitSelectStrategy(busyWaitNanos);
+            }
+        };
+    }
+}
@@ -31,6 +31,7 @@ import static io.netty.channel.unix.Limits.SSIZE_MAX;
 public class EpollChannelConfig extends DefaultChannelConfig {
     final AbstractEpollChannel channel;
     private volatile long maxBytesPerGatheringWrite = SSIZE_MAX;
+    private volatile boolean lazyReadAllocation;
 
     EpollChannelConfig(AbstractEpollChannel channel) {
         super(channel);
@@ -39,7 +40,8 @@ public class EpollChannelConfig extends DefaultChannelConfig {
 
     @Override
     public Map<ChannelOption<?>, Object> getOptions() {
-        return getOptions(super.getOptions(), EpollChannelOption.EPOLL_MODE);
+        return getOptions(super.getOptions(), EpollChannelOption.EPOLL_MODE, EpollChannelOption.SO_BUSY_POLL,
+                EpollChannelOption.SO_PREFER_BUSY_POLL, EpollChannelOption.LAZY_READ_ALLOCATION);
     }
 
     @SuppressWarnings("unchecked")
@@ -48,6 +50,15 @@ public class EpollChannelConfig extends DefaultChannelConfig {
         if (option == EpollChannelOption.EPOLL_MODE) {
             return (T) getEpollMode();
         }
+        if (option == EpollChannelOption.SO_BUSY_POLL) {
+            return (T) Integer.valueOf(getBusyPoll());
+        }
+        if (option == EpollChannelOption.SO_PREFER_BUSY_POLL) {
+            return (T) Boolean.valueOf(isPreferBusyPoll());
+        }
+        if (option == EpollChannelOption.LAZY_READ_ALLOCATION) {
+            return (T) Boolean.valueOf(isLazyReadAllocation());
+        }
         return super.getOption(option);
     }
 
@@ -56,6 +67,12 @@ public class EpollChannelConfig extends DefaultChannelConfig {
         validate(option, value);
         if (option == EpollChannelOption.EPOLL_MODE) {
             setEpollMode((EpollMode) value);
+        } else if (option == EpollChannelOption.SO_BUSY_POLL) {
+            setBusyPoll((Integer) value);
+        } else if (option == EpollChannelOption.SO_PREFER_BUSY_POLL) {
+            setPreferBusyPoll((Boolean) value);
+        } else if (option == EpollChannelOption.LAZY_READ_ALLOCATION) {
+            setLazyReadAllocation((Boolean) value);
         } else {
             return super.setOption(option, value);
         }
@@ -171,6 +188,77 @@ public class EpollChannelConfig extends DefaultChannelConfig {
         return this;
     }
 
+    /**
+     * Set the {@code SO_BUSY_POLL} option on the socket, which is the approximate time in microseconds to busy poll
+     * on a blocking receive when there is no data. See <a href="http://man7.org/linux/man-pages/man7/socket.7.html">
+     * socket(7)</a> for more details.
+     */
+    public EpollChannelConfig setBusyPoll(int busyPoll) {
+        try {
+            channel.socket.setBusyPoll(busyPoll);
+            return this;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * Returns the {@code SO_BUSY_POLL} option of the socket.
+     */
+    public int getBusyPoll() {
+        try {
+            return channel.socket.getBusyPoll();
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * Set the {@code SO_PREFER_BUSY_POLL} option on the socket. Requires Linux kernel 5.11 or later. If enabled busy
+     * polling is preferred over processing the socket in softirq context, which is useful in combination with an
+     * {@link EpollBusyWaitSelectStrategy}.
+     */
+    public EpollChannelConfig setPreferBusyPoll(boolean preferBusyPoll) {
+        try {
+            channel.socket.setPreferBusyPoll(preferBusyPoll);
+            return this;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if {@code SO_PREFER_BUSY_POLL} is enabled, {@code false} otherwise.
+     */
+    public boolean isPreferBusyPoll() {
+        try {
+            return channel.socket.isPreferBusyPoll();
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * If {@code true} a stream channel only allocates a buffer for reading once {@code FIONREAD} reports how many
+     * bytes are pending, and sizes the buffer accordingly instead of using the guess of the
+     * {@link RecvByteBufAllocator}. This keeps the buffer footprint of idle connections close to zero, especially
+     * when combined with a pooled {@link ByteBufAllocator} whose thread-local caches are shared by all channels of an
+     * {@link EpollEventLoop}. This costs an extra system call per read. Default is {@code false}.
+     */
+    public EpollChannelConfig setLazyReadAllocation(boolean lazyReadAllocation) {
+        this.lazyReadAllocation = lazyReadAllocation;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if buffers for reading are only allocated once data is pending.
+     *
+     * @see #setLazyReadAllocation(boolean)
+     */
+    public boolean isLazyReadAllocation() {
+        return lazyReadAllocation;
+    }
+
     private void checkChannelNotRegistered() {
         if (channel.isRegistered()) {
             throw new IllegalStateException("EpollMode can only be changed before channel is registered");
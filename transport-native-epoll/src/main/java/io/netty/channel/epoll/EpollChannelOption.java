@@ -38,9 +38,23 @@ public final class EpollChannelOption<T> extends UnixChannelOption<T> {
     public static final ChannelOption<Integer> TCP_DEFER_ACCEPT =
             ChannelOption.valueOf(EpollChannelOption.class, "TCP_DEFER_ACCEPT");
     public static final ChannelOption<Boolean> TCP_QUICKACK = valueOf(EpollChannelOption.class, "TCP_QUICKACK");
+    public static final ChannelOption<Integer> SO_BUSY_POLL = valueOf(EpollChannelOption.class, "SO_BUSY_POLL");
+    public static final ChannelOption<Boolean> SO_PREFER_BUSY_POLL =
+            valueOf(EpollChannelOption.class, "SO_PREFER_BUSY_POLL");
+    public static final ChannelOption<Boolean> SO_ZEROCOPY = valueOf(EpollChannelOption.class, "SO_ZEROCOPY");
+    public static final ChannelOption<Integer> ZEROCOPY_WRITE_THRESHOLD =
+            valueOf(EpollChannelOption.class, "ZEROCOPY_WRITE_THRESHOLD");
+
+    public static final ChannelOption<Integer> DATAGRAM_READ_BATCH_SIZE =
+            valueOf(EpollChannelOption.class, "DATAGRAM_READ_BATCH_SIZE");
+    public static final ChannelOption<Boolean> UDP_GRO = valueOf(EpollChannelOption.class, "UDP_GRO");
 
     public static final ChannelOption<EpollMode> EPOLL_MODE =
             ChannelOption.valueOf(EpollChannelOption.class, "EPOLL_MODE");
+    public static final ChannelOption<Boolean> LAZY_READ_ALLOCATION =
+            valueOf(EpollChannelOption.class, "LAZY_READ_ALLOCATION");
+    public static final ChannelOption<Boolean> EPOLL_EXCLUSIVE =
+            valueOf(EpollChannelOption.class, "EPOLL_EXCLUSIVE");
 
     public static final ChannelOption<Map<InetAddress, byte[]>> TCP_MD5SIG = valueOf("TCP_MD5SIG");
 
@@ -25,10 +25,10 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.DefaultAddressedEnvelope;
 import io.netty.channel.socket.DatagramChannel;
-import io.netty.channel.socket.DatagramChannelConfig;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.unix.DatagramSocketAddress;
 import io.netty.channel.unix.IovArray;
+import io.netty.channel.unix.Limits;
 import io.netty.channel.unix.UnixChannelUtil;
 import io.netty.util.internal.StringUtil;
 
@@ -268,8 +268,10 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
             }
 
             try {
-                // Check if sendmmsg(...) is supported which is only the case for GLIBC 2.14+
-                if (Native.IS_SUPPORTING_SENDMMSG && in.size() > 1) {
+                // Check if sendmmsg(...) is supported which is only the case for GLIBC 2.14+. This is also used
+                // for a single SegmentedDatagramPacket as the segment size is passed as control message.
+                if (Native.IS_SUPPORTING_SENDMMSG &&
+                        (in.size() > 1 || msg instanceof SegmentedDatagramPacket)) {
                     NativeDatagramPacketArray array = ((EpollEventLoop) eventLoop()).cleanDatagramPacketArray();
                     in.forEachFlushedMessage(array);
                     int cnt = array.count();
@@ -374,6 +376,16 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
 
     @Override
     protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof SegmentedDatagramPacket) {
+            if (!SegmentedDatagramPacket.isSupported()) {
+                throw new UnsupportedOperationException(
+                        "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
+            }
+            SegmentedDatagramPacket packet = (SegmentedDatagramPacket) msg;
+            ByteBuf content = packet.content();
+            return UnixChannelUtil.isBufferCopyNeededForWrite(content) ?
+                    packet.replace(newDirectBuffer(packet, content)) : msg;
+        }
         if (msg instanceof DatagramPacket) {
             DatagramPacket packet = (DatagramPacket) msg;
             ByteBuf content = packet.content();
@@ -434,7 +446,7 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
         @Override
         void epollInReady() {
             assert eventLoop().inEventLoop();
-            DatagramChannelConfig config = config();
+            EpollDatagramChannelConfig config = config();
             if (shouldBreakEpollInReady(config)) {
                 clearEpollIn0();
                 return;
@@ -447,12 +459,23 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
             allocHandle.reset(config);
             epollInBefore();
 
+            final int batchSize = recvmmsgBatchSize(config);
+
             Throwable exception = null;
             try {
                 ByteBuf data = null;
                 try {
                     do {
                         data = allocHandle.allocate(allocator);
+                        if (batchSize > 0 && data.isDirect()) {
+                            ByteBuf first = data;
+                            // The ownership of the buffer is transferred to scatteringRead(...).
+                            data = null;
+                            if (!scatteringRead(allocHandle, allocator, first, batchSize)) {
+                                break;
+                            }
+                            continue;
+                        }
                         allocHandle.attemptedBytesRead(data.writableBytes());
                         final DatagramSocketAddress remoteAddress;
                         if (data.hasMemoryAddress()) {
@@ -503,5 +526,92 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
                 epollInFinally(config);
             }
         }
+
+        /**
+         * Returns the number of datagrams to receive with one recvmmsg(...) call or {@code 0} if recvfrom(...)
+         * should be used.
+         */
+        private int recvmmsgBatchSize(EpollDatagramChannelConfig config) {
+            if (!Native.IS_SUPPORTING_RECVMMSG) {
+                return 0;
+            }
+            int batchSize = Math.min(config.getDatagramReadBatchSize(), Limits.UIO_MAX_IOV);
+            if (config.isUdpGroEnabled()) {
+                // The segment size of coalesced datagrams is only returned by recvmmsg(...).
+                return Math.max(1, batchSize);
+            }
+            // recvmmsg(...) can not return the original destination address so only use it if not needed.
+            return batchSize > 1 && !config.isIpRecvOrigDestAddrEnabled() ? batchSize : 0;
+        }
+
+        /**
+         * Receive up to {@code batchSize} datagrams with one recvmmsg(...) call and fire each of them through the
+         * pipeline. Returns {@code false} if nothing was received and so there is nothing more to read for now.
+         *
+         * Note that recvmmsg(...) may also return less datagrams than requested if an error is pending, so we only
+         * stop once nothing was received.
+         */
+        private boolean scatteringRead(EpollRecvByteAllocatorHandle allocHandle, ByteBufAllocator allocator,
+                                       ByteBuf first, int batchSize) throws IOException {
+            NativeDatagramPacketArray array = ((EpollEventLoop) eventLoop()).cleanDatagramPacketArray();
+            try {
+                allocHandle.attemptedBytesRead(first.writableBytes());
+                ByteBuf data = first;
+                for (;;) {
+                    if (!array.addWritable(data)) {
+                        data.release();
+                        break;
+                    }
+                    if (array.count() == batchSize) {
+                        break;
+                    }
+                    data = allocHandle.allocate(allocator);
+                    if (!data.isDirect()) {
+                        data.release();
+                        break;
+                    }
+                }
+
+                int count = array.count();
+                NativeDatagramPacketArray.NativeDatagramPacket[] packets = array.packets();
+                int received = count == 0 ? 0 : Native.recvmmsg(socket.intValue(), packets, 0, count);
+                if (received == 0) {
+                    allocHandle.lastBytesRead(-1);
+                    return false;
+                }
+
+                InetSocketAddress localAddress = (InetSocketAddress) localAddress();
+                ChannelPipeline pipeline = pipeline();
+                for (int i = 0; i < received; i++) {
+                    NativeDatagramPacketArray.NativeDatagramPacket packet = packets[i];
+                    int segmentSize = packet.receivedSegmentSize();
+                    allocHandle.lastBytesRead(packet.receivedBytes());
+                    readPending = false;
+
+                    if (segmentSize > 0 && packet.receivedBytes() > segmentSize) {
+                        // UDP_GRO coalesced multiple datagrams, split them again without copying.
+                        DatagramPacket coalesced = packet.newDatagramPacket(localAddress);
+                        try {
+                            ByteBuf content = coalesced.content();
+                            while (content.isReadable()) {
+                                allocHandle.incMessagesRead(1);
+                                pipeline.fireChannelRead(new DatagramPacket(
+                                        content.readRetainedSlice(Math.min(segmentSize, content.readableBytes())),
+                                        coalesced.recipient(), coalesced.sender()));
+                            }
+                        } finally {
+                            coalesced.release();
+                        }
+                    } else {
+                        allocHandle.incMessagesRead(1);
+                        pipeline.fireChannelRead(packet.newDatagramPacket(localAddress));
+                    }
+                }
+                return true;
+            } finally {
+                // Release all buffers that were not filled.
+                array.releaseWritable();
+            }
+        }
     }
 }
@@ -29,10 +29,15 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Map;
 
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
 public final class EpollDatagramChannelConfig extends EpollChannelConfig implements DatagramChannelConfig {
     private static final RecvByteBufAllocator DEFAULT_RCVBUF_ALLOCATOR = new FixedRecvByteBufAllocator(2048);
     private final EpollDatagramChannel datagramChannel;
     private boolean activeOnOpen;
+    private volatile int datagramReadBatchSize;
+    private volatile boolean ipRecvOrigDestAddr;
+    private volatile boolean udpGro;
 
     EpollDatagramChannelConfig(EpollDatagramChannel channel) {
         super(channel);
@@ -50,7 +55,8 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
                 ChannelOption.IP_MULTICAST_ADDR, ChannelOption.IP_MULTICAST_IF, ChannelOption.IP_MULTICAST_TTL,
                 ChannelOption.IP_TOS, ChannelOption.DATAGRAM_CHANNEL_ACTIVE_ON_REGISTRATION,
                 EpollChannelOption.SO_REUSEPORT, EpollChannelOption.IP_TRANSPARENT,
-                EpollChannelOption.IP_RECVORIGDSTADDR);
+                EpollChannelOption.IP_RECVORIGDSTADDR, EpollChannelOption.DATAGRAM_READ_BATCH_SIZE,
+                EpollChannelOption.UDP_GRO);
     }
 
     @SuppressWarnings({ "unchecked", "deprecation" })
@@ -95,6 +101,12 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
         if (option == EpollChannelOption.IP_RECVORIGDSTADDR) {
             return (T) Boolean.valueOf(isIpRecvOrigDestAddr());
         }
+        if (option == EpollChannelOption.DATAGRAM_READ_BATCH_SIZE) {
+            return (T) Integer.valueOf(getDatagramReadBatchSize());
+        }
+        if (option == EpollChannelOption.UDP_GRO) {
+            return (T) Boolean.valueOf(isUdpGro());
+        }
         return super.getOption(option);
     }
 
@@ -129,6 +141,10 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
             setIpTransparent((Boolean) value);
         } else if (option == EpollChannelOption.IP_RECVORIGDSTADDR) {
             setIpRecvOrigDestAddr((Boolean) value);
+        } else if (option == EpollChannelOption.DATAGRAM_READ_BATCH_SIZE) {
+            setDatagramReadBatchSize((Integer) value);
+        } else if (option == EpollChannelOption.UDP_GRO) {
+            setUdpGro((Boolean) value);
         } else {
             return super.setOption(option, value);
         }
@@ -428,10 +444,84 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
     public EpollDatagramChannelConfig setIpRecvOrigDestAddr(boolean ipTransparent) {
         try {
             datagramChannel.socket.setIpRecvOrigDestAddr(ipTransparent);
+            ipRecvOrigDestAddr = ipTransparent;
             return this;
         } catch (IOException e) {
             throw new ChannelException(e);
         }
     }
 
+    /**
+     * Returns {@code true} if <a href="http://man7.org/linux/man-pages/man7/ip.7.html">IP_RECVORIGDSTADDR</a> was
+     * enabled via {@link #setIpRecvOrigDestAddr(boolean)}. This does not need a syscall.
+     */
+    boolean isIpRecvOrigDestAddrEnabled() {
+        return ipRecvOrigDestAddr;
+    }
+
+    /**
+     * Returns the maximum number of datagrams that are received with one
+     * <a href="http://man7.org/linux/man-pages/man2/recvmmsg.2.html">recvmmsg(...)</a> call.
+     * A value of {@code 0} or {@code 1} means that each datagram is received with its own {@code recvfrom(...)}
+     * call.
+     */
+    public int getDatagramReadBatchSize() {
+        return datagramReadBatchSize;
+    }
+
+    /**
+     * Set the maximum number of datagrams that are received with one
+     * <a href="http://man7.org/linux/man-pages/man2/recvmmsg.2.html">recvmmsg(...)</a> call. Each datagram is
+     * received into its own {@link io.netty.buffer.ByteBuf} obtained from the {@link RecvByteBufAllocator} and is
+     * fired through the pipeline as a separate {@link io.netty.channel.socket.DatagramPacket}. The value is capped to
+     * {@link io.netty.channel.unix.Limits#UIO_MAX_IOV}.
+     *
+     * A value of {@code 0} or {@code 1} (the default) disables batching. Batching is also not used while
+     * {@link #setIpRecvOrigDestAddr(boolean) IP_RECVORIGDSTADDR} is enabled or if the allocated buffers are not
+     * direct.
+     */
+    public EpollDatagramChannelConfig setDatagramReadBatchSize(int datagramReadBatchSize) {
+        this.datagramReadBatchSize = checkPositiveOrZero(datagramReadBatchSize, "datagramReadBatchSize");
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if <a href="http://man7.org/linux/man-pages/man7/udp.7.html">UDP_GRO</a> is enabled,
+     * {@code false} otherwise.
+     */
+    public boolean isUdpGro() {
+        try {
+            return datagramChannel.socket.isUdpGro();
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * If {@code true} is used <a href="http://man7.org/linux/man-pages/man7/udp.7.html">UDP_GRO</a> is enabled,
+     * {@code false} for disable it. Default is disabled.
+     *
+     * With UDP_GRO the kernel may coalesce datagrams of the same flow into one buffer. Those are split again into
+     * separate {@link io.netty.channel.socket.DatagramPacket}s which share the received buffer, so you should
+     * use a {@link RecvByteBufAllocator} that provides buffers of up to 64kb. When enabled the recipient of the
+     * received packets is always the local address of the channel, even if
+     * {@link #setIpRecvOrigDestAddr(boolean) IP_RECVORIGDSTADDR} is enabled.
+     */
+    public EpollDatagramChannelConfig setUdpGro(boolean udpGro) {
+        try {
+            datagramChannel.socket.setUdpGro(udpGro);
+            this.udpGro = udpGro;
+            return this;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if UDP_GRO was enabled via {@link #setUdpGro(boolean)}. This does not need a syscall.
+     */
+    boolean isUdpGroEnabled() {
+        return udpGro;
+    }
+
 }
@@ -84,6 +84,8 @@ final class EpollEventLoop extends SingleThreadEventLoop {
 
     // See http://man7.org/linux/man-pages/man2/timerfd_create.2.html.
     private static final long MAX_SCHEDULED_TIMERFD_NS = 999999999;
+    // Used if a SelectStrategy other than EpollBusyWaitSelectStrategy returns SelectStrategy.BUSY_WAIT.
+    private static final long DEFAULT_BUSY_WAIT_NANOS = 50000;
 
     EpollEventLoop(EventLoopGroup parent, Executor executor, int maxEvents,
                    SelectStrategy strategy, RejectedExecutionHandler rejectedExecutionHandler) {
@@ -189,7 +191,15 @@ final class EpollEventLoop extends SingleThreadEventLoop {
      */
     void modify(AbstractEpollChannel ch) throws IOException {
         assert inEventLoop();
-        Native.epollCtlMod(epollFd.intValue(), ch.socket.intValue(), ch.flags);
+        int fd = ch.socket.intValue();
+        if ((ch.flags & Native.EPOLLEXCLUSIVE) != 0) {
+            // EPOLL_CTL_MOD is not allowed for registrations which use EPOLLEXCLUSIVE, so re-register instead. No
+            // readiness is lost as EPOLL_CTL_ADD reports the current state of the file-descriptor.
+            Native.epollCtlDel(epollFd.intValue(), fd);
+            Native.epollCtlAdd(epollFd.intValue(), fd, ch.flags);
+        } else {
+            Native.epollCtlMod(epollFd.intValue(), fd, ch.flags);
+        }
     }
 
     /**
@@ -263,14 +273,52 @@ final class EpollEventLoop extends SingleThreadEventLoop {
         return Native.epollWait(epollFd, events, timerFd, 0, 0);
     }
 
+    /**
+     * Spin on a non-blocking {@code epoll_wait(...)} until there is something to do or the busy wait time elapsed.
+     *
+     * @return the number of ready events or {@link SelectStrategy#SELECT} if a blocking {@code epoll_wait(...)}
+     *         should follow.
+     */
+    private int epollBusyWait() throws IOException {
+        final EpollBusyWaitSelectStrategy busyWaitStrategy = selectStrategy instanceof EpollBusyWaitSelectStrategy ?
+                (EpollBusyWaitSelectStrategy) selectStrategy : null;
+        final long busyWaitNanos = busyWaitStrategy != null ?
+                busyWaitStrategy.busyWaitNanos() : DEFAULT_BUSY_WAIT_NANOS;
+        final long startTime = System.nanoTime();
+        // Never spin past the deadline of the next scheduled task.
+        final long deadline = startTime + min(busyWaitNanos, delayNanos(startTime));
+        for (;;) {
+            int ready = epollWaitNow();
+            if (ready > 0 || hasTasks()) {
+                if (busyWaitStrategy != null) {
+                    busyWaitStrategy.spinHit();
+                }
+                return ready;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                if (busyWaitStrategy != null) {
+                    busyWaitStrategy.parked();
+                }
+                return SelectStrategy.SELECT;
+            }
+        }
+    }
+
     @Override
     protected void run() {
         for (;;) {
             try {
+                long metricTime = metricStartTime();
                 int strategy = selectStrategy.calculateStrategy(selectNowSupplier, hasTasks());
                 switch (strategy) {
                     case SelectStrategy.CONTINUE:
                         continue;
+                    case SelectStrategy.BUSY_WAIT:
+                        strategy = epollBusyWait();
+                        if (strategy != SelectStrategy.SELECT) {
+                            break;
+                        }
+                        // fallthrough as nothing happened while spinning, so block in epoll_wait(...)
                     case SelectStrategy.SELECT:
                         strategy = epollWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
 
@@ -309,6 +357,7 @@ final class EpollEventLoop extends SingleThreadEventLoop {
                     default:
                 }
 
+                metricTime = recordIoWaitTime(metricTime);
                 final int ioRatio = this.ioRatio;
                 if (ioRatio == 100) {
                     try {
@@ -316,8 +365,10 @@ final class EpollEventLoop extends SingleThreadEventLoop {
                             processReady(events, strategy);
                         }
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         // Ensure we always run tasks.
                         runAllTasks();
+                        recordTaskTime(metricTime);
                     }
                 } else {
                     final long ioStartTime = System.nanoTime();
@@ -327,9 +378,11 @@ final class EpollEventLoop extends SingleThreadEventLoop {
                             processReady(events, strategy);
                         }
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                        recordTaskTime(metricTime);
                     }
                 }
                 if (allowGrowing && strategy == events.length()) {
@@ -404,6 +457,12 @@ final class EpollEventLoop extends SingleThreadEventLoop {
                     // past.
                     AbstractEpollUnsafe unsafe = (AbstractEpollUnsafe) ch.unsafe();
 
+                    if ((ev & Native.EPOLLERR) != 0) {
+                        // Process the notifications from the error queue first as these may free resources which are
+                        // needed to make progress when writing.
+                        unsafe.epollErrReady();
+                    }
+
                     // First check for EPOLLOUT as we may need to fail the connect ChannelPromise before try
                     // to read from the file descriptor.
                     // See https://github.com/netty/netty/issues/3785
@@ -15,19 +15,36 @@
  */
 package io.netty.channel.epoll;
 
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.bootstrap.ServerBootstrapConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFactory;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultSelectStrategyFactory;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.MultithreadEventLoopGroup;
 import io.netty.channel.SelectStrategyFactory;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.EventExecutorChooserFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadFactory;
 
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
 /**
  * {@link EventLoopGroup} which uses epoll under the covers. Because of this
  * it only works on linux.
@@ -129,6 +146,160 @@ public final class EpollEventLoopGroup extends MultithreadEventLoopGroup {
         }
     }
 
+    /**
+     * Binds one {@link EpollServerSocketChannel} per {@link EventLoop} of this group to {@code localAddress}. Each
+     * channel is registered on its own {@link EventLoop}, which also serves all the connections it accepts. The given
+     * {@link ServerBootstrap} is only used as a template for the handlers, options and attributes, its
+     * {@link EventLoopGroup}s and channel type are ignored.
+     * <p>
+     * If {@code cpuAffinity} is {@code true} each channel uses its own listen socket via {@code SO_REUSEPORT} and the
+     * thread of the i-th {@link EventLoop} is pinned to CPU i. A classic BPF program then hands each new connection to
+     * the listen socket whose index matches the CPU which received it (modulo the number of {@link EventLoop}s), so
+     * a connection is processed on the CPU its packets arrive on. This requires Linux kernel 4.5 or later and at least
+     * as many CPUs as {@link EventLoop}s.
+     * <p>
+     * If {@code cpuAffinity} is {@code false} all channels share a single listen socket which is registered with
+     * {@code EPOLLEXCLUSIVE}, so only one of the {@link EventLoop}s is woken up for each new connection. This
+     * requires Linux kernel 4.5 or later.
+     *
+     * @return a {@link Future} which is notified with the bound channels, in the order of the {@link EventLoop}s.
+     */
+    public Future<List<Channel>> bindPerEventLoop(
+            ServerBootstrap bootstrap, SocketAddress localAddress, boolean cpuAffinity) {
+        checkNotNull(bootstrap, "bootstrap");
+        checkNotNull(localAddress, "localAddress");
+        if (bootstrap.config().childHandler() == null) {
+            throw new IllegalStateException("childHandler not set");
+        }
+        List<EventLoop> loops = new ArrayList<EventLoop>(executorCount());
+        for (EventExecutor e: this) {
+            loops.add((EventLoop) e);
+        }
+        Promise<List<Channel>> promise = next().newPromise();
+        List<Channel> channels = new ArrayList<Channel>(loops.size());
+        if (cpuAffinity) {
+            bindReusePort(bootstrap, localAddress, loops, channels, promise);
+        } else {
+            bindExclusive(bootstrap, localAddress, loops, channels, promise);
+        }
+        return promise;
+    }
+
+    // The listen sockets are bound one after the other, as the order in which they join the SO_REUSEPORT group
+    // defines the index which is selected by the BPF program.
+    private static void bindReusePort(final ServerBootstrap template, final SocketAddress localAddress,
+                                      final List<EventLoop> loops, final List<Channel> channels,
+                                      final Promise<List<Channel>> promise) {
+        final int index = channels.size();
+        if (index == loops.size()) {
+            try {
+                ((EpollServerSocketChannel) channels.get(0)).socket.attachReusePortCpuBpf(loops.size());
+            } catch (Throwable cause) {
+                failBind(channels, promise, cause);
+                return;
+            }
+            promise.setSuccess(Collections.unmodifiableList(channels));
+            return;
+        }
+        final EventLoop loop = loops.get(index);
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Native.setCurrentThreadAffinity(index);
+                    // Use the address of the first channel so all of them share the same port even if the
+                    // given address uses an ephemeral port.
+                    newBootstrap(template, loop).channel(EpollServerSocketChannel.class)
+                            .option(EpollChannelOption.SO_REUSEPORT, true)
+                            .bind(index == 0 ? localAddress : channels.get(0).localAddress())
+                            .addListener(new ChannelFutureListener() {
+                                @Override
+                                public void operationComplete(ChannelFuture future) {
+                                    if (future.isSuccess()) {
+                                        channels.add(future.channel());
+                                        bindReusePort(template, localAddress, loops, channels, promise);
+                                    } else {
+                                        failBind(channels, promise, future.cause());
+                                    }
+                                }
+                            });
+                } catch (Throwable cause) {
+                    failBind(channels, promise, cause);
+                }
+            }
+        });
+    }
+
+    // The first channel binds the listen socket, all others are registered with a duplicate of its file-descriptor.
+    private static void bindExclusive(final ServerBootstrap template, final SocketAddress localAddress,
+                                      final List<EventLoop> loops, final List<Channel> channels,
+                                      final Promise<List<Channel>> promise) {
+        final int index = channels.size();
+        if (index == loops.size()) {
+            promise.setSuccess(Collections.unmodifiableList(channels));
+            return;
+        }
+        final ChannelFuture future;
+        try {
+            ServerBootstrap bootstrap = newBootstrap(template, loops.get(index))
+                    .option(EpollChannelOption.EPOLL_EXCLUSIVE, true);
+            if (index == 0) {
+                future = bootstrap.channel(EpollServerSocketChannel.class).bind(localAddress);
+            } else {
+                final int fd = Native.dup(((EpollServerSocketChannel) channels.get(0)).socket.intValue());
+                future = bootstrap.channelFactory(new ChannelFactory<EpollServerSocketChannel>() {
+                    @Override
+                    public EpollServerSocketChannel newChannel() {
+                        return new EpollServerSocketChannel(fd);
+                    }
+                }).register();
+            }
+        } catch (Throwable cause) {
+            failBind(channels, promise, cause);
+            return;
+        }
+        future.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    channels.add(future.channel());
+                    bindExclusive(template, localAddress, loops, channels, promise);
+                } else {
+                    failBind(channels, promise, future.cause());
+                }
+            }
+        });
+    }
+
+    private static void failBind(List<Channel> channels, Promise<List<Channel>> promise, Throwable cause) {
+        for (Channel ch: channels) {
+            ch.close();
+        }
+        promise.tryFailure(cause);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServerBootstrap newBootstrap(ServerBootstrap template, EventLoop loop) {
+        ServerBootstrapConfig config = template.config();
+        ServerBootstrap bootstrap = new ServerBootstrap().group(loop, loop).childHandler(config.childHandler());
+        if (config.handler() != null) {
+            bootstrap.handler(config.handler());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e: config.options().entrySet()) {
+            bootstrap.option((ChannelOption<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e: config.attrs().entrySet()) {
+            bootstrap.attr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<ChannelOption<?>, Object> e: config.childOptions().entrySet()) {
+            bootstrap.childOption((ChannelOption<Object>) e.getKey(), e.getValue());
+        }
+        for (Map.Entry<AttributeKey<?>, Object> e: config.childAttrs().entrySet()) {
+            bootstrap.childAttr((AttributeKey<Object>) e.getKey(), e.getValue());
+        }
+        return bootstrap;
+    }
+
     @Override
     protected EventLoop newChild(Executor executor, Object... args) throws Exception {
         return new EpollEventLoop(this, executor, (Integer) args[0],
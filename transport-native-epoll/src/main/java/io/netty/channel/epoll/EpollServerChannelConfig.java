@@ -43,7 +43,8 @@ public class EpollServerChannelConfig extends EpollChannelConfig implements Serv
 
     @Override
     public Map<ChannelOption<?>, Object> getOptions() {
-        return getOptions(super.getOptions(), SO_RCVBUF, SO_REUSEADDR, SO_BACKLOG, EpollChannelOption.TCP_FASTOPEN);
+        return getOptions(super.getOptions(), SO_RCVBUF, SO_REUSEADDR, SO_BACKLOG, EpollChannelOption.TCP_FASTOPEN,
+                EpollChannelOption.EPOLL_EXCLUSIVE);
     }
 
     @SuppressWarnings("unchecked")
@@ -61,6 +62,9 @@ public class EpollServerChannelConfig extends EpollChannelConfig implements Serv
         if (option == EpollChannelOption.TCP_FASTOPEN) {
             return (T) Integer.valueOf(getTcpFastopen());
         }
+        if (option == EpollChannelOption.EPOLL_EXCLUSIVE) {
+            return (T) Boolean.valueOf(isEpollExclusive());
+        }
         return super.getOption(option);
     }
 
@@ -76,6 +80,8 @@ public class EpollServerChannelConfig extends EpollChannelConfig implements Serv
             setBacklog((Integer) value);
         } else if (option == EpollChannelOption.TCP_FASTOPEN) {
             setTcpFastopen((Integer) value);
+        } else if (option == EpollChannelOption.EPOLL_EXCLUSIVE) {
+            setEpollExclusive((Boolean) value);
         } else {
             return super.setOption(option, value);
         }
@@ -155,6 +161,36 @@ public class EpollServerChannelConfig extends EpollChannelConfig implements Serv
         return this;
     }
 
+    /**
+     * Returns {@code true} if the channel is registered with {@code EPOLLEXCLUSIVE}, {@code false} otherwise.
+     */
+    public boolean isEpollExclusive() {
+        return channel.isFlagSet(Native.EPOLLEXCLUSIVE);
+    }
+
+    /**
+     * Register the channel with {@code EPOLLEXCLUSIVE}. This requires Linux kernel 4.5 or later and is useful if
+     * the same listen socket is shared by multiple channels which are registered on different {@link EpollEventLoop}s,
+     * as only one of them is woken up for a new connection instead of all of them.
+     *
+     * <strong>Be aware this config setting can only be adjusted before the channel was registered.</strong>
+     */
+    public EpollServerChannelConfig setEpollExclusive(boolean epollExclusive) {
+        if (channel.isRegistered()) {
+            throw new IllegalStateException("EPOLLEXCLUSIVE can only be changed before channel is registered");
+        }
+        try {
+            if (epollExclusive) {
+                channel.setFlag(Native.EPOLLEXCLUSIVE);
+            } else {
+                channel.clearFlag(Native.EPOLLEXCLUSIVE);
+            }
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+        return this;
+    }
+
     @Override
     public EpollServerChannelConfig setPerformancePreferences(int connectionTime, int latency, int bandwidth) {
         return this;
@@ -100,6 +100,12 @@ public final class EpollSocketChannel extends AbstractEpollStreamChannel impleme
         return config;
     }
 
+    @Override
+    int zeroCopyWriteThreshold() {
+        EpollSocketChannelConfig config = this.config;
+        return config.isSoZeroCopy() ? config.getZeroCopyWriteThreshold() : 0;
+    }
+
     @Override
     public ServerSocketChannel parent() {
         return (ServerSocketChannel) super.parent();
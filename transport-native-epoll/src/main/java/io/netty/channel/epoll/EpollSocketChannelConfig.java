@@ -15,9 +15,11 @@
  */
 package io.netty.channel.epoll;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelException;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.MessageSizeEstimator;
 import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.WriteBufferWaterMark;
@@ -36,10 +38,13 @@ import static io.netty.channel.ChannelOption.SO_RCVBUF;
 import static io.netty.channel.ChannelOption.SO_REUSEADDR;
 import static io.netty.channel.ChannelOption.SO_SNDBUF;
 import static io.netty.channel.ChannelOption.TCP_NODELAY;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
 
 public final class EpollSocketChannelConfig extends EpollChannelConfig implements SocketChannelConfig {
     private final EpollSocketChannel channel;
     private volatile boolean allowHalfClosure;
+    private volatile boolean soZeroCopy;
+    private volatile int zeroCopyWriteThreshold = 32 * 1024;
 
     /**
      * Creates a new instance.
@@ -62,7 +67,8 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
                 ALLOW_HALF_CLOSURE, EpollChannelOption.TCP_CORK, EpollChannelOption.TCP_NOTSENT_LOWAT,
                 EpollChannelOption.TCP_KEEPCNT, EpollChannelOption.TCP_KEEPIDLE, EpollChannelOption.TCP_KEEPINTVL,
                 EpollChannelOption.TCP_MD5SIG, EpollChannelOption.TCP_QUICKACK, EpollChannelOption.IP_TRANSPARENT,
-                EpollChannelOption.TCP_FASTOPEN_CONNECT);
+                EpollChannelOption.TCP_FASTOPEN_CONNECT, EpollChannelOption.SO_ZEROCOPY,
+                EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD);
     }
 
     @SuppressWarnings("unchecked")
@@ -119,6 +125,12 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
         if (option == EpollChannelOption.TCP_FASTOPEN_CONNECT) {
             return (T) Boolean.valueOf(isTcpFastOpenConnect());
         }
+        if (option == EpollChannelOption.SO_ZEROCOPY) {
+            return (T) Boolean.valueOf(isSoZeroCopy());
+        }
+        if (option == EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD) {
+            return (T) Integer.valueOf(getZeroCopyWriteThreshold());
+        }
         return super.getOption(option);
     }
 
@@ -164,6 +176,10 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
             setTcpQuickAck((Boolean) value);
         } else if (option == EpollChannelOption.TCP_FASTOPEN_CONNECT) {
             setTcpFastOpenConnect((Boolean) value);
+        } else if (option == EpollChannelOption.SO_ZEROCOPY) {
+            setSoZeroCopy((Boolean) value);
+        } else if (option == EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD) {
+            setZeroCopyWriteThreshold((Integer) value);
         } else {
             return super.setOption(option, value);
         }
@@ -549,6 +565,56 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
         }
     }
 
+    /**
+     * Enable or disable writing large {@link ByteBuf}s with {@code MSG_ZEROCOPY}. Requires Linux kernel 4.14 or later.
+     * See <a href="https://www.kernel.org/doc/html/latest/networking/msg_zerocopy.html">MSG_ZEROCOPY</a> for more
+     * details.
+     * <p>
+     * If enabled, every {@link ByteBuf} which has a memory address and at least
+     * {@link #getZeroCopyWriteThreshold()} readable bytes is written without copying its content into the kernel.
+     * Such a {@link ByteBuf} is only released and the {@link ChannelPromise} of the write is only
+     * notified once the kernel signals that it does not use the memory anymore. If the channel is closed before, the
+     * {@link ByteBuf} is released and the {@link ChannelPromise} is failed right away.
+     */
+    public EpollSocketChannelConfig setSoZeroCopy(boolean soZeroCopy) {
+        if (soZeroCopy) {
+            try {
+                // Only ever enable SO_ZEROCOPY on the socket, it has no effect on writes that are done without
+                // MSG_ZEROCOPY. This way the channel never uses MSG_ZEROCOPY while the socket does not support it.
+                channel.socket.setZeroCopy(true);
+            } catch (IOException e) {
+                throw new ChannelException(e);
+            }
+        }
+        this.soZeroCopy = soZeroCopy;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if large {@link ByteBuf}s are written with {@code MSG_ZEROCOPY}, {@code false} otherwise.
+     */
+    public boolean isSoZeroCopy() {
+        return soZeroCopy;
+    }
+
+    /**
+     * Set the minimal number of readable bytes a {@link ByteBuf} must have to be written with {@code MSG_ZEROCOPY}
+     * if {@link #isSoZeroCopy()} is {@code true}. Smaller writes are copied as usual, as pinning the pages and
+     * processing the completion is more expensive than copying a few kilobytes.
+     */
+    public EpollSocketChannelConfig setZeroCopyWriteThreshold(int zeroCopyWriteThreshold) {
+        this.zeroCopyWriteThreshold = checkPositive(zeroCopyWriteThreshold, "zeroCopyWriteThreshold");
+        return this;
+    }
+
+    /**
+     * Returns the minimal number of readable bytes a {@link ByteBuf} must have to be written with
+     * {@code MSG_ZEROCOPY}.
+     */
+    public int getZeroCopyWriteThreshold() {
+        return zeroCopyWriteThreshold;
+    }
+
     @Override
     public boolean isAllowHalfClosure() {
         return allowHalfClosure;
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * {@link ChannelHandler} which forwards everything its {@link AbstractEpollStreamChannel} receives to a peer
+ * {@link AbstractEpollStreamChannel} by splicing it through a kernel pipe, so the payload never needs to be copied
+ * to user space. Use {@link #proxy(AbstractEpollStreamChannel, AbstractEpollStreamChannel)} to connect two channels
+ * in both directions, which is what a layer 4 proxy needs.
+ * <p>
+ * The handler takes care of:
+ * <ul>
+ *   <li>Flow control: reading is suspended while the peer is not writable and resumed once it is writable again.
+ *   </li>
+ *   <li>Half-closure: once the end of the stream is reached and all data was written to the peer, the output of the
+ *   peer is shut down. Once this happened for both directions both channels are closed. This requires
+ *   {@link ChannelOption#ALLOW_HALF_CLOSURE} on both channels, otherwise a channel is closed as soon as the end of its
+ *   stream is reached and the peer is closed once everything was written to it.</li>
+ *   <li>Closure: if one of the channels is closed, the other one is closed once everything was written to it.</li>
+ * </ul>
+ * Please note:
+ * <ul>
+ *   <li>both channels need to be registered to the same {@link EventLoop}.</li>
+ *   <li>{@link EpollChannelConfig#getEpollMode()} must be {@link EpollMode#LEVEL_TRIGGERED} for both channels.</li>
+ *   <li>{@link ChannelOption#AUTO_READ} is controlled by this handler.</li>
+ * </ul>
+ */
+public final class EpollSpliceProxyHandler extends ChannelInboundHandlerAdapter {
+
+    private final AbstractEpollStreamChannel peer;
+    private boolean splicing;
+
+    /**
+     * Creates a new instance which forwards everything to the given {@code peer}.
+     */
+    public EpollSpliceProxyHandler(AbstractEpollStreamChannel peer) {
+        this.peer = checkNotNull(peer, "peer");
+    }
+
+    /**
+     * Connects both given channels in both directions by adding an {@link EpollSpliceProxyHandler} to each of them.
+     */
+    public static void proxy(AbstractEpollStreamChannel first, AbstractEpollStreamChannel second) {
+        first.pipeline().addLast(new EpollSpliceProxyHandler(second));
+        second.pipeline().addLast(new EpollSpliceProxyHandler(first));
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        if (ctx.channel().isRegistered() && ctx.channel().isActive()) {
+            startSplice(ctx);
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        startSplice(ctx);
+        ctx.fireChannelActive();
+    }
+
+    private void startSplice(ChannelHandlerContext ctx) {
+        if (splicing) {
+            return;
+        }
+        splicing = true;
+        final AbstractEpollStreamChannel ch = (AbstractEpollStreamChannel) ctx.channel();
+        ch.spliceTo(peer, Integer.MAX_VALUE).addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (!future.isSuccess()) {
+                    ch.close();
+                    peer.close();
+                } else if (ch.isOutputShutdown() || !ch.isActive()) {
+                    // The other direction is done as well.
+                    ch.close();
+                    closeOnFlush(peer);
+                } else if (peer.isActive()) {
+                    // The end of the stream was reached and everything was written to the peer.
+                    peer.shutdownOutput();
+                }
+            }
+        });
+        // Reading is driven by EPOLLIN, so splicing only makes progress while auto read is enabled.
+        ch.config().setAutoRead(peer.isWritable());
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        // Data which was read before the splicing was started.
+        peer.write(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        peer.flush();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        // This channel is the target of the peer, so only read from the peer while we can write.
+        peer.config().setAutoRead(ctx.channel().isWritable());
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        closeOnFlush(peer);
+        ctx.fireChannelInactive();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        ctx.close();
+        peer.close();
+    }
+
+    private static void closeOnFlush(Channel ch) {
+        if (ch.isActive()) {
+            ch.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+}
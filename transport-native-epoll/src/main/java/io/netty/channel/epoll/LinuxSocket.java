@@ -26,8 +26,12 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.channels.ClosedChannelException;
 
+import static io.netty.channel.unix.Errors.ERRNO_EAGAIN_NEGATIVE;
+import static io.netty.channel.unix.Errors.ERRNO_ECONNRESET_NEGATIVE;
 import static io.netty.channel.unix.Errors.ERRNO_EPIPE_NEGATIVE;
+import static io.netty.channel.unix.Errors.ERRNO_EWOULDBLOCK_NEGATIVE;
 import static io.netty.channel.unix.Errors.ioResult;
+import static io.netty.channel.unix.Errors.newIOException;
 import static io.netty.channel.unix.Errors.newConnectionResetException;
 
 /**
@@ -39,6 +43,14 @@ final class LinuxSocket extends Socket {
             newConnectionResetException("syscall:sendfile(...)", ERRNO_EPIPE_NEGATIVE);
     private static final ClosedChannelException SENDFILE_CLOSED_CHANNEL_EXCEPTION = ThrowableUtil.unknownStackTrace(
             new ClosedChannelException(), Native.class, "sendfile(...)");
+    private static final NativeIoException SEND_ZEROCOPY_CONNECTION_RESET_EXCEPTION =
+            newConnectionResetException("syscall:send(...)", ERRNO_EPIPE_NEGATIVE);
+    private static final ClosedChannelException SEND_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION =
+            ThrowableUtil.unknownStackTrace(new ClosedChannelException(), Native.class, "send(...)");
+    private static final NativeIoException PENDING_BYTES_CONNECTION_RESET_EXCEPTION =
+            newConnectionResetException("syscall:recv(...)", ERRNO_ECONNRESET_NEGATIVE);
+    private static final ClosedChannelException PENDING_BYTES_CLOSED_CHANNEL_EXCEPTION =
+            ThrowableUtil.unknownStackTrace(new ClosedChannelException(), Native.class, "recv(...)");
 
     public LinuxSocket(int fd) {
         super(fd);
@@ -103,6 +115,30 @@ final class LinuxSocket extends Socket {
         setIpRecvOrigDestAddr(intValue(), enabled ? 1 : 0);
     }
 
+    void setUdpGro(boolean enabled) throws IOException {
+        setUdpGro(intValue(), enabled ? 1 : 0);
+    }
+
+    void setBusyPoll(int busyPoll) throws IOException {
+        setBusyPoll(intValue(), busyPoll);
+    }
+
+    void setPreferBusyPoll(boolean preferBusyPoll) throws IOException {
+        setPreferBusyPoll(intValue(), preferBusyPoll ? 1 : 0);
+    }
+
+    /**
+     * Attaches a classic BPF program to the {@code SO_REUSEPORT} group of this socket which selects the socket at
+     * index {@code cpu % groupSize} for a new connection, where {@code cpu} is the CPU which received it.
+     */
+    void attachReusePortCpuBpf(int groupSize) throws IOException {
+        attachReusePortCpuBpf(intValue(), groupSize);
+    }
+
+    void setZeroCopy(boolean enabled) throws IOException {
+        setZeroCopy(intValue(), enabled ? 1 : 0);
+    }
+
     void getTcpInfo(EpollTcpInfo info) throws IOException {
         getTcpInfo(intValue(), info.info);
     }
@@ -156,6 +192,18 @@ final class LinuxSocket extends Socket {
         return isIpRecvOrigDestAddr(intValue()) != 0;
     }
 
+    boolean isUdpGro() throws IOException {
+        return isUdpGro(intValue()) != 0;
+    }
+
+    int getBusyPoll() throws IOException {
+        return getBusyPoll(intValue());
+    }
+
+    boolean isPreferBusyPoll() throws IOException {
+        return isPreferBusyPoll(intValue()) != 0;
+    }
+
     PeerCredentials getPeerCredentials() throws IOException {
         return getPeerCredentials(intValue());
     }
@@ -172,6 +220,55 @@ final class LinuxSocket extends Socket {
         return ioResult("sendfile", (int) res, SENDFILE_CONNECTION_RESET_EXCEPTION, SENDFILE_CLOSED_CHANNEL_EXCEPTION);
     }
 
+    /**
+     * Write the bytes between {@code pos} and {@code limit} of the memory at {@code address} via
+     * {@code send(...)} with {@code MSG_ZEROCOPY}. Each call which returns a value {@code > 0} must be matched by a
+     * completion which is received via {@link #recvZeroCopyCompletion(int[])}.
+     */
+    int sendAddressZeroCopy(long address, int pos, int limit) throws IOException {
+        int res = sendAddressZeroCopy(intValue(), address, pos, limit);
+        if (res >= 0) {
+            return res;
+        }
+        return ioResult("send", res, SEND_ZEROCOPY_CONNECTION_RESET_EXCEPTION, SEND_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION);
+    }
+
+    /**
+     * Returns the number of bytes which can be read without blocking as reported by {@code FIONREAD}, {@code 0} if
+     * there is nothing to read yet or {@code -1} if the end of the stream was reached. This never consumes any data.
+     */
+    int pendingBytes() throws IOException {
+        int res = pendingBytes(intValue());
+        if (res > 0) {
+            return res;
+        }
+        if (res == 0) {
+            return -1;
+        }
+        return ioResult("recv", res, PENDING_BYTES_CONNECTION_RESET_EXCEPTION, PENDING_BYTES_CLOSED_CHANNEL_EXCEPTION);
+    }
+
+    /**
+     * Receive the next {@code MSG_ZEROCOPY} completion from the error queue of the socket and store the inclusive
+     * range of completed send calls in {@code range}.
+     *
+     * @return {@code true} if a completion was received, {@code false} if the error queue is empty.
+     */
+    boolean recvZeroCopyCompletion(int[] range) throws IOException {
+        for (;;) {
+            int res = recvZeroCopyCompletion(intValue(), range);
+            if (res > 0) {
+                return true;
+            }
+            if (res < 0) {
+                if (res == ERRNO_EAGAIN_NEGATIVE || res == ERRNO_EWOULDBLOCK_NEGATIVE) {
+                    return false;
+                }
+                throw newIOException("recvmsg", res);
+            }
+        }
+    }
+
     public static LinuxSocket newSocketStream() {
         return new LinuxSocket(newSocketStream0());
     }
@@ -198,6 +295,9 @@ final class LinuxSocket extends Socket {
     private static native int isIpFreeBind(int fd) throws IOException;
     private static native int isIpTransparent(int fd) throws IOException;
     private static native int isIpRecvOrigDestAddr(int fd) throws IOException;
+    private static native int isUdpGro(int fd) throws IOException;
+    private static native int getBusyPoll(int fd) throws IOException;
+    private static native int isPreferBusyPoll(int fd) throws IOException;
     private static native void getTcpInfo(int fd, long[] array) throws IOException;
     private static native PeerCredentials getPeerCredentials(int fd) throws IOException;
     private static native int isTcpFastOpenConnect(int fd) throws IOException;
@@ -215,5 +315,13 @@ final class LinuxSocket extends Socket {
     private static native void setIpFreeBind(int fd, int freeBind) throws IOException;
     private static native void setIpTransparent(int fd, int transparent) throws IOException;
     private static native void setIpRecvOrigDestAddr(int fd, int transparent) throws IOException;
+    private static native void setUdpGro(int fd, int gro) throws IOException;
+    private static native void setBusyPoll(int fd, int busyPoll) throws IOException;
+    private static native void setPreferBusyPoll(int fd, int preferBusyPoll) throws IOException;
+    private static native void attachReusePortCpuBpf(int fd, int groupSize) throws IOException;
+    private static native void setZeroCopy(int fd, int zeroCopy) throws IOException;
+    private static native int sendAddressZeroCopy(int fd, long address, int pos, int limit);
+    private static native int pendingBytes(int fd);
+    private static native int recvZeroCopyCompletion(int fd, int[] range);
     private static native void setTcpMd5Sig(int fd, byte[] address, int scopeId, byte[] key) throws IOException;
 }
@@ -22,12 +22,14 @@ import io.netty.channel.unix.IovArray;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 
 import static io.netty.channel.unix.Limits.UIO_MAX_IOV;
 import static io.netty.channel.unix.NativeInetAddress.ipv4MappedIpv6Address;
 
 /**
- * Support <a href="http://linux.die.net/man/2/sendmmsg">sendmmsg(...)</a> on linux with GLIBC 2.14+
+ * Support <a href="http://linux.die.net/man/2/sendmmsg">sendmmsg(...)</a> on linux with GLIBC 2.14+ and
+ * <a href="http://man7.org/linux/man-pages/man2/recvmmsg.2.html">recvmmsg(...)</a> on linux with GLIBC 2.12+
  */
 final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessageProcessor {
 
@@ -56,7 +58,28 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
         }
         NativeDatagramPacket p = packets[count];
         InetSocketAddress recipient = packet.recipient();
-        if (!p.init(content, recipient)) {
+        int segmentSize = packet instanceof SegmentedDatagramPacket ?
+                ((SegmentedDatagramPacket) packet).segmentSize() : 0;
+        if (!p.init(content, recipient, segmentSize)) {
+            return false;
+        }
+
+        count++;
+        return true;
+    }
+
+    /**
+     * Try to add the writable bytes of the given {@link ByteBuf} so they can be filled by
+     * {@link Native#recvmmsg(int, NativeDatagramPacket[], int, int)}. Returns {@code true} on success,
+     * {@code false} otherwise. On success the {@link NativeDatagramPacket} takes over the ownership of the
+     * {@link ByteBuf}.
+     */
+    boolean addWritable(ByteBuf buf) {
+        if (count == packets.length) {
+            return false;
+        }
+        NativeDatagramPacket p = packets[count];
+        if (!p.initWritable(buf)) {
             return false;
         }
 
@@ -87,6 +110,16 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
         this.count = 0;
     }
 
+    /**
+     * Release the {@link ByteBuf}s of all packets which were added via {@link #addWritable(ByteBuf)} and were not
+     * consumed by {@link NativeDatagramPacket#newDatagramPacket(InetSocketAddress)}.
+     */
+    void releaseWritable() {
+        for (int i = 0; i < count; i++) {
+            packets[i].releaseBuffer();
+        }
+    }
+
     void release() {
         // Release all packets
         for (NativeDatagramPacket datagramPacket : packets) {
@@ -106,20 +139,87 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
 
         // This is the actual struct iovec*
         private long memoryAddress;
+        // The number of struct iovec entries, or the number of bytes received after recvmmsg(...)
         private int count;
 
         private byte[] addr;
+        private int addrLen;
         private int scopeId;
         private int port;
 
+        // The UDP_SEGMENT size to use when sending, or the UDP_GRO size after recvmmsg(...). 0 means none.
+        private int segmentSize;
+
+        // Only used when receiving.
+        private final byte[] recvAddr = new byte[16];
+        private final byte[] recvIpv4Addr = new byte[4];
+        private ByteBuf buffer;
+
         private void release() {
+            releaseBuffer();
             array.release();
         }
 
+        private void releaseBuffer() {
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+        }
+
+        /**
+         * Init this instance to receive into the writable bytes of the given {@link ByteBuf} and return
+         * {@code true} if the init was successful.
+         */
+        private boolean initWritable(ByteBuf buf) {
+            array.clear();
+            if (!array.add(buf, buf.writerIndex(), buf.writableBytes())) {
+                return false;
+            }
+            memoryAddress = array.memoryAddress(0);
+            count = array.count();
+            addr = recvAddr;
+            buffer = buf;
+            return true;
+        }
+
+        /**
+         * Returns the number of bytes received for this packet by the last recvmmsg(...) call.
+         */
+        int receivedBytes() {
+            return count;
+        }
+
+        /**
+         * Returns the size of the datagrams which were coalesced into this packet by UDP_GRO, or {@code 0} if the
+         * packet holds a single datagram.
+         */
+        int receivedSegmentSize() {
+            return segmentSize;
+        }
+
+        /**
+         * Create a new {@link DatagramPacket} out of the received data. The ownership of the {@link ByteBuf} is
+         * transferred to the returned {@link DatagramPacket}.
+         */
+        DatagramPacket newDatagramPacket(InetSocketAddress localAddress) throws UnknownHostException {
+            final InetAddress address;
+            if (addrLen == recvIpv4Addr.length) {
+                System.arraycopy(addr, 0, recvIpv4Addr, 0, addrLen);
+                address = InetAddress.getByAddress(recvIpv4Addr);
+            } else {
+                address = Inet6Address.getByAddress(null, addr, scopeId);
+            }
+            ByteBuf buf = buffer;
+            buffer = null;
+            buf.writerIndex(buf.writerIndex() + count);
+            return new DatagramPacket(buf, localAddress, new InetSocketAddress(address, port));
+        }
+
         /**
          * Init this instance and return {@code true} if the init was successful.
          */
-        private boolean init(ByteBuf buf, InetSocketAddress recipient) {
+        private boolean init(ByteBuf buf, InetSocketAddress recipient, int segmentSize) {
             array.clear();
             if (!array.add(buf)) {
                 return false;
@@ -137,6 +237,7 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
                 scopeId = 0;
             }
             port = recipient.getPort();
+            this.segmentSize = segmentSize;
             return true;
         }
     }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.NetUtil;
+import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.Future;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+public class EpollBindPerEventLoopTest {
+
+    private static final int LOOPS = 2;
+    private static final int CONNECTIONS = 32;
+
+    private static EpollEventLoopGroup group;
+    private static EpollEventLoopGroup clientGroup;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new EpollEventLoopGroup(LOOPS);
+        clientGroup = new EpollEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+        clientGroup.shutdownGracefully();
+    }
+
+    @Test(timeout = 30000)
+    public void testBindExclusive() throws Exception {
+        testBindPerEventLoop(false);
+    }
+
+    @Test(timeout = 30000)
+    public void testBindCpuAffinity() throws Exception {
+        assumeTrue(NettyRuntime.availableProcessors() >= LOOPS);
+        testBindPerEventLoop(true);
+    }
+
+    private static void testBindPerEventLoop(boolean cpuAffinity) throws Exception {
+        AcceptHandler handler = new AcceptHandler(CONNECTIONS);
+        ServerBootstrap bootstrap = new ServerBootstrap().childHandler(handler);
+        Future<List<Channel>> future = group.bindPerEventLoop(
+                bootstrap, new InetSocketAddress(NetUtil.LOCALHOST4, 0), cpuAffinity).awaitUninterruptibly();
+        if (!future.isSuccess()) {
+            // Old kernel or restricted CPU set.
+            assumeNoException(future.cause());
+        }
+        List<Channel> channels = future.getNow();
+        try {
+            assertEquals(LOOPS, channels.size());
+            InetSocketAddress address = (InetSocketAddress) channels.get(0).localAddress();
+            for (int i = 0; i < channels.size(); i++) {
+                EpollServerSocketChannel ch = (EpollServerSocketChannel) channels.get(i);
+                assertTrue(ch.isActive());
+                assertEquals(address.getPort(), ((InetSocketAddress) ch.localAddress()).getPort());
+                if (cpuAffinity) {
+                    assertTrue(ch.config().isReusePort());
+                } else {
+                    assertTrue(ch.config().isEpollExclusive());
+                    // Toggling auto read re-registers the channel as EPOLL_CTL_MOD is not allowed.
+                    ch.config().setAutoRead(false);
+                    ch.config().setAutoRead(true);
+                }
+                if (i > 0) {
+                    assertNotEquals(channels.get(i - 1).eventLoop(), ch.eventLoop());
+                }
+            }
+
+            for (int i = 0; i < CONNECTIONS; i++) {
+                new Bootstrap().group(clientGroup).channel(EpollSocketChannel.class)
+                        .handler(new ChannelInboundHandlerAdapter())
+                        .connect(address).syncUninterruptibly().channel().close();
+            }
+            handler.latch.await();
+            for (Channel child: handler.children.keySet()) {
+                // Child channels are served by the EventLoop of the channel which accepted them.
+                assertSame(child.parent().eventLoop(), child.eventLoop());
+            }
+        } finally {
+            for (Channel ch: channels) {
+                ch.close().syncUninterruptibly();
+            }
+        }
+    }
+
+    @Sharable
+    private static final class AcceptHandler extends ChannelInboundHandlerAdapter {
+        final ConcurrentMap<Channel, Boolean> children = new ConcurrentHashMap<Channel, Boolean>();
+        final CountDownLatch latch;
+
+        AcceptHandler(int connections) {
+            latch = new CountDownLatch(connections);
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            children.put(ctx.channel(), Boolean.TRUE);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.NetUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+public class EpollDatagramSegmentationOffloadTest {
+
+    private static final int SEGMENT_SIZE = 512;
+    private static final int SEGMENTS = 8;
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new EpollEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 10000)
+    public void testSendSegmentedDatagramPacket() throws Throwable {
+        testSegmented(false);
+    }
+
+    @Test(timeout = 10000)
+    public void testReceiveWithUdpGro() throws Throwable {
+        testSegmented(true);
+    }
+
+    private static void testSegmented(boolean udpGro) throws Throwable {
+        assumeTrue(SegmentedDatagramPacket.isSupported());
+
+        final BlockingQueue<ByteBuf> received = new LinkedBlockingQueue<ByteBuf>();
+        Bootstrap sb = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                .option(EpollChannelOption.UDP_GRO, udpGro)
+                .option(EpollChannelOption.DATAGRAM_READ_BATCH_SIZE, 4)
+                .option(EpollChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(64 * 1024))
+                .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket msg) {
+                        received.add(msg.content().retain());
+                    }
+                });
+        Bootstrap cb = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                .handler(new SimpleChannelInboundHandler<Object>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+                        // Nothing will be received.
+                    }
+                });
+
+        Channel sc = sb.bind(NetUtil.LOCALHOST4, 0).sync().channel();
+        Channel cc = cb.bind(NetUtil.LOCALHOST4, 0).sync().channel();
+        try {
+            assertEquals(udpGro, ((EpollDatagramChannel) sc).config().isUdpGro());
+
+            ByteBuf buf = Unpooled.directBuffer(SEGMENT_SIZE * SEGMENTS);
+            for (int i = 0; i < SEGMENTS; i++) {
+                for (int j = 0; j < SEGMENT_SIZE; j++) {
+                    buf.writeByte(i);
+                }
+            }
+            cc.writeAndFlush(new SegmentedDatagramPacket(
+                    buf, SEGMENT_SIZE, (InetSocketAddress) sc.localAddress())).sync();
+
+            for (int i = 0; i < SEGMENTS; i++) {
+                ByteBuf segment = received.poll(5, TimeUnit.SECONDS);
+                assertNotNull(segment);
+                try {
+                    assertEquals(SEGMENT_SIZE, segment.readableBytes());
+                    while (segment.isReadable()) {
+                        assertEquals(i, segment.readByte());
+                    }
+                } finally {
+                    segment.release();
+                }
+            }
+        } finally {
+            cc.close().sync();
+            sc.close().sync();
+        }
+    }
+}
@@ -17,12 +17,17 @@ package io.netty.channel.epoll;
 
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SelectStrategy;
+import io.netty.channel.SelectStrategyFactory;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.Future;
 import org.junit.Test;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class EpollEventLoopTest {
@@ -43,4 +48,67 @@ public class EpollEventLoopTest {
         assertTrue(future.cancel(true));
         group.shutdownGracefully();
     }
+
+    @Test(timeout = 10000)
+    public void testBusyWait() throws Exception {
+        final EpollBusyWaitSelectStrategy[] strategy = new EpollBusyWaitSelectStrategy[1];
+        EventLoopGroup group = new EpollEventLoopGroup(1, new DefaultThreadFactory("busy-wait"),
+                new SelectStrategyFactory() {
+                    @Override
+                    public SelectStrategy newSelectStrategy() {
+                        return strategy[0] = new EpollBusyWaitSelectStrategy(TimeUnit.SECONDS.toNanos(1));
+                    }
+                });
+        try {
+            assertNotNull(strategy[0]);
+            EventLoop el = group.next();
+            // Give the loop the chance to start spinning, so the task is picked up by the busy wait.
+            el.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).sync();
+            for (int i = 0; i < 10; i++) {
+                Thread.sleep(10);
+                el.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // NOOP
+                    }
+                }).sync();
+            }
+            assertTrue(strategy[0].spinHits() > 0);
+            assertEquals(0, strategy[0].parks());
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBusyWaitParks() throws Exception {
+        final EpollBusyWaitSelectStrategy[] strategy = new EpollBusyWaitSelectStrategy[1];
+        EventLoopGroup group = new EpollEventLoopGroup(1, new DefaultThreadFactory("busy-wait"),
+                new SelectStrategyFactory() {
+                    @Override
+                    public SelectStrategy newSelectStrategy() {
+                        return strategy[0] = new EpollBusyWaitSelectStrategy(TimeUnit.MICROSECONDS.toNanos(10));
+                    }
+                });
+        try {
+            EventLoop el = group.next();
+            for (int i = 0; i < 10; i++) {
+                el.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        // NOOP
+                    }
+                }).sync();
+                Thread.sleep(10);
+            }
+            assertTrue(strategy[0].parks() > 0);
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
 }
@@ -78,6 +78,25 @@ public class EpollServerSocketChannelConfigTest {
         assertTrue(ch.config().isFreeBind());
     }
 
+    @Test
+    public void testEpollExclusive() {
+        assertFalse(ch.config().isEpollExclusive());
+        EpollServerSocketChannel channel = new EpollServerSocketChannel();
+        try {
+            channel.config().setEpollExclusive(true);
+            assertTrue(channel.config().isEpollExclusive());
+            channel.config().setEpollExclusive(false);
+            assertFalse(channel.config().isEpollExclusive());
+        } finally {
+            channel.unsafe().closeForcibly();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEpollExclusiveAfterRegistration() {
+        ch.config().setEpollExclusive(true);
+    }
+
     @Test
     public void getGetOptions() {
         Map<ChannelOption<?>, Object> map = ch.config().getOptions();
@@ -134,6 +134,42 @@ public class EpollSocketChannelConfigTest {
         assertTrue(ch.config().isTcpQuickAck());
     }
 
+    @Test
+    public void testBusyPoll() {
+        try {
+            ch.config().setBusyPoll(50);
+        } catch (ChannelException e) {
+            // Increasing SO_BUSY_POLL requires CAP_NET_ADMIN.
+            assumeNoException(e);
+        }
+        assertEquals(50, ch.config().getBusyPoll());
+        ch.config().setBusyPoll(0);
+        assertEquals(0, ch.config().getBusyPoll());
+    }
+
+    @Test
+    public void testLazyReadAllocation() {
+        assertFalse(ch.config().isLazyReadAllocation());
+        ch.config().setLazyReadAllocation(true);
+        assertTrue(ch.config().isLazyReadAllocation());
+        assertTrue(ch.config().getOption(EpollChannelOption.LAZY_READ_ALLOCATION));
+        ch.config().setOption(EpollChannelOption.LAZY_READ_ALLOCATION, false);
+        assertFalse(ch.config().isLazyReadAllocation());
+    }
+
+    @Test
+    public void testPreferBusyPoll() {
+        try {
+            ch.config().setPreferBusyPoll(true);
+        } catch (ChannelException e) {
+            // Not supported before Linux 5.11.
+            assumeNoException(e);
+        }
+        assertTrue(ch.config().isPreferBusyPoll());
+        ch.config().setPreferBusyPoll(false);
+        assertFalse(ch.config().isPreferBusyPoll());
+    }
+
     @Test
     public void testSetOptionWhenClosed() {
         ch.close().syncUninterruptibly();
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.NetUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class EpollSocketLazyReadAllocationTest {
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new EpollEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 30000)
+    public void testLazyReadAllocation() throws Throwable {
+        final ByteBuf expected = Unpooled.buffer();
+        for (int i = 0; expected.writerIndex() < 1024 * 1024 + 7; i++) {
+            expected.writeByte(i);
+        }
+        final ByteBuf received = Unpooled.buffer(expected.readableBytes());
+        final CountDownLatch inactive = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        Channel sc = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(EpollChannelOption.LAZY_READ_ALLOCATION, true)
+                .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                        // Buffers are sized by the number of pending bytes.
+                        if (msg.readableBytes() != msg.capacity()) {
+                            error.compareAndSet(null, new AssertionError(
+                                    "capacity: " + msg.capacity() + ", readable: " + msg.readableBytes()));
+                        }
+                        received.writeBytes(msg);
+                    }
+
+                    @Override
+                    public void channelInactive(ChannelHandlerContext ctx) {
+                        inactive.countDown();
+                    }
+
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        Channel cc = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(sc.localAddress()).syncUninterruptibly().channel();
+        try {
+            for (int i = 0; i < expected.readableBytes(); i += 4096) {
+                cc.write(expected.retainedSlice(i, Math.min(4096, expected.readableBytes() - i)));
+            }
+            cc.writeAndFlush(Unpooled.EMPTY_BUFFER).syncUninterruptibly();
+            // The end of the stream must still be detected without a buffer being allocated.
+            cc.close().syncUninterruptibly();
+            inactive.await();
+            assertNull(error.get());
+            assertEquals(expected, received);
+        } finally {
+            sc.close().syncUninterruptibly();
+            expected.release();
+            received.release();
+        }
+    }
+}
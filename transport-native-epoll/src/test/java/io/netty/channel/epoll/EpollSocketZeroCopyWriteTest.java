@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.NetUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+
+public class EpollSocketZeroCopyWriteTest {
+
+    private static final int THRESHOLD = 16 * 1024;
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new EpollEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 30000)
+    public void testZeroCopyWrite() throws Throwable {
+        final ByteBuf expected = Unpooled.buffer();
+        for (int i = 0; expected.writerIndex() < 4 * 1024 * 1024 + 3; i++) {
+            expected.writeByte(i);
+        }
+        final ByteBuf received = Unpooled.buffer(expected.readableBytes());
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        Channel sc = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                        received.writeBytes(msg);
+                        if (received.readableBytes() == expected.readableBytes()) {
+                            latch.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        EpollSocketChannel cc = (EpollSocketChannel) new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.SO_SNDBUF, 64 * 1024)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(sc.localAddress()).syncUninterruptibly().channel();
+        try {
+            try {
+                cc.config().setSoZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeNoException(e);
+            }
+            cc.config().setZeroCopyWriteThreshold(THRESHOLD);
+            assertTrue(cc.config().isSoZeroCopy());
+            assertEquals(THRESHOLD, cc.config().getZeroCopyWriteThreshold());
+
+            // Mix small buffers which are copied with large ones which are written with MSG_ZEROCOPY.
+            ByteBuf[] bufs = new ByteBuf[] {
+                    directCopy(expected, 0, 3),
+                    directCopy(expected, 3, 1024 * 1024),
+                    directCopy(expected, 3 + 1024 * 1024, 100),
+                    directCopy(expected, 3 + 1024 * 1024 + 100, THRESHOLD),
+                    directCopy(expected, 3 + 1024 * 1024 + 100 + THRESHOLD,
+                            expected.readableBytes() - 3 - 1024 * 1024 - 100 - THRESHOLD)
+            };
+            ChannelFuture[] futures = new ChannelFuture[bufs.length];
+            for (int i = 0; i < bufs.length; i++) {
+                futures[i] = cc.write(bufs[i]);
+            }
+            cc.flush();
+
+            for (int i = 0; i < bufs.length; i++) {
+                futures[i].syncUninterruptibly();
+                // The buffer must be released before the future is notified.
+                assertEquals(0, bufs[i].refCnt());
+            }
+            latch.await();
+            if (error.get() != null) {
+                throw error.get();
+            }
+            assertEquals(expected, received);
+        } finally {
+            cc.close().syncUninterruptibly();
+            sc.close().syncUninterruptibly();
+            expected.release();
+            received.release();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testPendingZeroCopyWriteReleasedOnClose() throws Throwable {
+        Channel sc = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInboundHandlerAdapter())
+                .bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        EpollSocketChannel cc = (EpollSocketChannel) new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                .option(EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD, THRESHOLD)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect((InetSocketAddress) sc.localAddress()).syncUninterruptibly().channel();
+        try {
+            try {
+                cc.config().setSoZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeNoException(e);
+            }
+            ByteBuf buf = Unpooled.directBuffer(16 * 1024 * 1024).writeZero(16 * 1024 * 1024);
+            ChannelFuture future = cc.writeAndFlush(buf);
+            cc.close().syncUninterruptibly();
+            future.awaitUninterruptibly();
+            assertEquals(0, buf.refCnt());
+        } finally {
+            sc.close().syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testWrittenZeroCopyWriteSucceedsOnClose() throws Throwable {
+        Channel sc = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInboundHandlerAdapter())
+                .bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        final EpollSocketChannel cc = (EpollSocketChannel) new Bootstrap().group(group)
+                .channel(EpollSocketChannel.class)
+                .option(EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD, THRESHOLD)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect((InetSocketAddress) sc.localAddress()).syncUninterruptibly().channel();
+        try {
+            try {
+                cc.config().setSoZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeNoException(e);
+            }
+            // Small enough to be accepted by the kernel at once, so the write is only waiting for its completion.
+            final ByteBuf buf = Unpooled.directBuffer(THRESHOLD).writeZero(THRESHOLD);
+            final AtomicReference<ChannelFuture> future = new AtomicReference<ChannelFuture>();
+            cc.eventLoop().submit(new Runnable() {
+                @Override
+                public void run() {
+                    future.set(cc.writeAndFlush(buf));
+                    cc.close();
+                }
+            }).syncUninterruptibly();
+            cc.closeFuture().syncUninterruptibly();
+            future.get().syncUninterruptibly();
+            assertEquals(0, buf.refCnt());
+        } finally {
+            sc.close().syncUninterruptibly();
+        }
+    }
+
+    private static ByteBuf directCopy(ByteBuf buf, int index, int length) {
+        ByteBuf copy = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+        return copy.writeBytes(buf, index, length);
+    }
+}
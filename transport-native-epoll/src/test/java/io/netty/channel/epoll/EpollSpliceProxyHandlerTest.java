@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.ChannelInputShutdownEvent;
+import io.netty.channel.socket.DuplexChannel;
+import io.netty.util.NetUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.SocketAddress;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class EpollSpliceProxyHandlerTest {
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void setUp() {
+        group = new EpollEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 30000)
+    public void testProxy() throws Throwable {
+        final ByteBuf expected = Unpooled.buffer(4 * 1024 * 1024);
+        byte[] bytes = new byte[expected.capacity()];
+        new Random().nextBytes(bytes);
+        expected.writeBytes(bytes);
+
+        // Echo server which shuts down its output once the input was shut down.
+        Channel backend = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                .childHandler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ctx.write(msg);
+                    }
+
+                    @Override
+                    public void channelReadComplete(ChannelHandlerContext ctx) {
+                        ctx.flush();
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt instanceof ChannelInputShutdownEvent) {
+                            final DuplexChannel ch = (DuplexChannel) ctx.channel();
+                            ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(new ChannelFutureListener() {
+                                @Override
+                                public void operationComplete(ChannelFuture future) {
+                                    ch.shutdownOutput();
+                                }
+                            });
+                        }
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        final SocketAddress backendAddress = backend.localAddress();
+        final BlockingQueue<Channel> proxied = new LinkedBlockingQueue<Channel>();
+        Channel proxy = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                .childOption(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED)
+                .childOption(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childHandler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelActive(ChannelHandlerContext ctx) {
+                        final EpollSocketChannel inbound = (EpollSocketChannel) ctx.channel();
+                        new Bootstrap().group(inbound.eventLoop()).channel(EpollSocketChannel.class)
+                                .option(EpollChannelOption.EPOLL_MODE, EpollMode.LEVEL_TRIGGERED)
+                                .option(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                                .option(ChannelOption.AUTO_READ, false)
+                                .handler(new ChannelInboundHandlerAdapter())
+                                .connect(backendAddress).addListener(new ChannelFutureListener() {
+                                    @Override
+                                    public void operationComplete(ChannelFuture future) {
+                                        if (future.isSuccess()) {
+                                            EpollSocketChannel outbound = (EpollSocketChannel) future.channel();
+                                            proxied.add(inbound);
+                                            proxied.add(outbound);
+                                            EpollSpliceProxyHandler.proxy(inbound, outbound);
+                                        } else {
+                                            inbound.close();
+                                        }
+                                    }
+                                });
+                    }
+                }).bind(NetUtil.LOCALHOST4, 0).syncUninterruptibly().channel();
+
+        final ByteBuf received = Unpooled.buffer(expected.readableBytes());
+        final CountDownLatch inputShutdown = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        EpollSocketChannel client = (EpollSocketChannel) new Bootstrap().group(group)
+                .channel(EpollSocketChannel.class)
+                .option(ChannelOption.ALLOW_HALF_CLOSURE, true)
+                .handler(new SimpleChannelInboundHandler<ByteBuf>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                        received.writeBytes(msg);
+                    }
+
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        if (evt instanceof ChannelInputShutdownEvent) {
+                            inputShutdown.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                        error.compareAndSet(null, cause);
+                    }
+                }).connect(proxy.localAddress()).syncUninterruptibly().channel();
+        try {
+            for (int i = 0; i < expected.readableBytes(); i += 8192) {
+                client.write(expected.retainedSlice(i, Math.min(8192, expected.readableBytes() - i)));
+            }
+            client.writeAndFlush(Unpooled.EMPTY_BUFFER).syncUninterruptibly();
+            client.shutdownOutput().syncUninterruptibly();
+
+            // The half-closure must be propagated through the proxy to the backend and back.
+            inputShutdown.await();
+            assertNull(error.get());
+            assertEquals(expected, received);
+
+            // Both directions are done so the proxy must close both of its channels.
+            Channel inbound = proxied.take();
+            Channel outbound = proxied.take();
+            inbound.closeFuture().syncUninterruptibly();
+            outbound.closeFuture().syncUninterruptibly();
+            assertFalse(inbound.isOpen());
+            assertFalse(outbound.isOpen());
+        } finally {
+            client.close().syncUninterruptibly();
+            proxy.close().syncUninterruptibly();
+            backend.close().syncUninterruptibly();
+            expected.release();
+            received.release();
+        }
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+#define _GNU_SOURCE
+#include <jni.h>
+#include <dlfcn.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/eventfd.h>
+#include <sys/mman.h>
+#include <sys/socket.h>
+#include <sys/syscall.h>
+#include <sys/utsname.h>
+#include <linux/io_uring.h>
+
+#include "netty_unix_errors.h"
+#include "netty_unix_filedescriptor.h"
+#include "netty_unix_jni.h"
+#include "netty_unix_limits.h"
+#include "netty_unix_socket.h"
+#include "netty_unix_util.h"
+
+// The syscall numbers are the same on all architectures that support io_uring, but older libc headers may not
+// define them yet.
+#ifndef __NR_io_uring_setup
+#define __NR_io_uring_setup 425
+#endif
+#ifndef __NR_io_uring_enter
+#define __NR_io_uring_enter 426
+#endif
+#ifndef __NR_io_uring_register
+#define __NR_io_uring_register 427
+#endif
+
+// Added in Linux 5.7, sockets are polled for readiness instead of blocking an io-wq worker per request.
+#ifndef IORING_FEAT_FAST_POLL
+#define IORING_FEAT_FAST_POLL (1U << 5)
+#endif
+
+// IORING_REGISTER_PROBE and its structs were added in Linux 5.6, so use our own definitions which also compile
+// against older headers.
+#define NETTY_IORING_REGISTER_PROBE 8
+#define NETTY_IO_URING_OP_SUPPORTED (1U << 0)
+#define NETTY_IO_URING_PROBE_OPS 256
+
+struct netty_io_uring_probe_op {
+    uint8_t op;
+    uint8_t resv;
+    uint16_t flags;
+    uint32_t resv2;
+};
+
+struct netty_io_uring_probe {
+    uint8_t last_op;
+    uint8_t ops_len;
+    uint16_t resv;
+    uint32_t resv2[3];
+    struct netty_io_uring_probe_op ops[NETTY_IO_URING_PROBE_OPS];
+};
+
+// Keep in sync with the ordering used by io.netty.channel.uring.Native
+#define RING_INFO_LENGTH 20
+
+static int sys_io_uring_setup(unsigned entries, struct io_uring_params* p) {
+    return (int) syscall(__NR_io_uring_setup, entries, p);
+}
+
+static int sys_io_uring_enter(int fd, unsigned toSubmit, unsigned minComplete, unsigned flags) {
+    return (int) syscall(__NR_io_uring_enter, fd, toSubmit, minComplete, flags, NULL, 0);
+}
+
+static int sys_io_uring_register(int fd, unsigned opcode, void* arg, unsigned nrArgs) {
+    return (int) syscall(__NR_io_uring_register, fd, opcode, arg, nrArgs);
+}
+
+static void unmapRings(void* sqRing, size_t sqRingSize, void* sqes, size_t sqesSize, void* cqRing, size_t cqRingSize) {
+    if (sqes != NULL && sqes != MAP_FAILED) {
+        munmap(sqes, sqesSize);
+    }
+    if (cqRing != NULL && cqRing != MAP_FAILED && cqRing != sqRing) {
+        munmap(cqRing, cqRingSize);
+    }
+    if (sqRing != NULL && sqRing != MAP_FAILED) {
+        munmap(sqRing, sqRingSize);
+    }
+}
+
+// JNI Registered Methods Begin
+static jlongArray netty_io_uring_native_ioUringSetup(JNIEnv* env, jclass clazz, jint entries) {
+    struct io_uring_params p;
+    memset(&p, 0, sizeof(p));
+
+    int ringFd = sys_io_uring_setup((unsigned) entries, &p);
+    if (ringFd < 0) {
+        netty_unix_errors_throwRuntimeExceptionErrorNo(env, "io_uring_setup() failed: ", errno);
+        return NULL;
+    }
+
+    size_t sqRingSize = p.sq_off.array + p.sq_entries * sizeof(unsigned);
+    size_t cqRingSize = p.cq_off.cqes + p.cq_entries * sizeof(struct io_uring_cqe);
+    size_t sqesSize = p.sq_entries * sizeof(struct io_uring_sqe);
+    int singleMmap = (p.features & IORING_FEAT_SINGLE_MMAP) != 0;
+    if (singleMmap) {
+        if (cqRingSize > sqRingSize) {
+            sqRingSize = cqRingSize;
+        }
+        cqRingSize = sqRingSize;
+    }
+
+    void* sqRing = mmap(NULL, sqRingSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd,
+                        IORING_OFF_SQ_RING);
+    void* cqRing = NULL;
+    void* sqes = NULL;
+    if (sqRing == MAP_FAILED) {
+        goto error;
+    }
+    if (singleMmap) {
+        cqRing = sqRing;
+    } else {
+        cqRing = mmap(NULL, cqRingSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd,
+                      IORING_OFF_CQ_RING);
+        if (cqRing == MAP_FAILED) {
+            goto error;
+        }
+    }
+    sqes = mmap(NULL, sqesSize, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, ringFd, IORING_OFF_SQES);
+    if (sqes == MAP_FAILED) {
+        goto error;
+    }
+
+    jlong info[RING_INFO_LENGTH] = {
+        // Submission queue
+        (jlong) (intptr_t) sqRing + p.sq_off.head,
+        (jlong) (intptr_t) sqRing + p.sq_off.tail,
+        (jlong) (intptr_t) sqRing + p.sq_off.ring_mask,
+        (jlong) (intptr_t) sqRing + p.sq_off.ring_entries,
+        (jlong) (intptr_t) sqRing + p.sq_off.flags,
+        (jlong) (intptr_t) sqRing + p.sq_off.dropped,
+        (jlong) (intptr_t) sqRing + p.sq_off.array,
+        (jlong) (intptr_t) sqes,
+        (jlong) sqRingSize,
+        (jlong) (intptr_t) sqRing,
+        (jlong) sqesSize,
+        // Completion queue
+        (jlong) (intptr_t) cqRing + p.cq_off.head,
+        (jlong) (intptr_t) cqRing + p.cq_off.tail,
+        (jlong) (intptr_t) cqRing + p.cq_off.ring_mask,
+        (jlong) (intptr_t) cqRing + p.cq_off.ring_entries,
+        (jlong) (intptr_t) cqRing + p.cq_off.cqes,
+        (jlong) cqRingSize,
+        (jlong) (intptr_t) cqRing,
+        (jlong) ringFd,
+        (jlong) p.features
+    };
+
+    jlongArray array = (*env)->NewLongArray(env, RING_INFO_LENGTH);
+    if (array == NULL) {
+        // We are out of memory, the OOME is pending already.
+        unmapRings(sqRing, sqRingSize, sqes, sqesSize, cqRing, cqRingSize);
+        close(ringFd);
+        return NULL;
+    }
+    (*env)->SetLongArrayRegion(env, array, 0, RING_INFO_LENGTH, info);
+    return array;
+error:
+    {
+        int err = errno;
+        unmapRings(sqRing, sqRingSize, sqes, sqesSize, cqRing, cqRingSize);
+        close(ringFd);
+        netty_unix_errors_throwRuntimeExceptionErrorNo(env, "mmap() of io_uring failed: ", err);
+        return NULL;
+    }
+}
+
+static jint netty_io_uring_native_ioUringEnter(JNIEnv* env, jclass clazz, jint ringFd, jint toSubmit,
+                                               jint minComplete, jint flags) {
+    int result;
+    int err;
+    do {
+        result = sys_io_uring_enter(ringFd, (unsigned) toSubmit, (unsigned) minComplete, (unsigned) flags);
+        if (result >= 0) {
+            return result;
+        }
+    } while ((err = errno) == EINTR);
+    return -err;
+}
+
+static jboolean netty_io_uring_native_ioUringProbe(JNIEnv* env, jclass clazz, jint ringFd, jintArray ops) {
+    struct netty_io_uring_probe probe;
+    memset(&probe, 0, sizeof(probe));
+    if (sys_io_uring_register(ringFd, NETTY_IORING_REGISTER_PROBE, &probe, NETTY_IO_URING_PROBE_OPS) < 0) {
+        // Kernels before 5.6 can not be probed, and lack some of the operations anyway.
+        return JNI_FALSE;
+    }
+    jsize length = (*env)->GetArrayLength(env, ops);
+    jint* elements = (*env)->GetIntArrayElements(env, ops, NULL);
+    if (elements == NULL) {
+        // We are out of memory, the OOME is pending already.
+        return JNI_FALSE;
+    }
+    jboolean supported = JNI_TRUE;
+    int i;
+    for (i = 0; i < length; i++) {
+        jint op = elements[i];
+        if (op < 0 || op > probe.last_op || op >= probe.ops_len ||
+                (probe.ops[op].flags & NETTY_IO_URING_OP_SUPPORTED) == 0) {
+            supported = JNI_FALSE;
+            break;
+        }
+    }
+    (*env)->ReleaseIntArrayElements(env, ops, elements, JNI_ABORT);
+    return supported;
+}
+
+static void netty_io_uring_native_ioUringExit(JNIEnv* env, jclass clazz, jlong sqRingAddress, jlong sqRingSize,
+                                              jlong sqesAddress, jlong sqesSize, jlong cqRingAddress,
+                                              jlong cqRingSize, jint ringFd) {
+    unmapRings((void*) (intptr_t) sqRingAddress, (size_t) sqRingSize, (void*) (intptr_t) sqesAddress,
+               (size_t) sqesSize, (void*) (intptr_t) cqRingAddress, (size_t) cqRingSize);
+    if (close(ringFd) < 0) {
+        netty_unix_errors_throwRuntimeExceptionErrorNo(env, "close() of io_uring failed: ", errno);
+    }
+}
+
+static jint netty_io_uring_native_eventFd(JNIEnv* env, jclass clazz) {
+    // The eventfd is not put in non-blocking mode as otherwise io_uring would complete a pending read with EAGAIN
+    // instead of waiting for a wakeup.
+    jint eventFD = eventfd(0, EFD_CLOEXEC);
+
+    if (eventFD < 0) {
+        netty_unix_errors_throwChannelExceptionErrorNo(env, "eventfd() failed: ", errno);
+    }
+    return eventFD;
+}
+
+static void netty_io_uring_native_eventFdWrite(JNIEnv* env, jclass clazz, jint fd, jlong value) {
+    jint eventFD = eventfd_write(fd, (eventfd_t) value);
+
+    if (eventFD < 0) {
+        netty_unix_errors_throwChannelExceptionErrorNo(env, "eventfd_write() failed: ", errno);
+    }
+}
+
+static jint netty_io_uring_native_setBlocking0(JNIEnv* env, jclass clazz, jint fd) {
+    int flags = fcntl(fd, F_GETFL, 0);
+    if (flags < 0 || fcntl(fd, F_SETFL, flags & ~O_NONBLOCK) < 0) {
+        return -errno;
+    }
+    return 0;
+}
+
+static jint netty_io_uring_native_sendEmpty(JNIEnv* env, jclass clazz, jint fd) {
+    ssize_t res;
+    int err;
+    do {
+        res = send(fd, NULL, 0, MSG_DONTWAIT | MSG_NOSIGNAL);
+        if (res >= 0) {
+            return 0;
+        }
+    } while ((err = errno) == EINTR);
+    return -err;
+}
+
+static jint netty_io_uring_native_initAddress(JNIEnv* env, jclass clazz, jlong memoryAddress, jbyteArray address,
+                                              jint scopeId, jint port) {
+    socklen_t addrSize;
+    struct sockaddr_storage* addr = (struct sockaddr_storage*) (intptr_t) memoryAddress;
+    memset(addr, 0, sizeof(struct sockaddr_storage));
+    if (netty_unix_socket_initSockaddr(env, address, scopeId, port, addr, &addrSize) == -1) {
+        return -1;
+    }
+    return (jint) addrSize;
+}
+
+static jint netty_io_uring_native_sizeofSockaddrStorage(JNIEnv* env, jclass clazz) {
+    return sizeof(struct sockaddr_storage);
+}
+
+static jint netty_io_uring_native_sizeofSqe(JNIEnv* env, jclass clazz) {
+    return sizeof(struct io_uring_sqe);
+}
+
+static jint netty_io_uring_native_sizeofCqe(JNIEnv* env, jclass clazz) {
+    return sizeof(struct io_uring_cqe);
+}
+
+static jint netty_io_uring_native_ioringOpRead(JNIEnv* env, jclass clazz) {
+    return IORING_OP_READ;
+}
+
+static jint netty_io_uring_native_ioringOpRecv(JNIEnv* env, jclass clazz) {
+    return IORING_OP_RECV;
+}
+
+static jint netty_io_uring_native_ioringOpWritev(JNIEnv* env, jclass clazz) {
+    return IORING_OP_WRITEV;
+}
+
+static jint netty_io_uring_native_ioringOpAccept(JNIEnv* env, jclass clazz) {
+    return IORING_OP_ACCEPT;
+}
+
+static jint netty_io_uring_native_ioringOpConnect(JNIEnv* env, jclass clazz) {
+    return IORING_OP_CONNECT;
+}
+
+static jint netty_io_uring_native_ioringOpTimeout(JNIEnv* env, jclass clazz) {
+    return IORING_OP_TIMEOUT;
+}
+
+static jint netty_io_uring_native_ioringOpAsyncCancel(JNIEnv* env, jclass clazz) {
+    return IORING_OP_ASYNC_CANCEL;
+}
+
+static jint netty_io_uring_native_ioringFeatFastPoll(JNIEnv* env, jclass clazz) {
+    return IORING_FEAT_FAST_POLL;
+}
+
+static jint netty_io_uring_native_ioringEnterGetevents(JNIEnv* env, jclass clazz) {
+    return IORING_ENTER_GETEVENTS;
+}
+
+static jint netty_io_uring_native_sockCloexec(JNIEnv* env, jclass clazz) {
+    return SOCK_CLOEXEC;
+}
+
+static jint netty_io_uring_native_msgDontwait(JNIEnv* env, jclass clazz) {
+    return MSG_DONTWAIT;
+}
+
+static jint netty_io_uring_native_etime(JNIEnv* env, jclass clazz) {
+    return ETIME;
+}
+
+static jint netty_io_uring_native_ecanceled(JNIEnv* env, jclass clazz) {
+    return ECANCELED;
+}
+
+static jstring netty_io_uring_native_kernelVersion(JNIEnv* env, jclass clazz) {
+    struct utsname name;
+
+    int res = uname(&name);
+    if (res == 0) {
+        return (*env)->NewStringUTF(env, name.release);
+    }
+    netty_unix_errors_throwRuntimeExceptionErrorNo(env, "uname() failed: ", errno);
+    return NULL;
+}
+// JNI Registered Methods End
+
+// JNI Method Registration Table Begin
+static const JNINativeMethod statically_referenced_fixed_method_table[] = {
+  { "sizeofSockaddrStorage", "()I", (void *) netty_io_uring_native_sizeofSockaddrStorage },
+  { "sizeofSqe", "()I", (void *) netty_io_uring_native_sizeofSqe },
+  { "sizeofCqe", "()I", (void *) netty_io_uring_native_sizeofCqe },
+  { "ioringOpRead", "()I", (void *) netty_io_uring_native_ioringOpRead },
+  { "ioringOpRecv", "()I", (void *) netty_io_uring_native_ioringOpRecv },
+  { "ioringOpWritev", "()I", (void *) netty_io_uring_native_ioringOpWritev },
+  { "ioringOpAccept", "()I", (void *) netty_io_uring_native_ioringOpAccept },
+  { "ioringOpConnect", "()I", (void *) netty_io_uring_native_ioringOpConnect },
+  { "ioringOpTimeout", "()I", (void *) netty_io_uring_native_ioringOpTimeout },
+  { "ioringOpAsyncCancel", "()I", (void *) netty_io_uring_native_ioringOpAsyncCancel },
+  { "ioringFeatFastPoll", "()I", (void *) netty_io_uring_native_ioringFeatFastPoll },
+  { "ioringEnterGetevents", "()I", (void *) netty_io_uring_native_ioringEnterGetevents },
+  { "sockCloexec", "()I", (void *) netty_io_uring_native_sockCloexec },
+  { "msgDontwait", "()I", (void *) netty_io_uring_native_msgDontwait },
+  { "etime", "()I", (void *) netty_io_uring_native_etime },
+  { "ecanceled", "()I", (void *) netty_io_uring_native_ecanceled },
+  { "kernelVersion", "()Ljava/lang/String;", (void *) netty_io_uring_native_kernelVersion }
+};
+static const jint statically_referenced_fixed_method_table_size = sizeof(statically_referenced_fixed_method_table) / sizeof(statically_referenced_fixed_method_table[0]);
+static const JNINativeMethod method_table[] = {
+  { "ioUringSetup", "(I)[J", (void *) netty_io_uring_native_ioUringSetup },
+  { "ioUringEnter", "(IIII)I", (void *) netty_io_uring_native_ioUringEnter },
+  { "ioUringProbe", "(I[I)Z", (void *) netty_io_uring_native_ioUringProbe },
+  { "ioUringExit", "(JJJJJJI)V", (void *) netty_io_uring_native_ioUringExit },
+  { "eventFd", "()I", (void *) netty_io_uring_native_eventFd },
+  { "eventFdWrite", "(IJ)V", (void *) netty_io_uring_native_eventFdWrite },
+  { "setBlocking0", "(I)I", (void *) netty_io_uring_native_setBlocking0 },
+  { "sendEmpty", "(I)I", (void *) netty_io_uring_native_sendEmpty },
+  { "initAddress", "(J[BII)I", (void *) netty_io_uring_native_initAddress }
+};
+static const jint method_table_size = sizeof(method_table) / sizeof(method_table[0]);
+// JNI Method Registration Table End
+
+static jint netty_io_uring_native_JNI_OnLoad(JNIEnv* env, const char* packagePrefix) {
+    // We must register the statically referenced methods first!
+    if (netty_unix_util_register_natives(env,
+            packagePrefix,
+            "io/netty/channel/uring/NativeStaticallyReferencedJniMethods",
+            statically_referenced_fixed_method_table,
+            statically_referenced_fixed_method_table_size) != 0) {
+        return JNI_ERR;
+    }
+    // Register the methods which are not referenced by static member variables
+    if (netty_unix_util_register_natives(env,
+            packagePrefix,
+            "io/netty/channel/uring/Native",
+            method_table,
+            method_table_size) != 0) {
+        return JNI_ERR;
+    }
+    // Load all c modules that we depend upon
+    if (netty_unix_limits_JNI_OnLoad(env, packagePrefix) == JNI_ERR) {
+        return JNI_ERR;
+    }
+    if (netty_unix_errors_JNI_OnLoad(env, packagePrefix) == JNI_ERR) {
+        return JNI_ERR;
+    }
+    if (netty_unix_filedescriptor_JNI_OnLoad(env, packagePrefix) == JNI_ERR) {
+        return JNI_ERR;
+    }
+    if (netty_unix_socket_JNI_OnLoad(env, packagePrefix) == JNI_ERR) {
+        return JNI_ERR;
+    }
+    return NETTY_JNI_VERSION;
+}
+
+static void netty_io_uring_native_JNI_OnUnLoad(JNIEnv* env) {
+    netty_unix_limits_JNI_OnUnLoad(env);
+    netty_unix_errors_JNI_OnUnLoad(env);
+    netty_unix_filedescriptor_JNI_OnUnLoad(env);
+    netty_unix_socket_JNI_OnUnLoad(env);
+}
+
+// Invoked by the JVM when statically linked
+jint JNI_OnLoad_netty_transport_native_io_uring(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    if ((*vm)->GetEnv(vm, (void**) &env, NETTY_JNI_VERSION) != JNI_OK) {
+        return JNI_ERR;
+    }
+    char* packagePrefix = NULL;
+#ifndef NETTY_BUILD_STATIC
+    Dl_info dlinfo;
+    jint status = 0;
+    // We need to use an address of a function that is uniquely part of this library, so choose a static
+    // function. See https://github.com/netty/netty/issues/4840.
+    if (!dladdr((void*) netty_io_uring_native_JNI_OnUnLoad, &dlinfo)) {
+        fprintf(stderr, "FATAL: transport-native-io_uring JNI call to dladdr failed!\n");
+        return JNI_ERR;
+    }
+    packagePrefix = netty_unix_util_parse_package_prefix(dlinfo.dli_fname, "netty_transport_native_io_uring", &status);
+    if (status == JNI_ERR) {
+        fprintf(stderr, "FATAL: transport-native-io_uring JNI encountered unexpected dlinfo.dli_fname: %s\n", dlinfo.dli_fname);
+        return JNI_ERR;
+    }
+#endif /* NETTY_BUILD_STATIC */
+    jint ret = netty_io_uring_native_JNI_OnLoad(env, packagePrefix);
+
+    if (packagePrefix != NULL) {
+      free(packagePrefix);
+      packagePrefix = NULL;
+    }
+
+    return ret;
+}
+
+#ifndef NETTY_BUILD_STATIC
+JNIEXPORT jint JNI_OnLoad(JavaVM* vm, void* reserved) {
+    return JNI_OnLoad_netty_transport_native_io_uring(vm, reserved);
+}
+#endif /* NETTY_BUILD_STATIC */
+
+// Invoked by the JVM when statically linked
+void JNI_OnUnload_netty_transport_native_io_uring(JavaVM* vm, void* reserved) {
+    JNIEnv* env;
+    if ((*vm)->GetEnv(vm, (void**) &env, NETTY_JNI_VERSION) != JNI_OK) {
+        // Something is wrong but nothing we can do about this :(
+        return;
+    }
+    netty_io_uring_native_JNI_OnUnLoad(env);
+}
+
+#ifndef NETTY_BUILD_STATIC
+JNIEXPORT void JNI_OnUnload(JavaVM* vm, void* reserved) {
+  JNI_OnUnload_netty_transport_native_io_uring(vm, reserved);
+}
+#endif /* NETTY_BUILD_STATIC */
@@ -0,0 +1,701 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.ChannelInputShutdownEvent;
+import io.netty.channel.socket.ChannelInputShutdownReadComplete;
+import io.netty.channel.socket.SocketChannelConfig;
+import io.netty.channel.unix.Errors;
+import io.netty.channel.unix.FileDescriptor;
+import io.netty.channel.unix.Socket;
+import io.netty.channel.unix.UnixChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.ThrowableUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.SocketAddress;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ConnectionPendingException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.channel.unix.UnixChannelUtil.computeRemoteAddr;
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+
+/**
+ * Base class for all io_uring based {@link Channel}s.
+ * <p>
+ * At most one read (or accept), one write and one connect request is in flight per channel. As the kernel may still
+ * access the memory and the file descriptor of a request until its completion was received, closing the channel
+ * cancels the outstanding requests and only closes the file descriptor once all of them have completed.
+ */
+abstract class AbstractIOUringChannel extends AbstractChannel implements UnixChannel {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractIOUringChannel.class);
+    private static final ClosedChannelException DO_CLOSE_CLOSED_CHANNEL_EXCEPTION = ThrowableUtil.unknownStackTrace(
+            new ClosedChannelException(), AbstractIOUringChannel.class, "doClose()");
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    // Flags for the requests that are currently in flight.
+    static final int READ_SCHEDULED = 1;
+    static final int WRITE_SCHEDULED = 1 << 1;
+    static final int CONNECT_SCHEDULED = 1 << 2;
+
+    final Socket socket;
+    /**
+     * The future of the current connection attempt.  If not null, subsequent
+     * connection attempts will fail.
+     */
+    private ChannelPromise connectPromise;
+    private ScheduledFuture<?> connectTimeoutFuture;
+    private SocketAddress requestedRemoteAddress;
+    // Memory holding the struct sockaddr used by IORING_OP_CONNECT, allocated on first use.
+    private long remoteAddressMemoryAddress;
+
+    private volatile SocketAddress local;
+    private volatile SocketAddress remote;
+
+    // Only accessed from the EventLoop.
+    int ioState;
+    boolean inputClosedSeenErrorOnRead;
+
+    protected volatile boolean active;
+    private volatile boolean open = true;
+
+    AbstractIOUringChannel(Channel parent, Socket fd, boolean active) {
+        super(parent);
+        socket = checkNotNull(fd, "fd");
+        this.active = active;
+        if (active) {
+            // Directly cache the remote and local addresses
+            // See https://github.com/netty/netty/issues/2359
+            local = fd.localAddress();
+            remote = fd.remoteAddress();
+        }
+    }
+
+    AbstractIOUringChannel(Channel parent, Socket fd, SocketAddress remote) {
+        super(parent);
+        socket = checkNotNull(fd, "fd");
+        active = true;
+        // Directly cache the remote and local addresses
+        // See https://github.com/netty/netty/issues/2359
+        this.remote = remote;
+        local = fd.localAddress();
+    }
+
+    /**
+     * Returns the given {@link Socket} after {@code O_NONBLOCK} was cleared, see {@link Native#setBlocking(int)}.
+     */
+    static Socket blocking(Socket socket) {
+        try {
+            Native.setBlocking(socket.intValue());
+        } catch (IOException e) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+                // ignore
+            }
+            throw new ChannelException(e);
+        }
+        return socket;
+    }
+
+    static boolean isSoErrorZero(Socket fd) {
+        try {
+            return fd.getSoError() == 0;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    @Override
+    public final FileDescriptor fd() {
+        return socket;
+    }
+
+    @Override
+    public abstract IOUringChannelConfig config();
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public boolean isOpen() {
+        // The file descriptor may stay open a bit longer than the channel, until all requests completed.
+        return open;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    final boolean hasPendingRequests() {
+        return ioState != 0;
+    }
+
+    final IOUringSubmissionQueue submissionQueue() {
+        return ((IOUringEventLoop) eventLoop()).submissionQueue();
+    }
+
+    /**
+     * The {@code IORING_OP_*} which is used to schedule a read.
+     */
+    byte readOpCode() {
+        return Native.IORING_OP_RECV;
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        active = false;
+        open = false;
+        // Even if we allow half closed sockets we should give up on reading. Otherwise we may allow a read attempt on a
+        // socket which has not even been connected yet. This has been observed to block during unit tests.
+        inputClosedSeenErrorOnRead = true;
+
+        ChannelPromise promise = connectPromise;
+        if (promise != null) {
+            // Use tryFailure() instead of setFailure() to avoid the race against cancel().
+            promise.tryFailure(DO_CLOSE_CLOSED_CHANNEL_EXCEPTION);
+            connectPromise = null;
+        }
+
+        ScheduledFuture<?> future = connectTimeoutFuture;
+        if (future != null) {
+            future.cancel(false);
+            connectTimeoutFuture = null;
+        }
+
+        if (isRegistered()) {
+            // Need to check if we are on the EventLoop as doClose() may be triggered by the GlobalEventExecutor
+            // if SO_LINGER is used.
+            //
+            // See https://github.com/netty/netty/issues/7159
+            EventLoop loop = eventLoop();
+            if (loop.inEventLoop()) {
+                cancelOrFinishClose();
+            } else {
+                loop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        cancelOrFinishClose();
+                    }
+                });
+            }
+        } else {
+            releaseResources();
+            socket.close();
+        }
+    }
+
+    private void cancelOrFinishClose() {
+        if (ioState == 0) {
+            finishClose();
+            return;
+        }
+        int fd = socket.intValue();
+        IOUringSubmissionQueue submissionQueue = submissionQueue();
+        try {
+            if ((ioState & READ_SCHEDULED) != 0) {
+                submissionQueue.addCancel(fd, UserData.encode(fd, readOpCode(), (short) 0));
+            }
+            if ((ioState & WRITE_SCHEDULED) != 0) {
+                submissionQueue.addCancel(fd, UserData.encode(fd, Native.IORING_OP_WRITEV, (short) 0));
+            }
+            if ((ioState & CONNECT_SCHEDULED) != 0) {
+                submissionQueue.addCancel(fd, UserData.encode(fd, Native.IORING_OP_CONNECT, (short) 0));
+            }
+        } catch (IOException e) {
+            // The requests will still complete at some point, at the latest when the EventLoop is shut down.
+            logger.debug("Failed to cancel the in flight requests of {}", this, e);
+        }
+    }
+
+    /**
+     * Called once the channel was closed and no request is in flight anymore.
+     */
+    private void finishClose() {
+        assert ioState == 0;
+        ((IOUringEventLoop) eventLoop()).remove(this);
+        releaseResources();
+        if (closeOnGlobalExecutor()) {
+            // close(...) is going to block with SO_LINGER, so move it out of the EventLoop.
+            GlobalEventExecutor.INSTANCE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeSocket();
+                }
+            });
+        } else {
+            closeSocket();
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close the file descriptor of {}", this, e);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the output of the channel is known to be broken while a write is in flight, in which case
+     * the next {@link #doWrite(io.netty.channel.ChannelOutboundBuffer)} fails.
+     */
+    boolean isWriteFailed() {
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if closing the file descriptor may block.
+     */
+    boolean closeOnGlobalExecutor() {
+        return false;
+    }
+
+    /**
+     * Release everything that is owned by in flight requests. Only called once none of them is pending anymore.
+     */
+    void releaseResources() {
+        if (remoteAddressMemoryAddress != 0) {
+            PlatformDependent.freeMemory(remoteAddressMemoryAddress);
+            remoteAddressMemoryAddress = 0;
+        }
+    }
+
+    /**
+     * Forcibly release all resources and close the file descriptor without waiting for in flight requests. Only used
+     * when the {@link IOUringEventLoop} shuts down.
+     */
+    final void forceClose() {
+        active = false;
+        open = false;
+        ioState = 0;
+        releaseResources();
+        closeSocket();
+    }
+
+    /**
+     * Called by the {@link IOUringEventLoop} once a request of this channel completed.
+     */
+    final void complete(byte op, int res) {
+        AbstractIOUringUnsafe unsafe = (AbstractIOUringUnsafe) unsafe();
+        // The read and write completions clear their flags themselves, as they may need to keep them set while
+        // notifying the pipeline or submit follow-up requests.
+        if (op == Native.IORING_OP_WRITEV) {
+            unsafe.writeComplete(res);
+        } else if (op == Native.IORING_OP_CONNECT) {
+            ioState &= ~CONNECT_SCHEDULED;
+            unsafe.connectComplete(res);
+        } else if (op == readOpCode()) {
+            unsafe.readComplete(res);
+        }
+
+        if (!open && ioState == 0) {
+            finishClose();
+        }
+    }
+
+    @Override
+    protected void doDisconnect() throws Exception {
+        doClose();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof IOUringEventLoop;
+    }
+
+    @Override
+    protected void doRegister() throws Exception {
+        ((IOUringEventLoop) eventLoop()).add(this);
+    }
+
+    @Override
+    protected void doDeregister() throws Exception {
+        ((IOUringEventLoop) eventLoop()).remove(this);
+    }
+
+    @Override
+    protected final void doBeginRead() throws Exception {
+        // Channel.read() or ChannelHandlerContext.read() was called
+        final AbstractIOUringUnsafe unsafe = (AbstractIOUringUnsafe) unsafe();
+        unsafe.readPending = true;
+        unsafe.scheduleRead();
+    }
+
+    final boolean shouldBreakReadReady(ChannelConfig config) {
+        return socket.isInputShutdown() && (inputClosedSeenErrorOnRead || !isAllowHalfClosure(config));
+    }
+
+    private static boolean isAllowHalfClosure(ChannelConfig config) {
+        return config instanceof SocketChannelConfig &&
+                ((SocketChannelConfig) config).isAllowHalfClosure();
+    }
+
+    @Override
+    protected abstract AbstractIOUringUnsafe newUnsafe();
+
+    /**
+     * Returns an off-heap copy of the specified {@link ByteBuf}, and releases the original one.
+     */
+    protected final ByteBuf newDirectBuffer(ByteBuf buf) {
+        return newDirectBuffer(buf, buf);
+    }
+
+    /**
+     * Returns an off-heap copy of the specified {@link ByteBuf}, and releases the specified holder.
+     * The caller must ensure that the holder releases the original {@link ByteBuf} when the holder is released by
+     * this method.
+     */
+    protected final ByteBuf newDirectBuffer(Object holder, ByteBuf buf) {
+        final int readableBytes = buf.readableBytes();
+        if (readableBytes == 0) {
+            ReferenceCountUtil.release(holder);
+            return Unpooled.EMPTY_BUFFER;
+        }
+
+        final ByteBufAllocator alloc = alloc();
+        if (alloc.isDirectBufferPooled()) {
+            return newDirectBuffer0(holder, buf, alloc, readableBytes);
+        }
+
+        final ByteBuf directBuf = ByteBufUtil.threadLocalDirectBuffer();
+        if (directBuf == null) {
+            return newDirectBuffer0(holder, buf, alloc, readableBytes);
+        }
+
+        directBuf.writeBytes(buf, buf.readerIndex(), readableBytes);
+        ReferenceCountUtil.safeRelease(holder);
+        return directBuf;
+    }
+
+    private static ByteBuf newDirectBuffer0(Object holder, ByteBuf buf, ByteBufAllocator alloc, int capacity) {
+        final ByteBuf directBuf = alloc.directBuffer(capacity);
+        directBuf.writeBytes(buf, buf.readerIndex(), capacity);
+        ReferenceCountUtil.safeRelease(holder);
+        return directBuf;
+    }
+
+    protected static void checkResolvable(InetSocketAddress addr) {
+        if (addr.isUnresolved()) {
+            throw new UnresolvedAddressException();
+        }
+    }
+
+    protected abstract class AbstractIOUringUnsafe extends AbstractUnsafe {
+        boolean readPending;
+
+        /**
+         * Schedule a read (or accept) request if none is in flight yet.
+         */
+        abstract void scheduleRead();
+
+        /**
+         * Called once the read (or accept) request completed with the given result. Responsible for clearing
+         * {@link #READ_SCHEDULED} unless a follow-up request is submitted.
+         */
+        abstract void readComplete(int res);
+
+        /**
+         * Called once the write request completed with the given result. Responsible for clearing
+         * {@link #WRITE_SCHEDULED}.
+         */
+        void writeComplete(int res) {
+            // Only stream channels write.
+            ioState &= ~WRITE_SCHEDULED;
+        }
+
+        /**
+         * Returns {@code true} if another read (or accept) should be scheduled once the current one completed.
+         */
+        final boolean shouldReadAgain(ChannelConfig config) {
+            return isOpen() && (readPending || config.isAutoRead());
+        }
+
+        /**
+         * Shutdown the input side of the channel.
+         */
+        void shutdownInput(boolean rdHup) {
+            if (!socket.isInputShutdown()) {
+                if (isAllowHalfClosure(config())) {
+                    try {
+                        socket.shutdown(true, false);
+                    } catch (IOException ignored) {
+                        // We attempted to shutdown and failed, which means the input has already effectively been
+                        // shutdown.
+                        fireEventAndClose(ChannelInputShutdownEvent.INSTANCE);
+                        return;
+                    } catch (NotYetConnectedException ignore) {
+                        // We attempted to shutdown and failed, which means the input has already effectively been
+                        // shutdown.
+                    }
+                    pipeline().fireUserEventTriggered(ChannelInputShutdownEvent.INSTANCE);
+                } else {
+                    close(voidPromise());
+                }
+            } else if (!rdHup) {
+                inputClosedSeenErrorOnRead = true;
+                pipeline().fireUserEventTriggered(ChannelInputShutdownReadComplete.INSTANCE);
+            }
+        }
+
+        private void fireEventAndClose(Object evt) {
+            pipeline().fireUserEventTriggered(evt);
+            close(voidPromise());
+        }
+
+        @Override
+        protected final void flush0() {
+            // Flush immediately only when there's no write in flight.
+            // If there is one, the completion of it will call forceFlush() later, unless the output is broken already.
+            // Then the flush fails right away like the write of the other transports would, which also shuts down
+            // the output before any data is read that the peer sent before it reset the connection.
+            if ((ioState & WRITE_SCHEDULED) == 0 || isWriteFailed()) {
+                super.flush0();
+            }
+        }
+
+        /**
+         * Directly flush without checking for a write that is in flight.
+         */
+        final void forceFlush() {
+            super.flush0();
+        }
+
+        @Override
+        public void connect(
+                final SocketAddress remoteAddress, final SocketAddress localAddress, final ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+
+            try {
+                if (connectPromise != null) {
+                    throw new ConnectionPendingException();
+                }
+
+                doConnect(remoteAddress, localAddress);
+                connectPromise = promise;
+                requestedRemoteAddress = remoteAddress;
+
+                // Schedule connect timeout.
+                int connectTimeoutMillis = config().getConnectTimeoutMillis();
+                if (connectTimeoutMillis > 0) {
+                    connectTimeoutFuture = eventLoop().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            ChannelPromise connectPromise = AbstractIOUringChannel.this.connectPromise;
+                            ConnectTimeoutException cause =
+                                    new ConnectTimeoutException("connection timed out: " + remoteAddress);
+                            if (connectPromise != null && connectPromise.tryFailure(cause)) {
+                                close(voidPromise());
+                            }
+                        }
+                    }, connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                }
+
+                promise.addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        if (future.isCancelled()) {
+                            if (connectTimeoutFuture != null) {
+                                connectTimeoutFuture.cancel(false);
+                            }
+                            connectPromise = null;
+                            close(voidPromise());
+                        }
+                    }
+                });
+            } catch (Throwable t) {
+                closeIfClosed();
+                promise.tryFailure(annotateConnectException(t, remoteAddress));
+            }
+        }
+
+        private void fulfillConnectPromise(ChannelPromise promise, boolean wasActive) {
+            if (promise == null) {
+                // Closed via cancellation and the promise has been notified already.
+                return;
+            }
+            active = true;
+
+            // Get the state as trySuccess() may trigger an ChannelFutureListener that will close the Channel.
+            // We still need to ensure we call fireChannelActive() in this case.
+            boolean active = isActive();
+
+            // trySuccess() will return false if a user cancelled the connection attempt.
+            boolean promiseSet = promise.trySuccess();
+
+            // Regardless if the connection attempt was cancelled, channelActive() event should be triggered,
+            // because what happened is what happened.
+            if (!wasActive && active) {
+                pipeline().fireChannelActive();
+            }
+
+            // If a user cancelled the connection attempt, close the channel, which is followed by channelInactive().
+            if (!promiseSet) {
+                close(voidPromise());
+            }
+        }
+
+        private void fulfillConnectPromise(ChannelPromise promise, Throwable cause) {
+            if (promise == null) {
+                // Closed via cancellation and the promise has been notified already.
+                return;
+            }
+
+            // Use tryFailure() instead of setFailure() to avoid the race against cancel().
+            promise.tryFailure(cause);
+            closeIfClosed();
+        }
+
+        /**
+         * Called once the connect request completed with the given result.
+         */
+        final void connectComplete(int res) {
+            // Note the promise is null if the connection attempt was cancelled, timed out or the channel was closed.
+            if (connectPromise == null) {
+                return;
+            }
+            assert eventLoop().inEventLoop();
+
+            try {
+                boolean wasActive = isActive();
+                if (res < 0) {
+                    throw newConnectException(res);
+                }
+                if (requestedRemoteAddress instanceof InetSocketAddress) {
+                    remote = computeRemoteAddr((InetSocketAddress) requestedRemoteAddress, socket.remoteAddress());
+                }
+                // The kernel picked the local address while connecting.
+                local = socket.localAddress();
+                requestedRemoteAddress = null;
+                fulfillConnectPromise(connectPromise, wasActive);
+            } catch (Throwable t) {
+                fulfillConnectPromise(connectPromise, annotateConnectException(t, requestedRemoteAddress));
+            } finally {
+                // Check for null as the connectTimeoutFuture is only created if a connectTimeoutMillis > 0 is used
+                // See https://github.com/netty/netty/issues/1770
+                if (connectTimeoutFuture != null) {
+                    connectTimeoutFuture.cancel(false);
+                }
+                connectPromise = null;
+            }
+        }
+    }
+
+    private static IOException newConnectException(int res) {
+        String message = Errors.newIOException("connect", res).getMessage();
+        if (res == Errors.ERROR_ENETUNREACH_NEGATIVE) {
+            return new NoRouteToHostException(message);
+        }
+        if (res == Errors.ERROR_EISCONN_NEGATIVE) {
+            throw new AlreadyConnectedException();
+        }
+        return new ConnectException(message);
+    }
+
+    @Override
+    protected void doBind(SocketAddress local) throws Exception {
+        if (local instanceof InetSocketAddress) {
+            checkResolvable((InetSocketAddress) local);
+        }
+        socket.bind(local);
+        this.local = socket.localAddress();
+    }
+
+    /**
+     * Schedule the connect request to the remote peer.
+     */
+    protected void doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
+        if (localAddress instanceof InetSocketAddress) {
+            checkResolvable((InetSocketAddress) localAddress);
+        }
+
+        if (!(remoteAddress instanceof InetSocketAddress)) {
+            throw new UnsupportedAddressTypeException();
+        }
+        InetSocketAddress remoteSocketAddr = (InetSocketAddress) remoteAddress;
+        checkResolvable(remoteSocketAddr);
+
+        if (remote != null) {
+            // Check if already connected before trying to connect.
+            throw new AlreadyConnectedException();
+        }
+
+        if (localAddress != null) {
+            socket.bind(localAddress);
+        }
+
+        boolean success = false;
+        try {
+            if (remoteAddressMemoryAddress == 0) {
+                remoteAddressMemoryAddress = PlatformDependent.allocateMemory(Native.SIZEOF_SOCKADDR_STORAGE);
+            }
+            int len = Native.initAddress(remoteAddressMemoryAddress, remoteSocketAddr);
+            submissionQueue().addConnect(socket.intValue(), remoteAddressMemoryAddress, len, (short) 0);
+            ioState |= CONNECT_SCHEDULED;
+            success = true;
+        } finally {
+            if (!success) {
+                doClose();
+            }
+        }
+        // We always need to set the localAddress even if not connected yet as the bind already took place.
+        //
+        // See https://github.com/netty/netty/issues/3463
+        local = socket.localAddress();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return local;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remote;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.unix.Socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import static io.netty.channel.unix.Errors.newIOException;
+
+/**
+ * Base class for io_uring {@link ServerChannel}s which accept new connections via {@code IORING_OP_ACCEPT}.
+ */
+abstract class AbstractIOUringServerChannel extends AbstractIOUringChannel implements ServerChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false, 16);
+
+    AbstractIOUringServerChannel(Socket fd) {
+        this(fd, isSoErrorZero(fd));
+    }
+
+    AbstractIOUringServerChannel(Socket fd, boolean active) {
+        super(null, fd, active);
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    protected InetSocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    byte readOpCode() {
+        return Native.IORING_OP_ACCEPT;
+    }
+
+    @Override
+    protected AbstractIOUringUnsafe newUnsafe() {
+        return new IOUringServerSocketUnsafe();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Create the {@link Channel} for the file descriptor of an accepted connection.
+     */
+    abstract Channel newChildChannel(int fd) throws Exception;
+
+    final class IOUringServerSocketUnsafe extends AbstractIOUringUnsafe {
+
+        @Override
+        public void connect(SocketAddress socketAddress, SocketAddress socketAddress2, ChannelPromise channelPromise) {
+            // Connect not supported by ServerChannel implementations
+            channelPromise.setFailure(new UnsupportedOperationException());
+        }
+
+        @Override
+        void scheduleRead() {
+            if ((ioState & READ_SCHEDULED) != 0 || !isOpen()) {
+                return;
+            }
+            try {
+                submissionQueue().addAccept(socket.intValue(), (short) 0);
+            } catch (IOException e) {
+                pipeline().fireExceptionCaught(e);
+                return;
+            }
+            ioState |= READ_SCHEDULED;
+        }
+
+        @Override
+        void readComplete(int res) {
+            ioState &= ~READ_SCHEDULED;
+            if (!isOpen() || res == Native.ERRNO_ECANCELED_NEGATIVE) {
+                if (res >= 0) {
+                    // The channel was closed in the meantime, so nobody is interested in the connection anymore.
+                    try {
+                        new Socket(res).close();
+                    } catch (IOException ignore) {
+                        // ignore
+                    }
+                }
+                return;
+            }
+            final ChannelConfig config = config();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config);
+            allocHandle.attemptedBytesRead(1);
+
+            Throwable exception = null;
+            if (res >= 0) {
+                // lastBytesRead represents the fd, just like in the epoll transport.
+                allocHandle.lastBytesRead(res);
+                allocHandle.incMessagesRead(1);
+                readPending = false;
+                try {
+                    pipeline.fireChannelRead(newChildChannel(res));
+                } catch (Throwable t) {
+                    exception = t;
+                }
+            } else {
+                allocHandle.lastBytesRead(-1);
+                exception = newIOException("accept", res);
+            }
+            allocHandle.readComplete();
+            pipeline.fireChannelReadComplete();
+
+            if (exception != null) {
+                pipeline.fireExceptionCaught(exception);
+            }
+            if (shouldReadAgain(config)) {
+                scheduleRead();
+            }
+        }
+    }
+}
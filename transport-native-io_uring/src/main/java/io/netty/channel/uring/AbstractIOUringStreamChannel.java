@@ -0,0 +1,432 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelOutboundBuffer.MessageProcessor;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.socket.DuplexChannel;
+import io.netty.channel.unix.Errors;
+import io.netty.channel.unix.IovArray;
+import io.netty.channel.unix.Socket;
+import io.netty.channel.unix.UnixChannelUtil;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.netty.channel.unix.Errors.newIOException;
+
+/**
+ * Base class for stream oriented io_uring {@link Channel}s which read via {@code IORING_OP_RECV} and write via
+ * {@code IORING_OP_WRITEV}.
+ */
+abstract class AbstractIOUringStreamChannel extends AbstractIOUringChannel implements DuplexChannel {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractIOUringStreamChannel.class);
+    private static final String EXPECTED_TYPES =
+            " (expected: " + StringUtil.simpleClassName(ByteBuf.class) + ')';
+
+    // The buffer the in flight read request reads into.
+    private ByteBuf readBuffer;
+    // The iovec array and the buffers referenced by the in flight write request. The buffers are retained so the
+    // memory stays valid even if the ChannelOutboundBuffer releases them, for example because the channel was closed.
+    private IovArray iovArray;
+    private final List<ByteBuf> writeBuffers = new ArrayList<ByteBuf>();
+    private IOException writeError;
+
+    private final MessageProcessor writeProcessor = new MessageProcessor() {
+        @Override
+        public boolean processMessage(Object msg) throws Exception {
+            if (!(msg instanceof ByteBuf)) {
+                return false;
+            }
+            ByteBuf buf = (ByteBuf) msg;
+            int count = iovArray.count();
+            boolean added = iovArray.add(buf);
+            if (added || iovArray.count() != count) {
+                writeBuffers.add(buf.retain());
+            }
+            return added;
+        }
+    };
+
+    AbstractIOUringStreamChannel(Channel parent, Socket fd) {
+        super(parent, fd, true);
+    }
+
+    AbstractIOUringStreamChannel(Channel parent, Socket fd, SocketAddress remote) {
+        super(parent, fd, remote);
+    }
+
+    AbstractIOUringStreamChannel(Socket fd, boolean active) {
+        super(null, fd, active);
+    }
+
+    @Override
+    protected AbstractIOUringUnsafe newUnsafe() {
+        return new IOUringStreamUnsafe();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        if (writeError != null) {
+            IOException error = writeError;
+            writeError = null;
+            throw error;
+        }
+        if ((ioState & WRITE_SCHEDULED) != 0) {
+            // The completion of the in flight request will trigger the next write.
+            return;
+        }
+
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                // Wrote all messages.
+                return;
+            }
+            if (((ByteBuf) msg).isReadable()) {
+                break;
+            }
+            in.remove();
+        }
+
+        IovArray array = iovArray;
+        if (array == null) {
+            iovArray = array = new IovArray();
+        }
+        array.clear();
+        array.maxBytes(config().getMaxBytesPerGatheringWrite());
+        in.forEachFlushedMessage(writeProcessor);
+
+        IOUringSubmissionQueue submissionQueue = submissionQueue();
+        submissionQueue.addWritev(socket.intValue(), array.memoryAddress(0), array.count(), (short) 0);
+        ioState |= WRITE_SCHEDULED;
+        // A flush is expected to hand the data to the kernel right away, like the other transports do, and not only
+        // once the EventLoop gets back to io_uring_enter(...).
+        submissionQueue.submit();
+    }
+
+    @Override
+    boolean isWriteFailed() {
+        if (writeError == null) {
+            int res = Native.sendEmpty(socket.intValue());
+            if (res == 0 || res == Errors.ERRNO_EAGAIN_NEGATIVE || res == Errors.ERRNO_EWOULDBLOCK_NEGATIVE) {
+                return false;
+            }
+            writeError = newIOException("send", res);
+        }
+        return true;
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            return UnixChannelUtil.isBufferCopyNeededForWrite(buf)? newDirectBuffer(buf): buf;
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
+    }
+
+    @Override
+    void releaseResources() {
+        super.releaseResources();
+        if (readBuffer != null) {
+            readBuffer.release();
+            readBuffer = null;
+        }
+        releaseWriteBuffers();
+        if (iovArray != null) {
+            iovArray.release();
+            iovArray = null;
+        }
+    }
+
+    private void releaseWriteBuffers() {
+        for (int i = 0; i < writeBuffers.size(); i++) {
+            writeBuffers.get(i).release();
+        }
+        writeBuffers.clear();
+    }
+
+    @UnstableApi
+    @Override
+    protected final void doShutdownOutput() throws Exception {
+        socket.shutdown(false, true);
+    }
+
+    private void shutdownInput0(final ChannelPromise promise) {
+        try {
+            socket.shutdown(true, false);
+            promise.setSuccess();
+        } catch (Throwable cause) {
+            promise.setFailure(cause);
+        }
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        // The file descriptor of a closed channel may still be open until all in flight requests completed.
+        return socket.isOutputShutdown() || !isActive();
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return socket.isInputShutdown() || !isActive();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return socket.isShutdown() || !isActive();
+    }
+
+    @Override
+    public ChannelFuture shutdownOutput() {
+        return shutdownOutput(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdownOutput(final ChannelPromise promise) {
+        EventLoop loop = eventLoop();
+        if (loop.inEventLoop()) {
+            ((AbstractUnsafe) unsafe()).shutdownOutput(promise);
+        } else {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ((AbstractUnsafe) unsafe()).shutdownOutput(promise);
+                }
+            });
+        }
+
+        return promise;
+    }
+
+    @Override
+    public ChannelFuture shutdownInput() {
+        return shutdownInput(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdownInput(final ChannelPromise promise) {
+        EventLoop loop = eventLoop();
+        if (loop.inEventLoop()) {
+            shutdownInput0(promise);
+        } else {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    shutdownInput0(promise);
+                }
+            });
+        }
+        return promise;
+    }
+
+    @Override
+    public ChannelFuture shutdown() {
+        return shutdown(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdown(final ChannelPromise promise) {
+        ChannelFuture shutdownOutputFuture = shutdownOutput();
+        if (shutdownOutputFuture.isDone()) {
+            shutdownOutputDone(shutdownOutputFuture, promise);
+        } else {
+            shutdownOutputFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(final ChannelFuture shutdownOutputFuture) throws Exception {
+                    shutdownOutputDone(shutdownOutputFuture, promise);
+                }
+            });
+        }
+        return promise;
+    }
+
+    private void shutdownOutputDone(final ChannelFuture shutdownOutputFuture, final ChannelPromise promise) {
+        ChannelFuture shutdownInputFuture = shutdownInput();
+        if (shutdownInputFuture.isDone()) {
+            shutdownDone(shutdownOutputFuture, shutdownInputFuture, promise);
+        } else {
+            shutdownInputFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture shutdownInputFuture) throws Exception {
+                    shutdownDone(shutdownOutputFuture, shutdownInputFuture, promise);
+                }
+            });
+        }
+    }
+
+    private static void shutdownDone(ChannelFuture shutdownOutputFuture,
+                              ChannelFuture shutdownInputFuture,
+                              ChannelPromise promise) {
+        Throwable shutdownOutputCause = shutdownOutputFuture.cause();
+        Throwable shutdownInputCause = shutdownInputFuture.cause();
+        if (shutdownOutputCause != null) {
+            if (shutdownInputCause != null) {
+                logger.debug("Exception suppressed because a previous exception occurred.",
+                        shutdownInputCause);
+            }
+            promise.setFailure(shutdownOutputCause);
+        } else if (shutdownInputCause != null) {
+            promise.setFailure(shutdownInputCause);
+        } else {
+            promise.setSuccess();
+        }
+    }
+
+    class IOUringStreamUnsafe extends AbstractIOUringUnsafe {
+
+        @Override
+        void scheduleRead() {
+            if ((ioState & READ_SCHEDULED) != 0 || !isOpen() || shouldBreakReadReady(config())) {
+                return;
+            }
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config());
+            // The first read of a read loop waits until there is something to read.
+            submitRead(allocHandle, 0);
+        }
+
+        private void submitRead(RecvByteBufAllocator.Handle allocHandle, int msgFlags) {
+            final ByteBufAllocator allocator = config().getAllocator();
+            ByteBuf byteBuf = allocHandle.allocate(allocator);
+            if (!byteBuf.hasMemoryAddress()) {
+                // The kernel needs a stable memory address to read into.
+                int capacity = byteBuf.capacity();
+                byteBuf.release();
+                byteBuf = allocator.directBuffer(capacity);
+            }
+            allocHandle.attemptedBytesRead(byteBuf.writableBytes());
+            try {
+                submissionQueue().addRecv(socket.intValue(), byteBuf.memoryAddress(),
+                        byteBuf.writerIndex(), byteBuf.capacity(), msgFlags, (short) 0);
+            } catch (IOException e) {
+                byteBuf.release();
+                ioState &= ~READ_SCHEDULED;
+                pipeline().fireExceptionCaught(e);
+                close(voidPromise());
+                return;
+            }
+            readBuffer = byteBuf;
+            ioState |= READ_SCHEDULED;
+        }
+
+        @Override
+        void readComplete(int res) {
+            ByteBuf byteBuf = readBuffer;
+            readBuffer = null;
+            assert byteBuf != null;
+
+            if (!isOpen() || res == Native.ERRNO_ECANCELED_NEGATIVE) {
+                // The read was cancelled as the channel was closed.
+                ioState &= ~READ_SCHEDULED;
+                byteBuf.release();
+                return;
+            }
+
+            final IOUringChannelConfig config = config();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            boolean close = false;
+            IOException cause = null;
+            if (res > 0) {
+                byteBuf.writerIndex(byteBuf.writerIndex() + res);
+                allocHandle.lastBytesRead(res);
+                allocHandle.incMessagesRead(1);
+                readPending = false;
+                // READ_SCHEDULED is still set, so a read() triggered by the pipeline is only recorded in readPending.
+                pipeline.fireChannelRead(byteBuf);
+
+                if (allocHandle.continueReading() && isOpen() && !shouldBreakReadReady(config)) {
+                    // Continue the read loop without waiting, so it ends as soon as the socket is drained.
+                    submitRead(allocHandle, Native.MSG_DONTWAIT);
+                    return;
+                }
+            } else {
+                byteBuf.release();
+                if (res == 0) {
+                    // EOF
+                    allocHandle.lastBytesRead(-1);
+                    close = true;
+                } else if (res == Errors.ERRNO_EAGAIN_NEGATIVE || res == Errors.ERRNO_EWOULDBLOCK_NEGATIVE) {
+                    // Nothing left to read for now.
+                    allocHandle.lastBytesRead(0);
+                } else {
+                    allocHandle.lastBytesRead(-1);
+                    cause = newIOException("read", res);
+                    close = true;
+                }
+            }
+
+            // Only clear READ_SCHEDULED once the input shutdown was handled, a read() triggered by the pipeline in
+            // the meantime is recorded in readPending and picked up below.
+            try {
+                allocHandle.readComplete();
+                pipeline.fireChannelReadComplete();
+                if (cause != null) {
+                    pipeline.fireExceptionCaught(cause);
+                }
+                if (close) {
+                    shutdownInput(false);
+                }
+            } finally {
+                ioState &= ~READ_SCHEDULED;
+            }
+            if (shouldReadAgain(config)) {
+                scheduleRead();
+            }
+        }
+
+        @Override
+        void writeComplete(int res) {
+            releaseWriteBuffers();
+            ChannelOutboundBuffer in = outboundBuffer();
+            if (!isOpen() || in == null || res == Native.ERRNO_ECANCELED_NEGATIVE) {
+                ioState &= ~WRITE_SCHEDULED;
+                return;
+            }
+            try {
+                // WRITE_SCHEDULED is still set, so writes triggered by the notified promises cannot submit bytes
+                // that are not removed yet.
+                if (res >= 0) {
+                    in.removeBytes(res);
+                } else {
+                    writeError = newIOException("writev", res);
+                }
+            } finally {
+                ioState &= ~WRITE_SCHEDULED;
+            }
+            forceFlush();
+        }
+    }
+}
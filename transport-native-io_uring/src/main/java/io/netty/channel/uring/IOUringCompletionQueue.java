@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * The completion queue of an io_uring instance.
+ * <p>
+ * This class is not thread-safe and must only be used from the {@link IOUringEventLoop} that owns it.
+ */
+final class IOUringCompletionQueue {
+
+    // Offsets into struct io_uring_cqe, see include/uapi/linux/io_uring.h
+    private static final int CQE_SIZE = 16;
+    private static final int CQE_USER_DATA_FIELD = 0;
+    private static final int CQE_RES_FIELD = 8;
+    private static final int CQE_FLAGS_FIELD = 12;
+
+    private final long kHeadAddress;
+    private final long kTailAddress;
+    private final long completionQueueArrayAddress;
+
+    private final int ringEntries;
+    private final int ringMask;
+    private final int ringSize;
+    private final long ringAddress;
+    private final int ringFd;
+
+    private int head;
+
+    IOUringCompletionQueue(long kHeadAddress, long kTailAddress, long kRingMaskAddress, long kRingEntriesAddress,
+                           long completionQueueArrayAddress, int ringSize, long ringAddress, int ringFd) {
+        if (Native.SIZEOF_CQE != CQE_SIZE) {
+            throw new IllegalStateException("Unexpected io_uring_cqe size: " + Native.SIZEOF_CQE);
+        }
+        this.kHeadAddress = kHeadAddress;
+        this.kTailAddress = kTailAddress;
+        this.completionQueueArrayAddress = completionQueueArrayAddress;
+        this.ringSize = ringSize;
+        this.ringAddress = ringAddress;
+        this.ringFd = ringFd;
+
+        ringEntries = PlatformDependent.getIntVolatile(kRingEntriesAddress);
+        ringMask = PlatformDependent.getIntVolatile(kRingMaskAddress);
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+    }
+
+    /**
+     * Returns {@code true} if there is at least one completion ready to be processed.
+     */
+    boolean hasCompletions() {
+        return head != PlatformDependent.getIntVolatile(kTailAddress);
+    }
+
+    /**
+     * Returns the number of completions that are ready to be processed.
+     */
+    int count() {
+        return PlatformDependent.getIntVolatile(kTailAddress) - head;
+    }
+
+    /**
+     * Process all ready completions and hand them to the given {@link IOUringCompletionQueueCallback}.
+     *
+     * @return the number of processed completions.
+     */
+    int process(IOUringCompletionQueueCallback callback) {
+        int processed = 0;
+        for (;;) {
+            int tail = PlatformDependent.getIntVolatile(kTailAddress);
+            if (head == tail) {
+                break;
+            }
+            do {
+                long cqe = completionQueueArrayAddress + (long) (head & ringMask) * CQE_SIZE;
+                long userData = PlatformDependent.getLong(cqe + CQE_USER_DATA_FIELD);
+                int res = PlatformDependent.getInt(cqe + CQE_RES_FIELD);
+                int flags = PlatformDependent.getInt(cqe + CQE_FLAGS_FIELD);
+
+                // Give the slot back to the kernel before calling into user code, which may trigger new requests.
+                PlatformDependent.putIntOrdered(kHeadAddress, ++head);
+                processed++;
+
+                callback.handle(UserData.decodeFd(userData), res, flags,
+                        UserData.decodeOp(userData), UserData.decodeData(userData));
+            } while (head != tail);
+        }
+        return processed;
+    }
+
+    int ringEntries() {
+        return ringEntries;
+    }
+
+    long ringAddress() {
+        return ringAddress;
+    }
+
+    int ringSize() {
+        return ringSize;
+    }
+
+    int ringFd() {
+        return ringFd;
+    }
+
+    interface IOUringCompletionQueueCallback {
+        /**
+         * Called for each completion.
+         *
+         * @param fd    the file descriptor the request was submitted for.
+         * @param res   the result of the request, which is a negative errno value on failure.
+         * @param flags the flags of the completion.
+         * @param op    the {@code IORING_OP_*} of the request.
+         * @param data  the extra data that was passed when the request was submitted.
+         */
+        void handle(int fd, int res, int flags, byte op, short data);
+    }
+}
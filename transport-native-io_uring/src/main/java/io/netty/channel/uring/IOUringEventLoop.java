@@ -0,0 +1,369 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SingleThreadEventLoop;
+import io.netty.channel.unix.FileDescriptor;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.RejectedExecutionHandler;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * {@link EventLoop} which uses io_uring under the covers. Only works on Linux!
+ * <p>
+ * All requests of the {@link Channel}s registered with this {@link EventLoop} are written to a single submission
+ * queue which is submitted to the kernel once per loop iteration, and all results are read from the matching
+ * completion queue. Waiting for completions is bound by an {@code IORING_OP_TIMEOUT} that matches the deadline of
+ * the next scheduled task, while wakeups from other threads are delivered by a read on an {@code eventfd} that is
+ * always kept pending.
+ */
+final class IOUringEventLoop extends SingleThreadEventLoop
+        implements IOUringCompletionQueue.IOUringCompletionQueueCallback {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(IOUringEventLoop.class);
+    private static final AtomicIntegerFieldUpdater<IOUringEventLoop> WAKEN_UP_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(IOUringEventLoop.class, "wakenUp");
+
+    static {
+        // Ensure JNI is initialized by the time this class is loaded by this time!
+        // We use unix-common methods in this class which are backed by JNI methods.
+        IOUring.ensureAvailability();
+    }
+
+    private static final long NO_TIMEOUT = -1;
+    // How often we try to collect the completions of channels that are still in flight when shutting down.
+    private static final int MAX_DRAIN_ATTEMPTS = 10;
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final RingBuffer ringBuffer;
+    private final FileDescriptor eventFd;
+    private final long eventFdReadBuffer;
+    private final IntObjectMap<AbstractIOUringChannel> channels =
+            new IntObjectHashMap<AbstractIOUringChannel>(4096);
+
+    private boolean eventFdReadPending;
+    private long timeoutDeadline = NO_TIMEOUT;
+    private short timeoutId;
+
+    private final Callable<Integer> pendingTasksCallable = new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+            return IOUringEventLoop.super.pendingTasks();
+        }
+    };
+    private volatile int wakenUp;
+    private volatile int ioRatio = 50;
+
+    IOUringEventLoop(EventLoopGroup parent, Executor executor, int ringSize,
+                     RejectedExecutionHandler rejectedExecutionHandler) {
+        super(parent, executor, false, DEFAULT_MAX_PENDING_TASKS, rejectedExecutionHandler);
+        boolean success = false;
+        RingBuffer ringBuffer = null;
+        FileDescriptor eventFd = null;
+        try {
+            this.ringBuffer = ringBuffer = Native.createRingBuffer(
+                    ringSize == 0 ? Native.DEFAULT_RING_SIZE : ringSize);
+            this.eventFd = eventFd = Native.newEventFd();
+            success = true;
+        } finally {
+            if (!success) {
+                if (ringBuffer != null) {
+                    try {
+                        ringBuffer.close();
+                    } catch (Exception e) {
+                        // ignore
+                    }
+                }
+                if (eventFd != null) {
+                    try {
+                        eventFd.close();
+                    } catch (Exception e) {
+                        // ignore
+                    }
+                }
+            }
+        }
+        eventFdReadBuffer = PlatformDependent.allocateMemory(8);
+    }
+
+    /**
+     * Returns the {@link IOUringSubmissionQueue} to which the {@link AbstractIOUringChannel}s of this
+     * {@link EventLoop} add their requests.
+     */
+    IOUringSubmissionQueue submissionQueue() {
+        return ringBuffer.submissionQueue();
+    }
+
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && WAKEN_UP_UPDATER.compareAndSet(this, 0, 1)) {
+            // write to the evfd which will then complete the pending read and so wake-up io_uring_enter(...)
+            Native.eventFdWrite(eventFd.intValue(), 1L);
+        }
+    }
+
+    /**
+     * Register the given channel with this {@link EventLoop}.
+     */
+    void add(AbstractIOUringChannel ch) {
+        assert inEventLoop();
+        channels.put(ch.socket.intValue(), ch);
+    }
+
+    /**
+     * Deregister the given channel from this {@link EventLoop}. If there are still requests in flight the mapping is
+     * kept until they complete, as the file descriptor must not be re-used before.
+     */
+    void remove(AbstractIOUringChannel ch) {
+        assert inEventLoop();
+        if (!ch.hasPendingRequests()) {
+            int fd = ch.socket.intValue();
+            if (channels.get(fd) == ch) {
+                channels.remove(fd);
+            }
+        }
+    }
+
+    @Override
+    protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
+        // This event loop never calls takeTask()
+        return maxPendingTasks == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue()
+                                                    : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
+    }
+
+    @Override
+    public int pendingTasks() {
+        // As we use a MpscQueue we need to ensure pendingTasks() is only executed from within the EventLoop as
+        // otherwise we may see unexpected behavior (as size() is only allowed to be called by a single consumer).
+        // See https://github.com/netty/netty/issues/5297
+        if (inEventLoop()) {
+            return super.pendingTasks();
+        } else {
+            return submit(pendingTasksCallable).syncUninterruptibly().getNow();
+        }
+    }
+
+    /**
+     * Returns the percentage of the desired amount of time spent for I/O in the event loop.
+     */
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * Sets the percentage of the desired amount of time spent for I/O in the event loop.  The default value is
+     * {@code 50}, which means the event loop will try to spend the same amount of time for I/O as for non-I/O tasks.
+     */
+    public void setIoRatio(int ioRatio) {
+        if (ioRatio <= 0 || ioRatio > 100) {
+            throw new IllegalArgumentException("ioRatio: " + ioRatio + " (expected: 0 < ioRatio <= 100)");
+        }
+        this.ioRatio = ioRatio;
+    }
+
+    private void ioUringWait(boolean oldWakeup) throws IOException {
+        IOUringSubmissionQueue submissionQueue = ringBuffer.submissionQueue();
+        // If a task was submitted when wakenUp value was 1, the task didn't get a chance to produce wakeup event.
+        // So we need to check task queue again before blocking. If we don't, the task might be pended until the
+        // timeout expired.
+        if (oldWakeup && hasTasks()) {
+            submissionQueue.submit();
+            return;
+        }
+
+        if (!eventFdReadPending) {
+            eventFdReadPending = true;
+            submissionQueue.addRead(eventFd.intValue(), eventFdReadBuffer, 0, 8, (short) 0);
+        }
+
+        long currentTimeNanos = System.nanoTime();
+        long delayNanos = delayNanos(currentTimeNanos);
+        long deadline = currentTimeNanos + delayNanos;
+        if (timeoutDeadline == NO_TIMEOUT || deadline - timeoutDeadline < 0) {
+            if (timeoutDeadline != NO_TIMEOUT) {
+                // A timeout with a later deadline is still pending, replace it.
+                submissionQueue.addCancel(0, UserData.encode(0, Native.IORING_OP_TIMEOUT, timeoutId));
+            }
+            timeoutDeadline = deadline;
+            submissionQueue.addTimeout(delayNanos, ++timeoutId);
+        }
+        submissionQueue.submitAndWait();
+    }
+
+    @Override
+    protected void run() {
+        final IOUringCompletionQueue completionQueue = ringBuffer.completionQueue();
+        final IOUringSubmissionQueue submissionQueue = ringBuffer.submissionQueue();
+        for (;;) {
+            try {
+                long metricTime = metricStartTime();
+                if (hasTasks() || completionQueue.hasCompletions()) {
+                    submissionQueue.submit();
+                } else {
+                    ioUringWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
+
+                    // See EpollEventLoop.run() for why we need to wake up again if wakenUp is set at this point.
+                    if (wakenUp == 1) {
+                        Native.eventFdWrite(eventFd.intValue(), 1L);
+                    }
+                }
+
+                metricTime = recordIoWaitTime(metricTime);
+                final int ioRatio = this.ioRatio;
+                if (ioRatio == 100) {
+                    try {
+                        completionQueue.process(this);
+                    } finally {
+                        metricTime = recordIoTime(metricTime);
+                        // Ensure we always run tasks.
+                        runAllTasks();
+                        recordTaskTime(metricTime);
+                    }
+                } else {
+                    final long ioStartTime = System.nanoTime();
+
+                    try {
+                        completionQueue.process(this);
+                    } finally {
+                        metricTime = recordIoTime(metricTime);
+                        // Ensure we always run tasks.
+                        final long ioTime = System.nanoTime() - ioStartTime;
+                        runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                        recordTaskTime(metricTime);
+                    }
+                }
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+            // Always handle shutdown even if the loop processing threw an exception.
+            try {
+                if (isShuttingDown()) {
+                    closeAll();
+                    if (confirmShutdown()) {
+                        break;
+                    }
+                }
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+        }
+    }
+
+    @Override
+    public void handle(int fd, int res, int flags, byte op, short data) {
+        if (op == Native.IORING_OP_TIMEOUT) {
+            if (data == timeoutId) {
+                timeoutDeadline = NO_TIMEOUT;
+            }
+        } else if (op == Native.IORING_OP_ASYNC_CANCEL) {
+            // Nothing to do, the cancelled request produces a completion of its own.
+        } else if (op == Native.IORING_OP_READ && fd == eventFd.intValue()) {
+            // consume wakeup event.
+            eventFdReadPending = false;
+        } else {
+            AbstractIOUringChannel ch = channels.get(fd);
+            if (ch != null) {
+                ch.complete(op, res);
+            }
+        }
+    }
+
+    private static void handleLoopException(Throwable t) {
+        logger.warn("Unexpected exception in the io_uring loop.", t);
+
+        // Prevent possible consecutive immediate failures that lead to
+        // excessive CPU consumption.
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            // Ignore.
+        }
+    }
+
+    private void closeAll() {
+        // Using the intermediate collection to prevent ConcurrentModificationException.
+        // In the `close()` method, the channel is deleted from `channels` map.
+        Collection<AbstractIOUringChannel> array = new ArrayList<AbstractIOUringChannel>(channels.size());
+
+        for (AbstractIOUringChannel channel: channels.values()) {
+            array.add(channel);
+        }
+
+        for (AbstractIOUringChannel ch: array) {
+            ch.unsafe().close(ch.unsafe().voidPromise());
+        }
+    }
+
+    /**
+     * Collect the completions of requests that were cancelled while closing the channels, so their buffers can be
+     * released and their file descriptors closed before the ring goes away.
+     */
+    private void drainInFlight() {
+        IOUringSubmissionQueue submissionQueue = ringBuffer.submissionQueue();
+        IOUringCompletionQueue completionQueue = ringBuffer.completionQueue();
+        for (int i = 0; i < MAX_DRAIN_ATTEMPTS && !channels.isEmpty(); i++) {
+            try {
+                submissionQueue.addTimeout(DRAIN_TIMEOUT_NANOS, ++timeoutId);
+                submissionQueue.submitAndWait();
+            } catch (IOException e) {
+                logger.warn("Failed to drain the io_uring completion queue.", e);
+                break;
+            }
+            completionQueue.process(this);
+        }
+
+        // Whatever is left is forcibly closed, the kernel cancels the requests when the ring is closed.
+        Collection<AbstractIOUringChannel> array = new ArrayList<AbstractIOUringChannel>(channels.values());
+        channels.clear();
+        for (AbstractIOUringChannel ch: array) {
+            ch.forceClose();
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        try {
+            drainInFlight();
+            try {
+                ringBuffer.close();
+            } catch (Exception e) {
+                logger.warn("Failed to close the io_uring instance.", e);
+            }
+            try {
+                eventFd.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the event fd.", e);
+            }
+        } finally {
+            // release native memory
+            PlatformDependent.freeMemory(eventFdReadBuffer);
+        }
+    }
+}
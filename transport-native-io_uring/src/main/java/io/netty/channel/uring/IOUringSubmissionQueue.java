@@ -0,0 +1,264 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+
+import static io.netty.channel.unix.Errors.newIOException;
+
+/**
+ * The submission queue of an io_uring instance. Entries are written directly into the memory shared with the kernel
+ * and are only made visible to it once {@link #submit()} or {@link #submitAndWait()} is called.
+ * <p>
+ * This class is not thread-safe and must only be used from the {@link IOUringEventLoop} that owns it.
+ */
+final class IOUringSubmissionQueue {
+
+    // Offsets into struct io_uring_sqe, see include/uapi/linux/io_uring.h
+    private static final int SQE_SIZE = 64;
+    private static final int SQE_OP_CODE_FIELD = 0;
+    private static final int SQE_FLAGS_FIELD = 1;
+    private static final int SQE_IOPRIO_FIELD = 2;
+    private static final int SQE_FD_FIELD = 4;
+    private static final int SQE_OFFSET_FIELD = 8;
+    private static final int SQE_ADDRESS_FIELD = 16;
+    private static final int SQE_LEN_FIELD = 24;
+    private static final int SQE_RW_FLAGS_FIELD = 28;
+    private static final int SQE_USER_DATA_FIELD = 32;
+
+    private static final int KERNEL_TIMESPEC_SIZE = 16;
+    private static final int KERNEL_TIMESPEC_TV_SEC_FIELD = 0;
+    private static final int KERNEL_TIMESPEC_TV_NSEC_FIELD = 8;
+
+    private final long kHeadAddress;
+    private final long kTailAddress;
+    private final long kFlagsAddress;
+    private final long kDroppedAddress;
+    private final long submissionQueueArrayAddress;
+
+    private final int ringEntries;
+    private final int ringMask;
+    private final int ringSize;
+    private final long ringAddress;
+    private final int sqesSize;
+    private final int ringFd;
+
+    // The timespec used by IORING_OP_TIMEOUT. The kernel copies it during submission so a single one is enough.
+    private final long timeoutMemoryAddress;
+
+    private int head;
+    private int tail;
+
+    IOUringSubmissionQueue(long kHeadAddress, long kTailAddress, long kRingMaskAddress, long kRingEntriesAddress,
+                           long kFlagsAddress, long kDroppedAddress, long kArrayAddress,
+                           long submissionQueueArrayAddress, int ringSize, long ringAddress, int sqesSize,
+                           int ringFd) {
+        if (Native.SIZEOF_SQE != SQE_SIZE) {
+            throw new IllegalStateException("Unexpected io_uring_sqe size: " + Native.SIZEOF_SQE);
+        }
+        this.kHeadAddress = kHeadAddress;
+        this.kTailAddress = kTailAddress;
+        this.kFlagsAddress = kFlagsAddress;
+        this.kDroppedAddress = kDroppedAddress;
+        this.submissionQueueArrayAddress = submissionQueueArrayAddress;
+        this.ringSize = ringSize;
+        this.ringAddress = ringAddress;
+        this.sqesSize = sqesSize;
+        this.ringFd = ringFd;
+
+        ringEntries = PlatformDependent.getIntVolatile(kRingEntriesAddress);
+        ringMask = PlatformDependent.getIntVolatile(kRingMaskAddress);
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+        tail = PlatformDependent.getIntVolatile(kTailAddress);
+
+        // Use an identity mapping between the index array and the submission queue entries so we never need to
+        // touch the array again.
+        for (int i = 0; i < ringEntries; i++) {
+            PlatformDependent.putInt(kArrayAddress + (long) i * 4, i);
+        }
+
+        timeoutMemoryAddress = PlatformDependent.allocateMemory(KERNEL_TIMESPEC_SIZE);
+    }
+
+    /**
+     * Add an {@code IORING_OP_READ} request which reads into the memory between {@code pos} and {@code limit}.
+     */
+    void addRead(int fd, long bufferAddress, int pos, int limit, short data) throws IOException {
+        enqueueSqe(Native.IORING_OP_READ, 0, fd, bufferAddress + pos, limit - pos, 0, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_RECV} request which reads into the memory between {@code pos} and {@code limit}. With
+     * {@link Native#MSG_DONTWAIT} the request completes with {@code -EAGAIN} if there is nothing to read.
+     */
+    void addRecv(int fd, long bufferAddress, int pos, int limit, int msgFlags, short data) throws IOException {
+        enqueueSqe(Native.IORING_OP_RECV, msgFlags, fd, bufferAddress + pos, limit - pos, 0, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_WRITEV} request for the given {@code iovec} array.
+     */
+    void addWritev(int fd, long iovecArrayAddress, int length, short data) throws IOException {
+        enqueueSqe(Native.IORING_OP_WRITEV, 0, fd, iovecArrayAddress, length, 0, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_ACCEPT} request. The address of the remote peer is not requested as it is cheap to
+     * obtain it later from the accepted socket itself.
+     */
+    void addAccept(int fd, short data) throws IOException {
+        enqueueSqe(Native.IORING_OP_ACCEPT, Native.SOCK_CLOEXEC, fd, 0, 0, 0, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_CONNECT} request for the {@code struct sockaddr} stored at the given address.
+     */
+    void addConnect(int fd, long socketAddress, int socketAddressLength, short data) throws IOException {
+        enqueueSqe(Native.IORING_OP_CONNECT, 0, fd, socketAddress, 0, socketAddressLength, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_TIMEOUT} request which completes with {@code -ETIME} after {@code nanoSeconds}.
+     */
+    void addTimeout(long nanoSeconds, short data) throws IOException {
+        long seconds;
+        long nanos;
+        if (nanoSeconds <= 0) {
+            seconds = 0;
+            nanos = 0;
+        } else {
+            seconds = nanoSeconds / 1000000000L;
+            nanos = nanoSeconds % 1000000000L;
+        }
+        PlatformDependent.putLong(timeoutMemoryAddress + KERNEL_TIMESPEC_TV_SEC_FIELD, seconds);
+        PlatformDependent.putLong(timeoutMemoryAddress + KERNEL_TIMESPEC_TV_NSEC_FIELD, nanos);
+        enqueueSqe(Native.IORING_OP_TIMEOUT, 0, 0, timeoutMemoryAddress, 1, 0, data);
+    }
+
+    /**
+     * Add an {@code IORING_OP_ASYNC_CANCEL} request for the request that was submitted with the given user data.
+     */
+    void addCancel(int fd, long userDataToCancel) throws IOException {
+        enqueueSqe(Native.IORING_OP_ASYNC_CANCEL, 0, fd, userDataToCancel, 0, 0, (short) 0);
+    }
+
+    private void enqueueSqe(byte op, int rwFlags, int fd, long address, int length, long offset, short data)
+            throws IOException {
+        if (tail - head == ringEntries) {
+            // The ring is full, let the kernel consume what we have so far.
+            submit();
+            if (tail - head == ringEntries) {
+                throw new IOException("io_uring submission queue is full");
+            }
+        }
+        long sqe = submissionQueueArrayAddress + (long) (tail++ & ringMask) * SQE_SIZE;
+        PlatformDependent.setMemory(sqe, SQE_SIZE, (byte) 0);
+        PlatformDependent.putByte(sqe + SQE_OP_CODE_FIELD, op);
+        PlatformDependent.putByte(sqe + SQE_FLAGS_FIELD, (byte) 0);
+        PlatformDependent.putShort(sqe + SQE_IOPRIO_FIELD, (short) 0);
+        PlatformDependent.putInt(sqe + SQE_FD_FIELD, fd);
+        PlatformDependent.putLong(sqe + SQE_OFFSET_FIELD, offset);
+        PlatformDependent.putLong(sqe + SQE_ADDRESS_FIELD, address);
+        PlatformDependent.putInt(sqe + SQE_LEN_FIELD, length);
+        PlatformDependent.putInt(sqe + SQE_RW_FLAGS_FIELD, rwFlags);
+        PlatformDependent.putLong(sqe + SQE_USER_DATA_FIELD, UserData.encode(fd, op, data));
+    }
+
+    /**
+     * Returns the number of entries that were added but not consumed by the kernel yet.
+     */
+    int pending() {
+        return tail - head;
+    }
+
+    /**
+     * Submit all pending entries without waiting for any completions.
+     *
+     * @return the number of submitted entries.
+     */
+    int submit() throws IOException {
+        return submit(0, 0);
+    }
+
+    /**
+     * Submit all pending entries and wait until at least one completion is ready.
+     *
+     * @return the number of submitted entries.
+     */
+    int submitAndWait() throws IOException {
+        return submit(1, Native.IORING_ENTER_GETEVENTS);
+    }
+
+    private int submit(int minComplete, int flags) throws IOException {
+        if (tail != PlatformDependent.getIntVolatile(kTailAddress)) {
+            // Publish the new tail, the store must not be re-ordered with the stores to the entries.
+            PlatformDependent.putIntOrdered(kTailAddress, tail);
+        }
+        // Everything the kernel did not consume yet needs to be submitted, this also covers entries that were left
+        // over by a previous short submit.
+        int submit = tail - PlatformDependent.getIntVolatile(kHeadAddress);
+        if (submit == 0 && minComplete == 0) {
+            return 0;
+        }
+        int ret = Native.ioUringEnter(ringFd, submit, minComplete, flags);
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+        if (ret < 0) {
+            throw newIOException("io_uring_enter", ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of entries the kernel dropped because they were invalid.
+     */
+    int dropped() {
+        return PlatformDependent.getIntVolatile(kDroppedAddress);
+    }
+
+    int flags() {
+        return PlatformDependent.getIntVolatile(kFlagsAddress);
+    }
+
+    int ringEntries() {
+        return ringEntries;
+    }
+
+    int ringFd() {
+        return ringFd;
+    }
+
+    long ringAddress() {
+        return ringAddress;
+    }
+
+    int ringSize() {
+        return ringSize;
+    }
+
+    long submissionQueueArrayAddress() {
+        return submissionQueueArrayAddress;
+    }
+
+    int sqesSize() {
+        return sqesSize;
+    }
+
+    void release() {
+        PlatformDependent.freeMemory(timeoutMemoryAddress);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.unix.FileDescriptor;
+import io.netty.channel.unix.NativeInetAddress;
+import io.netty.channel.unix.Socket;
+import io.netty.util.internal.NativeLibraryLoader;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThrowableUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ecanceled;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.etime;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringEnterGetevents;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringFeatFastPoll;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpAccept;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpAsyncCancel;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpConnect;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpRead;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpRecv;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpTimeout;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.ioringOpWritev;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.kernelVersion;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.msgDontwait;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.sizeofCqe;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.sizeofSockaddrStorage;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.sizeofSqe;
+import static io.netty.channel.uring.NativeStaticallyReferencedJniMethods.sockCloexec;
+import static io.netty.channel.unix.Errors.newIOException;
+
+/**
+ * Native helper methods
+ * <p><strong>Internal usage only!</strong>
+ * <p>Static members which call JNI methods must be defined in {@link NativeStaticallyReferencedJniMethods}.
+ */
+public final class Native {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(Native.class);
+
+    static {
+        try {
+            // First, try calling a side-effect free JNI method to see if the library was already
+            // loaded by the application.
+            sizeofSqe();
+        } catch (UnsatisfiedLinkError ignore) {
+            // The library was not previously loaded, load it now.
+            loadNativeLibrary();
+        }
+        Socket.initialize();
+    }
+
+    public static final int SIZEOF_SOCKADDR_STORAGE = sizeofSockaddrStorage();
+    public static final int SIZEOF_SQE = sizeofSqe();
+    public static final int SIZEOF_CQE = sizeofCqe();
+
+    public static final byte IORING_OP_READ = (byte) ioringOpRead();
+    public static final byte IORING_OP_RECV = (byte) ioringOpRecv();
+    public static final byte IORING_OP_WRITEV = (byte) ioringOpWritev();
+    public static final byte IORING_OP_ACCEPT = (byte) ioringOpAccept();
+    public static final byte IORING_OP_CONNECT = (byte) ioringOpConnect();
+    public static final byte IORING_OP_TIMEOUT = (byte) ioringOpTimeout();
+    public static final byte IORING_OP_ASYNC_CANCEL = (byte) ioringOpAsyncCancel();
+    public static final int IORING_ENTER_GETEVENTS = ioringEnterGetevents();
+    public static final int IORING_FEAT_FAST_POLL = ioringFeatFastPoll();
+    public static final int SOCK_CLOEXEC = sockCloexec();
+    public static final int MSG_DONTWAIT = msgDontwait();
+
+    public static final int ERRNO_ETIME_NEGATIVE = -etime();
+    public static final int ERRNO_ECANCELED_NEGATIVE = -ecanceled();
+    public static final String KERNEL_VERSION = kernelVersion();
+
+    // All operations which are submitted by the transport.
+    static final int[] REQUIRED_IORING_OPS = {
+            IORING_OP_READ, IORING_OP_RECV, IORING_OP_WRITEV, IORING_OP_ACCEPT, IORING_OP_CONNECT,
+            IORING_OP_TIMEOUT, IORING_OP_ASYNC_CANCEL
+    };
+
+    /**
+     * The default number of entries of the submission queue. The completion queue is created with twice the size by
+     * the kernel.
+     */
+    static final int DEFAULT_RING_SIZE = Math.max(64,
+            SystemPropertyUtil.getInt("io.netty.uring.ringSize", 4096));
+
+    // Indexes into the array returned by ioUringSetup(...), keep in sync with netty_io_uring_native.c
+    private static final int SQ_HEAD = 0;
+    private static final int SQ_TAIL = 1;
+    private static final int SQ_RING_MASK = 2;
+    private static final int SQ_RING_ENTRIES = 3;
+    private static final int SQ_FLAGS = 4;
+    private static final int SQ_DROPPED = 5;
+    private static final int SQ_ARRAY = 6;
+    private static final int SQ_SQES = 7;
+    private static final int SQ_RING_SIZE = 8;
+    private static final int SQ_RING_ADDRESS = 9;
+    private static final int SQ_SQES_SIZE = 10;
+    private static final int CQ_HEAD = 11;
+    private static final int CQ_TAIL = 12;
+    private static final int CQ_RING_MASK = 13;
+    private static final int CQ_RING_ENTRIES = 14;
+    private static final int CQ_CQES = 15;
+    private static final int CQ_RING_SIZE = 16;
+    private static final int CQ_RING_ADDRESS = 17;
+    private static final int RING_FD = 18;
+    private static final int FEATURES = 19;
+
+    /**
+     * Create a new {@link RingBuffer} with the given number of submission queue entries.
+     */
+    static RingBuffer createRingBuffer(int ringSize) {
+        long[] values = ioUringSetup(ringSize);
+        int ringFd = (int) values[RING_FD];
+        IOUringSubmissionQueue submissionQueue = new IOUringSubmissionQueue(
+                values[SQ_HEAD], values[SQ_TAIL], values[SQ_RING_MASK], values[SQ_RING_ENTRIES],
+                values[SQ_FLAGS], values[SQ_DROPPED], values[SQ_ARRAY], values[SQ_SQES],
+                (int) values[SQ_RING_SIZE], values[SQ_RING_ADDRESS], (int) values[SQ_SQES_SIZE], ringFd);
+        IOUringCompletionQueue completionQueue = new IOUringCompletionQueue(
+                values[CQ_HEAD], values[CQ_TAIL], values[CQ_RING_MASK], values[CQ_RING_ENTRIES],
+                values[CQ_CQES], (int) values[CQ_RING_SIZE], values[CQ_RING_ADDRESS], ringFd);
+        return new RingBuffer(submissionQueue, completionQueue, (int) values[FEATURES]);
+    }
+
+    static RingBuffer createRingBuffer() {
+        return createRingBuffer(DEFAULT_RING_SIZE);
+    }
+
+    private static native long[] ioUringSetup(int entries);
+
+    /**
+     * Returns {@code true} if the kernel supports all of the given {@code IORING_OP_*} operations, which is probed via
+     * {@code IORING_REGISTER_PROBE}. Kernels before 5.6 can not be probed, so {@code false} is returned for these.
+     */
+    static native boolean ioUringProbe(int ringFd, int[] ops);
+
+    /**
+     * Submit {@code toSubmit} entries and optionally wait for {@code minComplete} completions.
+     *
+     * @return the number of consumed submission queue entries or a negative errno value on failure.
+     */
+    static native int ioUringEnter(int ringFd, int toSubmit, int minComplete, int flags);
+
+    static native void ioUringExit(long sqRingAddress, long sqRingSize, long sqesAddress, long sqesSize,
+                                   long cqRingAddress, long cqRingSize, int ringFd);
+
+    public static FileDescriptor newEventFd() {
+        return new FileDescriptor(eventFd());
+    }
+
+    private static native int eventFd();
+    public static native void eventFdWrite(int fd, long value);
+
+    /**
+     * Clear {@code O_NONBLOCK} on the given file descriptor. io_uring takes care of never blocking the submitting
+     * thread, while a non-blocking descriptor would make it complete requests with {@code EAGAIN} instead of waiting
+     * for readiness.
+     */
+    static void setBlocking(int fd) throws IOException {
+        int res = setBlocking0(fd);
+        if (res < 0) {
+            throw newIOException("fcntl", res);
+        }
+    }
+
+    private static native int setBlocking0(int fd);
+
+    /**
+     * Send zero bytes to the given socket without blocking, which fails like a write if the connection was reset or
+     * its output was shut down. Returns {@code 0} on success or a negative errno value on failure.
+     */
+    static native int sendEmpty(int fd);
+
+    /**
+     * Encode the given {@link InetSocketAddress} as {@code struct sockaddr} into the given memory which must be at
+     * least {@link #SIZEOF_SOCKADDR_STORAGE} bytes in size.
+     *
+     * @return the length of the encoded {@code struct sockaddr}.
+     */
+    static int initAddress(long memoryAddress, InetSocketAddress address) throws IOException {
+        NativeInetAddress nativeAddress = NativeInetAddress.newInstance(address.getAddress());
+        int len = initAddress(memoryAddress, nativeAddress.address(), nativeAddress.scopeId(), address.getPort());
+        if (len < 0) {
+            throw new IOException("Unable to encode address: " + address);
+        }
+        return len;
+    }
+
+    private static native int initAddress(long memoryAddress, byte[] address, int scopeId, int port);
+
+    private static void loadNativeLibrary() {
+        String name = SystemPropertyUtil.get("os.name").toLowerCase(Locale.UK).trim();
+        if (!name.startsWith("linux")) {
+            throw new IllegalStateException("Only supported on Linux");
+        }
+        String staticLibName = "netty_transport_native_io_uring";
+        String sharedLibName = staticLibName + '_' + PlatformDependent.normalizedArch();
+        ClassLoader cl = PlatformDependent.getClassLoader(Native.class);
+        try {
+            NativeLibraryLoader.load(sharedLibName, cl);
+        } catch (UnsatisfiedLinkError e1) {
+            try {
+                NativeLibraryLoader.load(staticLibName, cl);
+                logger.debug("Failed to load {}", sharedLibName, e1);
+            } catch (UnsatisfiedLinkError e2) {
+                ThrowableUtil.addSuppressed(e1, e2);
+                throw e1;
+            }
+        }
+    }
+
+    private Native() {
+        // utility
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+/**
+ * An io_uring instance which consists of a {@link IOUringSubmissionQueue} and a {@link IOUringCompletionQueue}
+ * that share the memory mapped from the kernel.
+ */
+final class RingBuffer {
+    private final IOUringSubmissionQueue submissionQueue;
+    private final IOUringCompletionQueue completionQueue;
+    private final int features;
+    private boolean closed;
+
+    RingBuffer(IOUringSubmissionQueue submissionQueue, IOUringCompletionQueue completionQueue, int features) {
+        this.submissionQueue = submissionQueue;
+        this.completionQueue = completionQueue;
+        this.features = features;
+    }
+
+    int fd() {
+        return completionQueue.ringFd();
+    }
+
+    /**
+     * Returns the {@code IORING_FEAT_*} flags the kernel reported when the io_uring instance was set up.
+     */
+    int features() {
+        return features;
+    }
+
+    IOUringSubmissionQueue submissionQueue() {
+        return submissionQueue;
+    }
+
+    IOUringCompletionQueue completionQueue() {
+        return completionQueue;
+    }
+
+    /**
+     * Unmap the shared memory and close the io_uring file descriptor. The kernel cancels all requests that are still
+     * in flight.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        submissionQueue.release();
+        Native.ioUringExit(
+                submissionQueue.ringAddress(),
+                submissionQueue.ringSize(),
+                submissionQueue.submissionQueueArrayAddress(),
+                submissionQueue.sqesSize(),
+                completionQueue.ringAddress(),
+                completionQueue.ringSize(),
+                completionQueue.ringFd());
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+/**
+ * Encodes the file descriptor, the operation and some extra data into the 64 bits of {@code user_data} that are
+ * passed through the kernel untouched and handed back with the completion.
+ */
+final class UserData {
+
+    private UserData() { }
+
+    static long encode(int fd, byte op, short data) {
+        return (fd & 0xFFFFFFFFL) | (op & 0xFFL) << 32 | (data & 0xFFFFL) << 40;
+    }
+
+    static int decodeFd(long userData) {
+        return (int) (userData & 0xFFFFFFFFL);
+    }
+
+    static byte decodeOp(long userData) {
+        return (byte) ((userData >>> 32) & 0xFFL);
+    }
+
+    static short decodeData(long userData) {
+        return (short) ((userData >>> 40) & 0xFFFFL);
+    }
+}
@@ -210,10 +210,15 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
     protected void run() {
         for (;;) {
             try {
+                long metricTime = metricStartTime();
                 int strategy = selectStrategy.calculateStrategy(selectNowSupplier, hasTasks());
                 switch (strategy) {
                     case SelectStrategy.CONTINUE:
                         continue;
+
+                    case SelectStrategy.BUSY_WAIT:
+                        // fall-through to SELECT since the busy-wait is not supported with kqueue
+
                     case SelectStrategy.SELECT:
                         strategy = kqueueWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
 
@@ -252,6 +257,7 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                     default:
                 }
 
+                metricTime = recordIoWaitTime(metricTime);
                 final int ioRatio = this.ioRatio;
                 if (ioRatio == 100) {
                     try {
@@ -259,7 +265,9 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                             processReady(strategy);
                         }
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         runAllTasks();
+                        recordTaskTime(metricTime);
                     }
                 } else {
                     final long ioStartTime = System.nanoTime();
@@ -269,8 +277,10 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                             processReady(strategy);
                         }
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         final long ioTime = System.nanoTime() - ioStartTime;
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                        recordTaskTime(metricTime);
                     }
                 }
                 if (allowGrowing && strategy == eventList.capacity()) {
@@ -88,17 +88,30 @@ public final class IovArray implements MessageProcessor {
      * have been added.
      */
     public boolean add(ByteBuf buf) {
+        return add(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    /**
+     * Try to add the given region of the {@link ByteBuf}. This is useful to add the writable region of a
+     * {@link ByteBuf} which should be filled by a scattering read.
+     * @param buf The {@link ByteBuf} to add.
+     * @param offset The offset into the {@link ByteBuf} of the region.
+     * @param len The length of the region.
+     * @return {@code true} if the entire region has been added to this {@link IovArray}.
+     * @see #add(ByteBuf)
+     */
+    public boolean add(ByteBuf buf, int offset, int len) {
         if (count == IOV_MAX) {
             // No more room!
             return false;
         } else if (buf.hasMemoryAddress() && buf.nioBufferCount() == 1) {
-            final int len = buf.readableBytes();
-            return len == 0 || add(buf.memoryAddress(), buf.readerIndex(), len);
+            return len == 0 || add(buf.memoryAddress(), offset, len);
         } else {
-            ByteBuffer[] buffers = buf.nioBuffers();
+            ByteBuffer[] buffers = buf.nioBuffers(offset, len);
             for (ByteBuffer nioBuffer : buffers) {
-                final int len = nioBuffer.remaining();
-                if (len != 0 && (!add(directBufferAddress(nioBuffer), nioBuffer.position(), len) || count == IOV_MAX)) {
+                final int remaining = nioBuffer.remaining();
+                if (remaining != 0 &&
+                        (!add(directBufferAddress(nioBuffer), nioBuffer.position(), remaining) || count == IOV_MAX)) {
                     return false;
                 }
             }
@@ -18,7 +18,7 @@ package io.netty.channel;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.socket.ChannelOutputShutdownEvent;
 import io.netty.channel.socket.ChannelOutputShutdownException;
-import io.netty.util.DefaultAttributeMap;
+import io.netty.util.IndexedAttributeMap;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.ThrowableUtil;
@@ -51,7 +51,7 @@ import java.util.concurrent.RejectedExecutionException;
  * 5. eventLoop: 当前Channel注册的EventLoop;
  * ......
  */
-public abstract class AbstractChannel extends DefaultAttributeMap implements Channel {
+public abstract class AbstractChannel extends IndexedAttributeMap implements Channel {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractChannel.class);
 
@@ -528,6 +528,10 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
                 doRegister();
                 neverRegistered = false;
                 registered = true;
+                ChannelOutboundBuffer outboundBuffer = this.outboundBuffer;
+                if (outboundBuffer != null) {
+                    outboundBuffer.registered(eventLoop);
+                }
 
                 // Ensure we call handlerAdded(...) before we actually notify the promise. This is needed as the
                 // user may already fire events through the pipeline in the ChannelFutureListener.
@@ -18,7 +18,6 @@ package io.netty.channel;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
-import io.netty.util.DefaultAttributeMap;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ResourceLeakHint;
@@ -27,16 +26,39 @@ import io.netty.util.concurrent.OrderedEventExecutor;
 import io.netty.util.internal.PromiseNotificationUtil;
 import io.netty.util.internal.ThrowableUtil;
 import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.net.SocketAddress;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
-abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
-        implements ChannelHandlerContext, ResourceLeakHint {
+import static io.netty.channel.ChannelHandlerMask.MASK_BIND;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_ACTIVE;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_INACTIVE;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_READ;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_READ_COMPLETE;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_REGISTERED;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_UNREGISTERED;
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_WRITABILITY_CHANGED;
+import static io.netty.channel.ChannelHandlerMask.MASK_CLOSE;
+import static io.netty.channel.ChannelHandlerMask.MASK_CONNECT;
+import static io.netty.channel.ChannelHandlerMask.MASK_DEREGISTER;
+import static io.netty.channel.ChannelHandlerMask.MASK_DISCONNECT;
+import static io.netty.channel.ChannelHandlerMask.MASK_EXCEPTION_CAUGHT;
+import static io.netty.channel.ChannelHandlerMask.MASK_FLUSH;
+import static io.netty.channel.ChannelHandlerMask.MASK_ONLY_INBOUND;
+import static io.netty.channel.ChannelHandlerMask.MASK_ONLY_OUTBOUND;
+import static io.netty.channel.ChannelHandlerMask.MASK_READ;
+import static io.netty.channel.ChannelHandlerMask.MASK_USER_EVENT_TRIGGERED;
+import static io.netty.channel.ChannelHandlerMask.MASK_WRITE;
+import static io.netty.channel.ChannelHandlerMask.mask;
+
+abstract class AbstractChannelHandlerContext implements ChannelHandlerContext, ResourceLeakHint {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractChannelHandlerContext.class);
     volatile AbstractChannelHandlerContext next;
@@ -63,11 +85,11 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
      */
     private static final int INIT = 0;
 
-    private final boolean inbound;
-    private final boolean outbound;
     private final DefaultChannelPipeline pipeline;
     private final String name;
     private final boolean ordered;
+    // The events the handler actually handles, see ChannelHandlerMask.
+    private final int executionMask;
 
     // Will be set to null if no child executor should be used, otherwise it will be set to the
     // child executor.
@@ -84,12 +106,11 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
     private volatile int handlerState = INIT;
 
     AbstractChannelHandlerContext(DefaultChannelPipeline pipeline, EventExecutor executor, String name,
-                                  boolean inbound, boolean outbound) {
+                                  Class<? extends ChannelHandler> handlerClass) {
         this.name = ObjectUtil.checkNotNull(name, "name");
         this.pipeline = pipeline;
         this.executor = executor;
-        this.inbound = inbound;
-        this.outbound = outbound;
+        executionMask = mask(handlerClass);
         // Its ordered if its driven by the EventLoop or the given Executor is an instanceof OrderedEventExecutor.
         ordered = executor == null || executor instanceof OrderedEventExecutor;
     }
@@ -125,7 +146,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelRegistered() {
-        invokeChannelRegistered(findContextInbound());
+        invokeChannelRegistered(findContextInbound(MASK_CHANNEL_REGISTERED));
         return this;
     }
 
@@ -157,7 +178,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelUnregistered() {
-        invokeChannelUnregistered(findContextInbound());
+        invokeChannelUnregistered(findContextInbound(MASK_CHANNEL_UNREGISTERED));
         return this;
     }
 
@@ -189,7 +210,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelActive() {
-        invokeChannelActive(findContextInbound());
+        invokeChannelActive(findContextInbound(MASK_CHANNEL_ACTIVE));
         return this;
     }
 
@@ -221,7 +242,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelInactive() {
-        invokeChannelInactive(findContextInbound());
+        invokeChannelInactive(findContextInbound(MASK_CHANNEL_INACTIVE));
         return this;
     }
 
@@ -253,7 +274,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireExceptionCaught(final Throwable cause) {
-        invokeExceptionCaught(next, cause);
+        invokeExceptionCaught(findContextInbound(MASK_EXCEPTION_CAUGHT), cause);
         return this;
     }
 
@@ -304,7 +325,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireUserEventTriggered(final Object event) {
-        invokeUserEventTriggered(findContextInbound(), event);
+        invokeUserEventTriggered(findContextInbound(MASK_USER_EVENT_TRIGGERED), event);
         return this;
     }
 
@@ -337,7 +358,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelRead(final Object msg) {
-        invokeChannelRead(findContextInbound(), msg);
+        invokeChannelRead(findContextInbound(MASK_CHANNEL_READ), msg);
         return this;
     }
 
@@ -370,7 +391,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelReadComplete() {
-        invokeChannelReadComplete(findContextInbound());
+        invokeChannelReadComplete(findContextInbound(MASK_CHANNEL_READ_COMPLETE));
         return this;
     }
 
@@ -406,7 +427,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext fireChannelWritabilityChanged() {
-        invokeChannelWritabilityChanged(findContextInbound());
+        invokeChannelWritabilityChanged(findContextInbound(MASK_CHANNEL_WRITABILITY_CHANGED));
         return this;
     }
 
@@ -480,12 +501,12 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             return promise;
         }
 
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_BIND);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeBind(localAddress, promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecute(next, executor, new Runnable() {
                 @Override
                 public void run() {
                     next.invokeBind(localAddress, promise);
@@ -524,12 +545,12 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             return promise;
         }
 
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_CONNECT);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeConnect(remoteAddress, localAddress, promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecute(next, executor, new Runnable() {
                 @Override
                 public void run() {
                     next.invokeConnect(remoteAddress, localAddress, promise);
@@ -553,30 +574,25 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelFuture disconnect(final ChannelPromise promise) {
+        if (!channel().metadata().hasDisconnect()) {
+            // Translate disconnect to close if the channel has no notion of disconnect-reconnect.
+            // So far, UDP/IP is the only transport that has such behavior.
+            return close(promise);
+        }
         if (isNotValidPromise(promise, false)) {
             // cancelled
             return promise;
         }
 
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_DISCONNECT);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
-            // Translate disconnect to close if the channel has no notion of disconnect-reconnect.
-            // So far, UDP/IP is the only transport that has such behavior.
-            if (!channel().metadata().hasDisconnect()) {
-                next.invokeClose(promise);
-            } else {
-                next.invokeDisconnect(promise);
-            }
+            next.invokeDisconnect(promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecute(next, executor, new Runnable() {
                 @Override
                 public void run() {
-                    if (!channel().metadata().hasDisconnect()) {
-                        next.invokeClose(promise);
-                    } else {
-                        next.invokeDisconnect(promise);
-                    }
+                    next.invokeDisconnect(promise);
                 }
             }, promise, null);
         }
@@ -602,12 +618,12 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             return promise;
         }
 
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_CLOSE);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeClose(promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecute(next, executor, new Runnable() {
                 @Override
                 public void run() {
                     next.invokeClose(promise);
@@ -637,12 +653,12 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             return promise;
         }
 
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_DEREGISTER);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeDeregister(promise);
         } else {
-            safeExecute(executor, new Runnable() {
+            safeExecute(next, executor, new Runnable() {
                 @Override
                 public void run() {
                     next.invokeDeregister(promise);
@@ -667,7 +683,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext read() {
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_READ);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeRead();
@@ -743,7 +759,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
 
     @Override
     public ChannelHandlerContext flush() {
-        final AbstractChannelHandlerContext next = findContextOutbound();
+        final AbstractChannelHandlerContext next = findContextOutbound(MASK_FLUSH);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
             next.invokeFlush();
@@ -757,7 +773,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
                     }
                 };
             }
-            safeExecute(executor, task, channel().voidPromise(), null);
+            safeExecute(next, executor, task, channel().voidPromise(), null);
         }
 
         return this;
@@ -806,7 +822,8 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
     }
 
     private void write(Object msg, boolean flush, ChannelPromise promise) {
-        AbstractChannelHandlerContext next = findContextOutbound();
+        AbstractChannelHandlerContext next = findContextOutbound(flush ?
+                (MASK_WRITE | MASK_FLUSH) : MASK_WRITE);
         final Object m = pipeline.touch(msg, next);
         EventExecutor executor = next.executor();
         if (executor.inEventLoop()) {
@@ -822,7 +839,7 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             }  else {
                 task = WriteTask.newInstance(next, m, promise);
             }
-            safeExecute(executor, task, promise, m);
+            safeExecute(next, executor, task, promise, m);
         }
     }
 
@@ -931,22 +948,34 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
         return false;
     }
 
-    private AbstractChannelHandlerContext findContextInbound() {
+    private AbstractChannelHandlerContext findContextInbound(int mask) {
         AbstractChannelHandlerContext ctx = this;
+        EventExecutor currentExecutor = executor();
         do {
             ctx = ctx.next;
-        } while (!ctx.inbound);
+        } while (skipContext(ctx, currentExecutor, mask, MASK_ONLY_INBOUND));
         return ctx;
     }
 
-    private AbstractChannelHandlerContext findContextOutbound() {
+    private AbstractChannelHandlerContext findContextOutbound(int mask) {
         AbstractChannelHandlerContext ctx = this;
+        EventExecutor currentExecutor = executor();
         do {
             ctx = ctx.prev;
-        } while (!ctx.outbound);
+        } while (skipContext(ctx, currentExecutor, mask, MASK_ONLY_OUTBOUND));
         return ctx;
     }
 
+    private static boolean skipContext(
+            AbstractChannelHandlerContext ctx, EventExecutor currentExecutor, int mask, int onlyMask) {
+        // Contexts of the other direction are always skipped, unless they handle exceptionCaught.
+        return (ctx.executionMask & (onlyMask | mask)) == 0 ||
+                // A context which does not handle the event can only be skipped if it uses the same EventExecutor,
+                // as otherwise the event would not be handed over to its EventExecutor anymore which could
+                // reorder it with the events that were handed over before.
+                (ctx.executor() == currentExecutor && (ctx.executionMask & mask) == 0);
+    }
+
     @Override
     public ChannelPromise voidPromise() {
         return channel().voidPromise();
@@ -1002,6 +1031,17 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
         return channel().hasAttr(key);
     }
 
+    private void safeExecute(AbstractChannelHandlerContext next, EventExecutor executor, Runnable runnable,
+                             ChannelPromise promise, Object msg) {
+        if (OutboundStagingQueue.ENABLED && next.executor == null) {
+            // The handler uses the EventLoop of the Channel, so stage the operation together with all others issued
+            // from outside the EventLoop, which keeps their order across the whole pipeline.
+            pipeline.outboundStagingQueue(executor).add(runnable, promise);
+        } else {
+            safeExecute(executor, runnable, promise, msg);
+        }
+    }
+
     private static void safeExecute(EventExecutor executor, Runnable runnable, ChannelPromise promise, Object msg) {
         try {
             executor.execute(runnable);
@@ -1069,14 +1109,48 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
                 }
                 write(ctx, msg, promise);
             } finally {
-                // Set to null so the GC can collect them directly
-                ctx = null;
-                msg = null;
-                promise = null;
-                handle.recycle(this);
+                recycle();
             }
         }
 
+        /**
+         * Writes the message without decrementing the pending outbound bytes, which the
+         * {@link OutboundStagingQueue} does once for a whole batch of tasks.
+         */
+        final void runStaged() {
+            try {
+                write(ctx, msg, promise);
+            } finally {
+                recycle();
+            }
+        }
+
+        /**
+         * Fails the task without writing the message, as {@link #safeExecute(EventExecutor, Runnable, ChannelPromise,
+         * Object)} does if the task could not be executed.
+         */
+        final void fail(Throwable cause) {
+            try {
+                promise.setFailure(cause);
+            } finally {
+                try {
+                    if (msg != null) {
+                        ReferenceCountUtil.release(msg);
+                    }
+                } finally {
+                    recycle();
+                }
+            }
+        }
+
+        private void recycle() {
+            // Set to null so the GC can collect them directly
+            ctx = null;
+            msg = null;
+            promise = null;
+            handle.recycle(this);
+        }
+
         protected void write(AbstractChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
             ctx.invokeWrite(msg, promise);
         }
@@ -1129,4 +1203,209 @@ abstract class AbstractChannelHandlerContext extends DefaultAttributeMap
             ctx.invokeFlush();
         }
     }
+
+    /**
+     * Stages the outbound operations which are issued from outside the {@link EventLoop} of a {@link Channel} for
+     * handlers that use this {@link EventLoop}. Any number of threads may add tasks while the {@link EventLoop} drains
+     * them in a single task, which decrements the pending outbound bytes once per batch of {@link AbstractWriteTask}s
+     * and only wakes up the {@link EventLoop} if the batch contains a task that is not a
+     * {@link SingleThreadEventLoop.NonWakeupRunnable}, like a flush. All operations are run in the order they were
+     * added, and before any task a thread submits to the {@link EventLoop} after it added an operation unless more
+     * than {@code MAX_BATCHES_PER_DRAIN * MAX_BATCH_SIZE} operations are staged at once. A drain runs at most that
+     * many operations and then schedules another drain for the remaining ones, so a steady stream of operations does
+     * not keep the {@link EventLoop} from its I/O and other tasks, but tasks submitted in the meantime run first.
+     * <p>
+     * Staging is disabled by default and enabled via {@code -Dio.netty.transport.stageOutboundOperations=true}, as a
+     * drain also runs the operations which were added while it was running. These may overtake events the
+     * {@link EventLoop} deferred in the meantime, like a {@code channelWritabilityChanged}.
+     */
+    static final class OutboundStagingQueue {
+
+        static final boolean ENABLED =
+                SystemPropertyUtil.getBoolean("io.netty.transport.stageOutboundOperations", false);
+
+        private static final int MAX_BATCH_SIZE = 64;
+        private static final int MAX_BATCHES_PER_DRAIN = 16;
+
+        private static final int IDLE = 0;
+        private static final int SCHEDULED = 1;
+        private static final int SCHEDULED_WITH_WAKEUP = 2;
+
+        private static final AtomicIntegerFieldUpdater<OutboundStagingQueue> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(OutboundStagingQueue.class, "state");
+
+        private static final Runnable WAKEUP_TASK = new Runnable() {
+            @Override
+            public void run() {
+                // NOOP, only used to wake up the EventLoop.
+            }
+        };
+
+        private final Queue<Runnable> tasks = PlatformDependent.newMpscQueue();
+        // Only accessed by the thread which drains the queue, which the state hands over between threads.
+        private final Runnable[] batch = new Runnable[MAX_BATCH_SIZE];
+        private final Runnable drainTask = new NonWakeupDrainTask();
+        private final Runnable drainWithWakeupTask = new Runnable() {
+            @Override
+            public void run() {
+                drain(null);
+            }
+        };
+
+        private final EventExecutor executor;
+        private volatile int state = IDLE;
+
+        OutboundStagingQueue(EventExecutor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Returns the {@link EventExecutor} which runs the staged tasks.
+         */
+        EventExecutor executor() {
+            return executor;
+        }
+
+        /**
+         * Adds the given task, which is failed with the given {@link ChannelPromise} if it can not be executed. The
+         * promise of an {@link AbstractWriteTask} is ignored as the task fails itself.
+         */
+        void add(Runnable task, ChannelPromise promise) {
+            boolean wakeup = !(task instanceof SingleThreadEventLoop.NonWakeupRunnable);
+            tasks.offer(task instanceof AbstractWriteTask ? task : new StagedTask(task, promise));
+            for (;;) {
+                int state = this.state;
+                if (state == IDLE) {
+                    if (STATE_UPDATER.compareAndSet(this, IDLE, wakeup ? SCHEDULED_WITH_WAKEUP : SCHEDULED)) {
+                        try {
+                            executor.execute(wakeup ? drainWithWakeupTask : drainTask);
+                        } catch (Throwable cause) {
+                            // This thread scheduled the drain, so no other thread touches the queue until it is done.
+                            drain(cause);
+                        }
+                        return;
+                    }
+                } else if (state == SCHEDULED && wakeup) {
+                    if (STATE_UPDATER.compareAndSet(this, SCHEDULED, SCHEDULED_WITH_WAKEUP)) {
+                        // The drain was scheduled without a wakeup, which would delay the task until the EventLoop
+                        // wakes up for something else.
+                        try {
+                            executor.execute(WAKEUP_TASK);
+                        } catch (RejectedExecutionException ignore) {
+                            // The drain which was scheduled before will fail the task.
+                        }
+                        return;
+                    }
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Runs the staged tasks until the queue is empty, or fails them with the given {@code cause} if it is not
+         * {@code null}. Running the tasks stops after {@link #MAX_BATCHES_PER_DRAIN} batches and schedules another
+         * drain for the remaining ones.
+         */
+        private void drain(Throwable cause) {
+            int batches = cause == null ? MAX_BATCHES_PER_DRAIN : Integer.MAX_VALUE;
+            for (;;) {
+                batches = drainBatches(cause, batches);
+                if (batches < 0) {
+                    // The state stays scheduled, so no other thread schedules a drain until this one is done.
+                    try {
+                        executor.execute(drainTask);
+                        return;
+                    } catch (RejectedExecutionException e) {
+                        cause = e;
+                        batches = Integer.MAX_VALUE;
+                        continue;
+                    }
+                }
+                state = IDLE;
+                // Check again as another thread may have added a task after the queue was found empty but before the
+                // state was reset, without scheduling a drain. Run it right away instead of scheduling another drain,
+                // as the thread may have submitted a task to the EventLoop afterwards which must not overtake it.
+                if (tasks.isEmpty() || !STATE_UPDATER.compareAndSet(this, IDLE, SCHEDULED)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Runs at most {@code batches} batches of tasks and returns the number of batches which are left once the queue
+         * was found empty, or {@code -1} if the queue may still contain tasks.
+         */
+        private int drainBatches(Throwable cause, int batches) {
+            Runnable[] batch = this.batch;
+            boolean done = false;
+            do {
+                if (batches-- == 0) {
+                    return -1;
+                }
+                int size = 0;
+                long pendingBytes = 0;
+                DefaultChannelPipeline pipeline = null;
+                while (size < batch.length) {
+                    Runnable task = tasks.poll();
+                    if (task == null) {
+                        done = true;
+                        break;
+                    }
+                    if (task instanceof AbstractWriteTask) {
+                        AbstractWriteTask writeTask = (AbstractWriteTask) task;
+                        pendingBytes += writeTask.size;
+                        pipeline = writeTask.ctx.pipeline;
+                    }
+                    batch[size++] = task;
+                }
+                if (pendingBytes != 0) {
+                    pipeline.decrementPendingOutboundBytes(pendingBytes);
+                }
+                for (int i = 0; i < size; i++) {
+                    Runnable task = batch[i];
+                    batch[i] = null;
+                    try {
+                        if (task instanceof AbstractWriteTask) {
+                            if (cause == null) {
+                                ((AbstractWriteTask) task).runStaged();
+                            } else {
+                                ((AbstractWriteTask) task).fail(cause);
+                            }
+                        } else if (cause == null) {
+                            task.run();
+                        } else {
+                            ((StagedTask) task).promise.setFailure(cause);
+                        }
+                    } catch (Throwable t) {
+                        // Keep on draining, as the remaining tasks would never be run otherwise.
+                        logger.warn("A task raised an exception. Task: {}", task, t);
+                    }
+                }
+            } while (!done);
+            return batches;
+        }
+
+        private final class NonWakeupDrainTask implements SingleThreadEventLoop.NonWakeupRunnable {
+            @Override
+            public void run() {
+                drain(null);
+            }
+        }
+
+        private static final class StagedTask implements Runnable {
+            private final Runnable task;
+            private final ChannelPromise promise;
+
+            StagedTask(Runnable task, ChannelPromise promise) {
+                this.task = task;
+                this.promise = promise;
+            }
+
+            @Override
+            public void run() {
+                task.run();
+            }
+        }
+    }
 }
@@ -169,6 +169,10 @@ public interface ChannelConfig {
     /**
      * Set the {@link ByteBufAllocator} which is used for the channel
      * to allocate buffers.
+     * <p>
+     * Use {@link io.netty.buffer.PooledByteBufAllocator#boundAllocator(io.netty.util.concurrent.EventExecutor)} with
+     * the {@link Channel#eventLoop()} of a registered {@link Channel}, for example from
+     * {@link ChannelInitializer#initChannel(Channel)}, to allocate out of arenas owned by the {@link EventLoop}.
      */
     ChannelConfig setAllocator(ByteBufAllocator allocator);
 
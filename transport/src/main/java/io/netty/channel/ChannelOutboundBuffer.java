@@ -26,6 +26,7 @@ import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.internal.InternalThreadLocalMap;
 import io.netty.util.internal.PromiseNotificationUtil;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
@@ -62,31 +63,43 @@ public final class ChannelOutboundBuffer {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(ChannelOutboundBuffer.class);
 
-    private static final FastThreadLocal<ByteBuffer[]> NIO_BUFFERS = new FastThreadLocal<ByteBuffer[]>() {
+    private static final Entry[] EMPTY_ENTRIES = new Entry[0];
+
+    private static final int INITIAL_CAPACITY = 16;
+    // The ring is replaced by a new one once it is empty again if it grew beyond this capacity.
+    private static final int MAX_RETAINED_CAPACITY = 256;
+
+    private static final FastThreadLocal<NioBuffers> NIO_BUFFERS = new FastThreadLocal<NioBuffers>() {
         @Override
-        protected ByteBuffer[] initialValue() throws Exception {
-            return new ByteBuffer[1024];
+        protected NioBuffers initialValue() throws Exception {
+            return new NioBuffers();
         }
     };
 
     private final Channel channel;
 
-    // Entry(flushedEntry) --> ... Entry(unflushedEntry) --> ... Entry(tailEntry)
-    //
-    // The Entry that is the first in the linked-list structure that was flushed
-    private Entry flushedEntry;
-    // The Entry which is the first unflushed in the linked-list structure
-    private Entry unflushedEntry;
-    // The Entry which represents the tail of the buffer
-    private Entry tailEntry;
+    // entries[head] ... entries[head + flushed - 1] are flushed, the following ones up to
+    // entries[head + size - 1] are not flushed yet. All indexes wrap around the end of the array.
+    private Entry[] entries = EMPTY_ENTRIES;
+    private int head;
+    private int size;
     // The number of flushed entries that are not written yet
     private int flushed;
 
+    // The entries at the start of the flushed entries whose ByteBuffers are in NioBuffers.buffers, starting at
+    // nioBufferOffset. Only valid while NioBuffers.owner is this buffer, and allows nioBuffers(...) to continue where
+    // the last call stopped instead of gathering all flushed entries again after a partial write.
+    private int gatheredEntries;
+    private int nioBufferOffset;
+    private boolean gatherComplete;
     private int nioBufferCount;
     private long nioBufferSize;
 
     private boolean inFail;
 
+    // The metric of the EventLoop the channel is registered to, or null if metrics are disabled.
+    private EventLoopMetric metric;
+
     private static final AtomicLongFieldUpdater<ChannelOutboundBuffer> TOTAL_PENDING_SIZE_UPDATER =
             AtomicLongFieldUpdater.newUpdater(ChannelOutboundBuffer.class, "totalPendingSize");
 
@@ -111,16 +124,13 @@ public final class ChannelOutboundBuffer {
      */
     public void addMessage(Object msg, int size, ChannelPromise promise) {
         Entry entry = Entry.newInstance(msg, size, total(msg), promise);
-        if (tailEntry == null) {
-            flushedEntry = null;
-        } else {
-            Entry tail = tailEntry;
-            tail.next = entry;
+        if (metric != null) {
+            entry.writeTime = System.nanoTime();
         }
-        tailEntry = entry;
-        if (unflushedEntry == null) {
-            unflushedEntry = entry;
+        if (this.size == entries.length) {
+            expandEntries();
         }
+        entries[(head + this.size++) & entries.length - 1] = entry;
 
         // increment pending bytes after adding message to the unflushed arrays.
         // See https://github.com/netty/netty/issues/1619
@@ -136,25 +146,30 @@ public final class ChannelOutboundBuffer {
         // where added in the meantime.
         //
         // See https://github.com/netty/netty/issues/2577
-        Entry entry = unflushedEntry;
-        if (entry != null) {
-            if (flushedEntry == null) {
-                // there is no flushedEntry yet, so start with the entry
-                flushedEntry = entry;
+        //
+        // Always read the array again, as a handler may add messages and so grow it when the writability changes.
+        while (flushed < size) {
+            Entry entry = entries[(head + flushed) & entries.length - 1];
+            flushed ++;
+            if (!entry.promise.setUncancellable()) {
+                // Was cancelled so make sure we free up memory and notify about the freed bytes
+                int pending = entry.cancel();
+                decrementPendingOutboundBytes(pending, false, true);
             }
-            do {
-                flushed ++;
-                if (!entry.promise.setUncancellable()) {
-                    // Was cancelled so make sure we free up memory and notify about the freed bytes
-                    int pending = entry.cancel();
-                    decrementPendingOutboundBytes(pending, false, true);
-                }
-                entry = entry.next;
-            } while (entry != null);
+        }
+    }
 
-            // All flushed so reset unflushedEntry
-            unflushedEntry = null;
+    private void expandEntries() {
+        int oldCapacity = entries.length;
+        Entry[] newEntries = new Entry[oldCapacity == 0 ? INITIAL_CAPACITY : oldCapacity << 1];
+        if (oldCapacity != 0) {
+            // Copy the entries in order, so the head is at index 0 again.
+            int firstPart = oldCapacity - head;
+            System.arraycopy(entries, head, newEntries, 0, firstPart);
+            System.arraycopy(entries, 0, newEntries, firstPart, head);
         }
+        entries = newEntries;
+        head = 0;
     }
 
     /**
@@ -212,20 +227,19 @@ public final class ChannelOutboundBuffer {
      * Return the current message to write or {@code null} if nothing was flushed before and so is ready to be written.
      */
     public Object current() {
-        Entry entry = flushedEntry;
-        if (entry == null) {
+        if (flushed == 0) {
             return null;
         }
 
-        return entry.msg;
+        return entries[head].msg;
     }
 
     /**
      * Notify the {@link ChannelPromise} of the current message about writing progress.
      */
     public void progress(long amount) {
-        Entry e = flushedEntry;
-        assert e != null;
+        assert flushed != 0;
+        Entry e = entries[head];
         ChannelPromise p = e.promise;
         if (p instanceof ChannelProgressivePromise) {
             long progress = e.progress + amount;
@@ -240,11 +254,11 @@ public final class ChannelOutboundBuffer {
      * messages are ready to be handled.
      */
     public boolean remove() {
-        Entry e = flushedEntry;
-        if (e == null) {
+        if (flushed == 0) {
             clearNioBuffers();
             return false;
         }
+        Entry e = entries[head];
         Object msg = e.msg;
 
         ChannelPromise promise = e.promise;
@@ -255,6 +269,8 @@ public final class ChannelOutboundBuffer {
         if (!e.cancelled) {
             // only release message, notify and decrement if it was not canceled before.
             ReferenceCountUtil.safeRelease(msg);
+            // Record before the promise is notified, so its listeners see the latency of the write.
+            recordWriteLatency(e);
             safeSuccess(promise);
             decrementPendingOutboundBytes(size, false, true);
         }
@@ -265,6 +281,55 @@ public final class ChannelOutboundBuffer {
         return true;
     }
 
+    private void recordWriteLatency(Entry e) {
+        EventLoopMetric metric = this.metric;
+        // The write time is not set if the message was added before the channel was registered.
+        if (metric != null && e.writeTime != 0) {
+            metric.recordWriteLatency(System.nanoTime() - e.writeTime);
+        }
+    }
+
+    /**
+     * Called once the {@link Channel} was registered to the given {@link EventLoop}, so the time messages are queued
+     * in this buffer is recorded by its {@link EventLoopMetric}.
+     */
+    void registered(EventLoop eventLoop) {
+        metric = eventLoop instanceof SingleThreadEventLoop ?
+                ((SingleThreadEventLoop) eventLoop).eventLoopMetric() : null;
+    }
+
+    /**
+     * Will remove the current message like {@link #remove()} but neither release it nor notify its
+     * {@link ChannelPromise}. Instead the ownership of both is transferred to the caller, which is responsible to
+     * release the message and complete the returned {@link ChannelPromise} later. This is useful if the
+     * operating system still uses the memory of the message after the write operation returned.
+     *
+     * @return the {@link ChannelPromise} of the removed message or {@code null} if no flushed message exists or it
+     *         was cancelled, in which case the caller does not own the message.
+     */
+    @UnstableApi
+    public ChannelPromise removeDeferred() {
+        if (flushed == 0) {
+            clearNioBuffers();
+            return null;
+        }
+        Entry e = entries[head];
+        ChannelPromise promise = e.promise;
+        int size = e.pendingSize;
+        boolean cancelled = e.cancelled;
+
+        removeEntry(e);
+
+        if (!cancelled) {
+            decrementPendingOutboundBytes(size, false, true);
+        }
+
+        // recycle the entry
+        e.recycle();
+
+        return cancelled ? null : promise;
+    }
+
     /**
      * Will remove the current message, mark its {@link ChannelPromise} as failure using the given {@link Throwable}
      * and return {@code true}. If no   flushed message exists at the time this method is called it will return
@@ -275,11 +340,11 @@ public final class ChannelOutboundBuffer {
     }
 
     private boolean remove0(Throwable cause, boolean notifyWritability) {
-        Entry e = flushedEntry;
-        if (e == null) {
+        if (flushed == 0) {
             clearNioBuffers();
             return false;
         }
+        Entry e = entries[head];
         Object msg = e.msg;
 
         ChannelPromise promise = e.promise;
@@ -291,6 +356,7 @@ public final class ChannelOutboundBuffer {
             // only release message, fail and decrement if it was not canceled before.
             ReferenceCountUtil.safeRelease(msg);
 
+            recordWriteLatency(e);
             safeFail(promise, cause);
             decrementPendingOutboundBytes(size, false, notifyWritability);
         }
@@ -302,18 +368,40 @@ public final class ChannelOutboundBuffer {
     }
 
     private void removeEntry(Entry e) {
-        if (-- flushed == 0) {
+        if (gatheredEntries != 0) {
+            removeGatheredEntry(e);
+        }
+        entries[head] = null;
+        flushed --;
+        if (-- size == 0) {
             // processed everything
-            flushedEntry = null;
-            if (e == tailEntry) {
-                tailEntry = null;
-                unflushedEntry = null;
+            head = 0;
+            if (entries.length > MAX_RETAINED_CAPACITY) {
+                entries = EMPTY_ENTRIES;
             }
         } else {
-            flushedEntry = e.next;
+            head = (head + 1) & entries.length - 1;
+        }
+    }
+
+    private void removeGatheredEntry(Entry e) {
+        gatheredEntries --;
+        int slots = e.nioBufferSlots;
+        if (slots != 0) {
+            // The ByteBuffers are released by removeBytes(...) or the next nioBuffers(...) call.
+            nioBufferOffset += slots;
+            nioBufferCount -= slots;
+            nioBufferSize -= ((ByteBuf) e.msg).readableBytes();
         }
     }
 
+    private void resetGather() {
+        gatheredEntries = 0;
+        nioBufferOffset = 0;
+        nioBufferCount = 0;
+        nioBufferSize = 0;
+    }
+
     /**
      * Removes the fully written entries and update the reader index of the partially written entry.
      * This operation assumes all messages in this buffer is {@link ByteBuf}.
@@ -340,21 +428,41 @@ public final class ChannelOutboundBuffer {
                 if (writtenBytes != 0) {
                     buf.readerIndex(readerIndex + (int) writtenBytes);
                     progress(writtenBytes);
+                    if (gatheredEntries != 0) {
+                        // The ByteBuffers of the entry were written partially and so still reflect the remaining bytes.
+                        nioBufferSize -= writtenBytes;
+                    }
                 }
                 break;
             }
         }
-        clearNioBuffers();
+        // Keep the ByteBuffers of the remaining gathered entries, so the next nioBuffers(...) only needs to add the
+        // entries which were not gathered yet.
+        if (flushed == 0) {
+            clearNioBuffers();
+        } else if (nioBufferOffset != 0) {
+            releaseWrittenNioBuffers();
+        }
+    }
+
+    // Clear the ByteBuffers of the written entries from the array so these can be GC'ed.
+    private void releaseWrittenNioBuffers() {
+        NioBuffers nioBuffers = NIO_BUFFERS.get();
+        if (nioBuffers.owner == this) {
+            Arrays.fill(nioBuffers.buffers, 0, nioBufferOffset, null);
+        }
     }
 
     // Clear all ByteBuffer from the array so these can be GC'ed.
     // See https://github.com/netty/netty/issues/3837
+    // The owner is dropped even if nothing is gathered anymore, as nioBuffers(...) takes the ownership also when there
+    // is nothing to gather and the holder must not keep this buffer (and so its channel) reachable after it was closed.
     private void clearNioBuffers() {
-        int count = nioBufferCount;
-        if (count > 0) {
-            nioBufferCount = 0;
-            Arrays.fill(NIO_BUFFERS.get(), 0, count, null);
+        NioBuffers nioBuffers = NIO_BUFFERS.get();
+        if (nioBuffers.owner == this) {
+            nioBuffers.clear();
         }
+        resetGather();
     }
 
     /**
@@ -388,12 +496,38 @@ public final class ChannelOutboundBuffer {
     public ByteBuffer[] nioBuffers(int maxCount, long maxBytes) {
         assert maxCount > 0;
         assert maxBytes > 0;
-        long nioBufferSize = 0;
-        int nioBufferCount = 0;
         final InternalThreadLocalMap threadLocalMap = InternalThreadLocalMap.get();
-        ByteBuffer[] nioBuffers = NIO_BUFFERS.get(threadLocalMap);
-        Entry entry = flushedEntry;
-        while (isFlushedEntry(entry) && entry.msg instanceof ByteBuf) {
+        final NioBuffers holder = NIO_BUFFERS.get(threadLocalMap);
+        ByteBuffer[] nioBuffers = holder.buffers;
+        if (holder.owner != this || !gatherComplete || nioBufferCount > maxCount || nioBufferSize > maxBytes) {
+            // Gather all flushed entries from the start.
+            holder.clear();
+            holder.owner = this;
+            resetGather();
+        } else if (nioBufferOffset != 0) {
+            // Move the ByteBuffers of the entries which are not written yet to the start of the array.
+            int offset = nioBufferOffset;
+            int count = nioBufferCount;
+            System.arraycopy(nioBuffers, offset, nioBuffers, 0, count);
+            Arrays.fill(nioBuffers, count, offset + count, null);
+            nioBufferOffset = 0;
+        }
+        if (gatheredEntries != 0) {
+            skipWrittenNioBuffers(nioBuffers);
+        }
+        gatherComplete = true;
+
+        long nioBufferSize = this.nioBufferSize;
+        int nioBufferCount = this.nioBufferCount;
+        int gatheredEntries = this.gatheredEntries;
+        final Entry[] entries = this.entries;
+        final int mask = entries.length - 1;
+        while (gatheredEntries < flushed) {
+            Entry entry = entries[(head + gatheredEntries) & mask];
+            if (!(entry.msg instanceof ByteBuf)) {
+                break;
+            }
+            int slots = 0;
             if (!entry.cancelled) {
                 ByteBuf buf = (ByteBuf) entry.msg;
                 final int readerIndex = buf.readerIndex();
@@ -422,8 +556,7 @@ public final class ChannelOutboundBuffer {
                     }
                     int neededSpace = min(maxCount, nioBufferCount + count);
                     if (neededSpace > nioBuffers.length) {
-                        nioBuffers = expandNioBufferArray(nioBuffers, neededSpace, nioBufferCount);
-                        NIO_BUFFERS.set(threadLocalMap, nioBuffers);
+                        holder.buffers = nioBuffers = expandNioBufferArray(nioBuffers, neededSpace, nioBufferCount);
                     }
                     if (count == 1) {
                         ByteBuffer nioBuf = entry.buf;
@@ -433,6 +566,7 @@ public final class ChannelOutboundBuffer {
                             entry.buf = nioBuf = buf.internalNioBuffer(readerIndex, readableBytes);
                         }
                         nioBuffers[nioBufferCount++] = nioBuf;
+                        slots = 1;
                     } else {
                         ByteBuffer[] nioBufs = entry.bufs;
                         if (nioBufs == null) {
@@ -440,7 +574,8 @@ public final class ChannelOutboundBuffer {
                             // of Object allocation
                             entry.bufs = nioBufs = buf.nioBuffers();
                         }
-                        for (int i = 0; i < nioBufs.length && nioBufferCount < maxCount; ++i) {
+                        int i = 0;
+                        for (; i < nioBufs.length && nioBufferCount < maxCount; ++i) {
                             ByteBuffer nioBuf = nioBufs[i];
                             if (nioBuf == null) {
                                 break;
@@ -448,21 +583,49 @@ public final class ChannelOutboundBuffer {
                                 continue;
                             }
                             nioBuffers[nioBufferCount++] = nioBuf;
+                            slots++;
+                        }
+                        if (i < nioBufs.length && nioBufs[i] != null) {
+                            // Only some of the ByteBuffers fit, so the next call needs to gather all entries again.
+                            gatherComplete = false;
                         }
-                    }
-                    if (nioBufferCount == maxCount) {
-                        break;
                     }
                 }
             }
-            entry = entry.next;
+            entry.nioBufferSlots = slots;
+            gatheredEntries++;
+            if (nioBufferCount == maxCount) {
+                break;
+            }
         }
+        this.gatheredEntries = gatheredEntries;
         this.nioBufferCount = nioBufferCount;
         this.nioBufferSize = nioBufferSize;
+        holder.used = nioBufferCount;
 
         return nioBuffers;
     }
 
+    /**
+     * Removes the ByteBuffers of the first gathered entry which were written completely by a partial write, like
+     * {@link #nioBuffers(int, long)} skips them when gathering the entry again.
+     */
+    private void skipWrittenNioBuffers(ByteBuffer[] nioBuffers) {
+        Entry entry = entries[head];
+        int slots = entry.nioBufferSlots;
+        int written = 0;
+        while (written < slots - 1 && !nioBuffers[written].hasRemaining()) {
+            written++;
+        }
+        if (written != 0) {
+            int count = nioBufferCount - written;
+            System.arraycopy(nioBuffers, written, nioBuffers, 0, count);
+            Arrays.fill(nioBuffers, count, nioBufferCount, null);
+            entry.nioBufferSlots = slots - written;
+            nioBufferCount = count;
+        }
+    }
+
     private static ByteBuffer[] expandNioBufferArray(ByteBuffer[] array, int neededSpace, int size) {
         int newCapacity = array.length;
         do {
@@ -668,8 +831,12 @@ public final class ChannelOutboundBuffer {
 
         // Release all unflushed messages.
         try {
-            Entry e = unflushedEntry;
-            while (e != null) {
+            while (this.size != 0) {
+                Entry e = entries[head];
+                entries[head] = null;
+                head = (head + 1) & entries.length - 1;
+                this.size --;
+
                 // Just decrease; do not trigger any events via decrementPendingOutboundBytes()
                 int size = e.pendingSize;
                 TOTAL_PENDING_SIZE_UPDATER.addAndGet(this, -size);
@@ -678,8 +845,9 @@ public final class ChannelOutboundBuffer {
                     ReferenceCountUtil.safeRelease(e.msg);
                     safeFail(e.promise, cause);
                 }
-                e = e.recycleAndGetNext();
+                e.recycle();
             }
+            head = 0;
         } finally {
             inFail = false;
         }
@@ -751,23 +919,16 @@ public final class ChannelOutboundBuffer {
             throw new NullPointerException("processor");
         }
 
-        Entry entry = flushedEntry;
-        if (entry == null) {
-            return;
-        }
-
-        do {
+        final Entry[] entries = this.entries;
+        final int mask = entries.length - 1;
+        for (int i = 0; i < flushed; i++) {
+            Entry entry = entries[(head + i) & mask];
             if (!entry.cancelled) {
                 if (!processor.processMessage(entry.msg)) {
                     return;
                 }
             }
-            entry = entry.next;
-        } while (isFlushedEntry(entry));
-    }
-
-    private boolean isFlushedEntry(Entry e) {
-        return e != null && e != unflushedEntry;
+        }
     }
 
     public interface MessageProcessor {
@@ -787,15 +948,18 @@ public final class ChannelOutboundBuffer {
         };
 
         private final Handle<Entry> handle;
-        Entry next;
         Object msg;
         ByteBuffer[] bufs;
         ByteBuffer buf;
         ChannelPromise promise;
         long progress;
         long total;
+        // The System.nanoTime() the message was added at, if metrics are enabled.
+        long writeTime;
         int pendingSize;
         int count = -1;
+        // The number of ByteBuffers which nioBuffers(...) gathered for this entry.
+        int nioBufferSlots;
         boolean cancelled;
 
         private Entry(Handle<Entry> handle) {
@@ -831,23 +995,37 @@ public final class ChannelOutboundBuffer {
         }
 
         void recycle() {
-            next = null;
             bufs = null;
             buf = null;
             msg = null;
             promise = null;
             progress = 0;
             total = 0;
+            writeTime = 0;
             pendingSize = 0;
             count = -1;
+            nioBufferSlots = 0;
             cancelled = false;
             handle.recycle(this);
         }
+    }
 
-        Entry recycleAndGetNext() {
-            Entry next = this.next;
-            recycle();
-            return next;
+    /**
+     * The {@link ByteBuffer}s gathered by {@link #nioBuffers(int, long)}, which are shared by all buffers of the
+     * thread and belong to the buffer which gathered them last.
+     */
+    private static final class NioBuffers {
+        ByteBuffer[] buffers = new ByteBuffer[1024];
+        ChannelOutboundBuffer owner;
+        // The number of leading elements of the array which may be non-null.
+        int used;
+
+        void clear() {
+            if (used != 0) {
+                Arrays.fill(buffers, 0, used, null);
+                used = 0;
+            }
+            owner = null;
         }
     }
 }
@@ -15,12 +15,14 @@
  */
 package io.netty.channel;
 
+import io.netty.channel.AbstractChannelHandlerContext.OutboundStagingQueue;
 import io.netty.channel.Channel.Unsafe;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ResourceLeakDetector;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.EventExecutorGroup;
 import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.MathUtil;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.UnstableApi;
@@ -61,6 +63,19 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private static final AtomicReferenceFieldUpdater<DefaultChannelPipeline, MessageSizeEstimator.Handle> ESTIMATOR =
             AtomicReferenceFieldUpdater.newUpdater(
                     DefaultChannelPipeline.class, MessageSizeEstimator.Handle.class, "estimatorHandle");
+    private static final AtomicReferenceFieldUpdater<DefaultChannelPipeline, OutboundStagingQueue> STAGING_QUEUE =
+            AtomicReferenceFieldUpdater.newUpdater(
+                    DefaultChannelPipeline.class, OutboundStagingQueue.class, "outboundStagingQueue");
+    private static final AtomicReferenceFieldUpdater<DefaultChannelPipeline, HandlerList> HANDLERS =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultChannelPipeline.class, HandlerList.class, "handlers");
+    private static final AtomicReferenceFieldUpdater<DefaultChannelPipeline, HandlerList> LINKED =
+            AtomicReferenceFieldUpdater.newUpdater(DefaultChannelPipeline.class, HandlerList.class, "linked");
+
+    private static final int ADD_FIRST = 0;
+    private static final int ADD_LAST = 1;
+    private static final int ADD_BEFORE = 2;
+    private static final int ADD_AFTER = 3;
+
     final AbstractChannelHandlerContext head;
     final AbstractChannelHandlerContext tail;
 
@@ -69,8 +84,20 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private final VoidChannelPromise voidPromise;
     private final boolean touch = ResourceLeakDetector.isEnabled();
 
+    /**
+     * The contexts between {@link #head} and {@link #tail}. Every modification publishes a new copy via
+     * {@link #HANDLERS} and then updates the linked list of the contexts to match it. Only the {@link EventLoop}
+     * does so without holding the lock, see {@link #modifyWithoutLock()}.
+     */
+    private volatile HandlerList handlers = HandlerList.EMPTY;
+    /**
+     * The {@link HandlerList} which the linked list of the contexts was last completely updated to.
+     */
+    private volatile HandlerList linked = HandlerList.EMPTY;
+
     private Map<EventExecutorGroup, EventExecutor> childExecutors;
     private volatile MessageSizeEstimator.Handle estimatorHandle;
+    private volatile OutboundStagingQueue outboundStagingQueue;
     private boolean firstRegistration = true;
 
     /**
@@ -85,9 +112,9 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     /**
      * Set to {@code true} once the {@link AbstractChannel} is registered.Once set to {@code true} the value will never
-     * change.
+     * change. Only modified while holding the lock, which also guards {@link #pendingHandlerCallbackHead}.
      */
-    private boolean registered;
+    private volatile boolean registered;
 
     protected DefaultChannelPipeline(Channel channel) {
         this.channel = ObjectUtil.checkNotNull(channel, "channel");
@@ -112,6 +139,25 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         return handle;
     }
 
+    /**
+     * Returns the queue which stages the outbound operations issued from outside the given {@link EventLoop} of the
+     * {@link Channel}, so they are run in one task instead of one task per operation.
+     */
+    final OutboundStagingQueue outboundStagingQueue(EventExecutor executor) {
+        for (;;) {
+            OutboundStagingQueue queue = outboundStagingQueue;
+            if (queue != null && queue.executor() == executor) {
+                return queue;
+            }
+            // Either nothing was staged yet or the Channel was registered to another EventLoop, in which case the
+            // operations staged before are still run by the previous one like tasks which were submitted to it.
+            OutboundStagingQueue newQueue = new OutboundStagingQueue(executor);
+            if (STAGING_QUEUE.compareAndSet(this, queue, newQueue)) {
+                return newQueue;
+            }
+        }
+    }
+
     final Object touch(Object msg, AbstractChannelHandlerContext next) {
         return touch ? ReferenceCountUtil.touch(msg, next) : msg;
     }
@@ -128,20 +174,23 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         if (pinEventExecutor != null && !pinEventExecutor) {
             return group.next();
         }
-        Map<EventExecutorGroup, EventExecutor> childExecutors = this.childExecutors;
-        if (childExecutors == null) {
-            // Use size of 4 as most people only use one extra EventExecutor.
-            childExecutors = this.childExecutors = new IdentityHashMap<EventExecutorGroup, EventExecutor>(4);
-        }
-        // Pin one of the child executors once and remember it so that the same child executor
-        // is used to fire events for the same channel.
-        EventExecutor childExecutor = childExecutors.get(group);
-        if (childExecutor == null) {
-            childExecutor = group.next();
-            childExecutors.put(group, childExecutor);
+        synchronized (this) {
+            Map<EventExecutorGroup, EventExecutor> childExecutors = this.childExecutors;
+            if (childExecutors == null) {
+                // Use size of 4 as most people only use one extra EventExecutor.
+                childExecutors = this.childExecutors = new IdentityHashMap<EventExecutorGroup, EventExecutor>(4);
+            }
+            // Pin one of the child executors once and remember it so that the same child executor
+            // is used to fire events for the same channel.
+            EventExecutor childExecutor = childExecutors.get(group);
+            if (childExecutor == null) {
+                childExecutor = group.next();
+                childExecutors.put(group, childExecutor);
+            }
+            return childExecutor;
         }
-        return childExecutor;
     }
+
     @Override
     public final Channel channel() {
         return channel;
@@ -154,46 +203,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     @Override
     public final ChannelPipeline addFirst(EventExecutorGroup group, String name, ChannelHandler handler) {
-        final AbstractChannelHandlerContext newCtx;
-        synchronized (this) {
-            checkMultiplicity(handler);
-            name = filterName(name, handler);
-
-            newCtx = newContext(group, name, handler);
-
-            addFirst0(newCtx);
-
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we add the context to the pipeline and add a task that will call
-            // ChannelHandler.handlerAdded(...) once the channel is registered.
-            if (!registered) {
-                newCtx.setAddPending();
-                callHandlerCallbackLater(newCtx, true);
-                return this;
-            }
-
-            EventExecutor executor = newCtx.executor();
-            if (!executor.inEventLoop()) {
-                newCtx.setAddPending();
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callHandlerAdded0(newCtx);
-                    }
-                });
-                return this;
-            }
-        }
-        callHandlerAdded0(newCtx);
-        return this;
-    }
-
-    private void addFirst0(AbstractChannelHandlerContext newCtx) {
-        AbstractChannelHandlerContext nextCtx = head.next;
-        newCtx.prev = head;
-        newCtx.next = nextCtx;
-        head.next = newCtx;
-        nextCtx.prev = newCtx;
+        return add(group, ADD_FIRST, null, name, handler);
     }
 
     @Override
@@ -203,45 +213,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
     @Override
     public final ChannelPipeline addLast(EventExecutorGroup group, String name, ChannelHandler handler) {
-        final AbstractChannelHandlerContext newCtx;
-        synchronized (this) {
-            checkMultiplicity(handler);
-
-            newCtx = newContext(group, filterName(name, handler), handler);
-
-            addLast0(newCtx);
-
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we add the context to the pipeline and add a task that will call
-            // ChannelHandler.handlerAdded(...) once the channel is registered.
-            if (!registered) {
-                newCtx.setAddPending();
-                callHandlerCallbackLater(newCtx, true);
-                return this;
-            }
-
-            EventExecutor executor = newCtx.executor();
-            if (!executor.inEventLoop()) {
-                newCtx.setAddPending();
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callHandlerAdded0(newCtx);
-                    }
-                });
-                return this;
-            }
-        }
-        callHandlerAdded0(newCtx);
-        return this;
-    }
-
-    private void addLast0(AbstractChannelHandlerContext newCtx) {
-        AbstractChannelHandlerContext prev = tail.prev;
-        newCtx.prev = prev;
-        newCtx.next = tail;
-        prev.next = newCtx;
-        tail.prev = newCtx;
+        return add(group, ADD_LAST, null, name, handler);
     }
 
     @Override
@@ -252,106 +224,176 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     @Override
     public final ChannelPipeline addBefore(
             EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
-        final AbstractChannelHandlerContext newCtx;
-        final AbstractChannelHandlerContext ctx;
-        synchronized (this) {
-            checkMultiplicity(handler);
-            name = filterName(name, handler);
-            ctx = getContextOrDie(baseName);
+        return add(group, ADD_BEFORE, baseName, name, handler);
+    }
 
-            newCtx = newContext(group, name, handler);
+    @Override
+    public final ChannelPipeline addAfter(String baseName, String name, ChannelHandler handler) {
+        return addAfter(null, baseName, name, handler);
+    }
+
+    @Override
+    public final ChannelPipeline addAfter(
+            EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
+        return add(group, ADD_AFTER, baseName, name, handler);
+    }
 
-            addBefore0(ctx, newCtx);
+    private ChannelPipeline add(
+            EventExecutorGroup group, int position, String baseName, String name, ChannelHandler handler) {
+        checkMultiplicity(handler);
 
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we add the context to the pipeline and add a task that will call
-            // ChannelHandler.handlerAdded(...) once the channel is registered.
-            if (!registered) {
-                newCtx.setAddPending();
-                callHandlerCallbackLater(newCtx, true);
-                return this;
+        AbstractChannelHandlerContext newCtx;
+        if (modifyWithoutLock()) {
+            newCtx = addContext(group, position, baseName, name, handler);
+        } else {
+            synchronized (this) {
+                newCtx = addContext(group, position, baseName, name, handler);
             }
+        }
 
-            EventExecutor executor = newCtx.executor();
-            if (!executor.inEventLoop()) {
-                newCtx.setAddPending();
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callHandlerAdded0(newCtx);
-                    }
-                });
-                return this;
+        // If the registered is false it means that the channel was not registered on an eventloop yet.
+        // In this case we add the context to the pipeline and add a task that will call
+        // ChannelHandler.handlerAdded(...) once the channel is registered.
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    newCtx.setAddPending();
+                    callHandlerCallbackLater(newCtx, true);
+                    return this;
+                }
             }
         }
+
+        EventExecutor executor = newCtx.executor();
+        if (!executor.inEventLoop()) {
+            final AbstractChannelHandlerContext ctx = newCtx;
+            ctx.setAddPending();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callHandlerAdded0(ctx);
+                }
+            });
+            return this;
+        }
         callHandlerAdded0(newCtx);
         return this;
     }
 
-    private static void addBefore0(AbstractChannelHandlerContext ctx, AbstractChannelHandlerContext newCtx) {
-        newCtx.prev = ctx.prev;
-        newCtx.next = ctx;
-        ctx.prev.next = newCtx;
-        ctx.prev = newCtx;
-    }
+    private AbstractChannelHandlerContext addContext(
+            EventExecutorGroup group, int position, String baseName, String name, ChannelHandler handler) {
+        AbstractChannelHandlerContext newCtx = null;
+        for (;;) {
+            HandlerList handlers = this.handlers;
+            String newName = filterName(handlers, name, handler);
+            int index;
+            if (position == ADD_FIRST) {
+                index = 0;
+            } else if (position == ADD_LAST) {
+                index = handlers.size();
+            } else {
+                index = handlers.indexOf(getContextOrDie(handlers, baseName));
+                if (position == ADD_AFTER) {
+                    index ++;
+                }
+            }
 
-    private String filterName(String name, ChannelHandler handler) {
-        if (name == null) {
-            return generateName(handler);
+            // Only create a new context if a concurrent modification changed the generated name.
+            if (newCtx == null || !newCtx.name().equals(newName)) {
+                newCtx = newContext(group, newName, handler);
+            }
+            HandlerList newHandlers = handlers.add(index, newCtx);
+            if (HANDLERS.compareAndSet(this, handlers, newHandlers)) {
+                link(handlers, newHandlers, index, false);
+                return newCtx;
+            }
         }
-        checkDuplicateName(name);
-        return name;
     }
 
-    @Override
-    public final ChannelPipeline addAfter(String baseName, String name, ChannelHandler handler) {
-        return addAfter(null, baseName, name, handler);
+    /**
+     * Returns {@code true} if the current thread may modify the pipeline without holding the lock, which is only the
+     * case for the {@link EventLoop} of a registered {@link Channel}. All other threads hold the lock, so at most one
+     * of them modifies the pipeline concurrently with the {@link EventLoop}.
+     */
+    private boolean modifyWithoutLock() {
+        return channel.isRegistered() && channel.eventLoop().inEventLoop();
     }
 
-    @Override
-    public final ChannelPipeline addAfter(
-            EventExecutorGroup group, String baseName, String name, ChannelHandler handler) {
-        final AbstractChannelHandlerContext newCtx;
-        final AbstractChannelHandlerContext ctx;
-
-        synchronized (this) {
-            checkMultiplicity(handler);
-            name = filterName(name, handler);
-            ctx = getContextOrDie(baseName);
-
-            newCtx = newContext(group, name, handler);
+    /**
+     * Updates the linked list of the contexts, which is used to pass events through the pipeline, after
+     * {@code newHandlers} replaced {@code oldHandlers}. {@code index} is the index of the added or replaced context in
+     * {@code newHandlers}, or the index of the removed context in {@code oldHandlers}.
+     */
+    private void link(HandlerList oldHandlers, HandlerList newHandlers, int index, boolean removed) {
+        if (linked == oldHandlers) {
+            // The linked list matches the old list, so only the pointers around the modification need to be updated.
+            AbstractChannelHandlerContext[] contexts = newHandlers.contexts;
+            AbstractChannelHandlerContext prev = index == 0 ? head : contexts[index - 1];
+            if (removed) {
+                AbstractChannelHandlerContext next = index == contexts.length ? tail : contexts[index];
+                prev.next = next;
+                next.prev = prev;
+            } else {
+                AbstractChannelHandlerContext ctx = contexts[index];
+                AbstractChannelHandlerContext next = index + 1 == contexts.length ? tail : contexts[index + 1];
+                ctx.prev = prev;
+                ctx.next = next;
+                prev.next = ctx;
+                next.prev = ctx;
+            }
+            LINKED.lazySet(this, newHandlers);
+            if (handlers == newHandlers) {
+                return;
+            }
+        }
 
-            addAfter0(ctx, newCtx);
+        // Another thread modified the pipeline concurrently, so update all pointers to match the latest list.
+        HandlerList handlers = this.handlers;
+        for (;;) {
+            AbstractChannelHandlerContext[] contexts = handlers.contexts;
+
+            // Link all next pointers before the prev pointers, and each in the order of traversal. This way a context
+            // is only reachable from head or tail once its own pointer in the same direction was updated.
+            AbstractChannelHandlerContext next = tail;
+            for (int i = contexts.length - 1; i >= 0; i --) {
+                AbstractChannelHandlerContext ctx = contexts[i];
+                if (ctx.next != next) {
+                    ctx.next = next;
+                }
+                next = ctx;
+            }
+            if (head.next != next) {
+                head.next = next;
+            }
 
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we remove the context from the pipeline and add a task that will call
-            // ChannelHandler.handlerRemoved(...) once the channel is registered.
-            if (!registered) {
-                newCtx.setAddPending();
-                callHandlerCallbackLater(newCtx, true);
-                return this;
+            AbstractChannelHandlerContext prev = head;
+            for (AbstractChannelHandlerContext ctx: contexts) {
+                if (ctx.prev != prev) {
+                    ctx.prev = prev;
+                }
+                prev = ctx;
             }
-            EventExecutor executor = newCtx.executor();
-            if (!executor.inEventLoop()) {
-                newCtx.setAddPending();
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callHandlerAdded0(newCtx);
-                    }
-                });
-                return this;
+            if (tail.prev != prev) {
+                tail.prev = prev;
+            }
+
+            // Another thread may have published and linked a newer list meanwhile, in which case we may have
+            // overwritten some of its pointers. Link again until the latest list is the one we linked.
+            LINKED.lazySet(this, handlers);
+            HandlerList current = this.handlers;
+            if (current == handlers) {
+                break;
             }
+            handlers = current;
         }
-        callHandlerAdded0(newCtx);
-        return this;
     }
 
-    private static void addAfter0(AbstractChannelHandlerContext ctx, AbstractChannelHandlerContext newCtx) {
-        newCtx.prev = ctx;
-        newCtx.next = ctx.next;
-        ctx.next.prev = newCtx;
-        ctx.next = newCtx;
+    private String filterName(HandlerList handlers, String name, ChannelHandler handler) {
+        if (name == null) {
+            return generateName(handlers, handler);
+        }
+        checkDuplicateName(handlers, name);
+        return name;
     }
 
     public final ChannelPipeline addFirst(ChannelHandler handler) {
@@ -412,7 +454,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         return this;
     }
 
-    private String generateName(ChannelHandler handler) {
+    private String generateName(HandlerList handlers, ChannelHandler handler) {
         Map<Class<?>, String> cache = nameCaches.get();
         Class<?> handlerType = handler.getClass();
         String name = cache.get(handlerType);
@@ -423,11 +465,11 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
         // It's not very likely for a user to put more than one handler of the same type, but make sure to avoid
         // any name conflicts.  Note that we don't cache the names generated here.
-        if (context0(name) != null) {
+        if (handlers.get(name) != null) {
             String baseName = name.substring(0, name.length() - 1); // Strip the trailing '0'.
             for (int i = 1;; i ++) {
                 String newName = baseName + i;
-                if (context0(newName) == null) {
+                if (handlers.get(newName) == null) {
                     name = newName;
                     break;
                 }
@@ -480,53 +522,81 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     private AbstractChannelHandlerContext remove(final AbstractChannelHandlerContext ctx) {
         assert ctx != head && ctx != tail;
 
-        synchronized (this) {
-            remove0(ctx);
+        if (!remove0(ctx)) {
+            // Removed by another thread in the meantime, which also takes care of calling handlerRemoved(...).
+            return ctx;
+        }
 
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we remove the context from the pipeline and add a task that will call
-            // ChannelHandler.handlerRemoved(...) once the channel is registered.
-            if (!registered) {
-                callHandlerCallbackLater(ctx, false);
-                return ctx;
+        // If the registered is false it means that the channel was not registered on an eventloop yet.
+        // In this case we remove the context from the pipeline and add a task that will call
+        // ChannelHandler.handlerRemoved(...) once the channel is registered.
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    callHandlerCallbackLater(ctx, false);
+                    return ctx;
+                }
             }
+        }
 
-            EventExecutor executor = ctx.executor();
-            if (!executor.inEventLoop()) {
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        callHandlerRemoved0(ctx);
-                    }
-                });
-                return ctx;
-            }
+        EventExecutor executor = ctx.executor();
+        if (!executor.inEventLoop()) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callHandlerRemoved0(ctx);
+                }
+            });
+            return ctx;
         }
         callHandlerRemoved0(ctx);
         return ctx;
     }
 
-    private static void remove0(AbstractChannelHandlerContext ctx) {
-        AbstractChannelHandlerContext prev = ctx.prev;
-        AbstractChannelHandlerContext next = ctx.next;
-        prev.next = next;
-        next.prev = prev;
+    /**
+     * Removes the given context from the pipeline and returns {@code true}, or returns {@code false} if it was not
+     * part of the pipeline.
+     */
+    private boolean remove0(AbstractChannelHandlerContext ctx) {
+        if (modifyWithoutLock()) {
+            return removeContext(ctx);
+        }
+        synchronized (this) {
+            return removeContext(ctx);
+        }
+    }
+
+    private boolean removeContext(AbstractChannelHandlerContext ctx) {
+        for (;;) {
+            HandlerList handlers = this.handlers;
+            int index = handlers.indexOf(ctx);
+            if (index < 0) {
+                return false;
+            }
+            HandlerList newHandlers = handlers.remove(index);
+            if (HANDLERS.compareAndSet(this, handlers, newHandlers)) {
+                link(handlers, newHandlers, index, true);
+                return true;
+            }
+        }
     }
 
     @Override
     public final ChannelHandler removeFirst() {
-        if (head.next == tail) {
+        HandlerList handlers = this.handlers;
+        if (handlers.size() == 0) {
             throw new NoSuchElementException();
         }
-        return remove(head.next).handler();
+        return remove(handlers.contexts[0]).handler();
     }
 
     @Override
     public final ChannelHandler removeLast() {
-        if (head.next == tail) {
+        HandlerList handlers = this.handlers;
+        if (handlers.size() == 0) {
             throw new NoSuchElementException();
         }
-        return remove(tail.prev).handler();
+        return remove(handlers.contexts[handlers.size() - 1]).handler();
     }
 
     @Override
@@ -551,46 +621,50 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             final AbstractChannelHandlerContext ctx, String newName, ChannelHandler newHandler) {
         assert ctx != head && ctx != tail;
 
-        final AbstractChannelHandlerContext newCtx;
-        synchronized (this) {
-            checkMultiplicity(newHandler);
-            if (newName == null) {
-                newName = generateName(newHandler);
-            } else {
-                boolean sameName = ctx.name().equals(newName);
-                if (!sameName) {
-                    checkDuplicateName(newName);
-                }
-            }
+        checkMultiplicity(newHandler);
 
-            newCtx = newContext(ctx.executor, newName, newHandler);
+        AbstractChannelHandlerContext newCtx;
+        if (modifyWithoutLock()) {
+            newCtx = replaceContext(ctx, newName, newHandler);
+        } else {
+            synchronized (this) {
+                newCtx = replaceContext(ctx, newName, newHandler);
+            }
+        }
 
-            replace0(ctx, newCtx);
+        // update the reference to the replacement so forward of buffered content will work correctly
+        ctx.prev = newCtx;
+        ctx.next = newCtx;
 
-            // If the registered is false it means that the channel was not registered on an eventloop yet.
-            // In this case we replace the context in the pipeline
-            // and add a task that will call ChannelHandler.handlerAdded(...) and
-            // ChannelHandler.handlerRemoved(...) once the channel is registered.
-            if (!registered) {
-                callHandlerCallbackLater(newCtx, true);
-                callHandlerCallbackLater(ctx, false);
-                return ctx.handler();
-            }
-            EventExecutor executor = ctx.executor();
-            if (!executor.inEventLoop()) {
-                executor.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        // Invoke newHandler.handlerAdded() first (i.e. before oldHandler.handlerRemoved() is invoked)
-                        // because callHandlerRemoved() will trigger channelRead() or flush() on newHandler and
-                        // those event handlers must be called after handlerAdded().
-                        callHandlerAdded0(newCtx);
-                        callHandlerRemoved0(ctx);
-                    }
-                });
-                return ctx.handler();
+        // If the registered is false it means that the channel was not registered on an eventloop yet.
+        // In this case we replace the context in the pipeline
+        // and add a task that will call ChannelHandler.handlerAdded(...) and
+        // ChannelHandler.handlerRemoved(...) once the channel is registered.
+        if (!registered) {
+            synchronized (this) {
+                if (!registered) {
+                    callHandlerCallbackLater(newCtx, true);
+                    callHandlerCallbackLater(ctx, false);
+                    return ctx.handler();
+                }
             }
         }
+
+        final AbstractChannelHandlerContext finalNewCtx = newCtx;
+        EventExecutor executor = ctx.executor();
+        if (!executor.inEventLoop()) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Invoke newHandler.handlerAdded() first (i.e. before oldHandler.handlerRemoved() is invoked)
+                    // because callHandlerRemoved() will trigger channelRead() or flush() on newHandler and
+                    // those event handlers must be called after handlerAdded().
+                    callHandlerAdded0(finalNewCtx);
+                    callHandlerRemoved0(ctx);
+                }
+            });
+            return ctx.handler();
+        }
         // Invoke newHandler.handlerAdded() first (i.e. before oldHandler.handlerRemoved() is invoked)
         // because callHandlerRemoved() will trigger channelRead() or flush() on newHandler and those
         // event handlers must be called after handlerAdded().
@@ -599,22 +673,37 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         return ctx.handler();
     }
 
-    private static void replace0(AbstractChannelHandlerContext oldCtx, AbstractChannelHandlerContext newCtx) {
-        AbstractChannelHandlerContext prev = oldCtx.prev;
-        AbstractChannelHandlerContext next = oldCtx.next;
-        newCtx.prev = prev;
-        newCtx.next = next;
-
-        // Finish the replacement of oldCtx with newCtx in the linked list.
-        // Note that this doesn't mean events will be sent to the new handler immediately
-        // because we are currently at the event handler thread and no more than one handler methods can be invoked
-        // at the same time (we ensured that in replace().)
-        prev.next = newCtx;
-        next.prev = newCtx;
+    private AbstractChannelHandlerContext replaceContext(
+            AbstractChannelHandlerContext ctx, String newName, ChannelHandler newHandler) {
+        AbstractChannelHandlerContext newCtx = null;
+        for (;;) {
+            HandlerList handlers = this.handlers;
+            int index = handlers.indexOf(ctx);
+            if (index < 0) {
+                throw new NoSuchElementException(ctx.name());
+            }
+            String name = newName;
+            if (name == null) {
+                name = generateName(handlers, newHandler);
+            } else {
+                boolean sameName = ctx.name().equals(name);
+                if (!sameName) {
+                    checkDuplicateName(handlers, name);
+                }
+            }
 
-        // update the reference to the replacement so forward of buffered content will work correctly
-        oldCtx.prev = newCtx;
-        oldCtx.next = newCtx;
+            if (newCtx == null || !newCtx.name().equals(name)) {
+                newCtx = newContext(ctx.executor, name, newHandler);
+            }
+            HandlerList newHandlers = handlers.replace(index, newCtx);
+            if (HANDLERS.compareAndSet(this, handlers, newHandlers)) {
+                // Note that this doesn't mean events will be sent to the new handler immediately
+                // because we are currently at the event handler thread and no more than one handler methods can be
+                // invoked at the same time (we ensured that in replace().)
+                link(handlers, newHandlers, index, false);
+                return newCtx;
+            }
+        }
     }
 
     private static void checkMultiplicity(ChannelHandler handler) {
@@ -750,7 +839,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             throw new NullPointerException("name");
         }
 
-        return context0(name);
+        return handlers.get(name);
     }
 
     @Override
@@ -759,19 +848,12 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             throw new NullPointerException("handler");
         }
 
-        AbstractChannelHandlerContext ctx = head.next;
-        for (;;) {
-
-            if (ctx == null) {
-                return null;
-            }
-
+        for (AbstractChannelHandlerContext ctx: handlers.contexts) {
             if (ctx.handler() == handler) {
                 return ctx;
             }
-
-            ctx = ctx.next;
         }
+        return tail.handler() == handler ? tail : null;
     }
 
     @Override
@@ -780,42 +862,32 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             throw new NullPointerException("handlerType");
         }
 
-        AbstractChannelHandlerContext ctx = head.next;
-        for (;;) {
-            if (ctx == null) {
-                return null;
-            }
+        for (AbstractChannelHandlerContext ctx: handlers.contexts) {
             if (handlerType.isAssignableFrom(ctx.handler().getClass())) {
                 return ctx;
             }
-            ctx = ctx.next;
         }
+        return handlerType.isAssignableFrom(tail.handler().getClass()) ? tail : null;
     }
 
     @Override
     public final List<String> names() {
-        List<String> list = new ArrayList<String>();
-        AbstractChannelHandlerContext ctx = head.next;
-        for (;;) {
-            if (ctx == null) {
-                return list;
-            }
+        AbstractChannelHandlerContext[] contexts = handlers.contexts;
+        List<String> list = new ArrayList<String>(contexts.length + 1);
+        for (AbstractChannelHandlerContext ctx: contexts) {
             list.add(ctx.name());
-            ctx = ctx.next;
         }
+        list.add(tail.name());
+        return list;
     }
 
     @Override
     public final Map<String, ChannelHandler> toMap() {
         Map<String, ChannelHandler> map = new LinkedHashMap<String, ChannelHandler>();
-        AbstractChannelHandlerContext ctx = head.next;
-        for (;;) {
-            if (ctx == tail) {
-                return map;
-            }
+        for (AbstractChannelHandlerContext ctx: handlers.contexts) {
             map.put(ctx.name(), ctx.handler());
-            ctx = ctx.next;
         }
+        return map;
     }
 
     @Override
@@ -831,24 +903,17 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         StringBuilder buf = new StringBuilder()
             .append(StringUtil.simpleClassName(this))
             .append('{');
-        AbstractChannelHandlerContext ctx = head.next;
-        for (;;) {
-            if (ctx == tail) {
-                break;
+        AbstractChannelHandlerContext[] contexts = handlers.contexts;
+        for (int i = 0; i < contexts.length; i ++) {
+            if (i != 0) {
+                buf.append(", ");
             }
-
+            AbstractChannelHandlerContext ctx = contexts[i];
             buf.append('(')
                .append(ctx.name())
                .append(" = ")
                .append(ctx.handler().getClass().getName())
                .append(')');
-
-            ctx = ctx.next;
-            if (ctx == tail) {
-                break;
-            }
-
-            buf.append(", ");
         }
         buf.append('}');
         return buf.toString();
@@ -876,7 +941,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
      *
      * See: https://github.com/netty/netty/issues/3156
      */
-    private synchronized void destroy() {
+    private void destroy() {
         destroyUp(head.next, false);
     }
 
@@ -916,9 +981,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
 
             final EventExecutor executor = ctx.executor();
             if (inEventLoop || executor.inEventLoop(currentThread)) {
-                synchronized (this) {
-                    remove0(ctx);
-                }
+                remove0(ctx);
                 callHandlerRemoved0(ctx);
             } else {
                 final AbstractChannelHandlerContext finalCtx = ctx;
@@ -1096,21 +1159,22 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         return voidPromise;
     }
 
-    private void checkDuplicateName(String name) {
-        if (context0(name) != null) {
+    private static void checkDuplicateName(HandlerList handlers, String name) {
+        if (handlers.get(name) != null) {
             throw new IllegalArgumentException("Duplicate handler name: " + name);
         }
     }
 
-    private AbstractChannelHandlerContext context0(String name) {
-        AbstractChannelHandlerContext context = head.next;
-        while (context != tail) {
-            if (context.name().equals(name)) {
-                return context;
-            }
-            context = context.next;
+    private static AbstractChannelHandlerContext getContextOrDie(HandlerList handlers, String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        AbstractChannelHandlerContext ctx = handlers.get(name);
+        if (ctx == null) {
+            throw new NoSuchElementException(name);
+        } else {
+            return ctx;
         }
-        return null;
     }
 
     private AbstractChannelHandlerContext getContextOrDie(String name) {
@@ -1164,7 +1228,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     }
 
     private void callHandlerCallbackLater(AbstractChannelHandlerContext ctx, boolean added) {
-        assert !registered;
+        assert Thread.holdsLock(this) && !registered;
 
         PendingHandlerCallback task = added ? new PendingHandlerAddedTask(ctx) : new PendingHandlerRemovedTask(ctx);
         PendingHandlerCallback pending = pendingHandlerCallbackHead;
@@ -1268,7 +1332,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
     final class TailContext extends AbstractChannelHandlerContext implements ChannelInboundHandler {
 
         TailContext(DefaultChannelPipeline pipeline) {
-            super(pipeline, null, TAIL_NAME, true, false);
+            super(pipeline, null, TAIL_NAME, TailContext.class);
             setAddComplete();
         }
 
@@ -1331,7 +1395,7 @@ public class DefaultChannelPipeline implements ChannelPipeline {
         private final Unsafe unsafe;
 
         HeadContext(DefaultChannelPipeline pipeline) {
-            super(pipeline, null, HEAD_NAME, false, true);
+            super(pipeline, null, HEAD_NAME, HeadContext.class);
             unsafe = pipeline.channel().unsafe();
             setAddComplete();
         }
@@ -1532,4 +1596,145 @@ public class DefaultChannelPipeline implements ChannelPipeline {
             }
         }
     }
+
+    /**
+     * Immutable snapshot of the contexts between {@link #head} and {@link #tail}, which also indexes them by name.
+     */
+    private static final class HandlerList {
+        // Scanning a few names is cheaper than hashing, so only larger lists build an index.
+        private static final int MIN_INDEXED_SIZE = 8;
+
+        static final HandlerList EMPTY = new HandlerList(new AbstractChannelHandlerContext[0], null);
+
+        final AbstractChannelHandlerContext[] contexts;
+        // Open addressing hash table with linear probing, which is always less than half full. Each modification
+        // copies and updates the table of the previous list instead of building a new one.
+        private final AbstractChannelHandlerContext[] names;
+
+        private HandlerList(AbstractChannelHandlerContext[] contexts, AbstractChannelHandlerContext[] names) {
+            this.contexts = contexts;
+            this.names = names;
+        }
+
+        private static int hash(String name) {
+            int h = name.hashCode();
+            return h ^ h >>> 16;
+        }
+
+        private static AbstractChannelHandlerContext[] newNames(AbstractChannelHandlerContext[] contexts) {
+            AbstractChannelHandlerContext[] names =
+                    new AbstractChannelHandlerContext[MathUtil.findNextPositivePowerOfTwo((contexts.length << 1) + 1)];
+            for (AbstractChannelHandlerContext ctx: contexts) {
+                put(names, ctx);
+            }
+            return names;
+        }
+
+        private static void put(AbstractChannelHandlerContext[] names, AbstractChannelHandlerContext ctx) {
+            int mask = names.length - 1;
+            int i = hash(ctx.name()) & mask;
+            while (names[i] != null) {
+                i = i + 1 & mask;
+            }
+            names[i] = ctx;
+        }
+
+        private static void delete(AbstractChannelHandlerContext[] names, AbstractChannelHandlerContext ctx) {
+            int mask = names.length - 1;
+            int i = hash(ctx.name()) & mask;
+            while (names[i] != ctx) {
+                i = i + 1 & mask;
+            }
+            // Move back the entries which follow in the same run, so lookups can not stop at the freed slot before
+            // reaching them.
+            for (int j = i + 1 & mask; names[j] != null; j = j + 1 & mask) {
+                int k = hash(names[j].name()) & mask;
+                if (i <= j ? i < k && k <= j : i < k || k <= j) {
+                    continue;
+                }
+                names[i] = names[j];
+                i = j;
+            }
+            names[i] = null;
+        }
+
+        int size() {
+            return contexts.length;
+        }
+
+        AbstractChannelHandlerContext get(String name) {
+            AbstractChannelHandlerContext[] names = this.names;
+            if (names == null) {
+                for (AbstractChannelHandlerContext ctx: contexts) {
+                    if (ctx.name().equals(name)) {
+                        return ctx;
+                    }
+                }
+                return null;
+            }
+            int mask = names.length - 1;
+            for (int i = hash(name) & mask;; i = i + 1 & mask) {
+                AbstractChannelHandlerContext ctx = names[i];
+                if (ctx == null || ctx.name().equals(name)) {
+                    return ctx;
+                }
+            }
+        }
+
+        int indexOf(AbstractChannelHandlerContext ctx) {
+            AbstractChannelHandlerContext[] contexts = this.contexts;
+            for (int i = 0; i < contexts.length; i ++) {
+                if (contexts[i] == ctx) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        HandlerList add(int index, AbstractChannelHandlerContext ctx) {
+            AbstractChannelHandlerContext[] newContexts = new AbstractChannelHandlerContext[contexts.length + 1];
+            System.arraycopy(contexts, 0, newContexts, 0, index);
+            newContexts[index] = ctx;
+            System.arraycopy(contexts, index, newContexts, index + 1, contexts.length - index);
+
+            AbstractChannelHandlerContext[] newNames;
+            if (newContexts.length < MIN_INDEXED_SIZE) {
+                newNames = null;
+            } else if (names == null || newContexts.length << 1 >= names.length) {
+                newNames = newNames(newContexts);
+            } else {
+                newNames = names.clone();
+                put(newNames, ctx);
+            }
+            return new HandlerList(newContexts, newNames);
+        }
+
+        HandlerList remove(int index) {
+            AbstractChannelHandlerContext[] newContexts = new AbstractChannelHandlerContext[contexts.length - 1];
+            System.arraycopy(contexts, 0, newContexts, 0, index);
+            System.arraycopy(contexts, index + 1, newContexts, index, newContexts.length - index);
+
+            AbstractChannelHandlerContext[] newNames;
+            if (newContexts.length < MIN_INDEXED_SIZE) {
+                newNames = null;
+            } else {
+                newNames = names.clone();
+                delete(newNames, contexts[index]);
+            }
+            return new HandlerList(newContexts, newNames);
+        }
+
+        HandlerList replace(int index, AbstractChannelHandlerContext ctx) {
+            AbstractChannelHandlerContext[] newContexts = contexts.clone();
+            newContexts[index] = ctx;
+
+            AbstractChannelHandlerContext[] newNames = names;
+            if (newNames != null) {
+                newNames = newNames.clone();
+                delete(newNames, contexts[index]);
+                put(newNames, ctx);
+            }
+            return new HandlerList(newContexts, newNames);
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.DefaultEventExecutorMetric;
+import io.netty.util.concurrent.LatencyHistogram;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * An {@link EventLoopMetric} which records into {@link LatencyHistogram}s, so it can be read from any thread while
+ * the event loop records into it. Write latency is aggregated per event loop instead of per {@link Channel}, so idle
+ * connections do not each carry a set of histogram buckets.
+ */
+@UnstableApi
+public class DefaultEventLoopMetric extends DefaultEventExecutorMetric implements EventLoopMetric {
+
+    private final LatencyHistogram ioWaitTime = new LatencyHistogram();
+    private final LatencyHistogram ioTime = new LatencyHistogram();
+    private final LatencyHistogram taskTime = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    public DefaultEventLoopMetric(SingleThreadEventLoop eventLoop) {
+        super(eventLoop);
+    }
+
+    /**
+     * Returns the time each iteration of the event loop spent waiting for I/O.
+     *
+     * @see #recordIoWaitTime(long)
+     */
+    public LatencyHistogram ioWaitTime() {
+        return ioWaitTime;
+    }
+
+    /**
+     * Returns the time each iteration of the event loop spent processing I/O.
+     *
+     * @see #recordIoTime(long)
+     */
+    public LatencyHistogram ioTime() {
+        return ioTime;
+    }
+
+    /**
+     * Returns the time each iteration of the event loop spent running tasks.
+     *
+     * @see #recordTaskTime(long)
+     */
+    public LatencyHistogram taskTime() {
+        return taskTime;
+    }
+
+    /**
+     * Returns the time messages were queued in the {@link ChannelOutboundBuffer}s of the event loop.
+     *
+     * @see #recordWriteLatency(long)
+     */
+    public LatencyHistogram writeLatency() {
+        return writeLatency;
+    }
+
+    @Override
+    public void recordIoWaitTime(long nanos) {
+        ioWaitTime.record(nanos);
+    }
+
+    @Override
+    public void recordIoTime(long nanos) {
+        ioTime.record(nanos);
+    }
+
+    @Override
+    public void recordTaskTime(long nanos) {
+        taskTime.record(nanos);
+    }
+
+    @Override
+    public void recordWriteLatency(long nanos) {
+        writeLatency.record(nanos);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.EventExecutorMetric;
+import io.netty.util.concurrent.EventExecutorMetricFactory;
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Records the metrics of a {@link SingleThreadEventLoop} and the {@link Channel}s registered to it, if the
+ * {@link EventExecutorMetricFactory} returns an instance of it for the event loop. The I/O metrics are only recorded
+ * by event loops which wait for I/O, like the ones of the NIO and native transports.
+ *
+ * @see DefaultEventLoopMetric
+ */
+@UnstableApi
+public interface EventLoopMetric extends EventExecutorMetric {
+
+    /**
+     * Records the time an iteration of the event loop spent waiting for I/O, like in {@code select} or
+     * {@code epoll_wait}.
+     */
+    void recordIoWaitTime(long nanos);
+
+    /**
+     * Records the time an iteration of the event loop spent processing I/O of its {@link Channel}s.
+     */
+    void recordIoTime(long nanos);
+
+    /**
+     * Records the time an iteration of the event loop spent running tasks. Together with
+     * {@link #recordIoTime(long)} this shows how the time of the event loop is split between I/O and tasks, which is
+     * balanced via its {@code ioRatio}.
+     */
+    void recordTaskTime(long nanos);
+
+    /**
+     * Records the time a message written to a {@link Channel} of the event loop was queued in its
+     * {@link ChannelOutboundBuffer} until it was written completely or failed. It is recorded before the
+     * {@link ChannelPromise} of the write is notified.
+     */
+    void recordWriteLatency(long nanos);
+}
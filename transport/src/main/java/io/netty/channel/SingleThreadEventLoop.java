@@ -15,6 +15,7 @@
  */
 package io.netty.channel;
 
+import io.netty.util.concurrent.EventExecutorMetric;
 import io.netty.util.concurrent.RejectedExecutionHandler;
 import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.SingleThreadEventExecutor;
@@ -36,6 +37,8 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
             SystemPropertyUtil.getInt("io.netty.eventLoop.maxPendingTasks", Integer.MAX_VALUE));
 
     private final Queue<Runnable> tailTasks;
+    // null if metrics are disabled, or if the EventExecutorMetric does not record the I/O of an event loop.
+    private final EventLoopMetric metric;
 
     protected SingleThreadEventLoop(EventLoopGroup parent, ThreadFactory threadFactory, boolean addTaskWakesUp) {
         this(parent, threadFactory, addTaskWakesUp, DEFAULT_MAX_PENDING_TASKS, RejectedExecutionHandlers.reject());
@@ -50,6 +53,7 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
                                     RejectedExecutionHandler rejectedExecutionHandler) {
         super(parent, threadFactory, addTaskWakesUp, maxPendingTasks, rejectedExecutionHandler);
         tailTasks = newTaskQueue(maxPendingTasks);
+        metric = eventLoopMetric(metric());
     }
 
     protected SingleThreadEventLoop(EventLoopGroup parent, Executor executor,
@@ -57,6 +61,11 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
                                     RejectedExecutionHandler rejectedExecutionHandler) {
         super(parent, executor, addTaskWakesUp, maxPendingTasks, rejectedExecutionHandler);
         tailTasks = newTaskQueue(maxPendingTasks);
+        metric = eventLoopMetric(metric());
+    }
+
+    private static EventLoopMetric eventLoopMetric(EventExecutorMetric metric) {
+        return metric instanceof EventLoopMetric ? (EventLoopMetric) metric : null;
     }
 
     @Override
@@ -148,6 +157,71 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
         return super.pendingTasks() + tailTasks.size();
     }
 
+    @UnstableApi
+    @Override
+    protected DefaultEventLoopMetric newDefaultMetric() {
+        return new DefaultEventLoopMetric(this);
+    }
+
+    /**
+     * Returns the {@link EventLoopMetric} of this event loop, or {@code null} if metrics are disabled.
+     */
+    final EventLoopMetric eventLoopMetric() {
+        return metric;
+    }
+
+    /**
+     * Returns the current {@link System#nanoTime()} if metrics are enabled, or {@code 0} otherwise. Sub-classes which
+     * wait for I/O call it at the start of each iteration and pass the result to {@link #recordIoWaitTime(long)}.
+     */
+    @UnstableApi
+    protected final long metricStartTime() {
+        return metric == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Records the time since {@code startTime} as the time the event loop waited for I/O, if metrics are enabled.
+     *
+     * @return the start time to pass to {@link #recordIoTime(long)}.
+     */
+    @UnstableApi
+    protected final long recordIoWaitTime(long startTime) {
+        EventLoopMetric metric = this.metric;
+        if (metric == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metric.recordIoWaitTime(now - startTime);
+        return now;
+    }
+
+    /**
+     * Records the time since {@code startTime} as the time the event loop processed I/O, if metrics are enabled.
+     *
+     * @return the start time to pass to {@link #recordTaskTime(long)}.
+     */
+    @UnstableApi
+    protected final long recordIoTime(long startTime) {
+        EventLoopMetric metric = this.metric;
+        if (metric == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metric.recordIoTime(now - startTime);
+        return now;
+    }
+
+    /**
+     * Records the time since {@code startTime} as the time the event loop ran tasks, if metrics are enabled.
+     */
+    @UnstableApi
+    protected final void recordTaskTime(long startTime) {
+        EventLoopMetric metric = this.metric;
+        if (metric != null) {
+            metric.recordTaskTime(System.nanoTime() - startTime);
+        }
+    }
+
     /**
      * Marker interface for {@link Runnable} that will not trigger an {@link #wakeup(boolean)} in all cases.
      */
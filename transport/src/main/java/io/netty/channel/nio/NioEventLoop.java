@@ -453,9 +453,14 @@ public final class NioEventLoop extends SingleThreadEventLoop {
     protected void run() {
         for (;;) {
             try {
+                long metricTime = metricStartTime();
                 switch (selectStrategy.calculateStrategy(selectNowSupplier, hasTasks())) {
                     case SelectStrategy.CONTINUE:
                         continue;
+
+                    case SelectStrategy.BUSY_WAIT:
+                        // fall-through to SELECT since the busy-wait is not supported with NIO
+
                     case SelectStrategy.SELECT:
                         select(wakenUp.getAndSet(false));
 
@@ -494,6 +499,7 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                     default:
                 }
 
+                metricTime = recordIoWaitTime(metricTime);
                 cancelledKeys = 0;
                 needsToSelectAgain = false;
                 final int ioRatio = this.ioRatio;
@@ -501,17 +507,21 @@ public final class NioEventLoop extends SingleThreadEventLoop {
                     try {
                         processSelectedKeys();
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         // Ensure we always run tasks.
                         runAllTasks();
+                        recordTaskTime(metricTime);
                     }
                 } else {
                     final long ioStartTime = System.nanoTime();
                     try {
                         processSelectedKeys();
                     } finally {
+                        metricTime = recordIoTime(metricTime);
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                        recordTaskTime(metricTime);
                     }
                 }
             } catch (Throwable t) {
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.junit.Test;
+
+import java.net.SocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.channel.ChannelHandlerMask.MASK_CHANNEL_READ;
+import static io.netty.channel.ChannelHandlerMask.MASK_CONNECT;
+import static io.netty.channel.ChannelHandlerMask.MASK_EXCEPTION_CAUGHT;
+import static io.netty.channel.ChannelHandlerMask.MASK_ONLY_INBOUND;
+import static io.netty.channel.ChannelHandlerMask.MASK_ONLY_OUTBOUND;
+import static io.netty.channel.ChannelHandlerMask.MASK_WRITE;
+import static io.netty.channel.ChannelHandlerMask.mask;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ChannelHandlerMaskTest {
+
+    @Test
+    public void testAdaptersAreSkipped() {
+        assertEquals(0, mask(ChannelInboundHandlerAdapter.class));
+        assertEquals(0, mask(ChannelOutboundHandlerAdapter.class));
+        assertEquals(0, mask(ChannelDuplexHandler.class));
+        assertEquals(0, mask(new ChannelHandlerAdapter() { }.getClass()));
+    }
+
+    @Test
+    public void testOverriddenMethodsAreNotSkipped() {
+        assertEquals(MASK_CHANNEL_READ, mask(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                ctx.fireChannelRead(msg);
+            }
+        }.getClass()));
+        assertEquals(MASK_WRITE | MASK_CONNECT | MASK_EXCEPTION_CAUGHT, mask(new ChannelDuplexHandler() {
+            @Override
+            public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress, SocketAddress localAddress,
+                                ChannelPromise promise) {
+                ctx.connect(remoteAddress, localAddress, promise);
+            }
+
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                ctx.write(msg, promise);
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                ctx.fireExceptionCaught(cause);
+            }
+        }.getClass()));
+    }
+
+    @Test
+    public void testHandlersWithoutAdapterAreNotSkipped() {
+        ChannelInboundHandler inbound = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) { }
+        };
+        assertEquals(MASK_EXCEPTION_CAUGHT | MASK_ONLY_INBOUND, mask(DefaultChannelPipeline.TailContext.class));
+        assertEquals(MASK_EXCEPTION_CAUGHT | MASK_ONLY_INBOUND | MASK_ONLY_OUTBOUND,
+                mask(DefaultChannelPipeline.HeadContext.class));
+        // ChannelInitializer only overrides channelRegistered and exceptionCaught.
+        assertEquals(ChannelHandlerMask.MASK_CHANNEL_REGISTERED | MASK_EXCEPTION_CAUGHT, mask(inbound.getClass()));
+    }
+
+    @Test(timeout = 5000)
+    public void testEventsPassSkippedHandlers() throws Exception {
+        EventExecutorGroup group = new DefaultEventExecutorGroup(1);
+        try {
+            final BlockingQueue<Object> reads = new LinkedBlockingQueue<Object>();
+            EmbeddedChannel channel = new EmbeddedChannel();
+            channel.pipeline().addLast(new ChannelInboundHandlerAdapter(), new ChannelOutboundHandlerAdapter());
+            // Has a different executor and so must still be invoked to preserve the ordering of events.
+            channel.pipeline().addLast(group, new ChannelInboundHandlerAdapter());
+            channel.pipeline().addLast(group, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                    reads.add(msg);
+                }
+            });
+            for (int i = 0; i < 16; i++) {
+                channel.writeInbound(i);
+            }
+            for (int i = 0; i < 16; i++) {
+                assertEquals(i, reads.poll(1, TimeUnit.SECONDS));
+            }
+
+            channel.writeOutbound(1);
+            assertSame(1, channel.readOutbound());
+            channel.finishAndReleaseAll();
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.junit.Test;
 
 import java.net.SocketAddress;
@@ -118,6 +119,146 @@ public class ChannelOutboundBufferTest {
         buf.release();
     }
 
+    @Test
+    public void testRemoveDeferred() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+        assertNull(buffer.removeDeferred());
+
+        ByteBuf buf = directBuffer().writeBytes("buf1".getBytes(CharsetUtil.US_ASCII));
+        ChannelPromise promise = new DefaultChannelPromise(channel, ImmediateEventExecutor.INSTANCE);
+        buffer.addMessage(buf, buf.readableBytes(), promise);
+        buffer.addFlush();
+
+        assertSame(promise, buffer.removeDeferred());
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.totalPendingWriteBytes());
+        // The ownership was transferred, so the buffer must not be released and the promise must not be notified.
+        assertEquals(1, buf.refCnt());
+        assertFalse(promise.isDone());
+
+        buf.release();
+        promise.setSuccess();
+        release(buffer);
+    }
+
+
+    @Test
+    public void testNioBuffersAfterPartialWrite() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+        for (int i = 0; i < 4; i++) {
+            addFlushed(channel, buffer, directBuffer().writeBytes(("buf" + i).getBytes(CharsetUtil.US_ASCII)));
+        }
+
+        ByteBuffer[] buffers = buffer.nioBuffers(2, Integer.MAX_VALUE);
+        assertEquals(2, buffer.nioBufferCount());
+        assertEquals(8, buffer.nioBufferSize());
+
+        // Write the first buffer and half of the second one, like a gathering write would.
+        buffers[0].position(buffers[0].limit());
+        buffers[1].position(buffers[1].position() + 2);
+        buffer.removeBytes(6);
+        assertEquals(3, buffer.size());
+
+        buffers = buffer.nioBuffers();
+        assertEquals(3, buffer.nioBufferCount());
+        assertEquals(10, buffer.nioBufferSize());
+        assertEquals(nioBuffer("f1"), buffers[0]);
+        assertEquals(nioBuffer("buf2"), buffers[1]);
+        assertEquals(nioBuffer("buf3"), buffers[2]);
+        assertNull(buffers[3]);
+
+        buffer.removeBytes(10);
+        assertTrue(buffer.isEmpty());
+        // The ByteBuffers must not be retained once everything was written.
+        // See https://github.com/netty/netty/issues/3837
+        for (int i = 0; i < 4; i++) {
+            assertNull(buffers[i]);
+        }
+        release(buffer);
+    }
+
+    @Test
+    public void testNioBuffersAfterPartialWriteOfComposite() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+        CompositeByteBuf comp = compositeBuffer();
+        for (String component : new String[] { "ab", "cd", "ef" }) {
+            comp.addComponent(true, directBuffer().writeBytes(component.getBytes(CharsetUtil.US_ASCII)));
+        }
+        addFlushed(channel, buffer, comp);
+        addFlushed(channel, buffer, directBuffer().writeBytes("gh".getBytes(CharsetUtil.US_ASCII)));
+
+        ByteBuffer[] buffers = buffer.nioBuffers();
+        assertEquals(4, buffer.nioBufferCount());
+
+        buffers[0].position(buffers[0].limit());
+        buffers[1].position(buffers[1].position() + 1);
+        buffer.removeBytes(3);
+
+        buffers = buffer.nioBuffers();
+        assertEquals(3, buffer.nioBufferCount());
+        assertEquals(5, buffer.nioBufferSize());
+        assertEquals(nioBuffer("d"), buffers[0]);
+        assertEquals(nioBuffer("ef"), buffers[1]);
+        assertEquals(nioBuffer("gh"), buffers[2]);
+        assertNull(buffers[3]);
+        release(buffer);
+    }
+
+    @Test
+    public void testNioBuffersKeepOrderWhenGrowing() {
+        TestChannel channel = new TestChannel();
+
+        ChannelOutboundBuffer buffer = new ChannelOutboundBuffer(channel);
+        for (int i = 0; i < 10; i++) {
+            addFlushed(channel, buffer, directBuffer().writeInt(i));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, ((ByteBuf) buffer.current()).getInt(0));
+            buffer.remove();
+        }
+        ByteBuffer[] buffers = buffer.nioBuffers();
+        assertEquals(4, buffer.nioBufferCount());
+
+        // Wraps around the end of the entries and then needs to grow them while some are gathered already.
+        for (int i = 10; i < 40; i++) {
+            buffer.addMessage(directBuffer().writeInt(i), 4, channel.voidPromise());
+        }
+        assertEquals(4, buffer.size());
+        buffer.addFlush();
+        assertEquals(34, buffer.size());
+
+        buffers = buffer.nioBuffers();
+        assertEquals(34, buffer.nioBufferCount());
+        assertEquals(34 * 4, buffer.nioBufferSize());
+        for (int i = 0; i < 34; i++) {
+            assertEquals(i + 6, buffers[i].getInt(buffers[i].position()));
+        }
+
+        buffer.removeBytes(4 * 4);
+        for (int i = 10; i < 40; i++) {
+            assertEquals(i, ((ByteBuf) buffer.current()).getInt(0));
+            buffer.remove();
+        }
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.totalPendingWriteBytes());
+        release(buffer);
+    }
+
+    private static void addFlushed(Channel channel, ChannelOutboundBuffer buffer, ByteBuf buf) {
+        buffer.addMessage(buf, buf.readableBytes(), channel.voidPromise());
+        buffer.addFlush();
+    }
+
+    private static ByteBuffer nioBuffer(String content) {
+        return ByteBuffer.wrap(content.getBytes(CharsetUtil.US_ASCII));
+    }
+
     private static void release(ChannelOutboundBuffer buffer) {
         for (;;) {
             if (!buffer.remove()) {
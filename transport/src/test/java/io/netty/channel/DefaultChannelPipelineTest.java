@@ -46,6 +46,7 @@ import org.junit.Test;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -55,6 +56,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -1058,6 +1060,317 @@ public class DefaultChannelPipelineTest {
         pipeline.addBefore("test", null, newHandler());
     }
 
+    @Test
+    public void testGeneratedNames() {
+        ChannelPipeline pipeline = new LocalChannel().pipeline();
+        List<ChannelHandler> handlers = new ArrayList<ChannelHandler>();
+        for (int i = 0; i < 64; i++) {
+            ChannelHandler handler = newHandler();
+            handlers.add(handler);
+            pipeline.addLast(handler);
+        }
+        for (int i = 0; i < 64; i++) {
+            assertSame(handlers.get(i), pipeline.get("DefaultChannelPipelineTest$TestHandler#" + i));
+        }
+
+        pipeline.remove("DefaultChannelPipelineTest$TestHandler#1");
+        assertNull(pipeline.get("DefaultChannelPipelineTest$TestHandler#1"));
+        pipeline.addFirst(newHandler());
+        assertSame(pipeline.first(), pipeline.get("DefaultChannelPipelineTest$TestHandler#1"));
+        assertEquals(64, pipeline.toMap().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentModification() throws Throwable {
+        final ChannelPipeline pipeline = new LocalChannel().pipeline();
+        group.register(pipeline.channel()).syncUninterruptibly();
+
+        final int threads = 4;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                final String prefix = "thread" + i + '-';
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 100; i++) {
+                                pipeline.addLast(prefix + i, newHandler());
+                                pipeline.addFirst(newHandler());
+                                pipeline.addBefore(prefix + i, null, newHandler());
+                                pipeline.replace(prefix + i, prefix + i, newHandler());
+                                if (i % 2 == 0) {
+                                    pipeline.remove(prefix + i);
+                                }
+                            }
+                        } catch (Throwable cause) {
+                            error.set(cause);
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            latch.await();
+        } finally {
+            executorService.shutdown();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+
+        List<String> names = pipeline.names();
+        // Also contains the tail.
+        assertEquals(threads * (100 / 2 + 200) + 1, names.size());
+
+        // The linked list used to pass events must match the list of names in both directions.
+        AbstractChannelHandlerContext ctx = (AbstractChannelHandlerContext) pipeline.firstContext();
+        for (int i = 0; i < names.size() - 1; i++) {
+            assertEquals(names.get(i), ctx.name());
+            assertSame(pipeline.context(names.get(i)), ctx);
+            ctx = ctx.next;
+        }
+        assertNull(ctx.next);
+        ctx = (AbstractChannelHandlerContext) pipeline.lastContext();
+        for (int i = names.size() - 2; i >= 0; i--) {
+            assertEquals(names.get(i), ctx.name());
+            ctx = ctx.prev;
+        }
+        assertNull(ctx.prev);
+        pipeline.channel().close().syncUninterruptibly();
+    }
+
+    @Test(timeout = 5000)
+    public void testWritesFromOutsideEventLoopKeepOrder() throws Throwable {
+        final List<Object> events = new ArrayList<Object>();
+        final Channel channel = newRecordingChannel(events);
+        group.register(channel).syncUninterruptibly();
+
+        channel.write(1);
+        channel.flush();
+        channel.write(2);
+        channel.writeAndFlush(3).syncUninterruptibly();
+        channel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+                // NOOP
+            }
+        }).syncUninterruptibly();
+        assertEquals(Arrays.<Object>asList(1, FLUSH, 2, 3, FLUSH), events);
+        assertEquals(0, channel.unsafe().outboundBuffer().totalPendingWriteBytes());
+        channel.close().syncUninterruptibly();
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentWritesFromOutsideEventLoop() throws Throwable {
+        final List<Object> events = new ArrayList<Object>();
+        final Channel channel = newRecordingChannel(events);
+        group.register(channel).syncUninterruptibly();
+
+        final int threads = 4;
+        final int writes = 1000;
+        final List<ChannelFuture> futures = Collections.synchronizedList(new ArrayList<ChannelFuture>());
+        final CountDownLatch latch = new CountDownLatch(threads);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                final int first = i * writes;
+                executorService.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for (int i = 0; i < writes; i++) {
+                                futures.add(i % 10 == 0 ? channel.writeAndFlush(first + i) : channel.write(first + i));
+                            }
+                            channel.flush();
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            latch.await();
+        } finally {
+            executorService.shutdown();
+        }
+        for (ChannelFuture future : futures) {
+            assertTrue(future.syncUninterruptibly().isSuccess());
+        }
+        channel.eventLoop().submit(new Runnable() {
+            @Override
+            public void run() {
+                // NOOP
+            }
+        }).syncUninterruptibly();
+
+        // The writes of each thread must be in the order they were issued.
+        int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        int written = 0;
+        for (Object event : events) {
+            if (event != FLUSH) {
+                int msg = (Integer) event;
+                assertTrue(msg > last[msg / writes]);
+                last[msg / writes] = msg;
+                written++;
+            }
+        }
+        assertEquals(threads * writes, written);
+        assertSame(FLUSH, events.get(events.size() - 1));
+        assertEquals(0, channel.unsafe().outboundBuffer().totalPendingWriteBytes());
+        channel.close().syncUninterruptibly();
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteFromOutsideEventLoopFailsIfRejected() throws Throwable {
+        EventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(1);
+        Channel channel = new LocalChannel();
+        eventLoopGroup.register(channel).syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+
+        ByteBuf buf = Unpooled.buffer();
+        ChannelFuture future = channel.writeAndFlush(buf);
+        assertTrue(future.isDone());
+        assertTrue(future.cause() instanceof RejectedExecutionException);
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test(timeout = 5000)
+    public void testStagedOperationRunsBeforeTaskSubmittedAfterIt() throws Throwable {
+        EventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(1);
+        try {
+            final Channel channel = new LocalChannel();
+            eventLoopGroup.register(channel).syncUninterruptibly();
+            EventLoop eventLoop = channel.eventLoop();
+            AbstractChannelHandlerContext.OutboundStagingQueue queue =
+                    ((DefaultChannelPipeline) channel.pipeline()).outboundStagingQueue(eventLoop);
+
+            final CountDownLatch drainStarted = new CountDownLatch(1);
+            final CountDownLatch releaseDrain = new CountDownLatch(1);
+            queue.add(new Runnable() {
+                @Override
+                public void run() {
+                    drainStarted.countDown();
+                    try {
+                        releaseDrain.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, channel.newPromise());
+            drainStarted.await();
+
+            // Stage an operation while the drain is running and submit a task to the EventLoop right after it, the
+            // operation must still be run first.
+            final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+            queue.add(new Runnable() {
+                @Override
+                public void run() {
+                    events.add("write");
+                }
+            }, channel.newPromise());
+            final CountDownLatch taskRun = new CountDownLatch(1);
+            eventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    events.add("task");
+                    taskRun.countDown();
+                }
+            });
+            releaseDrain.countDown();
+
+            taskRun.await();
+            assertEquals(Arrays.asList("write", "task"), events);
+        } finally {
+            eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testStagedOperationsDoNotStarveOtherTasks() throws Throwable {
+        EventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(1);
+        try {
+            final Channel channel = new LocalChannel();
+            eventLoopGroup.register(channel).syncUninterruptibly();
+            EventLoop eventLoop = channel.eventLoop();
+            AbstractChannelHandlerContext.OutboundStagingQueue queue =
+                    ((DefaultChannelPipeline) channel.pipeline()).outboundStagingQueue(eventLoop);
+
+            final CountDownLatch drainStarted = new CountDownLatch(1);
+            final CountDownLatch releaseDrain = new CountDownLatch(1);
+            queue.add(new Runnable() {
+                @Override
+                public void run() {
+                    drainStarted.countDown();
+                    try {
+                        releaseDrain.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, channel.newPromise());
+            drainStarted.await();
+
+            // Stage more operations than one drain runs, the task submitted afterwards must not wait for all of them.
+            final int operations = 4096;
+            final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch operationsRun = new CountDownLatch(operations);
+            for (int i = 0; i < operations; i++) {
+                final int operation = i;
+                queue.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        events.add(operation);
+                        operationsRun.countDown();
+                    }
+                }, channel.newPromise());
+            }
+            eventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    events.add(-1);
+                }
+            });
+            releaseDrain.countDown();
+
+            operationsRun.await();
+            int task = events.indexOf(-1);
+            assertTrue(task > 0);
+            assertTrue(task < operations);
+            events.remove(task);
+            for (int i = 0; i < operations; i++) {
+                assertEquals(i, (int) events.get(i));
+            }
+        } finally {
+            eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    private static final Object FLUSH = new Object();
+
+    /**
+     * Returns a {@link Channel} which records all writes and flushes in the given {@link List}, without passing them
+     * on to the head of the pipeline.
+     */
+    private static Channel newRecordingChannel(final List<Object> events) {
+        Channel channel = new LocalChannel();
+        channel.pipeline().addLast(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                events.add(msg);
+                promise.setSuccess();
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) {
+                events.add(FLUSH);
+            }
+        });
+        return channel;
+    }
+
     @Test(timeout = 3000)
     public void testUnorderedEventExecutor() throws Throwable {
         ChannelPipeline pipeline1 = new LocalChannel().pipeline();
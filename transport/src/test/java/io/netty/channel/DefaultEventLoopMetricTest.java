@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutorMetricFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultEventLoopMetricTest {
+
+    private EventExecutorMetricFactory factory;
+
+    @Before
+    public void setUp() {
+        factory = EventExecutorMetricFactory.instance();
+        EventExecutorMetricFactory.setInstance(EventExecutorMetricFactory.DEFAULT);
+    }
+
+    @After
+    public void tearDown() {
+        EventExecutorMetricFactory.setInstance(factory);
+    }
+
+    @Test(timeout = 5000)
+    public void testLoopMetricsAreRecorded() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            SingleThreadEventLoop loop = (SingleThreadEventLoop) group.next();
+            DefaultEventLoopMetric metric = (DefaultEventLoopMetric) loop.metric();
+            Runnable noop = new Runnable() {
+                @Override
+                public void run() {
+                    // Noop.
+                }
+            };
+            // The iteration which ran a task records its times only once all tasks were run.
+            while (metric.taskTime().count() == 0) {
+                loop.submit(noop).sync();
+            }
+            assertTrue(metric.ioWaitTime().count() > 0);
+            assertTrue(metric.ioTime().count() > 0);
+            assertTrue(metric.taskQueueLatency().count() > 0);
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testWriteLatencyIsRecorded() throws Exception {
+        EventLoopGroup group = new DefaultEventLoopGroup(1);
+        try {
+            Channel sc = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter())
+                    .bind(LocalAddress.ANY).sync().channel();
+            Channel cc = new Bootstrap().group(group).channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(sc.localAddress()).sync().channel();
+
+            final DefaultEventLoopMetric metric =
+                    (DefaultEventLoopMetric) ((SingleThreadEventLoop) cc.eventLoop()).metric();
+            assertEquals(0, metric.writeLatency().count());
+            final AtomicLong countOnCompletion = new AtomicLong();
+            final CountDownLatch latch = new CountDownLatch(1);
+            cc.writeAndFlush(Unpooled.wrappedBuffer(new byte[8])).sync();
+            cc.writeAndFlush(Unpooled.wrappedBuffer(new byte[8])).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    // The latency is recorded before the promise is notified.
+                    countOnCompletion.set(metric.writeLatency().count());
+                    latch.countDown();
+                }
+            });
+            latch.await();
+            assertEquals(2, countOnCompletion.get());
+            assertEquals(2, metric.writeLatency().count());
+
+            cc.close().sync();
+            sc.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+}